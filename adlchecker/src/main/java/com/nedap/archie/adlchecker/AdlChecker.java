@@ -4,7 +4,7 @@ import com.google.common.io.CharStreams;
 import com.nedap.archie.adlparser.ADLParser;
 import com.nedap.archie.antlr.errors.ANTLRParserMessage;
 import com.nedap.archie.aom.Archetype;
-import com.nedap.archie.archetypevalidator.ArchetypeValidator;
+import com.nedap.archie.archetypevalidator.ArchetypeValidationStatistics;
 import com.nedap.archie.archetypevalidator.ValidationMessage;
 import com.nedap.archie.archetypevalidator.ValidationResult;
 import com.nedap.archie.flattener.InMemoryFullArchetypeRepository;
@@ -48,6 +48,10 @@ public class AdlChecker {
                 .action(Arguments.storeTrue())
                 .help("if the --lint flag is present, also output the linted ADL, which formats and adds missing id codes");
 
+        parser.addArgument("-s", "--statistics")
+                .action(Arguments.storeTrue())
+                .help("if the --statistics flag is present, also output the time spent per validation, phase and archetype");
+
         Namespace ns = null;
         try {
             ns = parser.parseArgs(args);
@@ -60,11 +64,11 @@ public class AdlChecker {
             parser.printUsage();
             parser.printHelp();
         } else {
-            validateArchetypes(ns.getList("path"), ns.getBoolean("outputFlat"), ns.getBoolean("lint"));
+            validateArchetypes(ns.getList("path"), ns.getBoolean("outputFlat"), ns.getBoolean("lint"), ns.getBoolean("statistics"));
         }
     }
 
-    private static void validateArchetypes(List<String> directories, boolean printFlatAdl, boolean lint) {
+    private static void validateArchetypes(List<String> directories, boolean printFlatAdl, boolean lint, boolean printStatistics) {
 
         InMemoryFullArchetypeRepository repository = new InMemoryFullArchetypeRepository();
         for (String directory : directories) {
@@ -77,7 +81,8 @@ public class AdlChecker {
             }
         }
 
-        repository.compile(BuiltinReferenceModels.getMetaModels());
+        ArchetypeValidationStatistics statistics = new ArchetypeValidationStatistics();
+        repository.compile(BuiltinReferenceModels.getMetaModels(), statistics);
 
         System.out.println("step 2: validations");
 
@@ -89,6 +94,13 @@ public class AdlChecker {
 
         }
 
+        if(printStatistics) {
+            System.out.println();
+            System.out.println("validation statistics:");
+            System.out.println();
+            System.out.println(statistics.getReport());
+        }
+
         if(lint) {
             System.out.println("step 3: running archetypes through linter");
             System.out.println();
@@ -0,0 +1,18 @@
+package com.nedap.archie.aom;
+
+/**
+ * Fills the structure of a CArchetypeRoot that has been left unexpanded when creating an operational template
+ * with lazy archetype roots. Called at most once per CArchetypeRoot, on the first access to its attributes.
+ *
+ * Implemented by the flattener, which cannot be referenced from here.
+ */
+public interface ArchetypeRootExpander {
+
+    /**
+     * Fill the given archetype root with the flattened structure of the archetype it references. Called while holding
+     * the lock on the operational template the root belongs to, since expanding adds rules, annotations and component
+     * terminologies to it.
+     * @param root the archetype root to fill
+     */
+    void expand(CArchetypeRoot root);
+}
@@ -1,5 +1,6 @@
 package com.nedap.archie.aom;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.nedap.archie.paths.PathSegment;
 
 import javax.xml.bind.annotation.XmlElement;
@@ -15,6 +16,15 @@ public class CArchetypeRoot extends CComplexObject {
     @XmlElement(name="archetype_ref")
     private String archetypeRef;
 
+    /**
+     * If set, the structure of this archetype root has not been filled yet, and will be filled by this expander
+     * on first access of the attributes. Only set in operational templates created with lazy archetype roots
+     */
+    @JsonIgnore
+    private transient volatile ArchetypeRootExpander lazyExpander;
+    @JsonIgnore
+    private transient boolean expanding = false;
+
     @Override
     public List<PathSegment> getPathSegments() {
         CAttribute parent = getParent();
@@ -37,4 +47,105 @@ public class CArchetypeRoot extends CComplexObject {
     public void setArchetypeRef(String archetypeRef) {
         this.archetypeRef = archetypeRef;
     }
+
+    @Override
+    public List<CAttribute> getAttributes() {
+        expandIfNeeded();
+        return super.getAttributes();
+    }
+
+    @Override
+    public void setAttributes(List<CAttribute> attributes) {
+        if(!expanding) {
+            //explicitly set, so do not overwrite later
+            lazyExpander = null;
+        }
+        super.setAttributes(attributes);
+    }
+
+    @Override
+    public CAttribute getAttribute(String nameOrDifferentialpath) {
+        expandIfNeeded();
+        return super.getAttribute(nameOrDifferentialpath);
+    }
+
+    @Override
+    public void addAttribute(CAttribute attribute) {
+        expandIfNeeded();
+        super.addAttribute(attribute);
+    }
+
+    @Override
+    public void removeAttribute(CAttribute attribute) {
+        expandIfNeeded();
+        super.removeAttribute(attribute);
+    }
+
+    @Override
+    public void replaceAttribute(CAttribute newAttribute) {
+        expandIfNeeded();
+        super.replaceAttribute(newAttribute);
+    }
+
+    @Override
+    public List<CAttributeTuple> getAttributeTuples() {
+        expandIfNeeded();
+        return super.getAttributeTuples();
+    }
+
+    @Override
+    public boolean isAnyAllowed() {
+        expandIfNeeded();
+        return super.isAnyAllowed();
+    }
+
+    @Override
+    public boolean isLeaf() {
+        expandIfNeeded();
+        return super.isLeaf();
+    }
+
+    /**
+     * Set the expander that fills this archetype root on first access. Used by the flattener to create operational
+     * templates with lazy archetype roots, should not be needed otherwise.
+     * @param lazyExpander the expander, or null to not expand this archetype root lazily
+     */
+    public void setLazyExpander(ArchetypeRootExpander lazyExpander) {
+        this.lazyExpander = lazyExpander;
+    }
+
+    /**
+     * @return true if the structure of this archetype root has not been filled yet, and will be filled on first access
+     */
+    @JsonIgnore
+    public boolean isExpansionPending() {
+        return lazyExpander != null;
+    }
+
+    /**
+     * Expands this archetype root if not done yet. Thread-safe: the expansion is done exactly once, and other threads
+     * accessing this root wait until it has completed. Calls from within the expansion itself see the unexpanded
+     * structure.
+     * <br>
+     * Locks on the operational template this root belongs to, so roots of different templates expand in parallel.
+     */
+    public void expandIfNeeded() {
+        ArchetypeRootExpander expander = lazyExpander;
+        if(expander == null) {
+            return;
+        }
+        Archetype archetype = getArchetype();
+        synchronized (archetype == null ? this : archetype) {
+            if(lazyExpander == null || expanding) {
+                return;
+            }
+            expanding = true;
+            try {
+                expander.expand(this);
+                lazyExpander = null;
+            } finally {
+                expanding = false;
+            }
+        }
+    }
 }
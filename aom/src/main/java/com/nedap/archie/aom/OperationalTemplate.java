@@ -6,6 +6,7 @@ import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.nedap.archie.aom.rmoverlay.RmOverlay;
 import com.nedap.archie.aom.terminology.ArchetypeTerm;
 import com.nedap.archie.aom.terminology.ArchetypeTerminology;
 import com.nedap.archie.aom.utils.AOMUtils;
@@ -25,7 +26,9 @@ import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Stack;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Created by pieter.bos on 15/10/15.
@@ -126,13 +129,36 @@ public class OperationalTemplate extends AuthoredArchetype {
     }
 
     public void setComponentTerminologies(Map<String, ArchetypeTerminology> componentTerminologies) {
-        this.componentTerminologies = componentTerminologies;
+        //lazy archetype roots add to this map while it is being read, so keep it concurrent
+        this.componentTerminologies = componentTerminologies == null || componentTerminologies instanceof ConcurrentMap ?
+                componentTerminologies : new ConcurrentHashMap<>(componentTerminologies);
     }
 
     public void addComponentTerminology(String nodeId, ArchetypeTerminology terminology) {
         componentTerminologies.put(nodeId, terminology);
     }
 
+    /*
+     * Expanding a lazy archetype root replaces the rules, annotations and rm overlay with updated copies while holding
+     * the lock on this operational template, and never changes the instances that have been returned before. These
+     * getters take the same lock, so they always return a completely filled instance.
+     */
+
+    @Override
+    public synchronized RulesSection getRules() {
+        return super.getRules();
+    }
+
+    @Override
+    public synchronized ResourceAnnotations getAnnotations() {
+        return super.getAnnotations();
+    }
+
+    @Override
+    public synchronized RmOverlay getRmOverlay() {
+        return super.getRmOverlay();
+    }
+
     /**
      * Get the last used archetype reference in the path of the given cObject.
      * If stripLastPartOfPath == true, ignore the last pathsegment, usable for finding
@@ -188,6 +214,10 @@ public class OperationalTemplate extends AuthoredArchetype {
      */
     @Override
     public ArchetypeTerm getTerm(CObject object, String code, String language) {
+        if(object instanceof CArchetypeRoot) {
+            //the component terminology is only added once the archetype root has been expanded
+            ((CArchetypeRoot) object).expandIfNeeded();
+        }
         boolean stripLastPartOfPath = object instanceof CArchetypeRoot && AOMUtils.isIdCode(code);
         ArchetypeTerm term = getTermInternal(object, code, language, stripLastPartOfPath);
         if(stripLastPartOfPath && term == null) {
@@ -220,6 +250,9 @@ public class OperationalTemplate extends AuthoredArchetype {
 
 
     public ArchetypeTerminology getTerminology(CObject object) {
+        if(object instanceof CArchetypeRoot) {
+            ((CArchetypeRoot) object).expandIfNeeded();
+        }
         String archetypeId = getChildArchetypeId(object, false);
         if(archetypeId == null) {
             return getTerminology();
@@ -227,5 +260,22 @@ public class OperationalTemplate extends AuthoredArchetype {
             return getComponentTerminologies().get(archetypeId);
         }
     }
-}
 
+    /**
+     * Expands all archetype roots that have not been expanded yet, in case this operational template has been created
+     * with lazy archetype roots. Afterwards this is the same as an operational template created without lazy
+     * archetype roots. Call this before serializing, or before using tools that do not access the definition through
+     * the getters, such as JAXB.
+     */
+    public void expandLazyArchetypeRoots() {
+        Stack<CObject> workList = new Stack<>();
+        workList.push(getDefinition());
+        while(!workList.isEmpty()) {
+            CObject object = workList.pop();
+            //getAttributes() expands any pending archetype roots
+            for(CAttribute attribute:object.getAttributes()) {
+                workList.addAll(attribute.getChildren());
+            }
+        }
+    }
+}
@@ -20,23 +20,37 @@ public class ArchetypeParsePostProcesser {
 
     public static void fixArchetype(Archetype archetype) {
         if(archetype.getTerminology() != null) {
-            ArchetypeTerminology terminology = archetype.getTerminology();
-            //codes are in model, but do not appear in odin. Set them here
-            fillArchetypeTermCodes(terminology.getTermDefinitions());
-            fillArchetypeTermCodes(terminology.getTerminologyExtracts());
-            archetype.getTerminology().setConceptCode(archetype.getDefinition().getNodeId());
             String originalLanguage = null;
             if (archetype.getOriginalLanguage() != null) {
                 originalLanguage = archetype.getOriginalLanguage().getCodeString();
             }
-            archetype.getTerminology().setOriginalLanguage(originalLanguage);
+            fixTerminology(archetype.getTerminology(), archetype.getDefinition().getNodeId(), originalLanguage);
         }
-        setParents(archetype);
+        fixDefinition(archetype.getDefinition());
     }
 
-    private static void setParents(Archetype archetype) {
+    /**
+     * Sets the values of a terminology that are not in ADL or ODIN. Can also be used for a terminology without an archetype
+     * @param terminology the terminology to fix
+     * @param conceptCode the node id of the definition of the archetype
+     * @param originalLanguage the code string of the original language of the archetype
+     */
+    public static void fixTerminology(ArchetypeTerminology terminology, String conceptCode, String originalLanguage) {
+        //codes are in model, but do not appear in odin. Set them here
+        fillArchetypeTermCodes(terminology.getTermDefinitions());
+        fillArchetypeTermCodes(terminology.getTerminologyExtracts());
+        terminology.setConceptCode(conceptCode);
+        terminology.setOriginalLanguage(originalLanguage);
+    }
+
+    /**
+     * Sets the parents of all attributes and objects in a definition, and links the attributes of tuples to the
+     * attributes of their object. Can also be used for a definition without an archetype
+     * @param definition the definition to fix
+     */
+    public static void fixDefinition(CObject definition) {
         Stack<CObject> workList = new Stack<>();
-        workList.add(archetype.getDefinition());
+        workList.add(definition);
         while(!workList.empty()) {
             CObject cObject = workList.pop();
             if(cObject instanceof CPrimitiveObject) {
@@ -25,7 +25,8 @@ import java.util.concurrent.ConcurrentHashMap;
  * the entire MetaModels, or for a specific call, with the overrideModelVersion() method, and the two-parameter
  * selectModel() method.
  *
- * Note that this class is NOT thread-safe and is to be used by a single thread only.
+ * Note that this class is NOT thread-safe and is to be used by a single thread only. Use the copy constructor to
+ * obtain an instance for another thread.
  *
  */
 public class MetaModels implements MetaModelInterface {
@@ -55,6 +56,18 @@ public class MetaModels implements MetaModelInterface {
         aomProfiles = profiles;
     }
 
+    /**
+     * Create a MetaModels with the same models, AOM profiles and overridden model versions as the given MetaModels,
+     * but with its own selected model. The models themselves are shared, not copied.
+     * @param other the MetaModels to copy
+     */
+    public MetaModels(MetaModels other) {
+        this.models = other.models;
+        this.bmmRepository = other.bmmRepository;
+        this.aomProfiles = other.aomProfiles;
+        this.overriddenMetaModelVersions.putAll(other.overriddenMetaModelVersions);
+    }
+
     /**
      * Indicate that the model version for the given package by the given publisher should be fixed
      * to a specific version. Useful for validating archetypes against new RM versions, for example OpenEHR
@@ -0,0 +1,699 @@
+package com.nedap.archie.binary;
+
+import com.fasterxml.jackson.core.Base64Variant;
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.core.Version;
+import com.fasterxml.jackson.core.base.ParserMinimalBase;
+import com.fasterxml.jackson.core.json.JsonReadContext;
+import com.fasterxml.jackson.core.json.PackageVersion;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nedap.archie.aom.Archetype;
+import com.nedap.archie.aom.CComplexObject;
+import com.nedap.archie.aom.RulesSection;
+import com.nedap.archie.aom.terminology.ArchetypeTerminology;
+import com.nedap.archie.aom.utils.ArchetypeParsePostProcesser;
+import com.nedap.archie.json.ArchieJacksonConfiguration;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static com.nedap.archie.binary.BinaryArchetypeFormat.*;
+
+/**
+ * An Archetype or OperationalTemplate in the binary archetype format, as written by BinaryArchetypeWriter. See
+ * BinaryArchetypeFormat for the format itself.
+ *
+ * Opening one only reads the section table. The definition, terminology and rules can then each be read without
+ * reading the other sections, and strings are only decoded when used. Property names and type names are decoded once
+ * and kept in a table shared by all reads, other strings are decoded again on every read. Opened from a file, the file
+ * is memory-mapped, so only the parts that are read are loaded from disk. Every read creates new objects, so cache the
+ * result if it is used more than once.
+ *
+ * The sections are streamed to Jackson as JSON tokens, so they are converted to the same AOM objects as the JSON
+ * format, but without tokenizing text and without building a tree first.
+ *
+ * Thread-safe.
+ */
+public class BinaryArchetype {
+
+    private static final String TYPE_PROPERTY = ArchieJacksonConfiguration.createStandardsCompliant().getTypePropertyName();
+
+    private final ByteBuffer buffer;
+    private final int[] sectionOffsets = new int[SECTION_COUNT];
+    private final int[] sectionLengths = new int[SECTION_COUNT];
+    private final int stringCount;
+    private final int stringOffsetsStart;
+    /** the property names and type names decoded so far, by string table index */
+    private final String[] names;
+
+    private BinaryArchetype(ByteBuffer source) throws IOException {
+        //the format is big endian, whatever the order of the given buffer
+        this.buffer = source.duplicate().order(ByteOrder.BIG_ENDIAN);
+        try {
+            for(int i = 0; i < MAGIC.length; i++) {
+                if(buffer.get(i) != MAGIC[i]) {
+                    throw new IOException("not a binary archetype");
+                }
+            }
+            int version = buffer.get(MAGIC.length) & 0xFF;
+            if(version != VERSION) {
+                throw new IOException("unsupported binary archetype version " + version + ", supported is " + VERSION);
+            }
+            Arrays.fill(sectionOffsets, -1);
+            int sectionCount = buffer.get(MAGIC.length + 1) & 0xFF;
+            for(int i = 0; i < sectionCount; i++) {
+                int entry = HEADER_LENGTH + i * SECTION_ENTRY_LENGTH;
+                int section = buffer.get(entry) & 0xFF;
+                int offset = buffer.getInt(entry + 1);
+                int length = buffer.getInt(entry + 5);
+                if(offset < 0 || length < 0 || offset > buffer.limit() - length) {
+                    throw new IOException("section " + section + " outside of the binary archetype");
+                }
+                //sections from a later version are ignored
+                if(section < SECTION_COUNT) {
+                    sectionOffsets[section] = offset;
+                    sectionLengths[section] = length;
+                }
+            }
+            if(sectionOffsets[STRING_TABLE] < 0 || sectionOffsets[ARCHETYPE] < 0) {
+                throw new IOException("binary archetype without string table or archetype section");
+            }
+            stringCount = buffer.getInt(sectionOffsets[STRING_TABLE]);
+            stringOffsetsStart = sectionOffsets[STRING_TABLE] + 4;
+            if(stringCount < 0 || stringCount > sectionLengths[STRING_TABLE] / 4) {
+                throw new IOException("invalid string table size " + stringCount);
+            }
+            names = new String[stringCount];
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("truncated binary archetype", e);
+        }
+    }
+
+    /**
+     * Open the binary archetype in the given file by memory-mapping it
+     */
+    public static BinaryArchetype open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new BinaryArchetype(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Open the binary archetype in the given buffer, from position 0 to its limit. The buffer must not be changed
+     * afterwards.
+     */
+    public static BinaryArchetype open(ByteBuffer buffer) throws IOException {
+        return new BinaryArchetype(buffer);
+    }
+
+    public static BinaryArchetype open(byte[] bytes) throws IOException {
+        return new BinaryArchetype(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * @return the complete Archetype or OperationalTemplate, with all sections, as it would be parsed from JSON
+     */
+    public Archetype readArchetype() throws IOException {
+        Archetype archetype = readSection(ARCHETYPE, Archetype.class);
+        ArchetypeParsePostProcesser.fixArchetype(archetype);
+        return archetype;
+    }
+
+    /**
+     * @return the archetype id, read from the archetype section only
+     */
+    public String getArchetypeId() throws IOException {
+        return readRootString(ARCHETYPE, "archetype_id", "value");
+    }
+
+    /**
+     * @return the definition, read from the definition section only. It is not attached to an Archetype, but its
+     * parents are set, so paths can be used on it
+     */
+    public CComplexObject readDefinition() throws IOException {
+        CComplexObject definition = readSection(DEFINITION, CComplexObject.class);
+        if(definition != null) {
+            ArchetypeParsePostProcesser.fixDefinition(definition);
+        }
+        return definition;
+    }
+
+    /**
+     * @return the terminology, read from the terminology section, with the concept code and original language from the
+     * other sections. It is not attached to an Archetype
+     */
+    public ArchetypeTerminology readTerminology() throws IOException {
+        ArchetypeTerminology terminology = readSection(TERMINOLOGY, ArchetypeTerminology.class);
+        if(terminology != null) {
+            ArchetypeParsePostProcesser.fixTerminology(terminology,
+                    readRootString(DEFINITION, "node_id"),
+                    readRootString(ARCHETYPE, "original_language", "code_string"));
+        }
+        return terminology;
+    }
+
+    /**
+     * @return the rules, read from the rules section only, or null if the archetype has no rules
+     */
+    public RulesSection readRules() throws IOException {
+        return readSection(RULES, RulesSection.class);
+    }
+
+    /**
+     * Stream a section to Jackson, without building a tree first. The ARCHETYPE section gets the other sections appended
+     * as properties of its root object.
+     */
+    private <T> T readSection(int section, Class<T> type) throws IOException {
+        if(sectionOffsets[section] < 0) {
+            return null;
+        }
+        ObjectMapper objectMapper = BinaryArchetypeWriter.getObjectMapper();
+        try (SectionParser parser = new SectionParser(objectMapper, section, section == ARCHETYPE)) {
+            return objectMapper.readValue(parser, type);
+        }
+    }
+
+    /**
+     * Read a string in the root object of a section, following the given property names, skipping all other
+     * properties without decoding them
+     * @return the string, or null if the section, one of the properties or the string is absent
+     */
+    private String readRootString(int section, String... path) throws IOException {
+        if(sectionOffsets[section] < 0) {
+            return null;
+        }
+        Cursor cursor = sectionCursor(section);
+        try {
+            for(String name:path) {
+                if(!skipToProperty(cursor, name)) {
+                    return null;
+                }
+            }
+            return cursor.readByte() == STRING ? getString(cursor.readLength()) : null;
+        } catch (IndexOutOfBoundsException | BufferUnderflowException e) {
+            throw new IOException("truncated section " + section, e);
+        }
+    }
+
+    /**
+     * Read the object at the cursor up to the value of the property with the given name
+     * @return true if the cursor is now at the value, false if there is no object or property
+     */
+    private boolean skipToProperty(Cursor cursor, String name) throws IOException {
+        if(cursor.readByte() != OBJECT) {
+            return false;
+        }
+        int size = cursor.readLength();
+        for(int i = 0; i < size; i++) {
+            if(name.equals(getName(cursor.readLength()))) {
+                return true;
+            }
+            skipNode(cursor);
+        }
+        return false;
+    }
+
+    private void skipNode(Cursor cursor) throws IOException {
+        int tag = cursor.readByte();
+        switch (tag) {
+            case NULL:
+            case TRUE:
+            case FALSE:
+                break;
+            case OBJECT: {
+                int size = cursor.readLength();
+                for(int i = 0; i < size; i++) {
+                    cursor.readVarInt();
+                    skipNode(cursor);
+                }
+                break;
+            }
+            case ARRAY: {
+                int size = cursor.readLength();
+                for(int i = 0; i < size; i++) {
+                    skipNode(cursor);
+                }
+                break;
+            }
+            case STRING:
+            case DECIMAL:
+            case BIG_INTEGER:
+            case INTEGER:
+            case LONG:
+                cursor.readVarInt();
+                break;
+            case DOUBLE:
+                cursor.skip(8);
+                break;
+            case BINARY:
+                cursor.skip(cursor.readLength());
+                break;
+            default:
+                throw new IOException("unknown tag " + tag);
+        }
+    }
+
+    private Cursor sectionCursor(int section) {
+        return new Cursor(sectionOffsets[section], sectionOffsets[section] + sectionLengths[section]);
+    }
+
+    /**
+     * Get a property name or type name. These are decoded once and interned, so every archetype read shares the same
+     * instances. The table is read and written without locking: Strings are immutable, so a thread that does not see
+     * the name of another thread at worst decodes it again.
+     */
+    private String getName(int index) throws IOException {
+        if(index >= stringCount) {
+            throw new IOException("string table index out of bounds: " + index);
+        }
+        String name = names[index];
+        if(name == null) {
+            name = getString(index).intern();
+            names[index] = name;
+        }
+        return name;
+    }
+
+    private String getString(int index) throws IOException {
+        if(index >= stringCount) {
+            throw new IOException("string table index out of bounds: " + index);
+        }
+        int stringDataStart = stringOffsetsStart + stringCount * 4;
+        Cursor cursor = new Cursor(stringDataStart + buffer.getInt(stringOffsetsStart + index * 4),
+                sectionOffsets[STRING_TABLE] + sectionLengths[STRING_TABLE]);
+        byte[] bytes = new byte[cursor.readLength()];
+        cursor.readBytes(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a section as a stream of JSON tokens, decoding strings only when they are reached
+     */
+    private class SectionParser extends ParserMinimalBase {
+
+        private ObjectCodec codec;
+        private Cursor cursor;
+        private JsonReadContext context = JsonReadContext.createRootContext(null);
+        /** the number of properties or elements left to read, per open object or array */
+        private int[] remaining = new int[16];
+        private int depth;
+        private boolean started;
+        private boolean closed;
+        /** the sections still to append to the root object, if appending */
+        private int nextAppendedSection;
+        private String text;
+        private Object value;
+
+        SectionParser(ObjectCodec codec, int section, boolean appendSections) {
+            this.codec = codec;
+            this.cursor = sectionCursor(section);
+            this.nextAppendedSection = appendSections ? DEFINITION : SECTION_COUNT;
+        }
+
+        @Override
+        public JsonToken nextToken() throws IOException {
+            if(closed || (started && depth == 0)) {
+                return _currToken = null;
+            }
+            try {
+                if(context.inObject() && _currToken != JsonToken.FIELD_NAME) {
+                    if(remaining[depth - 1] == 0) {
+                        if(depth == 1 && nextAppendedSection()) {
+                            return _currToken = JsonToken.FIELD_NAME;
+                        }
+                        return endContainer(JsonToken.END_OBJECT);
+                    }
+                    remaining[depth - 1]--;
+                    context.setCurrentName(getName(cursor.readLength()));
+                    return _currToken = JsonToken.FIELD_NAME;
+                }
+                if(context.inArray()) {
+                    if(remaining[depth - 1] == 0) {
+                        return endContainer(JsonToken.END_ARRAY);
+                    }
+                    remaining[depth - 1]--;
+                }
+                started = true;
+                return _currToken = readValue();
+            } catch (IndexOutOfBoundsException | BufferUnderflowException e) {
+                throw new JsonParseException(this, "truncated binary archetype section", e);
+            }
+        }
+
+        /**
+         * Move to the next present section that is appended to the root object, and make its property name current
+         * @return true if there was such a section
+         */
+        private boolean nextAppendedSection() throws IOException {
+            while(nextAppendedSection < SECTION_COUNT) {
+                int section = nextAppendedSection++;
+                if(sectionOffsets[section] >= 0) {
+                    cursor = sectionCursor(section);
+                    context.setCurrentName(SECTION_PROPERTIES[section]);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private JsonToken endContainer(JsonToken token) {
+            depth--;
+            context = context.getParent();
+            return _currToken = token;
+        }
+
+        private JsonToken readValue() throws IOException {
+            text = null;
+            value = null;
+            int tag = cursor.readByte();
+            switch (tag) {
+                case NULL:
+                    return JsonToken.VALUE_NULL;
+                case TRUE:
+                    return JsonToken.VALUE_TRUE;
+                case FALSE:
+                    return JsonToken.VALUE_FALSE;
+                case OBJECT:
+                    startContainer(cursor.readLength());
+                    context = context.createChildObjectContext(-1, -1);
+                    return JsonToken.START_OBJECT;
+                case ARRAY:
+                    startContainer(cursor.readLength());
+                    context = context.createChildArrayContext(-1, -1);
+                    return JsonToken.START_ARRAY;
+                case STRING:
+                    int index = cursor.readLength();
+                    //type names are as repetitive as property names
+                    text = context.inObject() && TYPE_PROPERTY.equals(context.getCurrentName()) ? getName(index) : getString(index);
+                    return JsonToken.VALUE_STRING;
+                case INTEGER:
+                    value = (int) cursor.readSignedVarInt();
+                    return JsonToken.VALUE_NUMBER_INT;
+                case LONG:
+                    value = cursor.readSignedVarInt();
+                    return JsonToken.VALUE_NUMBER_INT;
+                case DOUBLE:
+                    value = cursor.readDouble();
+                    return JsonToken.VALUE_NUMBER_FLOAT;
+                case DECIMAL:
+                    value = new BigDecimal(getString(cursor.readLength()));
+                    return JsonToken.VALUE_NUMBER_FLOAT;
+                case BIG_INTEGER:
+                    value = new BigInteger(getString(cursor.readLength()));
+                    return JsonToken.VALUE_NUMBER_INT;
+                case BINARY:
+                    byte[] bytes = new byte[cursor.readLength()];
+                    cursor.readBytes(bytes);
+                    value = bytes;
+                    return JsonToken.VALUE_EMBEDDED_OBJECT;
+                default:
+                    throw new JsonParseException(this, "unknown tag " + tag);
+            }
+        }
+
+        private void startContainer(int size) {
+            if(depth == remaining.length) {
+                remaining = Arrays.copyOf(remaining, depth * 2);
+            }
+            remaining[depth++] = size;
+        }
+
+        @Override
+        protected void _handleEOF() {
+        }
+
+        @Override
+        public String getCurrentName() {
+            //as in Jackson's own parsers, the name of a start token is the name of the property it is the value of
+            if((_currToken == JsonToken.START_OBJECT || _currToken == JsonToken.START_ARRAY) && context.getParent() != null) {
+                return context.getParent().getCurrentName();
+            }
+            return context.getCurrentName();
+        }
+
+        @Override
+        public void overrideCurrentName(String name) {
+            JsonReadContext nameContext = context;
+            if(_currToken == JsonToken.START_OBJECT || _currToken == JsonToken.START_ARRAY) {
+                nameContext = context.getParent();
+            }
+            try {
+                nameContext.setCurrentName(name);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public JsonStreamContext getParsingContext() {
+            return context;
+        }
+
+        @Override
+        public String getText() {
+            if(_currToken == null) {
+                return null;
+            }
+            switch (_currToken) {
+                case FIELD_NAME:
+                    return context.getCurrentName();
+                case VALUE_STRING:
+                    return text;
+                case VALUE_NUMBER_INT:
+                case VALUE_NUMBER_FLOAT:
+                    return value.toString();
+                default:
+                    return _currToken.asString();
+            }
+        }
+
+        @Override
+        public char[] getTextCharacters() {
+            String result = getText();
+            return result == null ? null : result.toCharArray();
+        }
+
+        @Override
+        public boolean hasTextCharacters() {
+            return false;
+        }
+
+        @Override
+        public int getTextLength() {
+            String result = getText();
+            return result == null ? 0 : result.length();
+        }
+
+        @Override
+        public int getTextOffset() {
+            return 0;
+        }
+
+        @Override
+        public Object getEmbeddedObject() {
+            return _currToken == JsonToken.VALUE_EMBEDDED_OBJECT ? value : null;
+        }
+
+        @Override
+        public byte[] getBinaryValue(Base64Variant base64Variant) throws IOException {
+            if(_currToken == JsonToken.VALUE_EMBEDDED_OBJECT && value instanceof byte[]) {
+                return (byte[]) value;
+            }
+            if(_currToken == JsonToken.VALUE_STRING) {
+                try {
+                    return base64Variant.decode(text);
+                } catch (IllegalArgumentException e) {
+                    throw new JsonParseException(this, "invalid base64 string", e);
+                }
+            }
+            throw new JsonParseException(this, "current token " + _currToken + " is not binary");
+        }
+
+        @Override
+        public Number getNumberValue() throws IOException {
+            if(_currToken != JsonToken.VALUE_NUMBER_INT && _currToken != JsonToken.VALUE_NUMBER_FLOAT) {
+                throw new JsonParseException(this, "current token " + _currToken + " is not a number");
+            }
+            return (Number) value;
+        }
+
+        @Override
+        public NumberType getNumberType() throws IOException {
+            Number number = getNumberValue();
+            if(number instanceof Integer) {
+                return NumberType.INT;
+            } else if (number instanceof Long) {
+                return NumberType.LONG;
+            } else if (number instanceof BigInteger) {
+                return NumberType.BIG_INTEGER;
+            } else if (number instanceof BigDecimal) {
+                return NumberType.BIG_DECIMAL;
+            }
+            return NumberType.DOUBLE;
+        }
+
+        @Override
+        public int getIntValue() throws IOException {
+            return getNumberValue().intValue();
+        }
+
+        @Override
+        public long getLongValue() throws IOException {
+            return getNumberValue().longValue();
+        }
+
+        @Override
+        public BigInteger getBigIntegerValue() throws IOException {
+            Number number = getNumberValue();
+            if(number instanceof BigInteger) {
+                return (BigInteger) number;
+            } else if (number instanceof BigDecimal) {
+                return ((BigDecimal) number).toBigInteger();
+            } else if (number instanceof Double) {
+                return BigDecimal.valueOf(number.doubleValue()).toBigInteger();
+            }
+            return BigInteger.valueOf(number.longValue());
+        }
+
+        @Override
+        public float getFloatValue() throws IOException {
+            return getNumberValue().floatValue();
+        }
+
+        @Override
+        public double getDoubleValue() throws IOException {
+            return getNumberValue().doubleValue();
+        }
+
+        @Override
+        public BigDecimal getDecimalValue() throws IOException {
+            Number number = getNumberValue();
+            if(number instanceof BigDecimal) {
+                return (BigDecimal) number;
+            } else if (number instanceof BigInteger) {
+                return new BigDecimal((BigInteger) number);
+            } else if (number instanceof Double) {
+                return BigDecimal.valueOf(number.doubleValue());
+            }
+            return BigDecimal.valueOf(number.longValue());
+        }
+
+        @Override
+        public ObjectCodec getCodec() {
+            return codec;
+        }
+
+        @Override
+        public void setCodec(ObjectCodec codec) {
+            this.codec = codec;
+        }
+
+        @Override
+        public Version version() {
+            return PackageVersion.VERSION;
+        }
+
+        @Override
+        public JsonLocation getCurrentLocation() {
+            return JsonLocation.NA;
+        }
+
+        @Override
+        public JsonLocation getTokenLocation() {
+            return JsonLocation.NA;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+    }
+
+    /**
+     * A read position in the buffer. The buffer itself is only read with absolute gets, so it can be shared by threads
+     */
+    private class Cursor {
+        private int position;
+        private final int end;
+
+        Cursor(int position, int end) {
+            this.position = position;
+            this.end = end;
+        }
+
+        int readByte() {
+            if(position >= end) {
+                throw new BufferUnderflowException();
+            }
+            return buffer.get(position++) & 0xFF;
+        }
+
+        void readBytes(byte[] bytes) {
+            if(bytes.length > end - position) {
+                throw new BufferUnderflowException();
+            }
+            for(int i = 0; i < bytes.length; i++) {
+                bytes[i] = buffer.get(position++);
+            }
+        }
+
+        void skip(int length) {
+            if(length > end - position) {
+                throw new BufferUnderflowException();
+            }
+            position += length;
+        }
+
+        double readDouble() {
+            if(end - position < 8) {
+                throw new BufferUnderflowException();
+            }
+            double result = buffer.getDouble(position);
+            position += 8;
+            return result;
+        }
+
+        int readLength() throws IOException {
+            long length = readVarInt();
+            if(length > Integer.MAX_VALUE) {
+                throw new IOException("invalid length " + length);
+            }
+            return (int) length;
+        }
+
+        long readSignedVarInt() throws IOException {
+            long value = readVarInt();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        long readVarInt() throws IOException {
+            long result = 0;
+            for(int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                result |= (long) (b & 0x7F) << shift;
+                if((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IOException("varint too long");
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.nedap.archie.binary;
+
+/**
+ * Constants of the binary archetype format, written by BinaryArchetypeWriter and read by BinaryArchetype.
+ *
+ * A file starts with the four magic bytes "AAOM", a version byte, the number of sections as a byte, and the section
+ * table. The section table has an entry of 9 bytes per section: the section id as a byte, and the offset from the
+ * start of the file and the length of the section as big endian 32-bit integers. The sections follow the table.
+ *
+ * The STRING_TABLE section contains all strings of the archetype, each once: the number of strings as a 32-bit
+ * integer, the offset of every string relative to the end of the offset list as 32-bit integers, and then the strings,
+ * each as the number of bytes as a varint followed by the bytes in UTF-8. The offsets allow every string to be read
+ * without reading the others.
+ *
+ * Every other section contains a part of the archetype in the tree structure of the JSON format of Archie, in the
+ * standards compliant configuration: DEFINITION, TERMINOLOGY, RULES and, for operational templates,
+ * COMPONENT_TERMINOLOGIES and TERMINOLOGY_EXTRACTS contain the value of the JSON property with that name. ARCHETYPE
+ * contains everything else. A section is absent if its property is absent. A node is a tag byte, followed by:
+ * <ul>
+ *     <li>OBJECT: the number of properties as a varint, then per property the index of its name in the string table
+ *     as a varint and its value</li>
+ *     <li>ARRAY: the number of elements as a varint, then the elements</li>
+ *     <li>STRING, DECIMAL and BIG_INTEGER: the index in the string table as a varint</li>
+ *     <li>INTEGER and LONG: a zigzag encoded varint</li>
+ *     <li>DOUBLE: 8 bytes, big endian</li>
+ *     <li>BINARY: the number of bytes as a varint, then the bytes</li>
+ *     <li>NULL, TRUE and FALSE: nothing</li>
+ * </ul>
+ * Varints are encoded as in BinaryRMFormat.
+ */
+final class BinaryArchetypeFormat {
+
+    static final byte[] MAGIC = {'A', 'A', 'O', 'M'};
+    static final int VERSION = 1;
+    static final int HEADER_LENGTH = 6;
+    static final int SECTION_ENTRY_LENGTH = 9;
+
+    static final int STRING_TABLE = 0;
+    static final int ARCHETYPE = 1;
+    static final int DEFINITION = 2;
+    static final int TERMINOLOGY = 3;
+    static final int RULES = 4;
+    static final int COMPONENT_TERMINOLOGIES = 5;
+    static final int TERMINOLOGY_EXTRACTS = 6;
+    static final int SECTION_COUNT = 7;
+
+    /** the JSON property names of the sections that are split off from the ARCHETYPE section, by section id */
+    static final String[] SECTION_PROPERTIES = {null, null, "definition", "terminology", "rules", "component_terminologies", "terminology_extracts"};
+
+    static final int NULL = 0;
+    static final int TRUE = 1;
+    static final int FALSE = 2;
+    static final int OBJECT = 3;
+    static final int ARRAY = 4;
+    static final int STRING = 5;
+    static final int INTEGER = 6;
+    static final int LONG = 7;
+    static final int DOUBLE = 8;
+    static final int DECIMAL = 9;
+    static final int BIG_INTEGER = 10;
+    static final int BINARY = 11;
+
+    private BinaryArchetypeFormat() {
+    }
+}
@@ -0,0 +1,204 @@
+package com.nedap.archie.binary;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.nedap.archie.aom.Archetype;
+import com.nedap.archie.json.ArchieJacksonConfiguration;
+import com.nedap.archie.json.JacksonUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static com.nedap.archie.binary.BinaryArchetypeFormat.*;
+
+/**
+ * Writes Archetypes and OperationalTemplates in the binary archetype format, to be read with BinaryArchetype. See
+ * BinaryArchetypeFormat for the format itself.
+ */
+public class BinaryArchetypeWriter {
+
+    private BinaryArchetypeWriter() {
+    }
+
+    public static void write(Archetype archetype, Path file) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            write(archetype, out);
+        }
+    }
+
+    /**
+     * Write the given archetype to the given stream. The stream is not closed
+     */
+    public static void write(Archetype archetype, OutputStream out) throws IOException {
+        ObjectMapper objectMapper = getObjectMapper();
+        ObjectNode tree = objectMapper.valueToTree(archetype);
+
+        StringTableBuilder strings = new StringTableBuilder();
+        byte[][] sections = new byte[SECTION_COUNT][];
+        for(int section = DEFINITION; section < SECTION_COUNT; section++) {
+            JsonNode node = tree.remove(SECTION_PROPERTIES[section]);
+            if(node != null && !node.isNull()) {
+                sections[section] = encode(node, strings);
+            }
+        }
+        sections[ARCHETYPE] = encode(tree, strings);
+        sections[STRING_TABLE] = strings.toBytes();
+
+        int sectionCount = 0;
+        for(byte[] section:sections) {
+            if(section != null) {
+                sectionCount++;
+            }
+        }
+        DataOutputStream data = new DataOutputStream(out);
+        data.write(MAGIC);
+        data.writeByte(VERSION);
+        data.writeByte(sectionCount);
+        int offset = HEADER_LENGTH + sectionCount * SECTION_ENTRY_LENGTH;
+        for(int section = 0; section < SECTION_COUNT; section++) {
+            if(sections[section] != null) {
+                data.writeByte(section);
+                data.writeInt(offset);
+                data.writeInt(sections[section].length);
+                offset += sections[section].length;
+            }
+        }
+        for(byte[] section:sections) {
+            if(section != null) {
+                data.write(section);
+            }
+        }
+        data.flush();
+    }
+
+    static ObjectMapper getObjectMapper() {
+        return JacksonUtil.getObjectMapper(ArchieJacksonConfiguration.createStandardsCompliant());
+    }
+
+    private static byte[] encode(JsonNode node, StringTableBuilder strings) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        encode(node, strings, new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    private static void encode(JsonNode node, StringTableBuilder strings, DataOutputStream out) throws IOException {
+        switch (node.getNodeType()) {
+            case NULL:
+                out.writeByte(NULL);
+                break;
+            case BOOLEAN:
+                out.writeByte(node.booleanValue() ? TRUE : FALSE);
+                break;
+            case STRING:
+                out.writeByte(STRING);
+                writeVarInt(out, strings.indexOf(node.textValue()));
+                break;
+            case OBJECT:
+                out.writeByte(OBJECT);
+                writeVarInt(out, node.size());
+                Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+                while(fields.hasNext()) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    writeVarInt(out, strings.indexOf(field.getKey()));
+                    encode(field.getValue(), strings, out);
+                }
+                break;
+            case ARRAY:
+                out.writeByte(ARRAY);
+                writeVarInt(out, node.size());
+                for(JsonNode element:node) {
+                    encode(element, strings, out);
+                }
+                break;
+            case NUMBER:
+                if(node.isInt() || node.isShort()) {
+                    out.writeByte(INTEGER);
+                    writeSignedVarInt(out, node.intValue());
+                } else if (node.isLong()) {
+                    out.writeByte(LONG);
+                    writeSignedVarInt(out, node.longValue());
+                } else if (node.isBigDecimal()) {
+                    out.writeByte(DECIMAL);
+                    writeVarInt(out, strings.indexOf(node.decimalValue().toString()));
+                } else if (node.isBigInteger()) {
+                    out.writeByte(BIG_INTEGER);
+                    writeVarInt(out, strings.indexOf(node.bigIntegerValue().toString()));
+                } else {
+                    out.writeByte(DOUBLE);
+                    out.writeDouble(node.doubleValue());
+                }
+                break;
+            case BINARY:
+                byte[] binary = node.binaryValue();
+                out.writeByte(BINARY);
+                writeVarInt(out, binary.length);
+                out.write(binary);
+                break;
+            default:
+                throw new IllegalArgumentException("cannot write JSON node of type " + node.getNodeType());
+        }
+    }
+
+    private static void writeSignedVarInt(DataOutputStream out, long value) throws IOException {
+        writeVarInt(out, (value << 1) ^ (value >> 63));
+    }
+
+    static void writeVarInt(DataOutputStream out, long value) throws IOException {
+        while((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /**
+     * Interns all strings of an archetype, so that every string is written only once
+     */
+    private static class StringTableBuilder {
+
+        private final Map<String, Integer> indices = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+
+        int indexOf(String value) {
+            Integer index = indices.get(value);
+            if(index == null) {
+                index = strings.size();
+                strings.add(value);
+                indices.put(value, index);
+            }
+            return index;
+        }
+
+        byte[] toBytes() throws IOException {
+            ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+            DataOutputStream stringData = new DataOutputStream(stringBytes);
+            int[] offsets = new int[strings.size()];
+            for(int i = 0; i < strings.size(); i++) {
+                offsets[i] = stringData.size();
+                byte[] bytes = strings.get(i).getBytes(StandardCharsets.UTF_8);
+                writeVarInt(stringData, bytes.length);
+                stringData.write(bytes);
+            }
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(result);
+            out.writeInt(strings.size());
+            for(int offset:offsets) {
+                out.writeInt(offset);
+            }
+            stringBytes.writeTo(out);
+            out.flush();
+            return result.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.nedap.archie.binary;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Constants of the binary RM format, written by BinaryRMWriter and read by BinaryRMReader.
+ *
+ * A stream starts with the four magic bytes "ARMB" and a version byte, followed by any number of values. Every value
+ * starts with a tag byte:
+ * <ul>
+ *     <li>NULL</li>
+ *     <li>OBJECT, followed by a string with the RM type name, the number of attributes as a varint, and per attribute
+ *     a string with the RM attribute name and a value. Only attributes that are not null are written.</li>
+ *     <li>LIST, followed by the number of elements as a varint and the elements as values</li>
+ *     <li>STRING, URI and ENUM, followed by a string</li>
+ *     <li>TRUE and FALSE</li>
+ *     <li>INTEGER and LONG, followed by a zigzag encoded varint</li>
+ *     <li>DOUBLE and FLOAT, followed by 8 or 4 bytes, big endian</li>
+ *     <li>BYTES, followed by the length as a varint and the bytes</li>
+ *     <li>TEMPORAL, followed by a byte with the java.time type, and its fields as zigzag encoded varints</li>
+ * </ul>
+ * A string is a varint reference to the string table of the stream. 0 means a new string follows, which is added to
+ * the table. 1 means a string follows that is not added to the table. n &gt; 1 refers to table entry n - 2, in the
+ * order in which they were added. A string that follows is written as the number of bytes as a varint, then the bytes
+ * in UTF-8. The table spans the whole stream, so repeated type names, attribute names, node ids and terminology codes
+ * are written only once. Only such strings, that come from the model, archetypes and terminologies, are added to the
+ * table: other values such as uids and free text are usually unique, and would make the table grow with the stream. The
+ * table holds at most MAX_STRING_TABLE_SIZE strings, after which new strings are no longer added.
+ *
+ * Types and attributes are identified by their RM names from the ModelInfoLookup, not by java classes or numbers,
+ * so streams can be read by later versions of Archie. Attributes that are not known when reading are skipped.
+ *
+ * Varints are unsigned LEB128: 7 bits per byte, least significant group first, high bit set if more bytes follow.
+ * Zigzag encoding maps signed to unsigned numbers so small negative numbers are small as well.
+ */
+final class BinaryRMFormat {
+
+    static final byte[] MAGIC = {'A', 'R', 'M', 'B'};
+    static final int VERSION = 1;
+
+    static final int NULL = 0;
+    static final int OBJECT = 1;
+    static final int LIST = 2;
+    static final int STRING = 3;
+    static final int TRUE = 4;
+    static final int FALSE = 5;
+    static final int INTEGER = 6;
+    static final int LONG = 7;
+    static final int DOUBLE = 8;
+    static final int FLOAT = 9;
+    static final int BYTES = 10;
+    static final int URI = 11;
+    static final int ENUM = 12;
+    static final int TEMPORAL = 13;
+
+    /** kinds of TEMPORAL values, followed by their fields */
+    static final int LOCAL_DATE = 0; //epoch day
+    static final int YEAR_MONTH = 1; //year, month
+    static final int YEAR = 2; //year
+    static final int LOCAL_DATE_TIME = 3; //epoch second in UTC, nano
+    static final int OFFSET_DATE_TIME = 4; //epoch second, nano, offset seconds
+    static final int LOCAL_TIME = 5; //nano of day
+    static final int OFFSET_TIME = 6; //nano of day, offset seconds
+    static final int DURATION = 7; //seconds, nano
+    static final int PERIOD = 8; //years, months, days
+    static final int PERIOD_DURATION = 9; //years, months, days, seconds, nano
+
+    /** the number of fields of every kind of TEMPORAL value, by kind */
+    static final int[] TEMPORAL_FIELD_COUNTS = {1, 2, 1, 2, 3, 1, 2, 2, 3, 5};
+
+    static final int STRING_NEW = 0;
+    static final int STRING_NOT_INTERNED = 1;
+    static final int STRING_TABLE_OFFSET = 2;
+
+    /** longer strings are usually unique values, so they are not added to the string table */
+    static final int MAX_INTERNED_STRING_LENGTH = 64;
+
+    /** bounds the memory used by the string table of long streams, both when writing and when reading */
+    static final int MAX_STRING_TABLE_SIZE = 16_384;
+
+    /** string attributes with values from archetypes and terminologies, which are added to the string table */
+    static final Set<String> INTERNED_ATTRIBUTES = new HashSet<>(Arrays.asList("archetype_node_id", "code_string", "units"));
+
+    /** types of which the string values are archetype, template or terminology ids, which are added to the string table */
+    static final Set<String> INTERNED_TYPES = new HashSet<>(Arrays.asList("ARCHETYPE_ID", "TEMPLATE_ID", "TERMINOLOGY_ID"));
+
+    private BinaryRMFormat() {
+    }
+}
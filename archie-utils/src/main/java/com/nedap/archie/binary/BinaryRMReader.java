@@ -0,0 +1,381 @@
+package com.nedap.archie.binary;
+
+import com.nedap.archie.rminfo.ArchieRMInfoLookup;
+import com.nedap.archie.rminfo.ModelInfoLookup;
+import com.nedap.archie.rminfo.RMAttributeInfo;
+import org.threeten.extra.PeriodDuration;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.OffsetTime;
+import java.time.Period;
+import java.time.Year;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.nedap.archie.binary.BinaryRMFormat.*;
+
+/**
+ * Reads RM Objects in the binary RM format, as written by BinaryRMWriter, from a stream. See BinaryRMFormat for the
+ * format itself.
+ *
+ * Reads one byte at a time from the given stream, so pass a buffered stream.
+ *
+ * Not thread-safe: use one reader per stream.
+ */
+public class BinaryRMReader implements Closeable {
+
+    private final DataInputStream in;
+    private final ModelInfoLookup lookup;
+    private final List<String> stringTable = new ArrayList<>();
+    private boolean headerRead = false;
+
+    /**
+     * Create a reader for the openEHR RM
+     */
+    public BinaryRMReader(InputStream in) {
+        this(in, ArchieRMInfoLookup.getInstance());
+    }
+
+    public BinaryRMReader(InputStream in, ModelInfoLookup lookup) {
+        this.in = new DataInputStream(in);
+        this.lookup = lookup;
+    }
+
+    /**
+     * Read the next RM Object from the stream
+     * @return the RM Object, or null if the end of the stream has been reached
+     * @throws IOException if the stream cannot be read, or is not in the binary RM format
+     */
+    public Object read() throws IOException {
+        if(!headerRead) {
+            readHeader();
+            headerRead = true;
+        }
+        int tag = in.read();
+        if(tag < 0) {
+            return null;
+        }
+        return readValue(tag, Object.class, Object.class);
+    }
+
+    /**
+     * Read the next RM Object from the stream, which must be of the given type
+     * @return the RM Object, or null if the end of the stream has been reached
+     */
+    public <T> T read(Class<T> type) throws IOException {
+        Object result = read();
+        if(result != null && !type.isInstance(result)) {
+            throw new IOException("expected " + type.getSimpleName() + " but read " + result.getClass().getSimpleName());
+        }
+        return (T) result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void readHeader() throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        try {
+            in.readFully(magic);
+        } catch (EOFException e) {
+            throw new IOException("not a binary RM stream", e);
+        }
+        for(int i = 0; i < MAGIC.length; i++) {
+            if(magic[i] != MAGIC[i]) {
+                throw new IOException("not a binary RM stream");
+            }
+        }
+        int version = in.readUnsignedByte();
+        if(version != VERSION) {
+            throw new IOException("unsupported binary RM version " + version + ", supported is " + VERSION);
+        }
+    }
+
+    /**
+     * Read the value with the given tag
+     * @param type the type of the attribute the value is read for, used for enums and collections
+     * @param typeInCollection the type of elements if type is a collection
+     */
+    private Object readValue(int tag, Class<?> type, Class<?> typeInCollection) throws IOException {
+        switch (tag) {
+            case NULL:
+                return null;
+            case OBJECT:
+                return readObject();
+            case LIST:
+                return readCollection(type, typeInCollection);
+            case STRING:
+                return readString();
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case INTEGER:
+                return (int) readSignedVarInt();
+            case LONG:
+                return readSignedVarInt();
+            case DOUBLE:
+                return in.readDouble();
+            case FLOAT:
+                return in.readFloat();
+            case BYTES:
+                byte[] bytes = new byte[readLength()];
+                in.readFully(bytes);
+                return bytes;
+            case URI:
+                return java.net.URI.create(readString());
+            case ENUM:
+                return readEnum(type.isEnum() ? type : typeInCollection);
+            case TEMPORAL:
+                return readTemporal();
+            default:
+                throw new IOException("unknown tag " + tag);
+        }
+    }
+
+    private Object readObject() throws IOException {
+        String typeName = readString();
+        Class<?> clazz = lookup.getClassToBeCreated(typeName);
+        if(clazz == null) {
+            throw new IOException("unknown RM type " + typeName);
+        }
+        Object result;
+        try {
+            result = clazz.getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+        int attributeCount = readLength();
+        for(int i = 0; i < attributeCount; i++) {
+            String attributeName = readString();
+            RMAttributeInfo attribute = lookup.getAttributeInfo(clazz, attributeName);
+            if(attribute == null) {
+                //written by a later version of the RM. Skip it
+                skipValue(in.readUnsignedByte());
+                continue;
+            }
+            Object value = readValue(in.readUnsignedByte(), attribute.getType(), attribute.getTypeInCollection());
+            setAttribute(result, attribute, value);
+        }
+        return result;
+    }
+
+    /**
+     * Skip the value with the given tag without interpreting it, so it may contain types and enum values that are not
+     * known. Its strings are still read, to keep the string table complete.
+     */
+    private void skipValue(int tag) throws IOException {
+        switch (tag) {
+            case NULL:
+            case TRUE:
+            case FALSE:
+                break;
+            case OBJECT: {
+                readString();
+                int attributeCount = readLength();
+                for(int i = 0; i < attributeCount; i++) {
+                    readString();
+                    skipValue(in.readUnsignedByte());
+                }
+                break;
+            }
+            case LIST: {
+                int size = readLength();
+                for(int i = 0; i < size; i++) {
+                    skipValue(in.readUnsignedByte());
+                }
+                break;
+            }
+            case STRING:
+            case URI:
+            case ENUM:
+                readString();
+                break;
+            case INTEGER:
+            case LONG:
+                readVarInt();
+                break;
+            case DOUBLE:
+                skipBytes(8);
+                break;
+            case FLOAT:
+                skipBytes(4);
+                break;
+            case BYTES:
+                skipBytes(readLength());
+                break;
+            case TEMPORAL: {
+                int kind = in.readUnsignedByte();
+                if(kind >= TEMPORAL_FIELD_COUNTS.length) {
+                    throw new IOException("unknown date/time kind " + kind);
+                }
+                for(int i = 0; i < TEMPORAL_FIELD_COUNTS[kind]; i++) {
+                    readVarInt();
+                }
+                break;
+            }
+            default:
+                throw new IOException("unknown tag " + tag);
+        }
+    }
+
+    private void skipBytes(int length) throws IOException {
+        int remaining = length;
+        while(remaining > 0) {
+            int skipped = in.skipBytes(remaining);
+            if(skipped == 0) {
+                //skipBytes can skip less without being at the end of the stream, so read a byte to find out
+                in.readUnsignedByte();
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    private void setAttribute(Object rmObject, RMAttributeInfo attribute, Object value) throws IOException {
+        try {
+            if(attribute.getSetMethod() != null) {
+                attribute.getSetMethod().invoke(rmObject, value);
+            } else if (attribute.getAddMethod() != null && value instanceof Collection) {
+                Method addMethod = attribute.getAddMethod();
+                for(Object element:(Collection<?>) value) {
+                    addMethod.invoke(rmObject, element);
+                }
+            } else {
+                throw new IOException("cannot set attribute " + attribute.getRmName() + " of " + rmObject.getClass().getSimpleName());
+            }
+        } catch (IllegalAccessException | InvocationTargetException | IllegalArgumentException e) {
+            throw new IOException("cannot set attribute " + attribute.getRmName() + " of " + rmObject.getClass().getSimpleName(), e);
+        }
+    }
+
+    private Collection<Object> readCollection(Class<?> type, Class<?> typeInCollection) throws IOException {
+        int size = readLength();
+        Collection<Object> result = Set.class.isAssignableFrom(type) ? new LinkedHashSet<>() : new ArrayList<>();
+        for(int i = 0; i < size; i++) {
+            result.add(readValue(in.readUnsignedByte(), typeInCollection, typeInCollection));
+        }
+        return result;
+    }
+
+    private Object readEnum(Class<?> enumClass) throws IOException {
+        String name = readString();
+        if(!enumClass.isEnum()) {
+            throw new IOException("enum value " + name + " found for non-enum type " + enumClass.getSimpleName());
+        }
+        for(Object constant:enumClass.getEnumConstants()) {
+            if(((Enum<?>) constant).name().equals(name)) {
+                return constant;
+            }
+        }
+        throw new IOException("unknown value " + name + " of enum " + enumClass.getSimpleName());
+    }
+
+    private Object readTemporal() throws IOException {
+        int kind = in.readUnsignedByte();
+        switch (kind) {
+            case LOCAL_DATE:
+                return LocalDate.ofEpochDay(readSignedVarInt());
+            case YEAR_MONTH:
+                return YearMonth.of((int) readSignedVarInt(), (int) readSignedVarInt());
+            case YEAR:
+                return Year.of((int) readSignedVarInt());
+            case LOCAL_DATE_TIME:
+                return LocalDateTime.ofEpochSecond(readSignedVarInt(), (int) readSignedVarInt(), ZoneOffset.UTC);
+            case OFFSET_DATE_TIME: {
+                Instant instant = Instant.ofEpochSecond(readSignedVarInt(), readSignedVarInt());
+                return OffsetDateTime.ofInstant(instant, ZoneOffset.ofTotalSeconds((int) readSignedVarInt()));
+            }
+            case LOCAL_TIME:
+                return LocalTime.ofNanoOfDay(readSignedVarInt());
+            case OFFSET_TIME: {
+                LocalTime time = LocalTime.ofNanoOfDay(readSignedVarInt());
+                return OffsetTime.of(time, ZoneOffset.ofTotalSeconds((int) readSignedVarInt()));
+            }
+            case DURATION:
+                return readDuration();
+            case PERIOD:
+                return readPeriod();
+            case PERIOD_DURATION: {
+                Period period = readPeriod();
+                return PeriodDuration.of(period, readDuration());
+            }
+            default:
+                throw new IOException("unknown date/time kind " + kind);
+        }
+    }
+
+    private Duration readDuration() throws IOException {
+        return Duration.ofSeconds(readSignedVarInt(), readSignedVarInt());
+    }
+
+    private Period readPeriod() throws IOException {
+        return Period.of((int) readSignedVarInt(), (int) readSignedVarInt(), (int) readSignedVarInt());
+    }
+
+    private String readString() throws IOException {
+        int reference = readLength();
+        if(reference >= STRING_TABLE_OFFSET) {
+            int index = reference - STRING_TABLE_OFFSET;
+            if(index >= stringTable.size()) {
+                throw new IOException("string table index out of bounds: " + index);
+            }
+            return stringTable.get(index);
+        }
+        byte[] bytes = new byte[readLength()];
+        in.readFully(bytes);
+        String result = new String(bytes, StandardCharsets.UTF_8);
+        if(reference == STRING_NEW) {
+            if(stringTable.size() >= MAX_STRING_TABLE_SIZE) {
+                throw new IOException("string table larger than " + MAX_STRING_TABLE_SIZE + " strings");
+            }
+            stringTable.add(result);
+        }
+        return result;
+    }
+
+    private int readLength() throws IOException {
+        long length = readVarInt();
+        if(length > Integer.MAX_VALUE) {
+            throw new IOException("invalid length " + length);
+        }
+        return (int) length;
+    }
+
+    private long readSignedVarInt() throws IOException {
+        long value = readVarInt();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private long readVarInt() throws IOException {
+        long result = 0;
+        for(int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            result |= (long) (b & 0x7F) << shift;
+            if((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("varint too long");
+    }
+}
@@ -0,0 +1,288 @@
+package com.nedap.archie.binary;
+
+import com.nedap.archie.rminfo.ArchieRMInfoLookup;
+import com.nedap.archie.rminfo.ModelInfoLookup;
+import com.nedap.archie.rminfo.RMAttributeInfo;
+import com.nedap.archie.rminfo.RMTypeInfo;
+import org.threeten.extra.PeriodDuration;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.OffsetTime;
+import java.time.Period;
+import java.time.Year;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalAmount;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.nedap.archie.binary.BinaryRMFormat.*;
+
+/**
+ * Writes RM Objects in the binary RM format to a stream. Several objects can be written to the same stream, they then
+ * share the string table. See BinaryRMFormat for the format itself.
+ *
+ * The written objects read back with a BinaryRMReader are equal to the original objects, and so is their JSON.
+ *
+ * Not thread-safe: use one writer per stream.
+ */
+public class BinaryRMWriter implements Closeable {
+
+    private final DataOutputStream out;
+    private final ModelInfoLookup lookup;
+    private final Map<String, Integer> stringTable = new HashMap<>();
+    private final Map<Class<?>, List<RMAttributeInfo>> attributesPerClass = new HashMap<>();
+    private boolean headerWritten = false;
+
+    /**
+     * Create a writer for the openEHR RM
+     */
+    public BinaryRMWriter(OutputStream out) {
+        this(out, ArchieRMInfoLookup.getInstance());
+    }
+
+    public BinaryRMWriter(OutputStream out, ModelInfoLookup lookup) {
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        this.lookup = lookup;
+    }
+
+    /**
+     * Write the given RM Object, and flush the stream
+     */
+    public void write(Object rmObject) throws IOException {
+        if(rmObject == null) {
+            throw new IllegalArgumentException("cannot write a null RM Object");
+        }
+        if(!headerWritten) {
+            out.write(MAGIC);
+            out.writeByte(VERSION);
+            headerWritten = true;
+        }
+        writeValue(rmObject, false);
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Write a value
+     * @param internStrings whether strings in the value, if it is a string or a collection of strings, are added to the
+     * string table
+     */
+    private void writeValue(Object value, boolean internStrings) throws IOException {
+        if(value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString((String) value, internStrings);
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            writeSignedVarInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            writeSignedVarInt((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            out.writeByte(BYTES);
+            writeVarInt(bytes.length);
+            out.write(bytes);
+        } else if (value instanceof URI) {
+            out.writeByte(URI);
+            writeString(value.toString(), false);
+        } else if (value instanceof Enum) {
+            out.writeByte(ENUM);
+            writeString(((Enum<?>) value).name(), true);
+        } else if (value instanceof Collection) {
+            Collection<?> collection = (Collection<?>) value;
+            out.writeByte(LIST);
+            writeVarInt(collection.size());
+            for(Object element:collection) {
+                writeValue(element, internStrings);
+            }
+        } else if (!writeTemporal(value)) {
+            writeObject(value);
+        }
+    }
+
+    private void writeObject(Object rmObject) throws IOException {
+        RMTypeInfo typeInfo = lookup.getTypeInfo(rmObject.getClass());
+        if(typeInfo == null) {
+            throw new IllegalArgumentException("cannot write an object of unknown type " + rmObject.getClass().getName());
+        }
+        List<RMAttributeInfo> attributes = getAttributes(typeInfo);
+        List<Object> values = new ArrayList<>(attributes.size());
+        int count = 0;
+        try {
+            for(RMAttributeInfo attribute:attributes) {
+                Object value = attribute.getGetMethod().invoke(rmObject);
+                values.add(value);
+                if(value != null) {
+                    count++;
+                }
+            }
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new RuntimeException(e);
+        }
+        out.writeByte(OBJECT);
+        writeString(typeInfo.getRmName(), true);
+        writeVarInt(count);
+        boolean internedType = INTERNED_TYPES.contains(typeInfo.getRmName());
+        for(int i = 0; i < attributes.size(); i++) {
+            Object value = values.get(i);
+            if(value != null) {
+                String attributeName = attributes.get(i).getRmName();
+                writeString(attributeName, true);
+                writeValue(value, internedType || INTERNED_ATTRIBUTES.contains(attributeName));
+            }
+        }
+    }
+
+    private List<RMAttributeInfo> getAttributes(RMTypeInfo typeInfo) {
+        List<RMAttributeInfo> result = attributesPerClass.get(typeInfo.getJavaClass());
+        if(result == null) {
+            result = new ArrayList<>();
+            for(RMAttributeInfo attribute:typeInfo.getAttributes().values()) {
+                //only what can be set again when reading
+                if(!attribute.isComputed() && attribute.getGetMethod() != null &&
+                        (attribute.getSetMethod() != null || attribute.getAddMethod() != null)) {
+                    result.add(attribute);
+                }
+            }
+            attributesPerClass.put(typeInfo.getJavaClass(), result);
+        }
+        return result;
+    }
+
+    private boolean writeTemporal(Object value) throws IOException {
+        if(value instanceof LocalDate) {
+            writeTemporalKind(LOCAL_DATE);
+            writeSignedVarInt(((LocalDate) value).toEpochDay());
+        } else if (value instanceof YearMonth) {
+            YearMonth yearMonth = (YearMonth) value;
+            writeTemporalKind(YEAR_MONTH);
+            writeSignedVarInt(yearMonth.getYear());
+            writeSignedVarInt(yearMonth.getMonthValue());
+        } else if (value instanceof Year) {
+            writeTemporalKind(YEAR);
+            writeSignedVarInt(((Year) value).getValue());
+        } else if (value instanceof LocalDateTime) {
+            LocalDateTime dateTime = (LocalDateTime) value;
+            writeTemporalKind(LOCAL_DATE_TIME);
+            writeSignedVarInt(dateTime.toEpochSecond(ZoneOffset.UTC));
+            writeSignedVarInt(dateTime.getNano());
+        } else if (value instanceof OffsetDateTime) {
+            OffsetDateTime dateTime = (OffsetDateTime) value;
+            writeTemporalKind(OFFSET_DATE_TIME);
+            writeSignedVarInt(dateTime.toEpochSecond());
+            writeSignedVarInt(dateTime.getNano());
+            writeSignedVarInt(dateTime.getOffset().getTotalSeconds());
+        } else if (value instanceof LocalTime) {
+            writeTemporalKind(LOCAL_TIME);
+            writeSignedVarInt(((LocalTime) value).toNanoOfDay());
+        } else if (value instanceof OffsetTime) {
+            OffsetTime time = (OffsetTime) value;
+            writeTemporalKind(OFFSET_TIME);
+            writeSignedVarInt(time.toLocalTime().toNanoOfDay());
+            writeSignedVarInt(time.getOffset().getTotalSeconds());
+        } else if (value instanceof Duration) {
+            writeTemporalKind(DURATION);
+            writeDuration((Duration) value);
+        } else if (value instanceof Period) {
+            writeTemporalKind(PERIOD);
+            writePeriod((Period) value);
+        } else if (value instanceof PeriodDuration) {
+            PeriodDuration periodDuration = (PeriodDuration) value;
+            writeTemporalKind(PERIOD_DURATION);
+            writePeriod(periodDuration.getPeriod());
+            writeDuration(periodDuration.getDuration());
+        } else if (value instanceof TemporalAccessor || value instanceof TemporalAmount) {
+            throw new IllegalArgumentException("cannot write date/time value of type " + value.getClass().getName());
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private void writeTemporalKind(int kind) throws IOException {
+        out.writeByte(TEMPORAL);
+        out.writeByte(kind);
+    }
+
+    private void writeDuration(Duration duration) throws IOException {
+        writeSignedVarInt(duration.getSeconds());
+        writeSignedVarInt(duration.getNano());
+    }
+
+    private void writePeriod(Period period) throws IOException {
+        writeSignedVarInt(period.getYears());
+        writeSignedVarInt(period.getMonths());
+        writeSignedVarInt(period.getDays());
+    }
+
+    /**
+     * Write a string, as a reference if it is in the string table already
+     * @param intern whether to add the string to the table if it is not in it yet
+     */
+    private void writeString(String value, boolean intern) throws IOException {
+        Integer index = stringTable.get(value);
+        if(index != null) {
+            writeVarInt(index + STRING_TABLE_OFFSET);
+            return;
+        }
+        if(intern && value.length() <= MAX_INTERNED_STRING_LENGTH && stringTable.size() < MAX_STRING_TABLE_SIZE) {
+            stringTable.put(value, stringTable.size());
+            writeVarInt(STRING_NEW);
+        } else {
+            writeVarInt(STRING_NOT_INTERNED);
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * @return the number of strings in the string table of the stream
+     */
+    int getStringTableSize() {
+        return stringTable.size();
+    }
+
+    private void writeSignedVarInt(long value) throws IOException {
+        writeVarInt((value << 1) ^ (value >> 63));
+    }
+
+    private void writeVarInt(long value) throws IOException {
+        while((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+}
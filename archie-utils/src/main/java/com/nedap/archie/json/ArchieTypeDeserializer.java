@@ -0,0 +1,152 @@
+package com.nedap.archie.json;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.core.util.JsonParserDelegate;
+import com.fasterxml.jackson.core.util.JsonParserSequence;
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.jsontype.TypeDeserializer;
+import com.fasterxml.jackson.databind.jsontype.impl.AsPropertyTypeDeserializer;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TreeTraversingParser;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Type deserializer that handles a type property that is not the first property of an object, without buffering.
+ *
+ * Jackson's AsPropertyTypeDeserializer copies all properties before the type property into a TokenBuffer. That buffer
+ * is parsed again, and all objects in it that also have their type property later are buffered again, and so on for
+ * every level of the RM. This deserializer instead reads such an object once into a tree, moves the type properties of
+ * the object and all its descendants to the front, and deserializes from the tree. All objects in the tree then either
+ * start with their type property, or have none, so nothing is buffered anymore. Objects of more than
+ * MAX_LOOKAHEAD_TOKENS tokens are not read into a tree, but handled as Jackson does.
+ *
+ * JSON in which the type property is always the first property, as written by Archie, is handled exactly as before.
+ */
+public class ArchieTypeDeserializer extends AsPropertyTypeDeserializer {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The maximum number of tokens of an object that are read ahead to find its type property. Objects that are larger
+     * are handled by Jackson's AsPropertyTypeDeserializer, but the objects inside them are again read ahead, so the
+     * memory use is bounded by the largest object with a late type property at each level.
+     */
+    static final int MAX_LOOKAHEAD_TOKENS = 10_000;
+
+    public ArchieTypeDeserializer(AsPropertyTypeDeserializer src, BeanProperty property) {
+        super(src, property);
+    }
+
+    @Override
+    public TypeDeserializer forProperty(BeanProperty prop) {
+        return (prop == _property) ? this : new ArchieTypeDeserializer(this, prop);
+    }
+
+    @Override
+    public Object deserializeTypedFromObject(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if(p.canReadTypeId()) {
+            return super.deserializeTypedFromObject(p, ctxt);
+        }
+        JsonToken t = p.currentToken();
+        if(t == JsonToken.START_OBJECT) {
+            t = p.nextToken();
+        }
+        if(t != JsonToken.FIELD_NAME || _typePropertyName.equals(p.currentName())) {
+            //type property first, or an empty object: nothing to buffer
+            return super.deserializeTypedFromObject(p, ctxt);
+        }
+        if(isTypePropertyFirstTree(p)) {
+            //any type property would have been first, so there is none
+            return _deserializeTypedUsingDefaultImpl(p, ctxt, null, _msgForMissingId);
+        }
+
+        //read the rest of the object in one pass, starting at the current property, up to MAX_LOOKAHEAD_TOKENS
+        TokenBuffer buffer = ctxt.bufferForInputBuffering(p);
+        buffer.writeStartObject();
+        int depth = 0;
+        for(int tokens = 0; depth >= 0; tokens++) {
+            if(tokens == MAX_LOOKAHEAD_TOKENS) {
+                //too large to keep in memory: continue as Jackson does, with the tokens read so far followed by the current
+                //token of p and the rest
+                JsonParser sequence = JsonParserSequence.createFlattened(true, buffer.asParser(p), p);
+                sequence.nextToken();
+                return super.deserializeTypedFromObject(sequence, ctxt);
+            }
+            JsonToken token = p.currentToken();
+            if(token == null) {
+                return ctxt.reportInputMismatch(_baseType, "Unexpected end of input in object of type %s", _baseType);
+            }
+            buffer.copyCurrentEvent(p);
+            if(token.isStructStart()) {
+                depth++;
+            } else if (token.isStructEnd()) {
+                depth--;
+            }
+            if(depth >= 0) {
+                p.nextToken();
+            }
+        }
+        JsonParser bufferParser = buffer.asParser(p);
+        bufferParser.nextToken();
+        JsonNode node = ctxt.readTree(bufferParser);
+        moveTypePropertyFirst(node);
+        JsonParser treeParser = new TypePropertyFirstTreeParser(node, p.getCodec());
+        treeParser.nextToken();
+        if(!node.has(_typePropertyName)) {
+            return _deserializeTypedUsingDefaultImpl(treeParser, ctxt, null, _msgForMissingId);
+        }
+        return super.deserializeTypedFromObject(treeParser, ctxt);
+    }
+
+    private void moveTypePropertyFirst(JsonNode node) {
+        if(node.isObject()) {
+            ObjectNode object = (ObjectNode) node;
+            JsonNode type = object.get(_typePropertyName);
+            if(type != null && !_typePropertyName.equals(object.fieldNames().next())) {
+                List<Map.Entry<String, JsonNode>> fields = new ArrayList<>();
+                object.fields().forEachRemaining(fields::add);
+                object.removeAll();
+                object.set(_typePropertyName, type);
+                for(Map.Entry<String, JsonNode> field:fields) {
+                    if(!field.getKey().equals(_typePropertyName)) {
+                        object.set(field.getKey(), field.getValue());
+                    }
+                }
+            }
+        }
+        if(node.isContainerNode()) {
+            Iterator<JsonNode> children = node.elements();
+            while(children.hasNext()) {
+                moveTypePropertyFirst(children.next());
+            }
+        }
+    }
+
+    private static boolean isTypePropertyFirstTree(JsonParser p) {
+        //Jackson wraps the parser in a sequence after reading the type id, to make it visible to the deserializer
+        while(p instanceof JsonParserDelegate) {
+            p = ((JsonParserDelegate) p).delegate();
+        }
+        return p instanceof TypePropertyFirstTreeParser;
+    }
+
+    /**
+     * Marks a tree in which the type property is the first property of every object that has one
+     */
+    private static class TypePropertyFirstTreeParser extends TreeTraversingParser {
+
+        TypePropertyFirstTreeParser(JsonNode node, ObjectCodec codec) {
+            super(node, codec);
+        }
+    }
+}
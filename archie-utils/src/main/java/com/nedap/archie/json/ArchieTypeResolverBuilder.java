@@ -1,15 +1,23 @@
 package com.nedap.archie.json;
 
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.jsontype.BasicPolymorphicTypeValidator;
+import com.fasterxml.jackson.databind.jsontype.NamedType;
+import com.fasterxml.jackson.databind.jsontype.TypeDeserializer;
+import com.fasterxml.jackson.databind.jsontype.impl.AsPropertyTypeDeserializer;
 import com.nedap.archie.aom.RulesSection;
 import com.nedap.archie.base.OpenEHRBase;
 import com.nedap.archie.rminfo.ArchieAOMInfoLookup;
 import com.nedap.archie.rminfo.ArchieRMInfoLookup;
 import com.nedap.archie.rminfo.RMTypeInfo;
 
+import java.io.IOException;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -17,22 +25,35 @@ import java.util.Set;
 /**
  * TypeResolverBuilder that outputs type information for all RMObject classes, but not for java classes.
  * Otherwise, you get this for an arrayList: "ARRAY_LIST: []", while you would expect "[]" without type
+ *
+ * When parsing, the type property is not needed for concrete classes without subclasses, so those get no type
+ * deserializer. If the configuration always includes the type property, such a type property is still checked against
+ * the declared type, see checkSkippedTypeId. For all other classes, the type property does not need to be the first
+ * property, see ArchieTypeDeserializer.
  */
 public class ArchieTypeResolverBuilder extends ObjectMapper.DefaultTypeResolverBuilder {
 
 
     private Set<Class<?>> classesToNotAddTypeProperty;
+    /**
+     * concrete classes without subclasses, if the configuration always includes the type property: the type of an
+     * object is known without reading the type property. Otherwise, these classes are in classesToNotAddTypeProperty
+     */
+    private Set<Class<?>> classesWithoutSubtypes;
 
     public ArchieTypeResolverBuilder(ArchieJacksonConfiguration configuration) {
         super(ObjectMapper.DefaultTyping.NON_FINAL, BasicPolymorphicTypeValidator.builder()
                 .allowIfBaseType(OpenEHRBase.class).build());
         classesToNotAddTypeProperty = new HashSet<>();
-        if (!configuration.isAlwaysIncludeTypeProperty()) {
-            List<RMTypeInfo> allTypes = new ArrayList<>(ArchieRMInfoLookup.getInstance().getAllTypes());
-            allTypes.addAll(ArchieAOMInfoLookup.getInstance().getAllTypes());
-            for (RMTypeInfo type : allTypes) {
-                if (type.getDirectDescendantClasses().isEmpty()) {
+        classesWithoutSubtypes = new HashSet<>();
+        List<RMTypeInfo> allTypes = new ArrayList<>(ArchieRMInfoLookup.getInstance().getAllTypes());
+        allTypes.addAll(ArchieAOMInfoLookup.getInstance().getAllTypes());
+        for (RMTypeInfo type : allTypes) {
+            if (type.getDirectDescendantClasses().isEmpty()) {
+                if (!configuration.isAlwaysIncludeTypeProperty()) {
                     classesToNotAddTypeProperty.add(type.getJavaClass());
+                } else if (!Modifier.isAbstract(type.getJavaClass().getModifiers())) {
+                    classesWithoutSubtypes.add(type.getJavaClass());
                 }
             }
         }
@@ -45,6 +66,38 @@ public class ArchieTypeResolverBuilder extends ObjectMapper.DefaultTypeResolverB
         }
     }
 
+    @Override
+    public TypeDeserializer buildTypeDeserializer(DeserializationConfig config, JavaType baseType, Collection<NamedType> subtypes) {
+        if (classesWithoutSubtypes.contains(baseType.getRawClass())) {
+            //only one type possible, no need to look for the type property. If present, it is handled as an unknown
+            //property, and checked with checkSkippedTypeId
+            return null;
+        }
+        TypeDeserializer result = super.buildTypeDeserializer(config, baseType, subtypes);
+        if (result != null && result.getClass() == AsPropertyTypeDeserializer.class) {
+            return new ArchieTypeDeserializer((AsPropertyTypeDeserializer) result, null);
+        }
+        return result;
+    }
+
+    /**
+     * Check the value of a type property that was not read by a type deserializer, because the declared type has no
+     * subclasses. It must name the declared type, as it would have if it had been read by a type deserializer.
+     *
+     * @param ctxt the current deserialization context
+     * @param declaredType the class of the object that contains the type property
+     * @param typeId the value of the type property
+     */
+    public void checkSkippedTypeId(DeserializationContext ctxt, Class<?> declaredType, String typeId) throws IOException {
+        if (!classesWithoutSubtypes.contains(declaredType)) {
+            return;
+        }
+        JavaType type = _customIdResolver.typeFromId(ctxt, typeId);
+        if (type == null || !declaredType.isAssignableFrom(type.getRawClass())) {
+            ctxt.reportInputMismatch(declaredType, "type %s does not match the declared type %s", typeId, declaredType.getSimpleName());
+        }
+    }
+
     @Override
     public boolean useForType(JavaType t) {
         return (OpenEHRBase.class.isAssignableFrom(t.getRawClass()) && !classesToNotAddTypeProperty.contains(t.getRawClass()));
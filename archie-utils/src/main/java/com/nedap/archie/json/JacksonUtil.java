@@ -3,15 +3,16 @@ package com.nedap.archie.json;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonDeserializer;
 import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.Module;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.PropertyNamingStrategy;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.deser.DeserializationProblemHandler;
-import com.fasterxml.jackson.databind.jsontype.TypeResolverBuilder;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.nedap.archie.aom.Archetype;
@@ -39,6 +40,9 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class JacksonUtil {
 
+    private static final String AFTERBURNER_MODULE = "com.fasterxml.jackson.module.afterburner.AfterburnerModule";
+    private static final String BLACKBIRD_MODULE = "com.fasterxml.jackson.module.blackbird.BlackbirdModule";
+
     //threadsafe, can be cached
     private static final ConcurrentHashMap<ArchieJacksonConfiguration, ObjectMapper> objectMapperByConfiguration = new ConcurrentHashMap<>();
 
@@ -99,6 +103,9 @@ public class JacksonUtil {
 
         objectMapper.registerModule(new JavaTimeModule());
         objectMapper.registerModule(new ArchieDurationModule());
+        if(configuration.isUseGeneratedAccessors()) {
+            objectMapper.registerModule(createGeneratedAccessorsModule());
+        }
 
 
         SimpleModule module = new SimpleModule("archie-module");
@@ -133,7 +140,8 @@ public class JacksonUtil {
 
         objectMapper.enable(MapperFeature.USE_BASE_TYPE_AS_DEFAULT_IMPL);
 
-        TypeResolverBuilder<?> typeResolverBuilder = new ArchieTypeResolverBuilder(configuration)
+        ArchieTypeResolverBuilder typeResolverBuilder = new ArchieTypeResolverBuilder(configuration);
+        typeResolverBuilder
                 .init(JsonTypeInfo.Id.NAME, new OpenEHRTypeNaming(configuration.isStandardsCompliantExpressions()))
                 .typeProperty(configuration.getTypePropertyName())
                 .typeIdVisibility(true)
@@ -144,6 +152,10 @@ public class JacksonUtil {
             @Override
             public boolean handleUnknownProperty(DeserializationContext ctxt, JsonParser p, JsonDeserializer<?> deserializer, Object beanOrClass, String propertyName) throws IOException {
                 if (propertyName.equalsIgnoreCase(configuration.getTypePropertyName())) {
+                    if (p.currentToken() == JsonToken.VALUE_STRING) {
+                        Class<?> declaredType = beanOrClass instanceof Class ? (Class<?>) beanOrClass : beanOrClass.getClass();
+                        typeResolverBuilder.checkSkippedTypeId(ctxt, declaredType, p.getText());
+                    }
                     return true;
                 }
                 return super.handleUnknownProperty(ctxt, p, deserializer, beanOrClass, propertyName);
@@ -154,4 +166,27 @@ public class JacksonUtil {
 
     }
 
+    /**
+     * The generated accessors replace the reflection in the standard bean serializers and deserializers. They leave
+     * custom serializers, mixins and type information alone, so the output is the same.
+     * Afterburner generates classes with bytecode, but on Java 9 and later most RM and AOM classes cannot be accessed
+     * that way, so it falls back to reflection. Blackbird uses method handles and lambdas instead, which is only fast
+     * from Java 9 on. So afterburner is used on Java 8 and blackbird on later versions.
+     * Both are optional dependencies, declared as the generated-accessors feature of archie-utils, so they are loaded by
+     * name. If the one for this Java version is missing, this fails instead of silently using reflection.
+     */
+    private static Module createGeneratedAccessorsModule() {
+        boolean java8 = System.getProperty("java.specification.version", "").startsWith("1.");
+        String moduleClass = java8 ? AFTERBURNER_MODULE : BLACKBIRD_MODULE;
+        try {
+            return (Module) Class.forName(moduleClass).getConstructor().newInstance();
+        } catch (ClassNotFoundException e) {
+            String artifact = java8 ? "jackson-module-afterburner" : "jackson-module-blackbird";
+            throw new IllegalStateException("generated accessors on Java " + System.getProperty("java.specification.version") +
+                    " require com.fasterxml.jackson.module:" + artifact + " on the classpath. Depend on the generated-accessors feature of archie-utils to get it", e);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("could not create " + moduleClass, e);
+        }
+    }
+
 }
@@ -0,0 +1,380 @@
+package com.nedap.archie.json;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.ByteStreams;
+import com.nedap.archie.query.RMObjectWithPath;
+import com.nedap.archie.query.RMPathQuery;
+import com.nedap.archie.rm.RMObject;
+import com.nedap.archie.rm.archetyped.Pathable;
+import com.nedap.archie.rminfo.ArchieRMInfoLookup;
+import com.nedap.archie.rminfo.ModelInfoLookup;
+import com.nedap.archie.rminfo.RMAttributeInfo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * An RM Object in JSON form, that is only converted to RM Objects where needed. Loading indexes the JSON once: the
+ * position of every JSON value, and the type and archetype node id of every JSON object.
+ *
+ * get() returns the root as a regular RM Object, of which the lists of Pathable objects, such as the content of a
+ * Composition or the items of a Cluster, are lazy: their elements are only created when the list is first used, for
+ * example by a getter, by itemAtPath or by a validator. The elements of a list are then all created at once, with
+ * their own lists lazy again, and their parent is set as usual. All other attributes are created together with the
+ * object that contains them. So the RM Object works with all tools based on a ModelInfoLookup, and reading a few values
+ * from a large composition only creates the lists on the way to them.
+ *
+ * There is one RM Object per LazyRMObject: itemAtPath and itemsAtPath query the object returned by get(), so they
+ * return the same instances, with their parents set, and changes to them are visible everywhere. Objects of which the
+ * JSON contains properties that the ModelInfoLookup does not know, and attributes that are not set with a setter that
+ * accepts a list, are created by Jackson at once instead.
+ *
+ * Not thread-safe, not even for reading, as reading a lazy list creates its elements.
+ */
+public class LazyRMObject {
+
+    private static final String ARCHETYPE_NODE_ID = "archetype_node_id";
+
+    private final byte[] json;
+    private final ObjectMapper objectMapper;
+    private final ModelInfoLookup lookup = ArchieRMInfoLookup.getInstance();
+    private final String typePropertyName;
+    private final IndexedObject root;
+    private final Class<?> rootClass;
+    private Object rootObject;
+
+    private LazyRMObject(byte[] json, ArchieJacksonConfiguration configuration, Class<?> declaredRootClass) throws IOException {
+        this.json = json;
+        this.objectMapper = JacksonUtil.getObjectMapper(configuration);
+        this.typePropertyName = configuration.getTypePropertyName();
+        try (JsonParser parser = objectMapper.getFactory().createParser(json)) {
+            if(parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("an RM Object must be a JSON object");
+            }
+            this.root = indexObject(parser);
+        }
+        this.rootClass = getClass(root, declaredRootClass);
+    }
+
+    /**
+     * Index the given standards compliant JSON
+     */
+    public static LazyRMObject load(byte[] json) throws IOException {
+        return new LazyRMObject(json, ArchieJacksonConfiguration.createStandardsCompliant(), RMObject.class);
+    }
+
+    /**
+     * Index the given JSON, in the format of the given configuration
+     * @param json the JSON, in UTF-8
+     * @param configuration the configuration of the JSON format
+     * @param rootClass the class of the root if the JSON has no type property at the root
+     */
+    public static LazyRMObject load(byte[] json, ArchieJacksonConfiguration configuration, Class<?> rootClass) throws IOException {
+        return new LazyRMObject(json, configuration, rootClass);
+    }
+
+    /**
+     * Read and index the JSON from the given stream. The stream is not closed
+     */
+    public static LazyRMObject load(InputStream json, ArchieJacksonConfiguration configuration, Class<?> rootClass) throws IOException {
+        return new LazyRMObject(ByteStreams.toByteArray(json), configuration, rootClass);
+    }
+
+    /**
+     * @return the class of the root RM Object, without creating it
+     */
+    public Class<?> getRootClass() {
+        return rootClass;
+    }
+
+    /**
+     * @return the archetype node id of the root RM Object, without creating it
+     */
+    public String getArchetypeNodeId() {
+        return root.archetypeNodeId;
+    }
+
+    /**
+     * @return the root RM Object, with lazy lists. Always the same instance
+     */
+    public Object get() {
+        if(rootObject == null) {
+            rootObject = materialize(root, rootClass);
+        }
+        return rootObject;
+    }
+
+    /**
+     * @return the first RM Object or value at the given path in get(), or null if none
+     */
+    public <T> T itemAtPath(String path) {
+        List<Object> result = itemsAtPath(path);
+        return result.isEmpty() ? null : (T) result.get(0);
+    }
+
+    /**
+     * @return all RM Objects and values at the given path in get(). Only the lists on the way to them are created
+     */
+    public List<Object> itemsAtPath(String path) {
+        List<Object> result = new ArrayList<>();
+        for(RMObjectWithPath found:new RMPathQuery(path).findList(lookup, get())) {
+            result.add(found.getObject());
+        }
+        return result;
+    }
+
+    private Class<?> getClass(IndexedObject object, Class<?> declaredClass) {
+        if(object.type != null) {
+            Class<?> result = lookup.getClass(object.type);
+            if(result != null) {
+                return result;
+            }
+        }
+        return declaredClass;
+    }
+
+    /**
+     * Create the RM Object for the given JSON object. Pathable objects are created attribute by attribute, with lazy
+     * lists. Everything else is left to Jackson
+     */
+    private Object materialize(IndexedObject object, Class<?> declaredClass) {
+        Class<?> objectClass = getClass(object, declaredClass);
+        if(!Pathable.class.isAssignableFrom(objectClass) || Modifier.isAbstract(objectClass.getModifiers())
+                || !canSetAttributes(object, objectClass)) {
+            return readValue(object, objectMapper.constructType(objectClass));
+        }
+        Object result;
+        try {
+            result = objectClass.getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+        for(Map.Entry<String, IndexedValue> property:object.attributes.entrySet()) {
+            if(property.getKey().equals(typePropertyName)) {
+                continue;
+            }
+            RMAttributeInfo attribute = lookup.getAttributeInfo(objectClass, property.getKey());
+            Method setter = attribute.getSetMethod();
+            IndexedValue value = property.getValue();
+            if(value instanceof IndexedObject && Pathable.class.isAssignableFrom(attribute.getType())) {
+                invoke(setter, result, materialize((IndexedObject) value, attribute.getType()));
+            } else if (value.elements != null && Pathable.class.isAssignableFrom(attribute.getTypeInCollection())
+                    && setter.getParameterTypes()[0].isAssignableFrom(LazyList.class)) {
+                setLazyList(result, attribute, new LazyList(this, value.elements, attribute.getTypeInCollection(), result, setter));
+            } else {
+                invoke(setter, result, readValue(value, getAttributeType(attribute)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return true if all properties of the given JSON object are attributes that can be set with a setter
+     */
+    private boolean canSetAttributes(IndexedObject object, Class<?> objectClass) {
+        for(String name:object.attributes.keySet()) {
+            if(!name.equals(typePropertyName)) {
+                RMAttributeInfo attribute = lookup.getAttributeInfo(objectClass, name);
+                if(attribute == null || attribute.getSetMethod() == null) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void setLazyList(Object rmObject, RMAttributeInfo attribute, LazyList list) {
+        //the setter sees an empty list, so it does not create the elements to set their parent
+        list.attaching = true;
+        invoke(attribute.getSetMethod(), rmObject, list);
+        list.attaching = false;
+        if(attribute.getGetMethod() == null || invoke(attribute.getGetMethod(), rmObject) != list) {
+            //the setter copied the list, so it cannot be lazy. Creating the elements calls the setter again
+            list.elements();
+        }
+    }
+
+    private JavaType getAttributeType(RMAttributeInfo attribute) {
+        Type type = attribute.getSetMethod().getGenericParameterTypes()[0];
+        //the type variable of a generic RM class is not known here, and Jackson would read it as a Map
+        return objectMapper.getTypeFactory().constructType(type instanceof TypeVariable ? attribute.getType() : type);
+    }
+
+    private Object readValue(IndexedValue value, JavaType type) {
+        try {
+            return objectMapper.readValue(json, value.start, value.end - value.start, type);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Object invoke(Method method, Object rmObject, Object... arguments) {
+        try {
+            return method.invoke(rmObject, arguments);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private IndexedObject indexObject(JsonParser parser) throws IOException {
+        IndexedObject result = new IndexedObject((int) parser.getTokenLocation().getByteOffset());
+        while(parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            IndexedValue value;
+            if(token == JsonToken.START_OBJECT) {
+                value = indexObject(parser);
+            } else {
+                value = new IndexedValue((int) parser.getTokenLocation().getByteOffset());
+                if (token == JsonToken.START_ARRAY) {
+                    value.elements = indexArray(parser);
+                } else if (token == JsonToken.VALUE_STRING && name.equals(typePropertyName)) {
+                    result.type = parser.getText();
+                } else if (token == JsonToken.VALUE_STRING && name.equals(ARCHETYPE_NODE_ID)) {
+                    result.archetypeNodeId = parser.getText();
+                } else {
+                    //strings are parsed lazily, so make sure the location is at the end of the value
+                    parser.finishToken();
+                }
+                value.end = (int) parser.getCurrentLocation().getByteOffset();
+            }
+            result.attributes.put(name, value);
+        }
+        result.end = (int) parser.getCurrentLocation().getByteOffset();
+        return result;
+    }
+
+    private List<IndexedObject> indexArray(JsonParser parser) throws IOException {
+        List<IndexedObject> result = new ArrayList<>();
+        JsonToken token;
+        while((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if(token == JsonToken.START_OBJECT) {
+                result.add(indexObject(parser));
+            } else {
+                parser.skipChildren();
+                result.add(null);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The position of a JSON value in the JSON, with the objects it contains
+     */
+    private static class IndexedValue {
+        final int start;
+        int end;
+        /** the objects, if this is a JSON array. Elements that are not JSON objects are null */
+        List<IndexedObject> elements;
+
+        IndexedValue(int start) {
+            this.start = start;
+        }
+    }
+
+    /**
+     * A JSON object, with its type, archetype node id and properties
+     */
+    private static class IndexedObject extends IndexedValue {
+        String type;
+        String archetypeNodeId;
+        final Map<String, IndexedValue> attributes = new LinkedHashMap<>();
+
+        IndexedObject(int start) {
+            super(start);
+        }
+    }
+
+    /**
+     * A list of Pathable objects that creates its elements when it is first used, and then lets the owner set itself
+     * as their parent by calling the setter again
+     */
+    private static class LazyList extends AbstractList<Object> implements RandomAccess {
+
+        private LazyRMObject source;
+        private List<IndexedObject> indexedElements;
+        private Class<?> elementClass;
+        private Object owner;
+        private Method setter;
+        private boolean attaching;
+        private List<Object> elements;
+
+        /**
+         * An empty list that is not lazy, for copies made by Kryo
+         */
+        private LazyList() {
+            elements = new ArrayList<>();
+        }
+
+        LazyList(LazyRMObject source, List<IndexedObject> indexedElements, Class<?> elementClass, Object owner, Method setter) {
+            this.source = source;
+            this.indexedElements = indexedElements;
+            this.elementClass = elementClass;
+            this.owner = owner;
+            this.setter = setter;
+        }
+
+        private List<Object> elements() {
+            if(elements == null) {
+                if(attaching) {
+                    return Collections.emptyList();
+                }
+                List<Object> created = new ArrayList<>(indexedElements.size());
+                for(IndexedObject element:indexedElements) {
+                    created.add(element == null ? null : source.materialize(element, elementClass));
+                }
+                elements = created;
+                invoke(setter, owner, this);
+                source = null;
+                indexedElements = null;
+                owner = null;
+                setter = null;
+            }
+            return elements;
+        }
+
+        @Override
+        public Object get(int index) {
+            return elements().get(index);
+        }
+
+        @Override
+        public int size() {
+            return elements().size();
+        }
+
+        @Override
+        public Object set(int index, Object element) {
+            return elements().set(index, element);
+        }
+
+        @Override
+        public void add(int index, Object element) {
+            elements().add(index, element);
+            modCount++;
+        }
+
+        @Override
+        public Object remove(int index) {
+            Object result = elements().remove(index);
+            modCount++;
+            return result;
+        }
+    }
+}
@@ -112,7 +112,16 @@ public class RMPathQuery {
      * You will want to use RMQueryContext in many cases. For perforamnce reasons, this could still be useful
      */
     public <T> List<RMObjectWithPath> findList(ModelInfoLookup lookup, Object root) {
-        List<RMObjectWithPath> currentObjects = Lists.newArrayList(new RMObjectWithPath(root, "/"));
+        return findListRelativeTo(lookup, new RMObjectWithPath(root, "/"));
+    }
+
+    /**
+     * Find the objects matching this query relative to the given context object, for example an object bound to a
+     * for_all variable in rules, instead of querying from the root again. The paths of the result start with the path
+     * of the context object.
+     */
+    public List<RMObjectWithPath> findListRelativeTo(ModelInfoLookup lookup, RMObjectWithPath context) {
+        List<RMObjectWithPath> currentObjects = Lists.newArrayList(context);
         try {
             for (PathSegment segment : pathSegments) {
                 if(currentObjects.isEmpty()){
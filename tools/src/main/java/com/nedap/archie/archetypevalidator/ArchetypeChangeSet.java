@@ -0,0 +1,56 @@
+package com.nedap.archie.archetypevalidator;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Describes what changed in an archetype since it was last validated, for use with
+ * ArchetypeValidator.validateIncrementally.
+ *
+ * - changed paths: the paths of the nodes in the definition of which the constraint changed. If a node was added or
+ *   removed, add the path of the parent object instead, since the removed node cannot be found anymore.
+ * - changed terminology codes: the codes of which a term, value set or binding was added, removed or changed
+ * - other changes: anything else, such as changes in the description, languages, rules or annotations. These always
+ *   trigger a full validation
+ */
+public class ArchetypeChangeSet {
+
+    private final Set<String> changedPaths = new LinkedHashSet<>();
+    private final Set<String> changedTerminologyCodes = new LinkedHashSet<>();
+    private boolean otherChanges;
+
+    public ArchetypeChangeSet addChangedPath(String path) {
+        changedPaths.add(path);
+        return this;
+    }
+
+    public ArchetypeChangeSet addChangedTerminologyCode(String code) {
+        changedTerminologyCodes.add(code);
+        return this;
+    }
+
+    public Set<String> getChangedPaths() {
+        return Collections.unmodifiableSet(changedPaths);
+    }
+
+    public Set<String> getChangedTerminologyCodes() {
+        return Collections.unmodifiableSet(changedTerminologyCodes);
+    }
+
+    public boolean isOtherChanges() {
+        return otherChanges;
+    }
+
+    public void setOtherChanges(boolean otherChanges) {
+        this.otherChanges = otherChanges;
+    }
+
+    public boolean isTerminologyChanged() {
+        return !changedTerminologyCodes.isEmpty();
+    }
+
+    public boolean isEmpty() {
+        return changedPaths.isEmpty() && changedTerminologyCodes.isEmpty() && !otherChanges;
+    }
+}
@@ -13,4 +13,24 @@ public interface ArchetypeValidation {
 
     List<ValidationMessage> validate(MetaModels models, Archetype archetype, Archetype flatParent, FullArchetypeRepository repository, ArchetypeValidationSettings settings);
 
+    /**
+     * Whether this validation only reads the archetype, so it can run concurrently with other read only validations
+     * of the same phase. Validations that modify the archetype must return false.
+     *
+     * @return true if this validation does not modify the archetype
+     */
+    default boolean isReadOnly() {
+        return true;
+    }
+
+    /**
+     * Whether the outcome of this validation can depend on the terminology of the archetype. If not, an incremental
+     * validation reuses the previous messages of this validation when only terminology codes changed.
+     *
+     * @return true if this validation reads the terminology
+     */
+    default boolean usesTerminology() {
+        return true;
+    }
+
 }
@@ -0,0 +1,42 @@
+package com.nedap.archie.archetypevalidator;
+
+import com.nedap.archie.flattener.FlattenerListener;
+
+/**
+ * Gets notified of the progress of the ArchetypeValidator, for example to find out which validations take the most time.
+ * All methods have an empty default implementation, so implement only what you need.
+ *
+ * If the ArchetypeValidator runs validations concurrently, validationRun can be called from multiple threads at once.
+ * Also receives the flattening and operational template creation events of the flatteners used during validation.
+ */
+public interface ArchetypeValidationListener extends FlattenerListener {
+
+    ArchetypeValidationListener NO_OP = new ArchetypeValidationListener() {};
+
+    /**
+     * Called after a single validation has run
+     * @param archetypeId the id of the validated archetype
+     * @param phase the phase the validation is part of, 0 to 3
+     * @param validation the validation that has run
+     * @param durationNanos the wall time the validation took, in nanoseconds
+     * @param messageCount the number of messages, both errors and warnings, the validation produced
+     */
+    default void validationRun(String archetypeId, int phase, ArchetypeValidation validation, long durationNanos, int messageCount) {}
+
+    /**
+     * Called after all validations of a phase have run
+     * @param archetypeId the id of the validated archetype
+     * @param phase the phase, 0 to 3
+     * @param durationNanos the wall time the phase took, in nanoseconds
+     * @param messageCount the number of messages, both errors and warnings, produced in the phase
+     */
+    default void phaseRun(String archetypeId, int phase, long durationNanos, int messageCount) {}
+
+    /**
+     * Called when the validation of an archetype is complete, including flattening and operational template creation
+     * @param result the validation result
+     * @param durationNanos the wall time the entire validation took, in nanoseconds. Includes the validation of
+     *                      parents and template overlays that were not yet validated
+     */
+    default void archetypeValidated(ValidationResult result, long durationNanos) {}
+}
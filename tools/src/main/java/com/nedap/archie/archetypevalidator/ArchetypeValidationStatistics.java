@@ -0,0 +1,154 @@
+package com.nedap.archie.archetypevalidator;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ArchetypeValidationListener that aggregates the time spent and the number of messages per validation, per phase,
+ * per archetype and for flattening and operational template creation. Thread-safe, so one instance can be shared
+ * between validators. Use getReport() for a human readable overview.
+ */
+public class ArchetypeValidationStatistics implements ArchetypeValidationListener {
+
+    private final Map<String, Timing> validationTimings = new ConcurrentHashMap<>();
+    private final Map<Integer, Timing> phaseTimings = new ConcurrentHashMap<>();
+    private final Map<String, Timing> archetypeTimings = new ConcurrentHashMap<>();
+    private final Timing flattenTiming = new Timing();
+    private final Timing operationalTemplateTiming = new Timing();
+
+    @Override
+    public void validationRun(String archetypeId, int phase, ArchetypeValidation validation, long durationNanos, int messageCount) {
+        validationTimings.computeIfAbsent(validation.getClass().getSimpleName(), k -> new Timing()).add(durationNanos, messageCount);
+    }
+
+    @Override
+    public void phaseRun(String archetypeId, int phase, long durationNanos, int messageCount) {
+        phaseTimings.computeIfAbsent(phase, k -> new Timing()).add(durationNanos, messageCount);
+    }
+
+    @Override
+    public void archetypeValidated(ValidationResult result, long durationNanos) {
+        archetypeTimings.computeIfAbsent(result.getArchetypeId(), k -> new Timing()).add(durationNanos, result.getErrors().size());
+    }
+
+    @Override
+    public void flattened(String archetypeId, boolean operationalTemplate, long durationNanos) {
+        if(operationalTemplate) {
+            operationalTemplateTiming.add(durationNanos, 0);
+        } else {
+            flattenTiming.add(durationNanos, 0);
+        }
+    }
+
+    /**
+     * @return the timings per validation, with the simple class name of the validation as key
+     */
+    public Map<String, Timing> getValidationTimings() {
+        return validationTimings;
+    }
+
+    /**
+     * @return the timings per phase, 0 to 3
+     */
+    public Map<Integer, Timing> getPhaseTimings() {
+        return phaseTimings;
+    }
+
+    /**
+     * @return the timings of the entire validation per archetype id
+     */
+    public Map<String, Timing> getArchetypeTimings() {
+        return archetypeTimings;
+    }
+
+    public Timing getFlattenTiming() {
+        return flattenTiming;
+    }
+
+    public Timing getOperationalTemplateTiming() {
+        return operationalTemplateTiming;
+    }
+
+    /**
+     * Create a human readable report of the statistics, slowest first
+     * @param maxArchetypes the maximum number of archetypes to include in the report
+     * @return the report
+     */
+    public String getReport(int maxArchetypes) {
+        StringBuilder result = new StringBuilder();
+        result.append("phases:\n");
+        appendTimings(result, phaseTimings, Integer.MAX_VALUE);
+        result.append("validations:\n");
+        appendTimings(result, validationTimings, Integer.MAX_VALUE);
+        result.append("flattening:\n");
+        appendTiming(result, "flatten", flattenTiming);
+        appendTiming(result, "operational template", operationalTemplateTiming);
+        result.append("slowest archetypes:\n");
+        appendTimings(result, archetypeTimings, maxArchetypes);
+        return result.toString();
+    }
+
+    public String getReport() {
+        return getReport(20);
+    }
+
+    @Override
+    public String toString() {
+        return getReport();
+    }
+
+    private <T> void appendTimings(StringBuilder result, Map<T, Timing> timings, int max) {
+        List<Map.Entry<T, Timing>> entries = new ArrayList<>(timings.entrySet());
+        entries.sort(Comparator.comparingLong((Map.Entry<T, Timing> entry) -> entry.getValue().getTotalNanos()).reversed());
+        for(Map.Entry<T, Timing> entry:entries.subList(0, Math.min(max, entries.size()))) {
+            appendTiming(result, entry.getKey().toString(), entry.getValue());
+        }
+    }
+
+    private void appendTiming(StringBuilder result, String name, Timing timing) {
+        result.append(String.format("  %-50s count: %8d total: %8d ms max: %6d ms messages: %6d%n",
+                name, timing.getCount(),
+                TimeUnit.NANOSECONDS.toMillis(timing.getTotalNanos()),
+                TimeUnit.NANOSECONDS.toMillis(timing.getMaxNanos()),
+                timing.getMessageCount()));
+    }
+
+    /**
+     * Thread-safe invocation count, total and maximum wall time and message count of something measured.
+     */
+    public static class Timing {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final LongAdder messageCount = new LongAdder();
+
+        void add(long durationNanos, int messages) {
+            count.increment();
+            totalNanos.add(durationNanos);
+            maxNanos.accumulate(durationNanos);
+            messageCount.add(messages);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        public long getMessageCount() {
+            return messageCount.sum();
+        }
+    }
+}
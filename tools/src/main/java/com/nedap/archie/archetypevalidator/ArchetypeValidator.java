@@ -3,6 +3,9 @@ package com.nedap.archie.archetypevalidator;
 import com.google.common.base.Joiner;
 import com.nedap.archie.adlparser.modelconstraints.ReflectionConstraintImposer;
 import com.nedap.archie.aom.Archetype;
+import com.nedap.archie.aom.ArchetypeModelObject;
+import com.nedap.archie.aom.CAttribute;
+import com.nedap.archie.aom.CObject;
 import com.nedap.archie.aom.OperationalTemplate;
 import com.nedap.archie.aom.Template;
 import com.nedap.archie.aom.TemplateOverlay;
@@ -19,8 +22,15 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 /**
  * Created by pieter.bos on 31/03/2017.
@@ -28,6 +38,8 @@ import java.util.Set;
 public class ArchetypeValidator {
     private static final Logger logger = LoggerFactory.getLogger(ArchetypeValidator.class);
 
+    private static final String OPT_CREATION_ERROR = "Error during Operational template creation. This does not necessarily mean the current archetype has a problem, but perhaps one that is included with use_archetype: ";
+
     private MetaModels combinedModels;
     private FlattenerConfiguration flattenerConfiguration = FlattenerConfiguration.forFlattened();
 
@@ -40,6 +52,13 @@ public class ArchetypeValidator {
 
     private List<ArchetypeValidation> validationsPhase3;
 
+    /**
+     * If set, the read only validations within a phase run concurrently on this executor
+     */
+    private Executor executor;
+
+    private ArchetypeValidationListener listener = ArchetypeValidationListener.NO_OP;
+
     public ArchetypeValidator(ReferenceModels models) {
         this(new MetaModels(models, null));
     }
@@ -85,6 +104,35 @@ public class ArchetypeValidator {
         flattenerConfiguration.setRemoveZeroOccurrencesInParents(value);
     }
 
+    /**
+     * Run the validations within a phase concurrently, using the given executor. Validations that modify the archetype
+     * still run on their own, in the original order. The messages are always returned in the same order as when running
+     * sequentially, and a phase still only starts if the previous phases passed.
+     *
+     * Note that this does not make the ArchetypeValidator itself thread-safe: validate still should not be called
+     * concurrently on the same instance. Also do not call validate from a task running on the same executor, if that
+     * executor has a bounded number of threads.
+     *
+     * @param executor the executor to run the validations on, or null to run them sequentially (the default)
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Set a listener that gets notified of every validation, phase, flattening and validated archetype, with the time
+     * it took. Use an ArchetypeValidationStatistics to get aggregated statistics.
+     *
+     * @param listener the listener. If null, nothing will be notified
+     */
+    public void setListener(ArchetypeValidationListener listener) {
+        this.listener = listener == null ? ArchetypeValidationListener.NO_OP : listener;
+    }
+
+    public ArchetypeValidationListener getListener() {
+        return listener;
+    }
+
 
     public ValidationResult validate(Archetype archetype) {
         return validate(archetype, null);
@@ -108,6 +156,58 @@ public class ArchetypeValidator {
      * @return
      */
     public ValidationResult validate(Archetype archetype, FullArchetypeRepository repository) {
+        long start = System.nanoTime();
+        ValidationResult result = validateInternal(archetype, repository, new ValidationRun(null, null));
+        listener.archetypeValidated(result, System.nanoTime() - start);
+        return result;
+    }
+
+    public ValidationResult validateIncrementally(ValidationResult previousResult, Archetype archetype, ArchetypeChangeSet changes) {
+        return validateIncrementally(previousResult, archetype, changes, null);
+    }
+
+    /**
+     * Validate an archetype again after it has been changed, for example in an editor. Only the validations affected by
+     * the given changes are run again, and validations that only check single nodes are only run on the subtrees that
+     * changed. The messages of the other validations are taken from the previous result. The flattened parent is taken
+     * from the previous result as well, so the parent is not validated again.
+     *
+     * The archetype is flattened again with the flattened parent of the previous result, so the result contains an up
+     * to date flattened form. If nothing changed, the flattened form of the previous result is reused.
+     *
+     * Falls back to a full validation if the previous result cannot be used, for example because it is of a different
+     * archetype, if the archetype is a template or if the change set contains other changes.
+     *
+     * @param previousResult the result of the previous validation of this archetype, by validate or validateIncrementally
+     * @param archetype the changed archetype, in differential form
+     * @param changes what changed in the archetype since the previous validation
+     * @param repository the repository containing the other archetypes. The result will be stored in this repository
+     * @return the validation result, that can be used as the previous result for the next change
+     */
+    public ValidationResult validateIncrementally(ValidationResult previousResult, Archetype archetype, ArchetypeChangeSet changes, FullArchetypeRepository repository) {
+        if(!canValidateIncrementally(previousResult, archetype, changes)) {
+            return validate(archetype, repository);
+        }
+        long start = System.nanoTime();
+        ValidationResult result = validateInternal(archetype, repository, new ValidationRun(previousResult, changes));
+        listener.archetypeValidated(result, System.nanoTime() - start);
+        return result;
+    }
+
+    private boolean canValidateIncrementally(ValidationResult previousResult, Archetype archetype, ArchetypeChangeSet changes) {
+        if(previousResult == null || changes == null || changes.isOtherChanges() || archetype instanceof Template) {
+            return false;
+        }
+        Archetype previousArchetype = previousResult.getSourceArchetype();
+        if(previousResult.getMessagesPerValidation() == null || previousArchetype == null || archetype.getArchetypeId() == null) {
+            return false;
+        }
+        return archetype.getArchetypeId().toString().equals(previousResult.getArchetypeId()) &&
+                Objects.equals(archetype.getParentArchetypeId(), previousArchetype.getParentArchetypeId()) &&
+                (!archetype.isSpecialized() || previousResult.getFlatParent() != null);
+    }
+
+    private ValidationResult validateInternal(Archetype archetype, FullArchetypeRepository repository, ValidationRun run) {
         ArchetypeValidationSettings settings = repository == null ? null : repository.getArchetypeValidationSettings();
         if(settings == null) {
             settings = new ArchetypeValidationSettings();
@@ -129,7 +229,9 @@ public class ArchetypeValidator {
         //has been updated. Therefore, do not retrieve the old result from the repository
         archetype = cloneAndPreprocess(combinedModels, archetype);//this clones the actual archetype so the source does not get changed
         Archetype flatParent = null;
-        if(archetype.isSpecialized()) {
+        if(run.isIncremental()) {
+            flatParent = run.previousResult.getFlatParent();
+        } else if(archetype.isSpecialized()) {
             ValidationResult infiniteLoopResult = checkForInfiniteLoopInSpecialisation(repository, archetype);
             if (!infiniteLoopResult.passes()) {
                 return infiniteLoopResult;
@@ -175,19 +277,21 @@ public class ArchetypeValidator {
             }
         }
 
-        List<ValidationMessage> messages = runValidations(archetype, repository, settings, flatParent, validationsPhase0);
+        List<ValidationMessage> messages = runValidations(archetype, repository, settings, flatParent, 0, validationsPhase0, run);
         ValidationResult result = new ValidationResult(archetype);
         result.setErrors(messages);
+        result.setFlatParent(flatParent);
+        result.setMessagesPerValidation(run.messagesPerValidation);
         if(result.passes()) {
             //continue running only if the basic phase 0 validation run, otherwise we get annoying exceptions
-            messages.addAll(runValidations(archetype, repository, settings, flatParent, validationsPhase1));
+            messages.addAll(runValidations(archetype, repository, settings, flatParent, 1, validationsPhase1, run));
 
             //the separate validations will check if the archtype is specialized and if they need this in phase 2
             //because the RM validations are technically phase 2 and required to run
             //also the separate validations are implemented so that they can run with errors in phase 1 without exceptions
             //plus exceptions will nicely be logged as an OTHER error type - we can safely run it and you will get
             //more errors in one go - could be useful
-            messages.addAll(runValidations(archetype, repository, settings, flatParent, validationsPhase2));
+            messages.addAll(runValidations(archetype, repository, settings, flatParent, 2, validationsPhase2, run));
         }
         result.setErrors(messages);
 
@@ -203,21 +307,38 @@ public class ArchetypeValidator {
 
         if(result.passes() || settings.isAlwaysTryToFlatten()) {
             try {
-                Archetype flattened = new Flattener(repository, combinedModels, flattenerConfiguration).flatten(archetype);
-
-                try {
-                    OperationalTemplate operationalTemplate = (OperationalTemplate) new Flattener(repository, combinedModels).createOperationalTemplate(true).flatten(archetype);
-                    extraRepository.addExtraOperationalTemplate(operationalTemplate);
-                } catch (Exception e) {
-                    //this is probably an error in an included archetype, so ignore it here
-                    //the other archetype will not validate
-                    ValidationMessage message = new ValidationMessage(ErrorType.OTHER, "Error during Operational template creation. This does not necessarily mean the current archetype has a problem, but perhaps one that is included with use_archetype: " + e);
-                    message.setWarning(true);
-                    messages.add(message);
+                Archetype flattened;
+                if(run.isIncremental() && run.changes.isEmpty() && run.previousResult.getFlattened() != null) {
+                    //nothing changed, so flattening and creating the operational template give the same result as before
+                    flattened = run.previousResult.getFlattened();
+                    for(ValidationMessage message:run.previousResult.getErrors()) {
+                        if(message.getMessage() != null && message.getMessage().startsWith(OPT_CREATION_ERROR)) {
+                            messages.add(message);
+                        }
+                    }
+                } else {
+                    //in an incremental run, the flattened parent of the previous result is used instead of flattening the parent again
+                    Archetype cachedFlatParent = run.isIncremental() && !flattenerConfiguration.isRemoveZeroOccurrencesInParents() ? flatParent : null;
+                    Flattener flattener = new Flattener(repository, combinedModels, flattenerConfiguration);
+                    flattener.setListener(listener);
+                    flattened = flattener.flatten(archetype, cachedFlatParent);
+
+                    try {
+                        Flattener optCreator = new Flattener(repository, combinedModels).createOperationalTemplate(true);
+                        optCreator.setListener(listener);
+                        OperationalTemplate operationalTemplate = (OperationalTemplate) optCreator.flatten(archetype, cachedFlatParent);
+                        extraRepository.addExtraOperationalTemplate(operationalTemplate);
+                    } catch (Exception e) {
+                        //this is probably an error in an included archetype, so ignore it here
+                        //the other archetype will not validate
+                        ValidationMessage message = new ValidationMessage(ErrorType.OTHER, OPT_CREATION_ERROR + e);
+                        message.setWarning(true);
+                        messages.add(message);
+                    }
                 }
                 result.setFlattened(flattened);
                 if(result.passes()) {
-                    messages.addAll(runValidations(flattened, repository, settings, flatParent, validationsPhase3));
+                    messages.addAll(runValidations(flattened, repository, settings, flatParent, 3, validationsPhase3, run));
                 }
             } catch (Exception e) {
                 messages.add(new ValidationMessage(ErrorType.OTHER, "flattening failed with exception " + e));
@@ -235,22 +356,196 @@ public class ArchetypeValidator {
         return preprocessed;
     }
 
-    private List<ValidationMessage> runValidations(Archetype archetype, FullArchetypeRepository repository, ArchetypeValidationSettings settings, Archetype flatParent, List<ArchetypeValidation> validations) {
+    private List<ValidationMessage> runValidations(Archetype archetype, FullArchetypeRepository repository, ArchetypeValidationSettings settings, Archetype flatParent, int phase, List<ArchetypeValidation> validations, ValidationRun run) {
+        long start = System.nanoTime();
+        List<ValidationMessage> messages;
+        if(run.isIncremental()) {
+            messages = runValidationsIncrementally(archetype, repository, settings, flatParent, phase, validations, run);
+        } else if(executor != null) {
+            messages = runValidationsConcurrently(archetype, repository, settings, flatParent, phase, validations, run);
+        } else {
+            messages = new ArrayList<>();
+            for (ArchetypeValidation validation : validations) {
+                List<ValidationMessage> validationMessages = runValidation(archetype, repository, settings, flatParent, phase, validation, null);
+                run.setMessages(validation, validationMessages);
+                messages.addAll(validationMessages);
+            }
+        }
+        listener.phaseRun(getArchetypeId(archetype), phase, System.nanoTime() - start, messages.size());
+        return messages;
+    }
 
+    /**
+     * Runs the given validation and returns its messages. If subtreeRoots is not null, the validation must be a node
+     * local ValidatingVisitor and only the given subtrees will be validated.
+     */
+    private List<ValidationMessage> runValidation(Archetype archetype, FullArchetypeRepository repository, ArchetypeValidationSettings settings, Archetype flatParent, int phase, ArchetypeValidation validation, List<CObject> subtreeRoots) {
+        long start = System.nanoTime();
+        List<ValidationMessage> messages;
+        try {
+            if(subtreeRoots == null) {
+                messages = validation.validate(combinedModels, archetype, flatParent, repository, settings);
+            } else {
+                messages = ((ValidatingVisitor) validation).validateSubtrees(combinedModels, archetype, flatParent, repository, settings, subtreeRoots);
+            }
+        } catch (Exception e) {
+            logger.error("error running validation processor", e);
+            e.printStackTrace();
+            messages = new ArrayList<>();
+            messages.add(new ValidationMessage(ErrorType.OTHER, null, "error running validator : " + e.getClass().getSimpleName() +
+                    Joiner.on("\n").join(e.getStackTrace())));
+        }
+        listener.validationRun(getArchetypeId(archetype), phase, validation, System.nanoTime() - start, messages.size());
+        return messages;
+    }
+
+    private static String getArchetypeId(Archetype archetype) {
+        return archetype.getArchetypeId() == null ? null : archetype.getArchetypeId().getFullId();
+    }
+
+    /**
+     * Runs only the validations affected by the changes of the given incremental run, reusing the previous messages
+     * of the other validations. Node local validations only run on the changed subtrees, and their previous messages
+     * outside of these subtrees are kept.
+     */
+    private List<ValidationMessage> runValidationsIncrementally(Archetype archetype, FullArchetypeRepository repository, ArchetypeValidationSettings settings, Archetype flatParent, int phase, List<ArchetypeValidation> validations, ValidationRun run) {
+        ArchetypeChangeSet changes = run.changes;
+        List<CObject> subtreeRoots = changes.getChangedPaths().isEmpty() ? null : findChangedSubtrees(archetype, changes.getChangedPaths());
+        List<ValidationMessage> messages = new ArrayList<>();
+        for(ArchetypeValidation validation:validations) {
+            List<ValidationMessage> previousMessages = run.previousResult.getMessagesPerValidation().get(validation.getClass().getName());
+            boolean terminologyAffected = changes.isTerminologyChanged() && validation.usesTerminology();
+            List<ValidationMessage> validationMessages;
+            if(previousMessages == null || !validation.isReadOnly()) {
+                //not run before, or modifies the archetype, which is a new copy
+                validationMessages = runValidation(archetype, repository, settings, flatParent, phase, validation, null);
+            } else if(changes.getChangedPaths().isEmpty() && !terminologyAffected) {
+                validationMessages = previousMessages;
+            } else if(!terminologyAffected && subtreeRoots != null && canValidateSubtrees(validation, previousMessages)) {
+                validationMessages = new ArrayList<>();
+                for(ValidationMessage message:previousMessages) {
+                    if(!isInSubtrees(message.getPathInArchetype(), subtreeRoots)) {
+                        validationMessages.add(message);
+                    }
+                }
+                validationMessages.addAll(runValidation(archetype, repository, settings, flatParent, phase, validation, subtreeRoots));
+            } else {
+                validationMessages = runValidation(archetype, repository, settings, flatParent, phase, validation, null);
+            }
+            run.setMessages(validation, validationMessages);
+            messages.addAll(validationMessages);
+        }
+        return messages;
+    }
+
+    private static boolean canValidateSubtrees(ArchetypeValidation validation, List<ValidationMessage> previousMessages) {
+        if(!(validation instanceof ValidatingVisitor) || !((ValidatingVisitor) validation).isNodeLocal()) {
+            return false;
+        }
+        //a message without a path cannot be attributed to a subtree
+        for(ValidationMessage message:previousMessages) {
+            if(message.getPathInArchetype() == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find the objects to validate again for the given changed paths: the parent object of every changed node, so
+     * checks involving its siblings are run again as well.
+     *
+     * @return the non overlapping subtree roots, or null if the entire archetype must be validated again
+     */
+    private static List<CObject> findChangedSubtrees(Archetype archetype, Set<String> changedPaths) {
+        Map<String, CObject> roots = new LinkedHashMap<>();
+        for(String path:changedPaths) {
+            ArchetypeModelObject changed = archetype.itemAtPath(path);
+            CObject root;
+            if(changed instanceof CAttribute) {
+                root = ((CAttribute) changed).getParent();
+            } else if(changed instanceof CObject) {
+                CAttribute parentAttribute = ((CObject) changed).getParent();
+                root = parentAttribute == null ? null : parentAttribute.getParent();
+            } else {
+                root = null;
+            }
+            if(root == null || root.getParent() == null) {
+                //not found, or the root node changed
+                return null;
+            }
+            roots.put(root.getPath(), root);
+        }
+        List<CObject> result = new ArrayList<>();
+        for(Map.Entry<String, CObject> root:roots.entrySet()) {
+            boolean overlaps = false;
+            for(String otherPath:roots.keySet()) {
+                if(!otherPath.equals(root.getKey()) && isInSubtree(root.getKey(), otherPath)) {
+                    overlaps = true;
+                    break;
+                }
+            }
+            if(!overlaps) {
+                result.add(root.getValue());
+            }
+        }
+        return result;
+    }
+
+    private static boolean isInSubtrees(String path, List<CObject> subtreeRoots) {
+        for(CObject root:subtreeRoots) {
+            if(isInSubtree(path, root.getPath())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isInSubtree(String path, String rootPath) {
+        return path.equals(rootPath) || path.startsWith(rootPath + "/");
+    }
+
+    /**
+     * Runs consecutive read only validations concurrently. A validation that is not read only waits for all validations
+     * before it, and the validations after it wait for it. The messages are added in the order of the validations.
+     */
+    private List<ValidationMessage> runValidationsConcurrently(Archetype archetype, FullArchetypeRepository repository, ArchetypeValidationSettings settings, Archetype flatParent, int phase, List<ArchetypeValidation> validations, ValidationRun run) {
+        //messages are translated in the validations, so use the locale of the calling thread
+        Locale locale = I18n.getCurrentLocale();
         List<ValidationMessage> messages = new ArrayList<>();
+        List<CompletableFuture<List<ValidationMessage>>> running = new ArrayList<>();
         for(ArchetypeValidation validation: validations) {
-            try {
-                messages.addAll(validation.validate(combinedModels, archetype, flatParent, repository, settings));
-            } catch (Exception e) {
-                logger.error("error running validation processor", e);
-                e.printStackTrace();
-                messages.add(new ValidationMessage(ErrorType.OTHER, null, "error running validator : " + e.getClass().getSimpleName() +
-                        Joiner.on("\n").join(e.getStackTrace())));
+            if(validation.isReadOnly()) {
+                running.add(CompletableFuture.supplyAsync(() -> {
+                    Locale previousLocale = I18n.getCurrentLocale();
+                    I18n.setCurrentLocale(locale);
+                    try {
+                        List<ValidationMessage> validationMessages = runValidation(archetype, repository, settings, flatParent, phase, validation, null);
+                        run.setMessages(validation, validationMessages);
+                        return validationMessages;
+                    } finally {
+                        I18n.setCurrentLocale(previousLocale);
+                    }
+                }, executor));
+            } else {
+                collectMessages(running, messages);
+                List<ValidationMessage> validationMessages = runValidation(archetype, repository, settings, flatParent, phase, validation, null);
+                run.setMessages(validation, validationMessages);
+                messages.addAll(validationMessages);
             }
         }
+        collectMessages(running, messages);
         return messages;
     }
 
+    private void collectMessages(List<CompletableFuture<List<ValidationMessage>>> running, List<ValidationMessage> messages) {
+        for(CompletableFuture<List<ValidationMessage>> future:running) {
+            //runValidation catches all exceptions, so this only throws on errors
+            messages.addAll(future.join());
+        }
+        running.clear();
+    }
+
     private ValidationResult checkForInfiniteLoopInSpecialisation(FullArchetypeRepository repository, Archetype archetype) {
         Set<String> archetypesInSpecialisationTree = new HashSet<>();
         archetypesInSpecialisationTree.add(archetype.getArchetypeId().getFullId());
@@ -277,4 +572,27 @@ public class ArchetypeValidator {
         return new ValidationResult(archetype);
     }
 
+    /**
+     * The state of a single validation: the messages per validation and, for an incremental validation, the previous
+     * result and the changes since then.
+     */
+    private static class ValidationRun {
+        private final ValidationResult previousResult;
+        private final ArchetypeChangeSet changes;
+        private final Map<String, List<ValidationMessage>> messagesPerValidation = new ConcurrentHashMap<>();
+
+        ValidationRun(ValidationResult previousResult, ArchetypeChangeSet changes) {
+            this.previousResult = previousResult;
+            this.changes = changes;
+        }
+
+        boolean isIncremental() {
+            return previousResult != null;
+        }
+
+        void setMessages(ArchetypeValidation validation, List<ValidationMessage> messages) {
+            messagesPerValidation.put(validation.getClass().getName(), messages);
+        }
+    }
+
 }
@@ -8,6 +8,8 @@ import com.nedap.archie.aom.CComplexObjectProxy;
 import com.nedap.archie.aom.CObject;
 import com.nedap.archie.aom.CPrimitiveObject;
 import com.nedap.archie.flattener.ArchetypeRepository;
+import com.nedap.archie.flattener.FullArchetypeRepository;
+import com.nedap.archie.rminfo.MetaModels;
 import com.nedap.archie.rminfo.ModelInfoLookup;
 
 import java.util.ArrayDeque;
@@ -20,16 +22,51 @@ import java.util.List;
  */
 public abstract class ValidatingVisitor extends ArchetypeValidationBase {
 
+    /**
+     * If not null, only the subtrees starting at these objects will be visited
+     */
+    private List<CObject> subtreeRoots;
 
     public ValidatingVisitor() {
         super();
     }
 
+    /**
+     * Whether this validation only checks every node on its own, possibly together with its direct parent, siblings and
+     * children, the flat parent and the reference model. If so, it can be run on just the changed subtrees of an
+     * archetype in an incremental validation, keeping the previous messages for the rest of the archetype.
+     * Messages must always have the path of the checked node or attribute.
+     *
+     * @return true if this validation can be run on subtrees
+     */
+    public boolean isNodeLocal() {
+        return false;
+    }
+
+    /**
+     * Run this validation only on the subtrees starting at the given objects. Only valid if isNodeLocal() returns true.
+     * The subtrees must not overlap.
+     *
+     * @return the validation messages found in the given subtrees
+     */
+    public List<ValidationMessage> validateSubtrees(MetaModels models, Archetype archetype, Archetype flatParent, FullArchetypeRepository repository, ArchetypeValidationSettings settings, List<CObject> subtreeRoots) {
+        this.subtreeRoots = subtreeRoots;
+        try {
+            return validate(models, archetype, flatParent, repository, settings);
+        } finally {
+            this.subtreeRoots = null;
+        }
+    }
+
     @Override
     public void validate() {
         beginValidation();
         ArrayDeque<CObject> workList = new ArrayDeque<>();
-        workList.add(archetype.getDefinition());
+        if(subtreeRoots == null) {
+            workList.add(archetype.getDefinition());
+        } else {
+            workList.addAll(subtreeRoots);
+        }
         while(!workList.isEmpty()) {
             CObject cObject = workList.pop();
             validate(cObject);
@@ -3,6 +3,8 @@ package com.nedap.archie.archetypevalidator;
 import com.nedap.archie.aom.Archetype;
 import com.nedap.archie.aom.TemplateOverlay;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -20,6 +22,8 @@ public class ValidationResult {
     private Archetype sourceArchetype;
     private Archetype flattened;
     private List<ValidationResult> overlayValidations;
+    private transient Archetype flatParent;
+    private transient Map<String, List<ValidationMessage>> messagesPerValidation;
 
     public ValidationResult(String archetypeId){
         this.archetypeId = archetypeId;
@@ -69,6 +73,36 @@ public class ValidationResult {
         this.flattened = flattened;
     }
 
+    /**
+     * Get the flattened parent the archetype was validated against, if it is specialized. Used to skip validating and
+     * flattening the parent again in an incremental validation.
+     *
+     * @return the flattened parent, or null if not specialized or if the parent did not validate
+     */
+    @JsonIgnore
+    public Archetype getFlatParent() {
+        return flatParent;
+    }
+
+    public void setFlatParent(Archetype flatParent) {
+        this.flatParent = flatParent;
+    }
+
+    /**
+     * Get the messages of every validation that has been run, by the class name of the validation. Used by an
+     * incremental validation to keep the messages of validations that do not need to run again.
+     *
+     * @return the messages per validation, or null if not available
+     */
+    @JsonIgnore
+    public Map<String, List<ValidationMessage>> getMessagesPerValidation() {
+        return messagesPerValidation;
+    }
+
+    public void setMessagesPerValidation(Map<String, List<ValidationMessage>> messagesPerValidation) {
+        this.messagesPerValidation = messagesPerValidation;
+    }
+
     public String getArchetypeId() {
         return archetypeId;
     }
@@ -41,4 +41,8 @@ public class AnnotationsValidation extends ArchetypeValidationBase {
         }
     }
 
+    @Override
+    public boolean usesTerminology() {
+        return false;
+    }
 }
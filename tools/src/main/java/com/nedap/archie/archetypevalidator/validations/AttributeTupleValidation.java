@@ -42,4 +42,14 @@ public class AttributeTupleValidation extends ValidatingVisitor {
             }
         }
     }
+
+    @Override
+    public boolean isNodeLocal() {
+        return true;
+    }
+
+    @Override
+    public boolean usesTerminology() {
+        return false;
+    }
 }
@@ -33,5 +33,13 @@ public class AttributeUniquenessValidation extends ValidatingVisitor {
         }
     }
 
+    @Override
+    public boolean isNodeLocal() {
+        return true;
+    }
 
-}
\ No newline at end of file
+    @Override
+    public boolean usesTerminology() {
+        return false;
+    }
+}
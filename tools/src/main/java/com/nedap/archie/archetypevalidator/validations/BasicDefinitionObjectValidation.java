@@ -61,4 +61,14 @@ public class BasicDefinitionObjectValidation extends ValidatingVisitor {
         }
         return true;
     }
+
+    @Override
+    public boolean isNodeLocal() {
+        return true;
+    }
+
+    @Override
+    public boolean usesTerminology() {
+        return false;
+    }
 }
@@ -80,4 +80,8 @@ public class CodeValidation extends ValidatingVisitor {
 
     }
 
+    @Override
+    public boolean isNodeLocal() {
+        return true;
+    }
 }
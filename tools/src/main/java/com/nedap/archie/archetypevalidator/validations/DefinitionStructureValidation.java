@@ -75,4 +75,14 @@ public class DefinitionStructureValidation extends ValidatingVisitor {
     private void addPathNotFoundInParentError(CAttribute cAttribute) {
         addMessageWithPath(ErrorType.VDIFP, cAttribute.getPath(), I18n.t("Differential path {0} was not found in the parent archetype", cAttribute.getDifferentialPath()));
     }
+
+    @Override
+    public boolean isNodeLocal() {
+        return true;
+    }
+
+    @Override
+    public boolean usesTerminology() {
+        return false;
+    }
 }
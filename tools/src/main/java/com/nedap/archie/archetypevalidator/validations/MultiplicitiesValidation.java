@@ -81,4 +81,13 @@ public class MultiplicitiesValidation extends ValidatingVisitor {
         }
     }
 
+    @Override
+    public boolean isNodeLocal() {
+        return true;
+    }
+
+    @Override
+    public boolean usesTerminology() {
+        return false;
+    }
 }
@@ -44,5 +44,8 @@ public class NodeIdValidation extends ValidatingVisitor {
         nodeIds.put(cObject.getNodeId(), cObject.getPath());
     }
 
-
+    @Override
+    public boolean usesTerminology() {
+        return false;
+    }
 }
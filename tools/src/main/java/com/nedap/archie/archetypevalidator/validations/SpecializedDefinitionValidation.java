@@ -349,4 +349,8 @@ public class SpecializedDefinitionValidation extends ValidatingVisitor {
         }
     }
 
+    @Override
+    public boolean usesTerminology() {
+        return false;
+    }
 }
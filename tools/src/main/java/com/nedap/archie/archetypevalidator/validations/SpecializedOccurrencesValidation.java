@@ -135,4 +135,14 @@ public class SpecializedOccurrencesValidation extends ValidatingVisitor {
                 allRedefinedNodes.stream().map(c -> c.effectiveOccurrences(combinedModels::referenceModelPropMultiplicity).toString()).collect(Collectors.joining(", ")),
                 parentCObject.getOccurrences()));
     }
+
+    @Override
+    public boolean isNodeLocal() {
+        return true;
+    }
+
+    @Override
+    public boolean usesTerminology() {
+        return false;
+    }
 }
@@ -24,6 +24,12 @@ public class ValidateAgainstReferenceModel extends ValidatingVisitor {
     public ValidateAgainstReferenceModel() {
         super();
     }
+
+    @Override
+    public boolean isReadOnly() {
+        //removes existence and cardinality equal to the reference model if not strict
+        return false;
+    }
     
     @Override
     protected void validate(CComplexObject cObject) {
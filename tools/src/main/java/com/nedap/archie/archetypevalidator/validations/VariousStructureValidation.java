@@ -78,6 +78,14 @@ public class VariousStructureValidation extends ValidatingVisitor {
         }
     }
 
+    @Override
+    public boolean isNodeLocal() {
+        //use_archetype references are checked against the repository, which can change without the archetype changing
+        return false;
+    }
 
-
+    @Override
+    public boolean usesTerminology() {
+        return false;
+    }
 }
@@ -39,6 +39,8 @@ public class Flattener implements IAttributeFlattenerSupport {
 
     private OperationalTemplateCreator optCreator = new OperationalTemplateCreator(this);
 
+    private FlattenerListener listener = FlattenerListener.NO_OP;
+
 
 
     public Flattener(ArchetypeRepository repository, ReferenceModels models) {
@@ -100,7 +102,36 @@ public class Flattener implements IAttributeFlattenerSupport {
         return this;
     }
 
+    /**
+     * Set a listener to get notified when flattening is done, for example to measure the time it took
+     * @param listener the listener. If null, nothing will be notified
+     */
+    public void setListener(FlattenerListener listener) {
+        this.listener = listener == null ? FlattenerListener.NO_OP : listener;
+    }
+
     public Archetype flatten(Archetype toFlatten) {
+        return flatten(toFlatten, null);
+    }
+
+    /**
+     * Flatten the given specialized archetype with an already flattened parent, so the parent does not need to be
+     * retrieved from the repository and flattened again. The flattened parent must be flattened with the same meta
+     * models, without creating an operational template and without removing zero occurrences constraints in parents,
+     * for example the flattened form in the ValidationResult of the parent. It is not changed.
+     *
+     * @param toFlatten the specialized archetype to flatten
+     * @param flatParent the flattened parent of the archetype, or null to retrieve and flatten the parent
+     * @return the flattened archetype, or operational template if configured
+     */
+    public Archetype flatten(Archetype toFlatten, Archetype flatParent) {
+        long start = System.nanoTime();
+        Archetype flattened = flattenInternal(toFlatten, flatParent);
+        listener.flattened(flattened.getArchetypeId().getFullId(), config.isCreateOperationalTemplate(), System.nanoTime() - start);
+        return flattened;
+    }
+
+    private Archetype flattenInternal(Archetype toFlatten, Archetype flatParent) {
         if(parent != null) {
             throw new IllegalStateException("You've used this flattener before - single use instance, please create a new one!");
         }
@@ -125,10 +156,14 @@ public class Flattener implements IAttributeFlattenerSupport {
             result.getDefinition().setArchetype(result);
             result.setDifferential(false);
             result.setGenerated(true);
+            optCreator.setLazyArchetypeRootExpanders();
             return result;
         }
 
-        this.parent = repository.getArchetype(toFlatten.getParentArchetypeId());
+        if(flatParent != null && config.isRemoveZeroOccurrencesInParents()) {
+            throw new IllegalArgumentException("cannot flatten with a flattened parent if zero occurrences constraints in parents must be removed");
+        }
+        this.parent = flatParent != null ? flatParent : repository.getArchetype(toFlatten.getParentArchetypeId());
         if(parent == null) {
             throw new IllegalArgumentException("parent archetype not found in repository: " + toFlatten.getParentArchetypeId());
         }
@@ -144,7 +179,14 @@ public class Flattener implements IAttributeFlattenerSupport {
             }
         }
 
-        if(parent.getParentArchetypeId() != null) {
+        if(flatParent != null) {
+            if(flatParent instanceof Template) {
+                // Add the template overlays from the parent to the repository, as if the parent had been flattened here
+                ((Template) flatParent).getTemplateOverlays().forEach(
+                        a -> repository.addExtraArchetype(a)
+                );
+            }
+        } else if(parent.getParentArchetypeId() != null) {
             //parent needs flattening first
             Flattener parentFlattener = getNewFlattenerForParent();
             parent = parentFlattener.flatten(parent);
@@ -236,6 +278,9 @@ public class Flattener implements IAttributeFlattenerSupport {
         new ReflectionConstraintImposer(metaModels.getSelectedModel())
                 .setSingleOrMultiple(result.getDefinition());
 
+        //only now, otherwise any of the steps above would expand the lazy archetype roots
+        optCreator.setLazyArchetypeRootExpanders();
+
         return result;
     }
 
@@ -42,6 +42,15 @@ public class FlattenerConfiguration {
      * Only for Operational templates: replace the archetype roots with the corresponding structure. Defaults to true
      */
     private boolean fillArchetypeRoots = true;
+    /**
+     * Only for Operational templates: do not replace the archetype roots with the corresponding structure when
+     * creating the operational template, but the first time their attributes are accessed. This is thread-safe, and
+     * saves a lot of memory and time for large templates of which only a few parts are used.
+     * Call OperationalTemplate.expandLazyArchetypeRoots() to obtain the fully expanded form, for example before
+     * serializing. Does not work in combination with useComplexObjectForArchetypeSlotReplacement.
+     * Default false
+     */
+    private boolean lazyArchetypeRoots = false;
     /**
      * Only for Operational templates: remove any closed archetype slots from the archetype.
      */
@@ -154,6 +163,14 @@ public class FlattenerConfiguration {
         this.fillArchetypeRoots = fillArchetypeRoots;
     }
 
+    public boolean isLazyArchetypeRoots() {
+        return lazyArchetypeRoots;
+    }
+
+    public void setLazyArchetypeRoots(boolean lazyArchetypeRoots) {
+        this.lazyArchetypeRoots = lazyArchetypeRoots;
+    }
+
     public boolean isCloseArchetypeSlots() {
         return closeArchetypeSlots;
     }
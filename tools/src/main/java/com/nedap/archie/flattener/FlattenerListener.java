@@ -0,0 +1,20 @@
+package com.nedap.archie.flattener;
+
+/**
+ * Gets notified of flattening and operational template creation, for example to measure how long it takes.
+ * All methods have an empty default implementation, so implement only what you need.
+ */
+public interface FlattenerListener {
+
+    FlattenerListener NO_OP = new FlattenerListener() {};
+
+    /**
+     * Called after the Flattener has flattened an archetype or created an operational template. Only called for the
+     * archetype passed to Flattener.flatten, not for the parents and used archetypes flattened along the way.
+     *
+     * @param archetypeId the id of the archetype that has been flattened
+     * @param operationalTemplate true if an operational template was created
+     * @param durationNanos the wall time it took, in nanoseconds
+     */
+    default void flattened(String archetypeId, boolean operationalTemplate, long durationNanos) {}
+}
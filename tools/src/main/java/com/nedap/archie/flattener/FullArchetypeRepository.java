@@ -2,6 +2,7 @@ package com.nedap.archie.flattener;
 
 import com.nedap.archie.aom.Archetype;
 import com.nedap.archie.aom.OperationalTemplate;
+import com.nedap.archie.archetypevalidator.ArchetypeValidationListener;
 import com.nedap.archie.archetypevalidator.ArchetypeValidationSettings;
 import com.nedap.archie.archetypevalidator.ArchetypeValidator;
 import com.nedap.archie.archetypevalidator.ValidationResult;
@@ -45,6 +46,18 @@ public interface FullArchetypeRepository extends ArchetypeRepository, Operationa
         compile(validator);
     }
 
+    /**
+     * Compile all archetypes, notifying the given listener. Pass an ArchetypeValidationStatistics to get a report of
+     * where the time is spent.
+     * @param models the metamodels to validate with
+     * @param listener the listener to notify of all validations, phases and flattening
+     */
+    default void compile(MetaModels models, ArchetypeValidationListener listener) {
+        ArchetypeValidator validator = new ArchetypeValidator(models);
+        validator.setListener(listener);
+        compile(validator);
+    }
+
     /**
      * validate the validation result if necessary, and return either the newly validated one or
      * the existing validation result
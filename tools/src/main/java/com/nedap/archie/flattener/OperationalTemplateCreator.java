@@ -1,11 +1,15 @@
 package com.nedap.archie.flattener;
 
+import com.esotericsoftware.kryo.kryo5.Kryo;
+import com.esotericsoftware.kryo.kryo5.KryoCopyable;
 import com.nedap.archie.aom.*;
+import com.nedap.archie.aom.rmoverlay.RmOverlay;
 import com.nedap.archie.aom.terminology.ArchetypeTerm;
 import com.nedap.archie.aom.terminology.ArchetypeTerminology;
 import com.nedap.archie.aom.terminology.ValueSet;
 import com.nedap.archie.aom.utils.AOMUtils;
 import com.nedap.archie.query.ComplexObjectProxyReplacement;
+import com.nedap.archie.rminfo.MetaModels;
 
 import java.util.*;
 
@@ -17,6 +21,12 @@ class OperationalTemplateCreator {
 
     private final Flattener flattener;
 
+    /**
+     * The archetype roots to expand lazily, with their original archetype references. Expanders are only set at the
+     * very end of creating the operational template, otherwise the post processing steps would trigger the expansion
+     */
+    private final Map<CArchetypeRoot, String> lazyArchetypeRoots = new LinkedHashMap<>();
+
     OperationalTemplateCreator(Flattener flattener) {
         this.flattener = flattener;
     }
@@ -146,7 +156,11 @@ class OperationalTemplateCreator {
             for(CAttribute attribute:object.getAttributes()) {
                 for(CObject child:attribute.getChildren()) {
                     if(child instanceof CArchetypeRoot) { //use_archetype
-                        fillArchetypeRoot((CArchetypeRoot) child, result);
+                        if(isLazy()) {
+                            prepareLazyArchetypeRoot((CArchetypeRoot) child);
+                        } else {
+                            fillArchetypeRoot((CArchetypeRoot) child, result);
+                        }
                     }
                     workList.push(child);
                 }
@@ -189,74 +203,174 @@ class OperationalTemplateCreator {
      */
     private void fillArchetypeRoot(CArchetypeRoot root, OperationalTemplate result) {
         if(flattener.getCreateOperationalTemplate() && ( root.getAttributes() == null || root.getAttributes().isEmpty()) ) {
-            String archetypeRef = root.getArchetypeRef();
-            String newArchetypeRef = archetypeRef;
-            OverridingArchetypeRepository repository = flattener.getRepository();
-
-            Archetype archetype = repository.getArchetype(archetypeRef);
-            if(archetype instanceof TemplateOverlay){
-                //we want to be able to check which archetype this is in the UI. If it's an overlay, that means retrieving the non-operational template
-                //which is a hassle.
-                //That's a problem. Is this the way to fix is?
-                newArchetypeRef = archetype.getParentArchetypeId();
-            }
-            if (archetype == null) {
-                if(getConfig().isFailOnMissingUsedArchetype()) {
-                    throw new IllegalArgumentException("Archetype with reference :" + archetypeRef + " not found.");
-                } else {
-                    //just skip, as a form of graceful degradation.
-                    return;
-                }
-            }
-            archetype = flattener.getNewFlattener().flatten(archetype);
+            fillArchetypeRoot(root, result, root.getArchetypeRef());
+        }
+    }
 
-            //
-            CComplexObject rootToFill = root;
-            if(flattener.isUseComplexObjectForArchetypeSlotReplacement()) {
-                rootToFill = archetype.getDefinition();
-                root.getParent().replaceChild(root.getNodeId(), rootToFill);
+    private void fillArchetypeRoot(CArchetypeRoot root, OperationalTemplate result, String archetypeRef) {
+        String newArchetypeRef = archetypeRef;
+        OverridingArchetypeRepository repository = flattener.getRepository();
+
+        Archetype archetype = repository.getArchetype(archetypeRef);
+        if(archetype instanceof TemplateOverlay){
+            //we want to be able to check which archetype this is in the UI. If it's an overlay, that means retrieving the non-operational template
+            //which is a hassle.
+            //That's a problem. Is this the way to fix is?
+            newArchetypeRef = archetype.getParentArchetypeId();
+        }
+        if (archetype == null) {
+            if(getConfig().isFailOnMissingUsedArchetype()) {
+                throw new IllegalArgumentException("Archetype with reference :" + archetypeRef + " not found.");
             } else {
-                rootToFill.setAttributes(archetype.getDefinition().getAttributes());
-                rootToFill.setAttributeTuples(archetype.getDefinition().getAttributeTuples());
-                rootToFill.setDefaultValue(archetype.getDefinition().getDefaultValue());
+                //just skip, as a form of graceful degradation.
+                return;
             }
-            String newNodeId = archetype.getArchetypeId().getFullId();
+        }
+        //expanding lazily happens while holding the lock of the operational template only, so roots of other
+        //templates may be flattening at the same time. MetaModels is not thread-safe, so give this one its own copy
+        boolean expandingLazily = root.isExpansionPending();
+        Flattener nestedFlattener = expandingLazily ?
+                new Flattener(repository, new MetaModels(flattener.getMetaModels()), getConfig()) :
+                flattener.getNewFlattener();
+        //nested archetype roots are always expanded directly. Their rules, annotations and terminologies must be
+        //included in the archetype before it is added to this operational template
+        nestedFlattener.getConfiguration().setLazyArchetypeRoots(false);
+        archetype = nestedFlattener.flatten(archetype);
+
+        //
+        CComplexObject rootToFill = root;
+        if(flattener.isUseComplexObjectForArchetypeSlotReplacement()) {
+            rootToFill = archetype.getDefinition();
+            root.getParent().replaceChild(root.getNodeId(), rootToFill);
+        } else {
+            rootToFill.setAttributes(archetype.getDefinition().getAttributes());
+            rootToFill.setAttributeTuples(archetype.getDefinition().getAttributeTuples());
+            rootToFill.setDefaultValue(archetype.getDefinition().getDefaultValue());
+        }
+        String newNodeId = archetype.getArchetypeId().getFullId();
 
-            ArchetypeTerminology terminology = archetype.getTerminology();
+        ArchetypeTerminology terminology = archetype.getTerminology();
 
-            //The node id will be replaced from "id1" to something like "openEHR-EHR-COMPOSITION.template_overlay.v1.0.0
-            //so store it in the terminology as well
-            Map<String, Map<String, ArchetypeTerm>> termDefinitions = terminology.getTermDefinitions();
+        //The node id will be replaced from "id1" to something like "openEHR-EHR-COMPOSITION.template_overlay.v1.0.0
+        //so store it in the terminology as well
+        Map<String, Map<String, ArchetypeTerm>> termDefinitions = terminology.getTermDefinitions();
 
-            for(String language: termDefinitions.keySet()) {
-                Map<String, ArchetypeTerm> translations = termDefinitions.get(language);
-                translations.put(newNodeId, TerminologyFlattener.getTerm(terminology.getTermDefinitions(), language, archetype.getDefinition().getNodeId()));
-            }
+        for(String language: termDefinitions.keySet()) {
+            Map<String, ArchetypeTerm> translations = termDefinitions.get(language);
+            translations.put(newNodeId, TerminologyFlattener.getTerm(terminology.getTermDefinitions(), language, archetype.getDefinition().getNodeId()));
+        }
 
-            //rootToFill.setNodeId(newNodeId);
-            if(!flattener.isUseComplexObjectForArchetypeSlotReplacement()) {
-                root.setArchetypeRef(newNodeId);
+        //rootToFill.setNodeId(newNodeId);
+        if(!flattener.isUseComplexObjectForArchetypeSlotReplacement()) {
+            root.setArchetypeRef(newNodeId);
+        }
+
+        //todo: should we filter this?
+        if(archetype instanceof OperationalTemplate) {
+            OperationalTemplate template = (OperationalTemplate) archetype;
+            //add all the component terminologies, otherwise we lose translation
+            for(String subarchetypeId:template.getComponentTerminologies().keySet()) {
+                result.addComponentTerminology(subarchetypeId, template.getComponentTerminologies().get(subarchetypeId));
             }
+        }
 
-            //todo: should we filter this?
-            if(archetype instanceof OperationalTemplate) {
-                OperationalTemplate template = (OperationalTemplate) archetype;
-                //add all the component terminologies, otherwise we lose translation
-                for(String subarchetypeId:template.getComponentTerminologies().keySet()) {
-                    result.addComponentTerminology(subarchetypeId, template.getComponentTerminologies().get(subarchetypeId));
-                }
+        result.addComponentTerminology(newNodeId, terminology);
+
+        if(expandingLazily) {
+            replaceTemplateSectionsWithCopies(archetype, result);
+        }
+
+        String prefix = archetype.getArchetypeId().getConceptId() + "_";
+        flattener.getRulesFlattener().combineRules(archetype, root.getArchetype(), prefix, prefix, rootToFill.getPath(), false);
+        flattener.getAnnotationsAndOverlaysFlattener().addAnnotationsWithPathPrefix(rootToFill.getPath(), archetype, result);
+        flattener.getAnnotationsAndOverlaysFlattener().addVisibilityWithPathPrefix(rootToFill.getPath(), archetype, result);
+        //todo: do we have to put something in the terminology extracts?
+        //templateResult.addTerminologyExtract(child.getNodeId(), archetype.getTerminology().);
+
+    }
+
+    /**
+     * Other threads can be using the rules, annotations and rm overlay of a lazily expanded operational template without
+     * holding its lock. So instead of changing them, replace the ones the given archetype adds to with copies.
+     */
+    private void replaceTemplateSectionsWithCopies(Archetype archetype, OperationalTemplate result) {
+        RulesSection rules = result.getRules();
+        if(archetype.getRules() != null && rules != null) {
+            RulesSection rulesCopy = new RulesSection();
+            rulesCopy.setContent(rules.getContent());
+            rulesCopy.setRules(rules.getRules() == null ? new ArrayList<>() : new ArrayList<>(rules.getRules()));
+            result.setRules(rulesCopy);
+        }
+        if(archetype.getAnnotations() != null && result.getAnnotations() != null) {
+            result.setAnnotations((ResourceAnnotations) result.getAnnotations().clone());
+        }
+        if(archetype.getRmOverlay() != null && result.getRmOverlay() != null) {
+            result.setRmOverlay((RmOverlay) result.getRmOverlay().clone());
+        }
+    }
+
+    private boolean isLazy() {
+        return getConfig().isLazyArchetypeRoots() && !flattener.isUseComplexObjectForArchetypeSlotReplacement();
+    }
+
+    /**
+     * Prepare an archetype root for lazy expansion. Only checks if the referenced archetype exists, and sets the
+     * archetype ref to the same value as eager expansion would, so paths do not change when expanding.
+     */
+    private void prepareLazyArchetypeRoot(CArchetypeRoot root) {
+        if(!flattener.getCreateOperationalTemplate() || !(root.getAttributes() == null || root.getAttributes().isEmpty())) {
+            return;
+        }
+        String archetypeRef = root.getArchetypeRef();
+        Archetype archetype = flattener.getRepository().getArchetype(archetypeRef);
+        if (archetype == null) {
+            if(getConfig().isFailOnMissingUsedArchetype()) {
+                throw new IllegalArgumentException("Archetype with reference :" + archetypeRef + " not found.");
+            } else {
+                //just skip, as a form of graceful degradation.
+                return;
             }
+        }
+        root.setArchetypeRef(archetype.getArchetypeId().getFullId());
+        lazyArchetypeRoots.put(root, archetypeRef);
+    }
 
-            result.addComponentTerminology(newNodeId, terminology);
+    /**
+     * Set the expanders on all archetype roots that were prepared for lazy expansion. Must be called after all
+     * other processing of the operational template has been done.
+     */
+    void setLazyArchetypeRootExpanders() {
+        for(Map.Entry<CArchetypeRoot, String> entry:lazyArchetypeRoots.entrySet()) {
+            entry.getKey().setLazyExpander(new LazyArchetypeRootExpander(entry.getValue()));
+        }
+        lazyArchetypeRoots.clear();
+    }
 
-            String prefix = archetype.getArchetypeId().getConceptId() + "_";
-            flattener.getRulesFlattener().combineRules(archetype, root.getArchetype(), prefix, prefix, rootToFill.getPath(), false);
-            flattener.getAnnotationsAndOverlaysFlattener().addAnnotationsWithPathPrefix(rootToFill.getPath(), archetype, result);
-            flattener.getAnnotationsAndOverlaysFlattener().addVisibilityWithPathPrefix(rootToFill.getPath(), archetype, result);
-            //todo: do we have to put something in the terminology extracts?
-            //templateResult.addTerminologyExtract(child.getNodeId(), archetype.getTerminology().);
+    /**
+     * Expands an archetype root on first access. Kryo copies of an operational template share the expanders, which
+     * is fine since the operational template to fill is obtained from the archetype root itself.
+     */
+    private class LazyArchetypeRootExpander implements ArchetypeRootExpander, KryoCopyable<LazyArchetypeRootExpander> {
+
+        private final String archetypeRef;
+
+        LazyArchetypeRootExpander(String archetypeRef) {
+            this.archetypeRef = archetypeRef;
+        }
+
+        @Override
+        public void expand(CArchetypeRoot root) {
+            Archetype archetype = root.getArchetype();
+            if(!(archetype instanceof OperationalTemplate)) {
+                throw new IllegalStateException("lazy archetype root " + archetypeRef + " is not part of an operational template");
+            }
+            fillArchetypeRoot(root, (OperationalTemplate) archetype, archetypeRef);
         }
 
+        @Override
+        public LazyArchetypeRootExpander copy(Kryo kryo) {
+            return this;
+        }
     }
 
     private FlattenerConfiguration getConfig() {
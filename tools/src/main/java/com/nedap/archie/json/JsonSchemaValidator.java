@@ -10,16 +10,18 @@ import org.leadpony.justify.api.ProblemHandler;
 import org.openehr.bmm.core.BmmModel;
 
 import jakarta.json.JsonObject;
-import jakarta.json.JsonReader;
-import jakarta.json.JsonStructure;
+import jakarta.json.stream.JsonParser;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
 import java.net.URI;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 /**
@@ -30,18 +32,24 @@ import java.util.Map;
  * </p>
  *
  * Note that currently the root JSON element must have a '_type' property for the schema validator to know which type to validate
+ *
+ * Thread-safe: all schemas are resolved when the validator is created, so a single instance can be used to validate
+ * concurrently. Creating a validator is expensive, use getInstance to share one per BmmModel.
  */
 public class JsonSchemaValidator {
 
+    /** the shared validators, per model, per value of allowAdditionalProperties */
+    private static final Map<BmmModel, Map<Boolean, JsonSchemaValidator>> sharedValidators = new WeakHashMap<>();
+
     /** The generated json schema files, in memory */
     private final Map<String, JsonObject> schemaFiles;
     /** a cache of earlier resolved schemas, to not cause too many performance problems */
-    private final Map<String, JsonSchema> resolvedSchemas = new LinkedHashMap<>();
+    private final Map<String, JsonSchema> resolvedSchemas = new ConcurrentHashMap<>();
     /** the single resolved schema */
-    JsonSchema schema;
+    final JsonSchema schema;
 
-    private JsonSchemaReaderFactory readerFactory;
-    private JsonValidationService service;
+    private final JsonSchemaReaderFactory readerFactory;
+    private final JsonValidationService service;
 
     /**
      * Creates a JsonSchemaValidator that validates against the json schema created from the given Bmm Model
@@ -78,7 +86,28 @@ public class JsonSchemaValidator {
                 .createSchemaReader(createByteArrayInputStream(schemaJson.toString()))) {
             schema = schemaReader.read();
         }
+        //resolve all other files now, so that validation never has to
+        for(String filename:schemaFiles.keySet()) {
+            if(schemaFiles.get(filename) != schemaJson) {
+                resolveSchema(URI.create(filename));
+            }
+        }
+    }
 
+    /**
+     * Get a shared validator for the given model, created on first use. Because the validator is thread-safe, it can
+     * be used by all threads that validate against this model.
+     *
+     * @param bmmModel the model to create the JSON Schema for
+     * @param allowAdditionalProperties whether to allow additional properties in the JSON
+     * @return the shared validator
+     */
+    public static JsonSchemaValidator getInstance(BmmModel bmmModel, boolean allowAdditionalProperties) {
+        synchronized (sharedValidators) {
+            return sharedValidators
+                    .computeIfAbsent(bmmModel, model -> new LinkedHashMap<>())
+                    .computeIfAbsent(allowAdditionalProperties, allow -> new JsonSchemaValidator(bmmModel, allow));
+        }
     }
 
 
@@ -101,12 +130,12 @@ public class JsonSchemaValidator {
         }
         try (JsonSchemaReader reader = readerFactory.createSchemaReader(createByteArrayInputStream(schema.toString()))) {
             resolvedSchema = reader.read();
-            //this caching approach is not perfect: as part of reader.read(), it will call this same function again to
-            //resolve any referenced schemas, before returning frmo reader.read().
-            //this can mean the result is not yet cached, and will be generated twice. Not something that can be easily fixed
-            // however if no cache is used at all, there will be OutOfMemoryExceptions or very long runtime.
-            resolvedSchemas.put(filename, resolvedSchema);
-            return resolvedSchema;
+            //as part of reader.read(), this same function is called again to resolve any referenced schemas, so
+            //computeIfAbsent cannot be used here. All files are resolved from the constructor, by a single thread, so
+            //a schema can only be read twice if files refer to each other in a cycle. putIfAbsent makes sure that
+            //everyone uses the same instance in that case.
+            JsonSchema existing = resolvedSchemas.putIfAbsent(filename, resolvedSchema);
+            return existing == null ? resolvedSchema : existing;
         }
 
     }
@@ -123,19 +152,50 @@ public class JsonSchemaValidator {
      * @throws IOException
      */
     public List<Problem> validate(String json) throws IOException {
+        return validate(createByteArrayInputStream(json));
+    }
+
+    /**
+     * Validate the json read from the given stream against the schema. The json is validated while it is read, it is
+     * not buffered first. The stream is closed afterwards.
+     * @param json the json, in UTF-8, UTF-16 or UTF-32
+     * @return the list of problems found during validation, or an empty list if the json validated
+     */
+    public List<Problem> validate(InputStream json) {
+        List<Problem> allProblems = new ArrayList<>();
+        try (JsonParser parser = service.createParser(json, schema, createProblemHandler(allProblems))) {
+            //the problems are reported per event, the events themselves are not needed
+            while(parser.hasNext()) {
+                parser.next();
+            }
+            return allProblems;
+        }
+    }
 
+    /**
+     * Validate the json read from the given reader against the schema. The json is validated while it is read, it is
+     * not buffered first. The reader is closed afterwards.
+     * @param json the json
+     * @return the list of problems found during validation, or an empty list if the json validated
+     */
+    public List<Problem> validate(Reader json) {
         List<Problem> allProblems = new ArrayList<>();
-        ProblemHandler problemHandler = new ProblemHandler() {
+        try (JsonParser parser = service.createParser(json, schema, createProblemHandler(allProblems))) {
+            //the problems are reported per event, the events themselves are not needed
+            while(parser.hasNext()) {
+                parser.next();
+            }
+            return allProblems;
+        }
+    }
+
+    private ProblemHandler createProblemHandler(List<Problem> allProblems) {
+        return new ProblemHandler() {
             @Override
             public void handleProblems(List<Problem> problems) {
                 allProblems.addAll(problems);
             }
         };
-
-        try (JsonReader reader = service.createReader(createByteArrayInputStream(json), schema, problemHandler)) {
-            JsonStructure structure = reader.read();
-            return allProblems;
-        }
     }
 
 }
@@ -0,0 +1,465 @@
+package com.nedap.archie.json;
+
+import com.nedap.archie.aom.ArchetypeSlot;
+import com.nedap.archie.aom.CArchetypeRoot;
+import com.nedap.archie.aom.CAttribute;
+import com.nedap.archie.aom.CComplexObject;
+import com.nedap.archie.aom.CObject;
+import com.nedap.archie.aom.CPrimitiveObject;
+import com.nedap.archie.aom.OperationalTemplate;
+import com.nedap.archie.aom.primitives.CBoolean;
+import com.nedap.archie.aom.primitives.CInteger;
+import com.nedap.archie.aom.primitives.CReal;
+import com.nedap.archie.aom.primitives.CString;
+import com.nedap.archie.aom.primitives.CTerminologyCode;
+import com.nedap.archie.base.Cardinality;
+import com.nedap.archie.base.Interval;
+import com.nedap.archie.base.MultiplicityInterval;
+import org.openehr.bmm.core.BmmClass;
+import org.openehr.bmm.core.BmmModel;
+import org.openehr.bmm.persistence.validation.BmmDefinitions;
+
+import jakarta.json.Json;
+import jakarta.json.JsonArrayBuilder;
+import jakarta.json.JsonBuilderFactory;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonObjectBuilder;
+import jakarta.json.JsonValue;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Creates a JSON Schema for the RM objects that conform to an OperationalTemplate. The schema contains the RM schema as
+ * created by the OpenEHRRmJSONSchemaCreator, plus the constraints of the template: archetype node ids, existence,
+ * cardinality, the lower bound of occurrences, local value sets, and the constraints on strings, integers, reals and
+ * booleans.
+ *
+ * JSON Schema draft 7 cannot express everything an archetype can, so a JSON document that validates against this
+ * schema can still be invalid according to the RMObjectValidator. Not checked are: upper bounds of occurrences, date,
+ * time and duration constraints, tuples, the contents of unfilled archetype slots and the rules. The schema is meant
+ * as a cheap check to reject malformed JSON early, not as a replacement of the RMObjectValidator.
+ *
+ * The RM schema is created once per instance, so reuse an instance to create schemas for several templates.
+ */
+public class OperationalTemplateJSONSchemaCreator {
+
+    private static final String TYPE_PROPERTY = "_type";
+    private static final String ARCHETYPE_NODE_ID = "archetype_node_id";
+
+    private final BmmModel bmmModel;
+    private final JsonBuilderFactory jsonFactory;
+    private boolean allowAdditionalProperties = true;
+    private String baseUri = "https://specifications.openehr.org/releases/ITS-JSON/latest/components/RM/Release-1.1.0/";
+
+    /** the RM schema, created lazily */
+    private JsonObject rmSchema;
+
+    public OperationalTemplateJSONSchemaCreator(BmmModel bmmModel) {
+        this.bmmModel = bmmModel;
+        this.jsonFactory = Json.createBuilderFactory(new HashMap<>());
+    }
+
+    public OperationalTemplateJSONSchemaCreator allowAdditionalProperties(boolean allowAdditionalProperties) {
+        synchronized (this) {
+            this.allowAdditionalProperties = allowAdditionalProperties;
+            this.rmSchema = null;
+        }
+        return this;
+    }
+
+    public OperationalTemplateJSONSchemaCreator withBaseUri(String baseUri) {
+        synchronized (this) {
+            this.baseUri = baseUri;
+            this.rmSchema = null;
+        }
+        return this;
+    }
+
+    /**
+     * Create the JSON Schema for the given template, in a single file with id baseUri + template id + ".json"
+     * @param template the template to create the schema for
+     * @return the JSON schema
+     */
+    public JsonObject create(OperationalTemplate template) {
+        JsonObject rmSchema = getRmSchema();
+
+        JsonArrayBuilder allOf = jsonFactory.createArrayBuilder(rmSchema.getJsonArray("allOf"));
+        allOf.add(createComplexObjectSchema(template.getDefinition(), false));
+
+        return jsonFactory.createObjectBuilder()
+                .add("$schema", rmSchema.getString("$schema"))
+                .add("$id", getSchemaId(template))
+                .add("allOf", allOf)
+                .add("definitions", rmSchema.getJsonObject("definitions"))
+                .build();
+    }
+
+    /**
+     * @return the $id of the schema of the given template
+     */
+    public synchronized String getSchemaId(OperationalTemplate template) {
+        return baseUri + template.getArchetypeId().getFullId() + JSONSchemaCreator.JSON_SCHEMA_FILE_EXTENSION;
+    }
+
+    private synchronized JsonObject getRmSchema() {
+        if(rmSchema == null) {
+            //a single file, so all references are local to the file and the definitions can be copied to the template schema
+            rmSchema = new OpenEHRRmJSONSchemaCreator()
+                    .allowAdditionalProperties(allowAdditionalProperties)
+                    .withBaseUri(baseUri)
+                    .splitInMultipleFiles(false)
+                    .create(bmmModel)
+                    .values().iterator().next();
+        }
+        return rmSchema;
+    }
+
+    private JsonObject createComplexObjectSchema(CComplexObject cObject, boolean checkNodeId) {
+        JsonObjectBuilder properties = jsonFactory.createObjectBuilder();
+        JsonArrayBuilder required = jsonFactory.createArrayBuilder();
+        boolean anyRequired = false;
+
+        List<String> typeNames = getAllowedTypeNames(cObject.getRmTypeName());
+        if(!typeNames.isEmpty()) {
+            properties.add(TYPE_PROPERTY, jsonFactory.createObjectBuilder().add("enum", jsonFactory.createArrayBuilder(typeNames)));
+        }
+        if(checkNodeId && isLocatable(cObject.getRmTypeName())) {
+            properties.add(ARCHETYPE_NODE_ID, jsonFactory.createObjectBuilder().add("enum", jsonFactory.createArrayBuilder(getNodeIds(cObject))));
+        }
+
+        for(CAttribute attribute:cObject.getAttributes()) {
+            String attributeName = attribute.getRmAttributeName();
+            MultiplicityInterval existence = attribute.getExistence();
+            if(existence != null && existence.isProhibited()) {
+                properties.add(attributeName, JsonValue.FALSE);
+                continue;
+            }
+            if(existence != null && existence.isMandatory() && (!attribute.isMultiple() || isNeverEmpty(attribute))) {
+                required.add(attributeName);
+                anyRequired = true;
+            }
+            JsonObject attributeSchema = createAttributeSchema(attribute);
+            if(attributeSchema != null) {
+                properties.add(attributeName, attributeSchema);
+            }
+        }
+
+        JsonObjectBuilder schema = jsonFactory.createObjectBuilder();
+        if(anyRequired) {
+            schema.add("required", required);
+        }
+        return schema.add("properties", properties).build();
+    }
+
+    private JsonObject createAttributeSchema(CAttribute attribute) {
+        if(!attribute.isMultiple()) {
+            return createChildrenSchema(attribute);
+        }
+        JsonObjectBuilder schema = jsonFactory.createObjectBuilder();
+        boolean constrained = false;
+        Cardinality cardinality = attribute.getCardinality();
+        if(cardinality != null && cardinality.getInterval() != null) {
+            MultiplicityInterval interval = cardinality.getInterval();
+            if(!interval.isLowerUnbounded() && interval.getLower() != null && interval.getLower() > 0) {
+                schema.add("minItems", interval.getLower());
+                constrained = true;
+            }
+            if(!interval.isUpperUnbounded() && interval.getUpper() != null) {
+                schema.add("maxItems", interval.getUpper());
+                constrained = true;
+            }
+        }
+        JsonObject itemSchema = createChildrenSchema(attribute);
+        if(itemSchema != null) {
+            schema.add("items", itemSchema);
+            constrained = true;
+        }
+        //draft 7 has no minContains or maxContains, so only 'at least one' can be checked for mandatory children
+        JsonArrayBuilder mandatoryChildren = jsonFactory.createArrayBuilder();
+        boolean anyMandatoryChild = false;
+        for(CObject child:attribute.getChildren()) {
+            if(child instanceof CComplexObject && child.getOccurrences() != null && child.getOccurrences().isMandatory()
+                    && isLocatable(child.getRmTypeName())) {
+                mandatoryChildren.add(jsonFactory.createObjectBuilder().add("contains", createNodeIdMatcher(child)));
+                anyMandatoryChild = true;
+            }
+        }
+        if(anyMandatoryChild) {
+            schema.add("allOf", mandatoryChildren);
+            constrained = true;
+        }
+        return constrained ? schema.build() : null;
+    }
+
+    /**
+     * Archie does not serialize empty collections with serializeEmptyCollections set to false, so a mandatory container
+     * attribute can only be required if it can never be empty
+     * @return true if the cardinality or the occurrences of the children require at least one child
+     */
+    private boolean isNeverEmpty(CAttribute attribute) {
+        Cardinality cardinality = attribute.getCardinality();
+        if(cardinality != null && cardinality.getInterval() != null) {
+            MultiplicityInterval interval = cardinality.getInterval();
+            if(!interval.isLowerUnbounded() && interval.getLower() != null && interval.getLower() > 0) {
+                return true;
+            }
+        }
+        for(CObject child:attribute.getChildren()) {
+            if(child.getOccurrences() != null && child.getOccurrences().isMandatory()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the schema for a single value of the attribute, or null if the template does not constrain it further than
+     * the RM does
+     */
+    private JsonObject createChildrenSchema(CAttribute attribute) {
+        List<JsonObject> primitiveSchemas = new ArrayList<>();
+        //alternatives, by the key used to decide which one applies
+        Map<String, List<CObject>> alternatives = new LinkedHashMap<>();
+        Map<String, JsonObject> matchers = new LinkedHashMap<>();
+        List<String> allowedNodeIds = new ArrayList<>();
+        boolean open = false;
+        boolean allLocatable = true;
+
+        for(CObject child:attribute.getChildren()) {
+            if(child.getOccurrences() != null && child.getOccurrences().isProhibited()) {
+                continue;
+            }
+            if(child instanceof CPrimitiveObject) {
+                JsonObject primitiveSchema = createPrimitiveSchema((CPrimitiveObject<?, ?>) child);
+                if(primitiveSchema == null) {
+                    return null;
+                }
+                primitiveSchemas.add(primitiveSchema);
+            } else if(child instanceof CComplexObject && !(child instanceof ArchetypeSlot)) {
+                String key;
+                if(isLocatable(child.getRmTypeName())) {
+                    List<String> nodeIds = getNodeIds(child);
+                    allowedNodeIds.addAll(nodeIds);
+                    key = String.join(",", nodeIds);
+                    matchers.putIfAbsent(key, createNodeIdMatcher(child));
+                } else {
+                    allLocatable = false;
+                    key = TYPE_PROPERTY + ":" + child.getRmTypeName();
+                    matchers.putIfAbsent(key, createTypeMatcher(child));
+                }
+                alternatives.computeIfAbsent(key, k -> new ArrayList<>()).add(child);
+            } else {
+                //slots and internal references: anything the RM allows
+                open = true;
+            }
+        }
+
+        if(!primitiveSchemas.isEmpty()) {
+            return primitiveSchemas.size() == 1 ? primitiveSchemas.get(0) : anyOf(primitiveSchemas);
+        }
+        if(alternatives.isEmpty()) {
+            return null;
+        }
+        if(!open && alternatives.size() == 1) {
+            List<CObject> children = alternatives.values().iterator().next();
+            if(children.size() == 1) {
+                return createComplexObjectSchema((CComplexObject) children.get(0), true);
+            }
+        }
+
+        JsonArrayBuilder allOf = jsonFactory.createArrayBuilder();
+        if(!open && allLocatable) {
+            allOf.add(jsonFactory.createObjectBuilder()
+                    .add("properties", jsonFactory.createObjectBuilder()
+                            .add(ARCHETYPE_NODE_ID, jsonFactory.createObjectBuilder().add("enum", jsonFactory.createArrayBuilder(allowedNodeIds)))));
+        }
+        for(Map.Entry<String, List<CObject>> entry:alternatives.entrySet()) {
+            List<JsonObject> schemas = new ArrayList<>();
+            for(CObject child:entry.getValue()) {
+                schemas.add(createComplexObjectSchema((CComplexObject) child, true));
+            }
+            allOf.add(jsonFactory.createObjectBuilder()
+                    .add("if", matchers.get(entry.getKey()))
+                    .add("then", schemas.size() == 1 ? schemas.get(0) : anyOf(schemas)));
+        }
+        return jsonFactory.createObjectBuilder().add("allOf", allOf).build();
+    }
+
+    private JsonObject createNodeIdMatcher(CObject cObject) {
+        return jsonFactory.createObjectBuilder()
+                .add("properties", jsonFactory.createObjectBuilder()
+                        .add(ARCHETYPE_NODE_ID, jsonFactory.createObjectBuilder().add("enum", jsonFactory.createArrayBuilder(getNodeIds(cObject)))))
+                .add("required", jsonFactory.createArrayBuilder().add(ARCHETYPE_NODE_ID))
+                .build();
+    }
+
+    private JsonObject createTypeMatcher(CObject cObject) {
+        return jsonFactory.createObjectBuilder()
+                .add("properties", jsonFactory.createObjectBuilder()
+                        .add(TYPE_PROPERTY, jsonFactory.createObjectBuilder().add("enum", jsonFactory.createArrayBuilder(getAllowedTypeNames(cObject.getRmTypeName())))))
+                .add("required", jsonFactory.createArrayBuilder().add(TYPE_PROPERTY))
+                .build();
+    }
+
+    /**
+     * The archetype node ids that RM objects of the given constraint can have. For archetype roots that is the node id
+     * as well as the archetype id
+     */
+    private List<String> getNodeIds(CObject cObject) {
+        List<String> result = new ArrayList<>();
+        result.add(cObject.getNodeId());
+        if(cObject instanceof CArchetypeRoot) {
+            String archetypeRef = ((CArchetypeRoot) cObject).getArchetypeRef();
+            if(archetypeRef != null && !archetypeRef.equals(cObject.getNodeId())) {
+                result.add(archetypeRef);
+            }
+        }
+        return result;
+    }
+
+    private JsonObject createPrimitiveSchema(CPrimitiveObject<?, ?> cPrimitiveObject) {
+        if(cPrimitiveObject instanceof CString) {
+            return createStringSchema((CString) cPrimitiveObject);
+        } else if (cPrimitiveObject instanceof CInteger) {
+            return createIntervalSchema(((CInteger) cPrimitiveObject).getConstraint());
+        } else if (cPrimitiveObject instanceof CReal) {
+            return createIntervalSchema(((CReal) cPrimitiveObject).getConstraint());
+        } else if (cPrimitiveObject instanceof CBoolean) {
+            List<Boolean> constraint = ((CBoolean) cPrimitiveObject).getConstraint();
+            if(constraint.isEmpty()) {
+                return null;
+            }
+            JsonArrayBuilder values = jsonFactory.createArrayBuilder();
+            constraint.forEach(values::add);
+            return jsonFactory.createObjectBuilder().add("enum", values).build();
+        } else if (cPrimitiveObject instanceof CTerminologyCode) {
+            return createTerminologyCodeSchema((CTerminologyCode) cPrimitiveObject);
+        }
+        //dates, times and durations are checked for their format by the RM schema, but not for their pattern or interval
+        return null;
+    }
+
+    private JsonObject createStringSchema(CString cString) {
+        if(cString.getConstraint().isEmpty()) {
+            return null;
+        }
+        List<JsonObject> alternatives = new ArrayList<>();
+        JsonArrayBuilder values = jsonFactory.createArrayBuilder();
+        boolean anyValue = false;
+        for(String constraint:cString.getConstraint()) {
+            if(constraint.length() > 1 && CString.isRegexConstraint(constraint)) {
+                //the ADL regexp must match the whole string, the JSON schema pattern just a part
+                String regex = constraint.substring(1, constraint.length() - 1);
+                alternatives.add(jsonFactory.createObjectBuilder().add("pattern", "^(?:" + regex + ")$").build());
+            } else {
+                values.add(constraint);
+                anyValue = true;
+            }
+        }
+        if(anyValue) {
+            alternatives.add(jsonFactory.createObjectBuilder().add("enum", values).build());
+        }
+        return alternatives.size() == 1 ? alternatives.get(0) : anyOf(alternatives);
+    }
+
+    private <T extends Number> JsonObject createIntervalSchema(List<Interval<T>> intervals) {
+        List<JsonObject> alternatives = new ArrayList<>();
+        for(Interval<T> interval:intervals) {
+            JsonObjectBuilder schema = jsonFactory.createObjectBuilder();
+            boolean bounded = false;
+            if(!interval.isLowerUnbounded() && interval.getLower() != null) {
+                addNumber(schema, interval.isLowerIncluded() ? "minimum" : "exclusiveMinimum", interval.getLower());
+                bounded = true;
+            }
+            if(!interval.isUpperUnbounded() && interval.getUpper() != null) {
+                addNumber(schema, interval.isUpperIncluded() ? "maximum" : "exclusiveMaximum", interval.getUpper());
+                bounded = true;
+            }
+            if(!bounded) {
+                //one of the alternatives allows any value
+                return null;
+            }
+            alternatives.add(schema.build());
+        }
+        if(alternatives.isEmpty()) {
+            return null;
+        }
+        return alternatives.size() == 1 ? alternatives.get(0) : anyOf(alternatives);
+    }
+
+    private void addNumber(JsonObjectBuilder schema, String name, Number value) {
+        if(value instanceof Long) {
+            schema.add(name, value.longValue());
+        } else {
+            schema.add(name, value.doubleValue());
+        }
+    }
+
+    /**
+     * Only local codes can be checked, the value set of codes in other terminologies is not known here
+     */
+    private JsonObject createTerminologyCodeSchema(CTerminologyCode cTerminologyCode) {
+        if(cTerminologyCode.getConstraint().isEmpty() || !cTerminologyCode.isConstraintRequired()) {
+            return null;
+        }
+        List<String> valueSet = cTerminologyCode.getValueSetExpanded();
+        if(valueSet.isEmpty()) {
+            return null;
+        }
+        JsonObject isLocal = jsonFactory.createObjectBuilder()
+                .add("properties", jsonFactory.createObjectBuilder()
+                        .add("terminology_id", jsonFactory.createObjectBuilder()
+                                .add("properties", jsonFactory.createObjectBuilder()
+                                        .add("value", jsonFactory.createObjectBuilder().add("const", "local")))))
+                .build();
+        JsonObject codeInValueSet = jsonFactory.createObjectBuilder()
+                .add("properties", jsonFactory.createObjectBuilder()
+                        .add("code_string", jsonFactory.createObjectBuilder().add("enum", jsonFactory.createArrayBuilder(valueSet))))
+                .build();
+        return jsonFactory.createObjectBuilder()
+                .add("if", isLocal)
+                .add("then", codeInValueSet)
+                .build();
+    }
+
+    private JsonObject anyOf(List<JsonObject> schemas) {
+        return jsonFactory.createObjectBuilder().add("anyOf", jsonFactory.createArrayBuilder(schemas)).build();
+    }
+
+    private boolean isLocatable(String rmTypeName) {
+        BmmClass classDefinition = bmmModel.getClassDefinition(rmTypeName);
+        return classDefinition != null && classDefinition.getFlatProperties().containsKey(ARCHETYPE_NODE_ID);
+    }
+
+    /**
+     * @return the values of _type allowed for the given RM type: the type itself and its non-abstract descendants. Empty
+     * if the type cannot be found
+     */
+    private List<String> getAllowedTypeNames(String rmTypeName) {
+        List<String> result = new ArrayList<>();
+        BmmClass classDefinition = bmmModel.getClassDefinition(rmTypeName);
+        if(classDefinition != null) {
+            addNonAbstractTypeNames(classDefinition, result);
+        }
+        return result;
+    }
+
+    private void addNonAbstractTypeNames(BmmClass bmmClass, List<String> result) {
+        String typeName = BmmDefinitions.typeNameToClassKey(bmmClass.getName());
+        if(result.contains(typeName)) {
+            return;
+        }
+        if(!bmmClass.isAbstract()) {
+            result.add(typeName);
+        }
+        for(String descendant:bmmClass.getImmediateDescendants()) {
+            BmmClass descendantDefinition = bmmModel.getClassDefinition(descendant);
+            if(descendantDefinition != null && descendantDefinition != bmmClass) {
+                addNonAbstractTypeNames(descendantDefinition, result);
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.nedap.archie.json;
+
+import com.google.common.base.Charsets;
+import com.nedap.archie.aom.OperationalTemplate;
+import com.nedap.archie.flattener.OperationalTemplateProvider;
+import org.leadpony.justify.api.JsonSchema;
+import org.leadpony.justify.api.JsonSchemaReader;
+import org.leadpony.justify.api.JsonValidationService;
+import org.leadpony.justify.api.Problem;
+import org.openehr.bmm.core.BmmModel;
+
+import jakarta.json.stream.JsonParser;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A cache of compiled JSON Schemas created from OperationalTemplates, keyed by template id. Creating and reading the
+ * schema of a template is expensive, validating against a compiled schema is cheap and streaming, so keep one instance
+ * of this class and use it for all validations.
+ *
+ * Thread-safe: the schema of a template is created only once, even if requested by several threads at the same time.
+ * Schemas of different templates are created concurrently.
+ *
+ * See OperationalTemplateJSONSchemaCreator for which constraints are and are not checked by the schema.
+ */
+public class OperationalTemplateJsonSchemaCache {
+
+    private final OperationalTemplateJSONSchemaCreator schemaCreator;
+    private final OperationalTemplateProvider templateProvider;
+    private final JsonValidationService service = JsonValidationService.newInstance();
+    private final ConcurrentHashMap<String, JsonSchema> schemas = new ConcurrentHashMap<>();
+
+    /**
+     * Create a cache for schemas of templates that are passed to the methods of this class
+     * @param bmmModel the RM to create the schemas for
+     * @param allowAdditionalProperties whether to allow additional properties in the JSON
+     */
+    public OperationalTemplateJsonSchemaCache(BmmModel bmmModel, boolean allowAdditionalProperties) {
+        this(bmmModel, allowAdditionalProperties, templateId -> null);
+    }
+
+    /**
+     * Create a cache that can also lookup templates by their id
+     * @param bmmModel the RM to create the schemas for
+     * @param allowAdditionalProperties whether to allow additional properties in the JSON
+     * @param templateProvider the provider of templates that are requested by id
+     */
+    public OperationalTemplateJsonSchemaCache(BmmModel bmmModel, boolean allowAdditionalProperties, OperationalTemplateProvider templateProvider) {
+        this.schemaCreator = new OperationalTemplateJSONSchemaCreator(bmmModel)
+                .allowAdditionalProperties(allowAdditionalProperties);
+        this.templateProvider = templateProvider;
+    }
+
+    /**
+     * @return the compiled schema of the given template, created if not yet in the cache
+     */
+    public JsonSchema getSchema(OperationalTemplate template) {
+        return schemas.computeIfAbsent(template.getArchetypeId().getFullId(), id -> createSchema(template));
+    }
+
+    /**
+     * @return the compiled schema of the template with the given id, or null if the template provider does not know the
+     * template
+     */
+    public JsonSchema getSchema(String templateId) {
+        JsonSchema schema = schemas.get(templateId);
+        if(schema != null) {
+            return schema;
+        }
+        OperationalTemplate template = templateProvider.getOperationalTemplate(templateId);
+        if(template == null) {
+            return null;
+        }
+        return schemas.computeIfAbsent(templateId, id -> createSchema(template));
+    }
+
+    /**
+     * Remove the schema of the template with the given id, for example because the template has been changed
+     */
+    public void invalidate(String templateId) {
+        schemas.remove(templateId);
+    }
+
+    public void clear() {
+        schemas.clear();
+    }
+
+    /**
+     * Validate the given json against the schema of the given template, reading the json as a stream
+     * @return the list of problems found during validation, or an empty list if the json validated
+     */
+    public List<Problem> validate(InputStream json, OperationalTemplate template) {
+        return validate(json, getSchema(template));
+    }
+
+    /**
+     * Validate the given json against the schema of the template with the given id, reading the json as a stream
+     * @return the list of problems found during validation, or an empty list if the json validated
+     * @throws IllegalArgumentException if the template cannot be found
+     */
+    public List<Problem> validate(InputStream json, String templateId) {
+        JsonSchema schema = getSchema(templateId);
+        if(schema == null) {
+            throw new IllegalArgumentException("template not found: " + templateId);
+        }
+        return validate(json, schema);
+    }
+
+    private List<Problem> validate(InputStream json, JsonSchema schema) {
+        List<Problem> allProblems = new ArrayList<>();
+        try (JsonParser parser = service.createParser(json, schema, allProblems::addAll)) {
+            while(parser.hasNext()) {
+                parser.next();
+            }
+            return allProblems;
+        }
+    }
+
+    private JsonSchema createSchema(OperationalTemplate template) {
+        String schemaJson = schemaCreator.create(template).toString();
+        try (JsonSchemaReader schemaReader = service.createSchemaReader(new ByteArrayInputStream(schemaJson.getBytes(Charsets.UTF_8)))) {
+            return schemaReader.read();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.nedap.archie.json.flat;
+
+import com.nedap.archie.ArchieLanguageConfiguration;
+import com.nedap.archie.aom.CAttribute;
+import com.nedap.archie.aom.CObject;
+import com.nedap.archie.aom.OperationalTemplate;
+import com.nedap.archie.aom.terminology.ArchetypeTerm;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The parts of the flat json format that are the same for every RM Object of one OperationalTemplate, for one
+ * FlatJsonGenerator and language: which constraint applies to which node, the names to filter, and the path segments
+ * with node ids. Create one with FlatJsonGenerator.compile, and use it for many RM Objects, so that the generator only
+ * has to extract the values and add the indices.
+ *
+ * The plan is filled lazily as the RM Objects are converted, so creating one is cheap, also for large templates.
+ * Thread-safe: a single plan can be used by several threads at the same time.
+ */
+public class FlatJsonExportPlan {
+
+    private final FlatJsonGenerator generator;
+    private final OperationalTemplate template;
+    private final String language;
+    private final IndexNotation indexNotation;
+    private final NodePlan root;
+
+    FlatJsonExportPlan(FlatJsonGenerator generator, OperationalTemplate template, String language, IndexNotation indexNotation) {
+        this.generator = generator;
+        this.template = template;
+        this.language = language;
+        this.indexNotation = indexNotation;
+        this.root = new NodePlan(template.getDefinition());
+    }
+
+    public OperationalTemplate getTemplate() {
+        return template;
+    }
+
+    public String getLanguage() {
+        return language;
+    }
+
+    FlatJsonGenerator getGenerator() {
+        return generator;
+    }
+
+    NodePlan getRoot() {
+        return root;
+    }
+
+    private String findTermText(CObject cObject) {
+        ArchetypeTerm term;
+        if(language == null) {
+            term = cObject.getTerm();
+        } else {
+            term = template.getTerm(cObject, language);
+            if(term == null) {
+                term = template.getTerm(cObject, ArchieLanguageConfiguration.getDefaultMeaningAndDescriptionLanguage());
+            }
+            if(term == null && template.getOriginalLanguage() != null && template.getOriginalLanguage().getCodeString() != null) {
+                term = template.getTerm(cObject, template.getOriginalLanguage().getCodeString());
+            }
+        }
+        return term == null ? null : term.getText();
+    }
+
+    /**
+     * The plan for the RM Objects constrained by one CObject
+     */
+    class NodePlan {
+        private final CObject cObject;
+        private final String termText;
+        private final Map<String, Optional<AttributePlan>> attributes = new ConcurrentHashMap<>();
+
+        NodePlan(CObject cObject) {
+            this.cObject = cObject;
+            this.termText = cObject.getNodeId() == null ? null : findTermText(cObject);
+        }
+
+        String getRmTypeName() {
+            return cObject.getRmTypeName();
+        }
+
+        /**
+         * @return the text of the term of this node, to filter names that are the same. Null if there is no term
+         */
+        String getTermText() {
+            return termText;
+        }
+
+        /**
+         * @return the plan of the given attribute, or null if the attribute is not constrained
+         */
+        AttributePlan getAttribute(String attributeName) {
+            return attributes.computeIfAbsent(attributeName, name -> {
+                CAttribute cAttribute = cObject.getAttribute(name);
+                return cAttribute == null ? Optional.empty() : Optional.of(new AttributePlan(cAttribute));
+            }).orElse(null);
+        }
+    }
+
+    /**
+     * The plan for the values of one CAttribute
+     */
+    class AttributePlan {
+        private final CAttribute cAttribute;
+        private final boolean typeAlternatives;
+        private final Map<String, Optional<NodePlan>> childrenByNodeId = new ConcurrentHashMap<>();
+        private final Map<String, Optional<NodePlan>> childrenByRmTypeName = new ConcurrentHashMap<>();
+        /** per node id, the path segment without index, and the path segment up to the index if there is one */
+        private final Map<String, String[]> segments = new ConcurrentHashMap<>();
+
+        AttributePlan(CAttribute cAttribute) {
+            this.cAttribute = cAttribute;
+            this.typeAlternatives = cAttribute.getChildren().size() > 1;
+        }
+
+        /**
+         * @return whether other alternatives exist that could have been added in the archetype
+         */
+        boolean hasTypeAlternatives() {
+            return typeAlternatives;
+        }
+
+        /**
+         * @return the plan of the child with the given node id, or null if not constrained
+         */
+        NodePlan getChild(String nodeId) {
+            return childrenByNodeId.computeIfAbsent(nodeId, id -> Optional.ofNullable(cAttribute.getChild(id)).map(NodePlan::new)).orElse(null);
+        }
+
+        /**
+         * @return the plan of the only child with the given RM type, or null if there is not exactly one such child
+         */
+        NodePlan getChildByRmTypeName(String rmTypeName) {
+            return childrenByRmTypeName.computeIfAbsent(rmTypeName, typeName -> {
+                List<CObject> children = cAttribute.getChildrenByRmTypeName(typeName);
+                return children != null && children.size() == 1 ? Optional.of(new NodePlan(children.get(0))) : Optional.empty();
+            }).orElse(null);
+        }
+
+        /**
+         * @return the path segment for a value of this attribute with the given node id and optional index
+         */
+        String getSegment(String attributeName, String nodeId, Integer index) {
+            String[] nodeIdSegments = segments.computeIfAbsent(nodeId, id -> new String[] {
+                    attributeName + "[" + id + "]",
+                    indexNotation == IndexNotation.AFTER_A_COLON ? attributeName + "[" + id + "]:" : attributeName + "[" + id + ","
+            });
+            if(index == null) {
+                return nodeIdSegments[0];
+            } else if (indexNotation == IndexNotation.AFTER_A_COLON) {
+                return nodeIdSegments[1] + index;
+            }
+            return nodeIdSegments[1] + index + "]";
+        }
+    }
+}
@@ -1,28 +1,36 @@
 package com.nedap.archie.json.flat;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.nedap.archie.ArchieLanguageConfiguration;
 import com.nedap.archie.aom.Archetype;
-import com.nedap.archie.aom.CAttribute;
-import com.nedap.archie.aom.CObject;
 import com.nedap.archie.aom.OperationalTemplate;
-import com.nedap.archie.aom.terminology.ArchetypeTerm;
 import com.nedap.archie.base.OpenEHRBase;
 import com.nedap.archie.datetime.DateTimeSerializerFormatters;
+import com.nedap.archie.json.flat.FlatJsonExportPlan.AttributePlan;
+import com.nedap.archie.json.flat.FlatJsonExportPlan.NodePlan;
 import com.nedap.archie.rminfo.ModelInfoLookup;
 import com.nedap.archie.rminfo.RMAttributeInfo;
 import com.nedap.archie.rminfo.RMTypeInfo;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.lang.reflect.InvocationTargetException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.time.temporal.ChronoUnit;
 import java.time.temporal.Temporal;
 import java.time.temporal.TemporalAccessor;
 import java.time.temporal.TemporalAmount;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
@@ -32,7 +40,8 @@ import java.util.stream.Collectors;
  * Configurable to support several formats used by several vendors for the same concept
  *
  * This generator generates a Map&lt;String, Object&gt;, which can be serializes using the ObjectMapper in JacksonUtil.getObjectMapper()
- * or any other object mapper
+ * or any other object mapper. For large amounts of data, the paths and values can also be written directly to a
+ * Jackson JsonGenerator or to a FlatJsonValueWriter, without building a map.
  */
 public class FlatJsonGenerator {
 
@@ -49,6 +58,9 @@ public class FlatJsonGenerator {
     private boolean filterTypes;
     private IgnoredAttribute nameProperty;
 
+    /** the attributes to write per RM class, excluding ignored and computed attributes */
+    private final Map<Class<?>, List<IncludedAttribute>> includedAttributes = new ConcurrentHashMap<>();
+
 
     /**
      * Construct the FlatJsonGenerator
@@ -86,9 +98,36 @@ public class FlatJsonGenerator {
         if(language != null) {
             ArchieLanguageConfiguration.setThreadLocalDescriptiongAndMeaningLanguage(language);
         }
+        return buildPathsAndValues(rmObject, archetype == null ? null : compile(archetype, language));
+    }
+
+    /**
+     * Compile the parts of the flat json format that are the same for all RM Objects of the given template. Use the
+     * result to convert many RM Objects of the same template, with the methods that accept a FlatJsonExportPlan.
+     * @param template the template to compile
+     * @param language the language of the names to filter, or null to use the current language configuration
+     * @return the export plan, to be used with this generator only
+     */
+    public FlatJsonExportPlan compile(OperationalTemplate template, String language) {
+        return new FlatJsonExportPlan(this, template, language, indexNotation);
+    }
+
+    /**
+     * Build the actual flat json format for the given RM Object, using a plan compiled for its template
+     * @param rmObject the RM Object to build the flat json format for
+     * @param plan the plan compiled with compile(template, language), or null if no template is available
+     * @return a Map with paths as the key, and primitive objects as the value, to be serialized with an ObjectMapper
+     * @throws DuplicateKeyException in case converting this to flat json would result in having the two exact paths at once.
+     */
+    public Map<String, Object> buildPathsAndValues(OpenEHRBase rmObject, FlatJsonExportPlan plan) throws DuplicateKeyException {
+        checkPlan(plan);
         Map<String, Object> result = new LinkedHashMap<>();
-        CObject definition = archetype == null ? null : archetype.getDefinition();
-        buildPathsAndValuesInner(result, null, "/", rmObject, definition, false);
+        try {
+            buildPathsAndValuesInner((path, value) -> storeValue(result, path, value), false, null, "/", rmObject, plan == null ? null : plan.getRoot(), false);
+        } catch (IOException e) {
+            //storing in a map does not cause IOExceptions
+            throw new UncheckedIOException(e);
+        }
 
         if(humanReadableFormat) {
             String rootName = modelInfoLookup.getNameFromRMObject(rmObject);
@@ -102,37 +141,139 @@ public class FlatJsonGenerator {
 
     }
 
-    private void buildPathsAndValuesInner(Map<String, Object> result, RMTypeInfo rmAttributeTypeInfo, String pathSoFar, OpenEHRBase rmObject, CObject cObject, boolean typeAlternativesPresent) throws DuplicateKeyException {
+    /**
+     * Write the flat json format for the given RM Object as a JSON object to the given JsonGenerator, without building
+     * a map first. Values are written as they are generated.
+     * @param rmObject the RM Object to build the flat json format for
+     * @param archetype the operational template of the RM Object, or null if not available
+     * @param language the language of the names to filter, or null to use the current language configuration
+     * @param generator the JsonGenerator to write the JSON object to
+     * @throws IOException in case writing to the JsonGenerator fails
+     * @throws DuplicateKeyException in case converting this to flat json would result in having the two exact paths at once.
+     */
+    public void writePathsAndValues(OpenEHRBase rmObject, OperationalTemplate archetype, String language, JsonGenerator generator) throws IOException, DuplicateKeyException {
+        if(language != null) {
+            ArchieLanguageConfiguration.setThreadLocalDescriptiongAndMeaningLanguage(language);
+        }
+        writePathsAndValues(rmObject, archetype == null ? null : compile(archetype, language), generator);
+    }
+
+    /**
+     * Write the flat json format for the given RM Object as a JSON object to the given JsonGenerator, using a plan
+     * compiled for its template.
+     * @see #writePathsAndValues(OpenEHRBase, OperationalTemplate, String, JsonGenerator)
+     */
+    public void writePathsAndValues(OpenEHRBase rmObject, FlatJsonExportPlan plan, JsonGenerator generator) throws IOException, DuplicateKeyException {
+        generator.writeStartObject();
+        writePathsAndValues(rmObject, plan, (path, value) -> {
+            generator.writeFieldName(path);
+            writeValue(generator, value);
+        });
+        generator.writeEndObject();
+    }
+
+    /**
+     * Write the flat json format for the given RM Object to the given writer, in the same order as buildPathsAndValues,
+     * without building a map first.
+     *
+     * Paths are only checked for duplicates where they can actually occur: between the elements of a single
+     * collection, where different node ids and indices could result in the same path. The paths of different
+     * attributes can never be the same.
+     * @param rmObject the RM Object to build the flat json format for
+     * @param archetype the operational template of the RM Object, or null if not available
+     * @param language the language of the names to filter, or null to use the current language configuration
+     * @param writer the writer to receive the paths and values
+     * @throws IOException in case the writer throws one
+     * @throws DuplicateKeyException in case converting this to flat json would result in having the two exact paths at once.
+     */
+    public void writePathsAndValues(OpenEHRBase rmObject, OperationalTemplate archetype, String language, FlatJsonValueWriter writer) throws IOException, DuplicateKeyException {
+        if(language != null) {
+            ArchieLanguageConfiguration.setThreadLocalDescriptiongAndMeaningLanguage(language);
+        }
+        writePathsAndValues(rmObject, archetype == null ? null : compile(archetype, language), writer);
+    }
+
+    /**
+     * Write the flat json format for the given RM Object to the given writer, using a plan compiled for its template.
+     * @see #writePathsAndValues(OpenEHRBase, OperationalTemplate, String, FlatJsonValueWriter)
+     */
+    public void writePathsAndValues(OpenEHRBase rmObject, FlatJsonExportPlan plan, FlatJsonValueWriter writer) throws IOException, DuplicateKeyException {
+        checkPlan(plan);
+        FlatJsonValueWriter actualWriter = writer;
+        if(humanReadableFormat) {
+            String rootName = modelInfoLookup.getNameFromRMObject(rmObject);
+            if(rootName != null) {
+                actualWriter = (path, value) -> writer.write(addUnderScores(rootName) + path, value);
+            }
+        }
+        buildPathsAndValuesInner(actualWriter, true, null, "/", rmObject, plan == null ? null : plan.getRoot(), false);
+    }
+
+    private void checkPlan(FlatJsonExportPlan plan) {
+        if(plan != null && plan.getGenerator() != this) {
+            throw new IllegalArgumentException("the export plan has been compiled by a different FlatJsonGenerator");
+        }
+    }
+
+    private void writeValue(JsonGenerator generator, Object value) throws IOException {
+        if(value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            generator.writeNumber(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            generator.writeNumber(((Number) value).doubleValue());
+        } else if (value instanceof BigDecimal) {
+            generator.writeNumber((BigDecimal) value);
+        } else if (value instanceof BigInteger) {
+            generator.writeNumber((BigInteger) value);
+        } else {
+            //strings, and durations, which are serialized as their ISO 8601 string
+            generator.writeString(value.toString());
+        }
+    }
+
+    private void buildPathsAndValuesInner(FlatJsonValueWriter writer, boolean checkCollectionDuplicates, RMTypeInfo rmAttributeTypeInfo, String pathSoFar, OpenEHRBase rmObject, NodePlan node, boolean typeAlternativesPresent) throws IOException, DuplicateKeyException {
 
         if(rmObject == null) {
             return;
         }
-        RMTypeInfo typeInfo = modelInfoLookup.getTypeInfo(rmObject.getClass());
-        if(shouldAddTypeName(rmAttributeTypeInfo, rmObject, cObject, typeAlternativesPresent)) {
-            storeValue(result, joinPath(pathSoFar, typeIdPropertyName, null, null, "/"), getTypeIdFromValue(rmObject));
+        if(shouldAddTypeName(rmAttributeTypeInfo, rmObject, node, typeAlternativesPresent)) {
+            writer.write(joinPath(pathSoFar, typeIdPropertyName, null, null, "/"), getTypeIdFromValue(rmObject));
         }
 
         String name = modelInfoLookup.getNameFromRMObject(rmObject);
 
-        for(String attributeName:typeInfo.getAttributes().keySet()) {
-            CAttribute cAttribute = cObject == null ? null : cObject.getAttribute(attributeName);
-            RMAttributeInfo attributeInfo = typeInfo.getAttributes().get(attributeName);
-            if(!attributeInfo.isComputed() && !isIgnored(typeInfo, attributeName) && attributeInfo.getGetMethod() != null) {
-                if(filterNames && cObject != null && isNameAttribute(typeInfo, attributeName)) {
-                    ArchetypeTerm term = cObject.getTerm();
-                    if(term != null && name.equals(term.getText())) {
-                        continue;
-                    }
-                }
-                try {
-                    Object child = attributeInfo.getGetMethod().invoke(rmObject);
-                    addAttribute(result, pathSoFar, rmObject, child, attributeName,null, cAttribute);
-                } catch (IllegalAccessException | InvocationTargetException e) {
-                    throw new RuntimeException(e);//TODO: fine for now...
+        for(IncludedAttribute attribute:getIncludedAttributes(rmObject.getClass())) {
+            String attributeName = attribute.attributeInfo.getRmName();
+            AttributePlan attributePlan = node == null ? null : node.getAttribute(attributeName);
+            if(filterNames && node != null && attribute.nameAttribute) {
+                String termText = node.getTermText();
+                if(termText != null && name.equals(termText)) {
+                    continue;
                 }
             }
+            try {
+                Object child = attribute.attributeInfo.getGetMethod().invoke(rmObject);
+                addAttribute(writer, checkCollectionDuplicates, pathSoFar, attribute, child, null, attributePlan, null);
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                throw new RuntimeException(e);//TODO: fine for now...
+            }
+        }
+    }
 
+    private List<IncludedAttribute> getIncludedAttributes(Class<?> clazz) {
+        List<IncludedAttribute> result = includedAttributes.get(clazz);
+        if(result == null) {
+            RMTypeInfo typeInfo = modelInfoLookup.getTypeInfo(clazz);
+            result = new ArrayList<>();
+            for(RMAttributeInfo attributeInfo:typeInfo.getAttributes().values()) {
+                String attributeName = attributeInfo.getRmName();
+                if(!attributeInfo.isComputed() && !isIgnored(typeInfo, attributeName) && attributeInfo.getGetMethod() != null) {
+                    result.add(new IncludedAttribute(attributeInfo, getAttributeTypeInfo(attributeInfo), isNameAttribute(typeInfo, attributeName)));
+                }
+            }
+            result = Collections.unmodifiableList(result);
+            includedAttributes.put(clazz, result);
         }
+        return result;
     }
 
     /**
@@ -149,9 +290,9 @@ public class FlatJsonGenerator {
      * Note that at the root node of the data and the archetype, rmAttributeTypeInfo will be null, and
      * the type info therefore will always be added.
      */
-    private boolean shouldAddTypeName(RMTypeInfo rmAttributeTypeInfo, OpenEHRBase rmObject, CObject cObject, boolean typeAlternativesPresent) {
+    private boolean shouldAddTypeName(RMTypeInfo rmAttributeTypeInfo, OpenEHRBase rmObject, NodePlan node, boolean typeAlternativesPresent) {
         return !sameType(rmAttributeTypeInfo, rmObject) &&
-                ( !filterTypes || !sameType(cObject, rmObject) || typeAlternativesPresent);
+                ( !filterTypes || !sameType(node, rmObject) || typeAlternativesPresent);
     }
 
     private void storeValue(Map<String, Object> result, String path, Object value) throws DuplicateKeyException {
@@ -163,10 +304,12 @@ public class FlatJsonGenerator {
     }
 
     private boolean isIgnored(RMTypeInfo typeInfo, String attributeName) {
-        return ignoredAttributes.stream()
-                .filter( ignored ->
-                    typeInfo.isDescendantOrEqual(ignored.getType()) && attributeName.equalsIgnoreCase(ignored.getAttributeName())
-                ).findAny().isPresent();
+        for(IgnoredAttribute ignored:ignoredAttributes) {
+            if(typeInfo.isDescendantOrEqual(ignored.getType()) && attributeName.equalsIgnoreCase(ignored.getAttributeName())) {
+                return true;
+            }
+        }
+        return false;
     }
 
 
@@ -195,11 +338,11 @@ public class FlatJsonGenerator {
         return modelInfoLookup.getTypeInfo(rmObject.getClass()).equals(typeInfo);
     }
 
-    private boolean sameType(CObject cObject, OpenEHRBase rmObject) {
-        if(cObject == null || rmObject == null) {
+    private boolean sameType(NodePlan node, OpenEHRBase rmObject) {
+        if(node == null || rmObject == null) {
             return false;
         }
-        return modelInfoLookup.getTypeInfo(rmObject.getClass()).getRmName().equals(cObject.getRmTypeName());
+        return modelInfoLookup.getTypeInfo(rmObject.getClass()).getRmName().equals(node.getRmTypeName());
     }
 
     private boolean typeHasDescendants(RMTypeInfo typeInfo) {
@@ -209,42 +352,43 @@ public class FlatJsonGenerator {
         return !typeInfo.getDirectDescendantClasses().isEmpty();
     }
 
-    private void addAttribute(Map<String, Object> result, String pathSoFar, OpenEHRBase parent, Object child, String attributeName, Integer index, CAttribute cAttribute) throws DuplicateKeyException {
-
+    /**
+     * @param elementPaths the paths of the previous elements of the collection this child is part of, to check for
+     *                     duplicates. Null if not part of a collection or not checking
+     */
+    private void addAttribute(FlatJsonValueWriter writer, boolean checkCollectionDuplicates, String pathSoFar, IncludedAttribute attribute, Object child, Integer index, AttributePlan attributePlan, Set<String> elementPaths) throws IOException, DuplicateKeyException {
+        String attributeName = attribute.attributeInfo.getRmName();
         if(child instanceof OpenEHRBase) {
-            String newPath = joinPath(pathSoFar, attributeName, (OpenEHRBase) child, index, "/");
-            //TODO: get correct type info here
-            RMAttributeInfo attributeInfo = modelInfoLookup.getAttributeInfo(parent.getClass(), attributeName);
-            RMTypeInfo typeInfo = getAttributeTypeInfo(attributeInfo);
+            String newPath = joinPath(pathSoFar, attributeName, (OpenEHRBase) child, index, "/", attributePlan);
+            checkDuplicateElement(elementPaths, newPath);
+            RMTypeInfo typeInfo = attribute.typeInfo;
 
             RMTypeInfo modelTypeInfo = modelInfoLookup.getTypeInfo(child.getClass());
-            CObject cObject = null;
+            NodePlan node = null;
             //whether other alternatives exist that could have been added in the archetype
             boolean otherTypeAlternatives = false;
 
             String archetypeNodeIdFromRMObject = modelInfoLookup.getArchetypeNodeIdFromRMObject(child);
-            if(cAttribute != null) {
+            if(attributePlan != null) {
                 if (archetypeNodeIdFromRMObject == null) {
                     if(modelTypeInfo != null) {
                         //do a type-name lookup. Also look for sibling alternatives
-                        List<CObject> childrenByRmTypeName = cAttribute.getChildrenByRmTypeName(modelTypeInfo.getRmName());
-                        if(childrenByRmTypeName != null && childrenByRmTypeName.size() == 1) {
-                            cObject = childrenByRmTypeName.get(0);
-                            otherTypeAlternatives = cAttribute.getChildren().size() > 1;
-                        }
+                        node = attributePlan.getChildByRmTypeName(modelTypeInfo.getRmName());
+                        otherTypeAlternatives = node != null && attributePlan.hasTypeAlternatives();
                     }
                 } else {
-                    cObject = cAttribute.getChild(archetypeNodeIdFromRMObject);
+                    node = attributePlan.getChild(archetypeNodeIdFromRMObject);
                 }
             }
 
-            buildPathsAndValuesInner(result, typeInfo, newPath, (OpenEHRBase) child, cObject, otherTypeAlternatives);
+            buildPathsAndValuesInner(writer, checkCollectionDuplicates, typeInfo, newPath, (OpenEHRBase) child, node, otherTypeAlternatives);
 
             String archetypeId = modelInfoLookup.getArchetypeIdFromArchetypedRmObject(child);
             if(archetypeId != null) {
-                storeValue(result, newPath, archetypeId);
+                writer.write(newPath, archetypeId);
             }
         } else if (child instanceof Collection) {
+            Set<String> newElementPaths = checkCollectionDuplicates ? new HashSet<>() : null;
             if(separateIndicesPerNodeId) {
                 Map<String, Integer> amountsPerNodeId = new HashMap<>();
                 for (Object c : (Collection<?>) child) {
@@ -253,11 +397,11 @@ public class FlatJsonGenerator {
                     String archetypeNodeId = modelInfoLookup.getArchetypeNodeIdFromRMObject(c);
                     if (archetypeNodeId != null) {
                         Integer numberOfPreviousOccurrences = amountsPerNodeId.get(archetypeNodeId);
-                        addAttribute(result, pathSoFar, parent, c, attributeName, numberOfPreviousOccurrences, cAttribute);
+                        addAttribute(writer, checkCollectionDuplicates, pathSoFar, attribute, c, numberOfPreviousOccurrences, attributePlan, newElementPaths);
                         numberOfPreviousOccurrences = numberOfPreviousOccurrences == null ? 1 : numberOfPreviousOccurrences + 1;
                         amountsPerNodeId.put(archetypeNodeId, numberOfPreviousOccurrences);
                     } else {
-                        addAttribute(result, pathSoFar, parent, c, attributeName, numberOfNonLocatables == 1 ? null : numberOfNonLocatables, cAttribute);
+                        addAttribute(writer, checkCollectionDuplicates, pathSoFar, attribute, c, numberOfNonLocatables == 1 ? null : numberOfNonLocatables, attributePlan, newElementPaths);
                         numberOfNonLocatables++;
                     }
                 }
@@ -265,15 +409,16 @@ public class FlatJsonGenerator {
             } else {
                 int collectionIndex = 1;
                 for (Object c : (Collection<?>) child) {
-                    addAttribute(result, pathSoFar, parent, c, attributeName, collectionIndex, cAttribute);
+                    addAttribute(writer, checkCollectionDuplicates, pathSoFar, attribute, c, collectionIndex, attributePlan, newElementPaths);
                     collectionIndex++;
                 }
             }
         } else if(child != null) {
             String newPath = joinPath(pathSoFar, attributeName, null, index, writePipesForPrimitiveTypes ? "|" : "/");
+            checkDuplicateElement(elementPaths, newPath);
 
             if(child instanceof Number) {
-                storeValue(result, newPath, child);
+                writer.write(newPath, child);
             } else if (child instanceof TemporalAccessor) {
                 Temporal t = (Temporal) child;
                 boolean hoursSupported = t.isSupported(ChronoUnit.HOURS);
@@ -281,23 +426,29 @@ public class FlatJsonGenerator {
 
                 if(hoursSupported && monthsSupported) {
                     //datetime
-                    storeValue(result, newPath, DateTimeSerializerFormatters.ISO_8601_DATE_TIME.format(t));
+                    writer.write(newPath, DateTimeSerializerFormatters.ISO_8601_DATE_TIME.format(t));
                 } else if (monthsSupported) {
                     //date
-                    storeValue(result, newPath, DateTimeSerializerFormatters.ISO_8601_DATE.format(t));
+                    writer.write(newPath, DateTimeSerializerFormatters.ISO_8601_DATE.format(t));
                 } else if (hoursSupported) {
                     //time
-                    storeValue(result, newPath, DateTimeSerializerFormatters.ISO_8601_TIME.format(t));
+                    writer.write(newPath, DateTimeSerializerFormatters.ISO_8601_TIME.format(t));
                 }
             } else if (child instanceof TemporalAmount) {
                 //duration or period. now just a toString, should this be a specific formatter?
-                storeValue(result, newPath, child);
+                writer.write(newPath, child);
             } else {
-                storeValue(result, newPath, child.toString());
+                writer.write(newPath, child.toString());
             }
         }
     }
 
+    private void checkDuplicateElement(Set<String> elementPaths, String path) throws DuplicateKeyException {
+        if(elementPaths != null && !elementPaths.add(path)) {
+            throw new DuplicateKeyException("cannot add path twice: " + path);
+        }
+    }
+
     private RMTypeInfo getAttributeTypeInfo(RMAttributeInfo attributeInfo) {
         RMTypeInfo typeInfo = null;
         if(attributeInfo != null) {
@@ -307,12 +458,21 @@ public class FlatJsonGenerator {
     }
 
     private String joinPath(String pathSoFar, String attributeName, OpenEHRBase rmObject, Integer index, String pathSeparator) {
-        String name = modelInfoLookup.getNameFromRMObject(rmObject);
+        return joinPath(pathSoFar, attributeName, rmObject, index, pathSeparator, null);
+    }
+
+    /**
+     * @param attributePlan the plan of the attribute, to reuse its path segments, or null if not available
+     */
+    private String joinPath(String pathSoFar, String attributeName, OpenEHRBase rmObject, Integer index, String pathSeparator, AttributePlan attributePlan) {
+        String name = humanReadableFormat ? modelInfoLookup.getNameFromRMObject(rmObject) : null;
         boolean wroteHumanReadableName = name != null && humanReadableFormat;
         String newPathSegment = wroteHumanReadableName ? addUnderScores(name) : attributeName;
         String nodeId = modelInfoLookup.getArchetypeNodeIdFromRMObject(rmObject);
 
-        if(nodeId != null && !wroteHumanReadableName) {
+        if(nodeId != null && !wroteHumanReadableName && attributePlan != null) {
+            newPathSegment = attributePlan.getSegment(attributeName, nodeId, index);
+        } else if(nodeId != null && !wroteHumanReadableName) {
 
             if(indexNotation == IndexNotation.AFTER_A_COLON) {
                 newPathSegment = newPathSegment + "[" + nodeId + "]";
@@ -347,6 +507,18 @@ public class FlatJsonGenerator {
         return name.replaceAll("[^a-zA-Z0-9]", "_");
     }
 
+    private static class IncludedAttribute {
+        private final RMAttributeInfo attributeInfo;
+        private final RMTypeInfo typeInfo;
+        private final boolean nameAttribute;
+
+        IncludedAttribute(RMAttributeInfo attributeInfo, RMTypeInfo typeInfo, boolean nameAttribute) {
+            this.attributeInfo = attributeInfo;
+            this.typeInfo = typeInfo;
+            this.nameAttribute = nameAttribute;
+        }
+    }
+
     private class IgnoredAttribute {
         private RMTypeInfo type;
         private String attributeName;
@@ -0,0 +1,16 @@
+package com.nedap.archie.json.flat;
+
+/**
+ * Exception to indicate that a flat json format cannot be converted to an RM Object, for example because a path refers
+ * to an attribute that does not exist, or a value cannot be converted to the type of its attribute.
+ */
+public class FlatJsonParseException extends Exception {
+
+    public FlatJsonParseException(String message) {
+        super(message);
+    }
+
+    public FlatJsonParseException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,442 @@
+package com.nedap.archie.json.flat;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.collect.Lists;
+import com.nedap.archie.ArchieLanguageConfiguration;
+import com.nedap.archie.aom.CAttribute;
+import com.nedap.archie.aom.CObject;
+import com.nedap.archie.aom.OperationalTemplate;
+import com.nedap.archie.base.OpenEHRBase;
+import com.nedap.archie.creation.RMObjectCreator;
+import com.nedap.archie.datetime.DateTimeParsers;
+import com.nedap.archie.rminfo.ModelInfoLookup;
+import com.nedap.archie.rminfo.RMAttributeInfo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URI;
+import java.time.temporal.Temporal;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalAmount;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A parser that converts the Flat JSON format, as generated by the FlatJsonGenerator, back to an RM Object. Can handle
+ * any RM Object of any model if you supply it with the correct ModelInfoLookup and configuration.
+ *
+ * Every distinct object path in the input is resolved only once, so parsing time is linear in the number of entries.
+ * The names, node ids and types that have been left out of the flat format because they are the same as in the
+ * archetype are restored from the given OperationalTemplate. Elements of a collection are added in the order in which
+ * they first appear in the input, which is the order in which the FlatJsonGenerator writes them.
+ *
+ * Thread-safe: a single parser can be used for any number of parses at the same time.
+ */
+public class FlatJsonParser {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final ModelInfoLookup modelInfoLookup;
+    private final RMObjectCreator creator;
+    private final String typeIdPropertyName;
+
+    /**
+     * Construct the FlatJsonParser
+     * @param modelInfoLookup the model info lookup use to define the model
+     * @param config the configuration for the flat json format
+     */
+    public FlatJsonParser(ModelInfoLookup modelInfoLookup, FlatJsonFormatConfiguration config) {
+        this.modelInfoLookup = modelInfoLookup;
+        this.creator = new RMObjectCreator(modelInfoLookup);
+        this.typeIdPropertyName = config.getTypeIdPropertyName();
+    }
+
+    /**
+     * Parse the given paths and values to an RM Object, without an archetype. All types must be present in the input
+     * @param pathsAndValues the flat json format, with paths as keys
+     * @return the created RM Object
+     * @throws FlatJsonParseException in case the input cannot be converted to an RM Object
+     */
+    public OpenEHRBase parse(Map<String, ?> pathsAndValues) throws FlatJsonParseException {
+        return parse(pathsAndValues, null, null);
+    }
+
+    /**
+     * Parse the given paths and values to an RM Object
+     * @param pathsAndValues the flat json format, with paths as keys
+     * @param template the template the flat json format was generated with, or null if none was used
+     * @param language the language of the names left out of the flat format because they are the same as in the
+     *                 template, or null to use the current language configuration
+     * @return the created RM Object
+     * @throws FlatJsonParseException in case the input cannot be converted to an RM Object
+     */
+    public OpenEHRBase parse(Map<String, ?> pathsAndValues, OperationalTemplate template, String language) throws FlatJsonParseException {
+        if(language != null) {
+            ArchieLanguageConfiguration.setThreadLocalDescriptiongAndMeaningLanguage(language);
+        }
+        ParseContext context = new ParseContext(template);
+        //types are needed before the objects they apply to can be created, so find them first
+        for(Map.Entry<String, ?> entry:pathsAndValues.entrySet()) {
+            String objectPath = getTypeObjectPath(entry.getKey());
+            if(objectPath != null) {
+                context.types.put(objectPath, String.valueOf(entry.getValue()));
+            }
+        }
+        OpenEHRBase root = context.createRoot();
+        for(Map.Entry<String, ?> entry:pathsAndValues.entrySet()) {
+            if(entry.getValue() == null) {
+                continue;
+            }
+            String objectPath = getTypeObjectPath(entry.getKey());
+            if(objectPath == null) {
+                context.setValue(entry.getKey(), entry.getValue());
+            } else {
+                //an object without any values still has to be created
+                context.getNode(objectPath);
+            }
+        }
+        return root;
+    }
+
+    /**
+     * Parse the path/value entries from the given iterator to an RM Object
+     * @see #parse(Map, OperationalTemplate, String)
+     */
+    public OpenEHRBase parse(Iterator<? extends Map.Entry<String, ?>> entries, OperationalTemplate template, String language) throws FlatJsonParseException {
+        Map<String, Object> pathsAndValues = new LinkedHashMap<>();
+        while(entries.hasNext()) {
+            Map.Entry<String, ?> entry = entries.next();
+            pathsAndValues.put(entry.getKey(), entry.getValue());
+        }
+        return parse(pathsAndValues, template, language);
+    }
+
+    /**
+     * Parse the flat json format from the given stream to an RM Object, reading the json directly instead of through
+     * an ObjectMapper
+     * @see #parse(Map, OperationalTemplate, String)
+     */
+    public OpenEHRBase parse(InputStream json, OperationalTemplate template, String language) throws IOException, FlatJsonParseException {
+        try(JsonParser parser = JSON_FACTORY.createParser(json)) {
+            return parse(parser, template, language);
+        }
+    }
+
+    /**
+     * Parse the flat json object at the current position of the given JsonParser to an RM Object. After this the
+     * parser is positioned at the end of the object
+     * @see #parse(Map, OperationalTemplate, String)
+     */
+    public OpenEHRBase parse(JsonParser parser, OperationalTemplate template, String language) throws IOException, FlatJsonParseException {
+        JsonToken token = parser.currentToken() == null ? parser.nextToken() : parser.currentToken();
+        if(token != JsonToken.START_OBJECT) {
+            throw new FlatJsonParseException("expected the flat json format to be an object, but found " + token);
+        }
+        Map<String, Object> pathsAndValues = new LinkedHashMap<>();
+        while((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+            String path = parser.getCurrentName();
+            token = parser.nextToken();
+            switch(token) {
+                case VALUE_STRING:
+                    pathsAndValues.put(path, parser.getText());
+                    break;
+                case VALUE_NUMBER_INT:
+                    pathsAndValues.put(path, parser.getLongValue());
+                    break;
+                case VALUE_NUMBER_FLOAT:
+                    pathsAndValues.put(path, parser.getDoubleValue());
+                    break;
+                case VALUE_TRUE:
+                case VALUE_FALSE:
+                    pathsAndValues.put(path, parser.getBooleanValue());
+                    break;
+                case VALUE_NULL:
+                    break;
+                default:
+                    throw new FlatJsonParseException("expected a primitive value at path " + path + ", but found " + token);
+            }
+        }
+        return parse(pathsAndValues, template, language);
+    }
+
+    /**
+     * @return the path of the object the type applies to, if the given path is a type path. Null otherwise
+     */
+    private String getTypeObjectPath(String path) {
+        if(!path.endsWith(typeIdPropertyName)) {
+            return null;
+        }
+        int separatorIndex = path.length() - typeIdPropertyName.length() - 1;
+        if(separatorIndex < 0 || (path.charAt(separatorIndex) != '/' && path.charAt(separatorIndex) != '|')) {
+            return null;
+        }
+        return separatorIndex == 0 ? "/" : path.substring(0, separatorIndex);
+    }
+
+    /**
+     * @return the index of the last '/' or '|' that is not inside a predicate, or -1 if there is none
+     */
+    private static int lastSeparatorIndex(String path) {
+        int depth = 0;
+        for(int i = path.length() - 1; i >= 0; i--) {
+            char c = path.charAt(i);
+            if(c == ']') {
+                depth++;
+            } else if (c == '[') {
+                depth = Math.max(0, depth - 1);
+            } else if (depth == 0 && (c == '/' || c == '|')) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The state of a single parse: the created objects per path
+     */
+    private class ParseContext {
+        private final OperationalTemplate template;
+        private final Map<String, String> types = new HashMap<>();
+        private final Map<String, Node> nodes = new HashMap<>();
+
+        ParseContext(OperationalTemplate template) {
+            this.template = template;
+        }
+
+        OpenEHRBase createRoot() throws FlatJsonParseException {
+            CObject definition = template == null ? null : template.getDefinition();
+            String rmTypeName = types.get("/");
+            if(rmTypeName == null) {
+                if(definition == null) {
+                    throw new FlatJsonParseException("cannot determine the type of the root object: no " + typeIdPropertyName + " and no template present");
+                }
+                rmTypeName = definition.getRmTypeName();
+            }
+            Node root = new Node(createObject(rmTypeName, definition, "/"), definition);
+            nodes.put("/", root);
+            return root.object;
+        }
+
+        /**
+         * Get the object at the given path, creating it and the objects at all its parent paths if they do not yet exist
+         */
+        Node getNode(String path) throws FlatJsonParseException {
+            Node node = nodes.get(path);
+            if(node != null) {
+                return node;
+            }
+            int separatorIndex = lastSeparatorIndex(path);
+            if(separatorIndex < 0) {
+                throw new FlatJsonParseException("path does not start with a /: " + path);
+            }
+            Node parent = getNode(separatorIndex == 0 ? "/" : path.substring(0, separatorIndex));
+            node = createChild(parent, new PathSegment(path.substring(separatorIndex + 1), path), path);
+            nodes.put(path, node);
+            return node;
+        }
+
+        void setValue(String path, Object value) throws FlatJsonParseException {
+            int separatorIndex = lastSeparatorIndex(path);
+            if(separatorIndex < 0) {
+                throw new FlatJsonParseException("path does not start with a /: " + path);
+            }
+            Node parent = getNode(separatorIndex == 0 ? "/" : path.substring(0, separatorIndex));
+            PathSegment segment = new PathSegment(path.substring(separatorIndex + 1), path);
+            RMAttributeInfo attributeInfo = getAttributeInfo(parent, segment, path);
+            if(modelInfoLookup.getTypeInfo(attributeInfo.getTypeInCollection()) != null) {
+                //the path of an archetype root, with the archetype id as value. The archetype details are restored from
+                //the template, so only create the object.
+                getNode(path);
+                return;
+            }
+            Object convertedValue = convertValue(value, attributeInfo.getTypeInCollection(), path);
+            if(attributeInfo.isMultipleValued()) {
+                creator.addElementToList(parent.object, attributeInfo, convertedValue);
+            } else {
+                creator.set(parent.object, attributeInfo.getRmName(), Lists.newArrayList(convertedValue));
+            }
+        }
+
+        private Node createChild(Node parent, PathSegment segment, String path) throws FlatJsonParseException {
+            RMAttributeInfo attributeInfo = getAttributeInfo(parent, segment, path);
+            CAttribute cAttribute = parent.cObject == null ? null : parent.cObject.getAttribute(attributeInfo.getRmName());
+            String rmTypeName = types.get(path);
+            CObject cObject = findCObject(cAttribute, segment.nodeId, rmTypeName);
+            if(rmTypeName == null) {
+                rmTypeName = cObject == null ? attributeInfo.getTypeNameInCollection() : cObject.getRmTypeName();
+            }
+            if(!attributeInfo.isMultipleValued()) {
+                //an object can already have been created by the parent, such as the name of a LOCATABLE
+                Object existingValue = getValue(parent.object, attributeInfo);
+                if(existingValue instanceof OpenEHRBase && existingValue.getClass().equals(modelInfoLookup.getClassToBeCreated(rmTypeName))) {
+                    return new Node((OpenEHRBase) existingValue, cObject);
+                }
+            }
+            OpenEHRBase child = createObject(rmTypeName, cObject, path);
+            if(cObject == null && segment.nodeId != null && modelInfoLookup.getAttributeInfo(child.getClass(), "archetype_node_id") != null) {
+                creator.set(child, "archetype_node_id", Lists.newArrayList(segment.nodeId));
+            }
+            if(attributeInfo.isMultipleValued()) {
+                creator.addElementToList(parent.object, attributeInfo, child);
+            } else {
+                creator.set(parent.object, attributeInfo.getRmName(), Lists.newArrayList(child));
+            }
+            return new Node(child, cObject);
+        }
+
+        private RMAttributeInfo getAttributeInfo(Node parent, PathSegment segment, String path) throws FlatJsonParseException {
+            RMAttributeInfo attributeInfo = modelInfoLookup.getAttributeInfo(parent.object.getClass(), segment.attributeName);
+            if(attributeInfo == null) {
+                throw new FlatJsonParseException(String.format("attribute %s not known for object %s in path %s", segment.attributeName, parent.object.getClass().getSimpleName(), path));
+            }
+            return attributeInfo;
+        }
+
+        private CObject findCObject(CAttribute cAttribute, String nodeId, String rmTypeName) {
+            if(cAttribute == null) {
+                return null;
+            }
+            if(nodeId != null) {
+                return cAttribute.getChild(nodeId);
+            }
+            if(rmTypeName != null) {
+                List<CObject> childrenByRmTypeName = cAttribute.getChildrenByRmTypeName(rmTypeName);
+                return childrenByRmTypeName != null && childrenByRmTypeName.size() == 1 ? childrenByRmTypeName.get(0) : null;
+            }
+            return cAttribute.getChildren().size() == 1 ? cAttribute.getChildren().get(0) : null;
+        }
+
+        private OpenEHRBase createObject(String rmTypeName, CObject cObject, String path) throws FlatJsonParseException {
+            Class<?> clazz = modelInfoLookup.getClassToBeCreated(rmTypeName);
+            if(clazz == null) {
+                throw new FlatJsonParseException("cannot construct RM Object of unknown type " + rmTypeName + " at path " + path);
+            }
+            try {
+                Object result = clazz.newInstance();
+                if(cObject != null) {
+                    modelInfoLookup.processCreatedObject(result, cObject);
+                }
+                return (OpenEHRBase) result;
+            } catch (InstantiationException | IllegalAccessException | ClassCastException e) {
+                throw new FlatJsonParseException("error creating RM Object of type " + rmTypeName + " at path " + path, e);
+            }
+        }
+    }
+
+    private static Object getValue(Object object, RMAttributeInfo attributeInfo) throws FlatJsonParseException {
+        if(attributeInfo.getGetMethod() == null) {
+            return null;
+        }
+        try {
+            return attributeInfo.getGetMethod().invoke(object);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new FlatJsonParseException("cannot get attribute " + attributeInfo.getRmName(), e);
+        }
+    }
+
+    /**
+     * Convert a value as written by the FlatJsonGenerator to the given type
+     */
+    private static Object convertValue(Object value, Class<?> type, String path) throws FlatJsonParseException {
+        try {
+            if (type.isInstance(value)) {
+                return value;
+            } else if (type == String.class) {
+                return value.toString();
+            } else if (type == Long.class || type == long.class) {
+                return value instanceof Number ? ((Number) value).longValue() : Long.parseLong(value.toString());
+            } else if (type == Integer.class || type == int.class) {
+                return value instanceof Number ? ((Number) value).intValue() : Integer.parseInt(value.toString());
+            } else if (type == Double.class || type == double.class) {
+                return value instanceof Number ? ((Number) value).doubleValue() : Double.parseDouble(value.toString());
+            } else if (type == Float.class || type == float.class) {
+                return value instanceof Number ? ((Number) value).floatValue() : Float.parseFloat(value.toString());
+            } else if (type == Boolean.class || type == boolean.class) {
+                return parseBoolean(value.toString(), path);
+            } else if (TemporalAmount.class.isAssignableFrom(type)) {
+                return DateTimeParsers.parseDurationValue(value.toString());
+            } else if (TemporalAccessor.class.isAssignableFrom(type)) {
+                return parseTemporal(value.toString());
+            } else if (type == URI.class) {
+                return URI.create(value.toString());
+            } else if (type.isEnum()) {
+                return Enum.valueOf((Class<Enum>) type, value.toString());
+            }
+        } catch (RuntimeException e) {
+            throw new FlatJsonParseException("cannot convert value " + value + " to " + type.getSimpleName() + " at path " + path, e);
+        }
+        throw new FlatJsonParseException("cannot convert value " + value + " to " + type.getSimpleName() + " at path " + path);
+    }
+
+    private static Boolean parseBoolean(String value, String path) throws FlatJsonParseException {
+        if(value.equals("true")) {
+            return Boolean.TRUE;
+        } else if (value.equals("false")) {
+            return Boolean.FALSE;
+        }
+        throw new FlatJsonParseException("cannot convert value " + value + " to Boolean at path " + path);
+    }
+
+    /**
+     * Parse a date, time or date time, in the formats written by the FlatJsonGenerator
+     */
+    private static Temporal parseTemporal(String value) {
+        TemporalAccessor result;
+        if(value.indexOf('T') > 0) {
+            result = DateTimeParsers.parseDateTimeValue(value);
+        } else if(value.indexOf(':') > 0) {
+            result = DateTimeParsers.parseTimeValue(value);
+        } else {
+            result = DateTimeParsers.parseDateValue(value);
+        }
+        return (Temporal) result;
+    }
+
+    /**
+     * An RM Object created by the parser, with its constraint
+     */
+    private static class Node {
+        private final OpenEHRBase object;
+        private final CObject cObject;
+
+        Node(OpenEHRBase object, CObject cObject) {
+            this.object = object;
+            this.cObject = cObject;
+        }
+    }
+
+    /**
+     * A single segment of a flat path: the attribute name, with an optional node id and index. Supports both the
+     * bracketed and the colon index notation.
+     */
+    private static class PathSegment {
+        private final String attributeName;
+        private final String nodeId;
+
+        PathSegment(String segment, String path) throws FlatJsonParseException {
+            int bracketIndex = segment.indexOf('[');
+            int colonIndex = segment.indexOf(':');
+            if(bracketIndex < 0) {
+                //the index is not needed: different indices are different paths, so they are different objects
+                attributeName = colonIndex < 0 ? segment : segment.substring(0, colonIndex);
+                nodeId = null;
+            } else {
+                int closingBracketIndex = segment.indexOf(']', bracketIndex);
+                if(closingBracketIndex < 0) {
+                    throw new FlatJsonParseException("missing ] in path " + path);
+                }
+                attributeName = segment.substring(0, bracketIndex);
+                String predicate = segment.substring(bracketIndex + 1, closingBracketIndex);
+                int commaIndex = predicate.indexOf(',');
+                String nodeIdOrIndex = (commaIndex < 0 ? predicate : predicate.substring(0, commaIndex)).trim();
+                nodeId = nodeIdOrIndex.isEmpty() || nodeIdOrIndex.chars().allMatch(Character::isDigit) ? null : nodeIdOrIndex;
+            }
+        }
+    }
+}
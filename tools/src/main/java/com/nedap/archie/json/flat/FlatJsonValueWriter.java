@@ -0,0 +1,20 @@
+package com.nedap.archie.json.flat;
+
+import java.io.IOException;
+
+/**
+ * Receives the paths and values of the flat json format from the FlatJsonGenerator, one at a time and in order, so
+ * they can be written somewhere without building a map first.
+ */
+@FunctionalInterface
+public interface FlatJsonValueWriter {
+
+    /**
+     * Write a single path and value
+     * @param path the flat json path
+     * @param value the value: a String, a Number or a TemporalAmount, to be serialized as its ISO 8601 string
+     * @throws IOException in case writing fails
+     * @throws DuplicateKeyException in case the writer detects a path that has been written before
+     */
+    void write(String path, Object value) throws IOException, DuplicateKeyException;
+}
@@ -2,16 +2,17 @@ package com.nedap.archie.rmobjectvalidator;
 
 import com.nedap.archie.query.RMPathQuery;
 
-import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * APath query cache. NOT thread-safe!
+ * APath query cache. Thread-safe, so it can be used from concurrent validation tasks
  * Created by pieter.bos on 27/05/16.
  */
 public class APathQueryCache {
 
     private final boolean matchSpecialisedNodes;
-    private final HashMap<String, RMPathQuery> queryCache = new HashMap<>();
+    private final Map<String, RMPathQuery> queryCache = new ConcurrentHashMap<>();
 
     public APathQueryCache() {
         this(false);
@@ -22,12 +23,7 @@ public class APathQueryCache {
     }
 
     public RMPathQuery getApathQuery(String query) {
-        RMPathQuery result = queryCache.get(query);
-        if (result == null) {
-            result = new RMPathQuery(query, matchSpecialisedNodes);
-            queryCache.put(query, result);
-        }
-        return result;
+        return queryCache.computeIfAbsent(query, q -> new RMPathQuery(q, matchSpecialisedNodes));
 
     }
 
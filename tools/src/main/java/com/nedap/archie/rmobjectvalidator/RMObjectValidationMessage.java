@@ -2,8 +2,11 @@ package com.nedap.archie.rmobjectvalidator;
 
 import com.nedap.archie.aom.Archetype;
 import com.nedap.archie.aom.ArchetypeConstraint;
+import org.openehr.utils.message.I18n;
 
+import java.util.Locale;
 import java.util.Objects;
+import java.util.function.Function;
 
 /**
  * Created by pieter.bos on 02/09/15.
@@ -14,6 +17,8 @@ public class RMObjectValidationMessage {
     private String path;
     private String humanReadableArchetypePath;
     private String message;
+    private Function<Locale, String> messageFormatter;
+    private Locale locale;
     private String archetypeId;
 
     private RMObjectValidationMessageType type;
@@ -43,6 +48,16 @@ public class RMObjectValidationMessage {
         this.type = type;
     }
 
+    /**
+     * Create a message of which the text is only formatted when it is first requested, in the locale that is current
+     * when creating the message. This saves the formatting for messages that are never read.
+     */
+    public RMObjectValidationMessage(ArchetypeConstraint constraint, String actualPath, Function<Locale, String> messageFormatter, RMObjectValidationMessageType type) {
+        this(constraint, actualPath, (String) null, type);
+        this.messageFormatter = messageFormatter;
+        this.locale = I18n.getCurrentLocale();
+    }
+
     public RMObjectValidationMessage(RMObjectValidationException e) {
         this.path = e.getPath();
         this.humanReadableArchetypePath = e.getHumanPath();
@@ -100,12 +115,18 @@ public class RMObjectValidationMessage {
      * Gets the validation message, which is a human readable string indicating the cause of this validation message.
      * @return the validation message
      */
-    public String getMessage() {
+    public synchronized String getMessage() {
+        //synchronized: messages can be read from other threads than the one that created them
+        if(messageFormatter != null) {
+            message = messageFormatter.apply(locale);
+            messageFormatter = null;
+            locale = null;
+        }
         return message;
     }
 
     public String toString() {
-        return RMObjectValidationMessageIds.rm_VALIDATION_MESSAGE_TO_STRING.getMessage(humanReadableArchetypePath == null ? path : humanReadableArchetypePath, path, message);
+        return RMObjectValidationMessageIds.rm_VALIDATION_MESSAGE_TO_STRING.getMessage(humanReadableArchetypePath == null ? path : humanReadableArchetypePath, path, getMessage());
     }
 
     private static String getArchetypeId(ArchetypeConstraint constraint) {
@@ -127,13 +148,13 @@ public class RMObjectValidationMessage {
         return Objects.equals(archetypePath, that.archetypePath) &&
                 Objects.equals(path, that.path) &&
                 Objects.equals(humanReadableArchetypePath, that.humanReadableArchetypePath) &&
-                Objects.equals(message, that.message) &&
+                Objects.equals(getMessage(), that.getMessage()) &&
                 Objects.equals(archetypeId, that.archetypeId) &&
                 type == that.type;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(archetypePath, path, humanReadableArchetypePath, message, archetypeId, type);
+        return Objects.hash(archetypePath, path, humanReadableArchetypePath, getMessage(), archetypeId, type);
     }
 }
@@ -28,6 +28,10 @@ import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 import java.util.stream.Collectors;
 
 /**
@@ -43,6 +47,9 @@ public class RMObjectValidator extends RMObjectValidatingProcessor {
     private ModelInfoLookup lookup;
     private ReflectionConstraintImposer constraintImposer;
     private boolean validateInvariants = true;
+    private int maxMessages = Integer.MAX_VALUE;
+    private ForkJoinPool forkJoinPool;
+    private int forkThreshold = 32;
 
     /**
      * Creates an RM Object Validator with the given ModelInfoLook class, and the given OperationalTemplateProvider
@@ -62,56 +69,217 @@ public class RMObjectValidator extends RMObjectValidatingProcessor {
         this.validateInvariants = validateInvariants;
     }
 
+    /**
+     * Set the maximum number of messages returned by validate. As soon as this number of messages has been found,
+     * validation stops, so invalid objects are rejected faster. Default is unlimited.
+     *
+     * Note that message texts are only formatted when RMObjectValidationMessage.getMessage() is first called
+     *
+     * @param maxMessages the maximum number of messages, at least 1
+     */
+    public void setMaxMessages(int maxMessages) {
+        if(maxMessages < 1) {
+            throw new IllegalArgumentException("the maximum number of messages must be at least 1, but was " + maxMessages);
+        }
+        this.maxMessages = maxMessages;
+    }
+
+    public int getMaxMessages() {
+        return maxMessages;
+    }
+
+    /**
+     * Validate large compositions concurrently in the given ForkJoinPool. Sibling objects in the reference model object
+     * that are validated against the same CObject, for example the events of a long observation series, are then
+     * validated in separate tasks, if there are at least as many as the fork threshold. The returned messages are
+     * the same and in the same order as when validating sequentially.
+     *
+     * Note that this does not make this validator thread-safe: validate still must not be called concurrently.
+     *
+     * @param forkJoinPool the pool to validate in, or null to validate on the calling thread only (the default)
+     */
+    public void setForkJoinPool(ForkJoinPool forkJoinPool) {
+        this.forkJoinPool = forkJoinPool;
+    }
+
+    /**
+     * Set the minimum number of sibling objects for which separate tasks are created, if a ForkJoinPool has been set.
+     * Default is 32.
+     *
+     * @param forkThreshold the minimum number of siblings to validate concurrently
+     */
+    public void setForkThreshold(int forkThreshold) {
+        this.forkThreshold = Math.max(forkThreshold, 1);
+    }
+
+    public int getForkThreshold() {
+        return forkThreshold;
+    }
+
     public List<RMObjectValidationMessage> validate(OperationalTemplate template, Object rmObject) {
-        clearMessages();
-        List<RMObjectWithPath> objects = Lists.newArrayList(new RMObjectWithPath(rmObject, ""));
-        addAllMessages(runArchetypeValidations(objects, "", template.getDefinition()));
-        return getMessages();
+        return validate(template, rmObject, maxMessages);
     }
 
     public List<RMObjectValidationMessage> validate(Object rmObject) {
+        return validate(null, rmObject, maxMessages);
+    }
+
+    /**
+     * Check if the given reference model object is valid according to the template. Stops at the first error found and
+     * does not format any message text, so this is faster than validate for invalid objects.
+     *
+     * @param template the operational template to validate against
+     * @param rmObject the reference model object to validate
+     * @return true if validate would return no messages
+     */
+    public boolean isValid(OperationalTemplate template, Object rmObject) {
+        return validate(template, rmObject, 1).isEmpty();
+    }
+
+    /**
+     * Check if the given reference model object is valid according to the reference model. Stops at the first error
+     * found and does not format any message text.
+     *
+     * @param rmObject the reference model object to validate
+     * @return true if validate would return no messages
+     */
+    public boolean isValid(Object rmObject) {
+        return validate(null, rmObject, 1).isEmpty();
+    }
+
+    private List<RMObjectValidationMessage> validate(OperationalTemplate template, Object rmObject, int maxMessages) {
         clearMessages();
-        List<RMObjectWithPath> objects = Lists.newArrayList(new RMObjectWithPath(rmObject, "/"));
-        addAllMessages(runArchetypeValidations(objects, "", null));
-        return getMessages();
+        ValidationRun run = new ValidationRun(maxMessages, I18n.getCurrentLocale());
+        List<RMObjectValidationMessage> result;
+        if(template == null) {
+            List<RMObjectWithPath> objects = Lists.newArrayList(new RMObjectWithPath(rmObject, "/"));
+            result = runArchetypeValidations(run, objects, "", null);
+        } else {
+            List<RMObjectWithPath> objects = Lists.newArrayList(new RMObjectWithPath(rmObject, ""));
+            result = runArchetypeValidations(run, objects, "", template.getDefinition());
+        }
+        addAllMessages(run.slotMessages);
+        addAllMessages(result);
+        List<RMObjectValidationMessage> messages = getMessages();
+        if(messages.size() > maxMessages) {
+            messages.subList(maxMessages, messages.size()).clear();
+        }
+        return messages;
     }
 
-    private List<RMObjectValidationMessage> runArchetypeValidations(List<RMObjectWithPath> rmObjects, String path, CObject cobject) {
-        List<RMObjectValidationMessage> result = new ArrayList<>(RMOccurrenceValidation.validate(metaModel, rmObjects, path, cobject));
+    /**
+     * Validate a single reference model object against the given CObject, without validating its occurrences. Used by
+     * the StreamingRMObjectValidator to validate the leaf objects it reads.
+     *
+     * @param cobject the constraint to validate against
+     * @param rmObject the reference model object
+     * @param path the path of the reference model object, used in the messages
+     * @return the validation messages
+     */
+    List<RMObjectValidationMessage> validateObject(CObject cobject, Object rmObject, String path) {
+        ValidationRun run = new ValidationRun(maxMessages, I18n.getCurrentLocale());
+        List<RMObjectValidationMessage> result = new ArrayList<>();
+        RMObjectWithPath objectWithPath = new RMObjectWithPath(rmObject, path);
+        addNewMessages(run, result, validateInvariants(run, objectWithPath, ""));
+        if (cobject instanceof CComplexObject) {
+            for (CAttributeTuple tuple : ((CComplexObject) cobject).getAttributeTuples()) {
+                addNewMessages(run, result, RMTupleValidation.validate(lookup, cobject, path, Lists.newArrayList(objectWithPath), tuple));
+            }
+        }
+        validateObjectWithPath(run, result, cobject, "", objectWithPath);
+        run.slotMessages.addAll(result);
+        return run.slotMessages;
+    }
+
+    /**
+     * Add newly created messages to the result, counting them against the message budget
+     */
+    private void addNewMessages(ValidationRun run, List<RMObjectValidationMessage> result, List<RMObjectValidationMessage> newMessages) {
+        result.addAll(newMessages);
+        run.remainingMessages -= newMessages.size();
+    }
+
+    private void addNewMessage(ValidationRun run, List<RMObjectValidationMessage> result, RMObjectValidationMessage newMessage) {
+        result.add(newMessage);
+        run.remainingMessages--;
+    }
+
+    private void addNewMessage(ValidationRun run, RMObjectValidationMessage newMessage) {
+        run.slotMessages.add(newMessage);
+        run.remainingMessages--;
+    }
+
+    private List<RMObjectValidationMessage> runArchetypeValidations(ValidationRun run, List<RMObjectWithPath> rmObjects, String path, CObject cobject) {
+        List<RMObjectValidationMessage> result = new ArrayList<>();
+        if(run.isBudgetExhausted()) {
+            return result;
+        }
+        addNewMessages(run, result, RMOccurrenceValidation.validate(metaModel, rmObjects, path, cobject));
         if (rmObjects.isEmpty()) {
             //if this branch of the archetype tree is null in the reference model, we're done validating
             //this has to be done after validateOccurrences(), or required fields do not get validated
             return result;
         }
         for (RMObjectWithPath objectWithPath : rmObjects) {
-            result.addAll(validateInvariants(objectWithPath, path));
+            if(run.isBudgetExhausted()) {
+                return result;
+            }
+            addNewMessages(run, result, validateInvariants(run, objectWithPath, path));
         }
         if(cobject == null) {
             //add default validations
-            for (RMObjectWithPath objectWithPath : rmObjects) {
-                validateObjectWithPath(result, cobject, path, objectWithPath);
-            }
+            validateObjectsWithPath(run, result, cobject, path, rmObjects);
         }
         else if (cobject instanceof CPrimitiveObject) {
-            result.addAll(RMPrimitiveObjectValidation.validate(lookup, rmObjects, path, (CPrimitiveObject<?, ?>) cobject));
+            addNewMessages(run, result, RMPrimitiveObjectValidation.validate(lookup, rmObjects, path, (CPrimitiveObject<?, ?>) cobject));
         } else if (cobject instanceof ArchetypeSlot) {
-            validateArchetypeSlot(rmObjects, path, cobject, result);
+            validateArchetypeSlot(run, rmObjects, path, cobject, result);
         } else {
             if (cobject instanceof CComplexObject) {
                 CComplexObject cComplexObject = (CComplexObject) cobject;
                 for (CAttributeTuple tuple : cComplexObject.getAttributeTuples()) {
-                    result.addAll(RMTupleValidation.validate(lookup, cobject, path, rmObjects, tuple));
+                    if(run.isBudgetExhausted()) {
+                        return result;
+                    }
+                    addNewMessages(run, result, RMTupleValidation.validate(lookup, cobject, path, rmObjects, tuple));
                 }
             }
-            for (RMObjectWithPath objectWithPath : rmObjects) {
-                validateObjectWithPath(result, cobject, path, objectWithPath);
-            }
+            validateObjectsWithPath(run, result, cobject, path, rmObjects);
         }
         return result;
     }
 
 
-    private List<RMObjectValidationMessage> validateInvariants(RMObjectWithPath objectWithPath, String pathSoFar) {
+    /**
+     * Validate the given sibling objects against the same CObject. If a ForkJoinPool has been set and there are at least
+     * the fork threshold number of objects, every object is validated in a separate task, concurrently. The messages
+     * are merged in the order of the objects, so the result is the same as when validating sequentially.
+     */
+    private void validateObjectsWithPath(ValidationRun run, List<RMObjectValidationMessage> result, CObject cobject, String path, List<RMObjectWithPath> rmObjects) {
+        if(forkJoinPool == null || rmObjects.size() < forkThreshold) {
+            for (RMObjectWithPath objectWithPath : rmObjects) {
+                validateObjectWithPath(run, result, cobject, path, objectWithPath);
+            }
+            return;
+        }
+        List<SubtreeValidationTask> tasks = new ArrayList<>(rmObjects.size());
+        for (RMObjectWithPath objectWithPath : rmObjects) {
+            tasks.add(new SubtreeValidationTask(new ValidationRun(run.remainingMessages, run.locale), cobject, path, objectWithPath));
+        }
+        //only fork directly when already running in the configured pool, otherwise its parallelism would be bypassed
+        if(ForkJoinTask.getPool() == forkJoinPool) {
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            forkJoinPool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+        }
+        for(SubtreeValidationTask task:tasks) {
+            run.slotMessages.addAll(task.run.slotMessages);
+            addNewMessages(run, result, task.result);
+            run.remainingMessages -= task.run.slotMessages.size();
+        }
+    }
+
+    private List<RMObjectValidationMessage> validateInvariants(ValidationRun run, RMObjectWithPath objectWithPath, String pathSoFar) {
         if (!validateInvariants) {
             return Collections.emptyList();
         }
@@ -123,17 +291,20 @@ public class RMObjectValidator extends RMObjectValidatingProcessor {
             RMTypeInfo typeInfo = lookup.getTypeInfo(rmObject.getClass());
             if (typeInfo != null) {
                 for (InvariantMethod invariantMethod : typeInfo.getInvariants()) {
+                    if (result.size() >= run.remainingMessages) {
+                        break;
+                    }
                     if (!invariantMethod.getAnnotation().ignored()) {
                         try {
                             boolean passed = (boolean) invariantMethod.getMethod().invoke(rmObject);
                             if (!passed) {
                                 result.add(new RMObjectValidationMessage(null, joinPaths(pathSoFar, objectWithPath.getPath()),
-                                        I18n.t("Invariant {0} failed on type " + typeInfo.getRmName(), invariantMethod.getAnnotation().value()),
+                                        locale -> I18n.t("Invariant {0} failed on type " + typeInfo.getRmName(), locale, invariantMethod.getAnnotation().value()),
                                         RMObjectValidationMessageType.INVARIANT_ERROR));
                             }
                         } catch (IllegalAccessException | InvocationTargetException e) {
                             result.add(new RMObjectValidationMessage(null, joinPaths(pathSoFar, objectWithPath.getPath()),
-                                    I18n.t("Exception {0} invoking invariant {1} on {2}: {3}\n{4}",
+                                    locale -> I18n.t("Exception {0} invoking invariant {1} on {2}: {3}\n{4}", locale,
                                             e.getCause() == null ? e.getClass().getSimpleName() : e.getCause().getClass().getSimpleName(),
                                             invariantMethod.getAnnotation().value(),
                                             typeInfo.getRmName(),
@@ -148,9 +319,12 @@ public class RMObjectValidator extends RMObjectValidatingProcessor {
         return result;
     }
 
-    private void validateArchetypeSlot(List<RMObjectWithPath> rmObjects, String path, CObject cobject, List<RMObjectValidationMessage> result) {
+    private void validateArchetypeSlot(ValidationRun run, List<RMObjectWithPath> rmObjects, String path, CObject cobject, List<RMObjectValidationMessage> result) {
         ArchetypeSlot slot = (ArchetypeSlot) cobject;
         for (RMObjectWithPath objectWithPath : rmObjects) {
+            if(run.isBudgetExhausted()) {
+                return;
+            }
 
             Object object = objectWithPath.getObject();
 
@@ -159,9 +333,9 @@ public class RMObjectValidator extends RMObjectValidatingProcessor {
             if(archetypeId != null) {
                 if(!AOMUtils.archetypeRefMatchesSlotExpression(archetypeId, slot)) {
                     //invalid archetype id, add message
-                    this.addMessage(slot, objectWithPath.getPath(),
-                            RMObjectValidationMessageIds.rm_ARCHETYPE_ID_SLOT_MISMATCH.getMessage(archetypeId),
-                            RMObjectValidationMessageType.ARCHETYPE_SLOT_ID_MISMATCH);
+                    addNewMessage(run, new RMObjectValidationMessage(slot, objectWithPath.getPath(),
+                            locale -> RMObjectValidationMessageIds.rm_ARCHETYPE_ID_SLOT_MISMATCH.getMessage(locale, archetypeId),
+                            RMObjectValidationMessageType.ARCHETYPE_SLOT_ID_MISMATCH));
                 }
                 //but do continue validation!
                 OperationalTemplate operationalTemplate = operationalTemplateProvider.getOperationalTemplate(archetypeId);
@@ -169,32 +343,35 @@ public class RMObjectValidator extends RMObjectValidatingProcessor {
                     //occurrences already validated, so nothing left to validate from the archetyepe root
                     //from now on, validate from the root of the found OPT
                     CObject newRoot = operationalTemplate.getDefinition();
-                    validateObjectWithPath(result, newRoot, path, objectWithPath);
+                    validateObjectWithPath(run, result, newRoot, path, objectWithPath);
                 } else {
-                    this.addMessage(slot, objectWithPath.getPath(),
-                            RMObjectValidationMessageIds.rm_ARCHETYPE_NOT_FOUND.getMessage(archetypeId),
-                            RMObjectValidationMessageType.ARCHETYPE_NOT_FOUND);
+                    addNewMessage(run, new RMObjectValidationMessage(slot, objectWithPath.getPath(),
+                            locale -> RMObjectValidationMessageIds.rm_ARCHETYPE_NOT_FOUND.getMessage(locale, archetypeId),
+                            RMObjectValidationMessageType.ARCHETYPE_NOT_FOUND));
                     //but continue validating the RM Objects, of course
-                    validateObjectWithPath(result, cobject, path, objectWithPath);
+                    validateObjectWithPath(run, result, cobject, path, objectWithPath);
                 }
             } else {
-                this.addMessage(slot, objectWithPath.getPath(),
-                        RMObjectValidationMessageIds.rm_SLOT_WITHOUT_ARCHETYPE_ID.getMessage(),
-                        RMObjectValidationMessageType.ARCHETYPE_SLOT_ID_MISMATCH);
+                addNewMessage(run, new RMObjectValidationMessage(slot, objectWithPath.getPath(),
+                        locale -> RMObjectValidationMessageIds.rm_SLOT_WITHOUT_ARCHETYPE_ID.getMessage(locale),
+                        RMObjectValidationMessageType.ARCHETYPE_SLOT_ID_MISMATCH));
                 //but continue validating the RM Objects, of course
-                validateObjectWithPath(result, cobject, path, objectWithPath);
+                validateObjectWithPath(run, result, cobject, path, objectWithPath);
             }
         }
     }
 
-    private void validateObjectWithPath(List<RMObjectValidationMessage> result, CObject cobject, String path, RMObjectWithPath objectWithPath){
+    private void validateObjectWithPath(ValidationRun run, List<RMObjectValidationMessage> result, CObject cobject, String path, RMObjectWithPath objectWithPath){
+        if(run.isBudgetExhausted()) {
+            return;
+        }
         if(cobject == null) {
             Object rmObject = objectWithPath.getObject();
             if(rmObject != null) {
                 RMTypeInfo typeInfo = lookup.getTypeInfo(rmObject.getClass());
                 if (typeInfo != null) {
                     List<CAttribute> defaultAttributes = RMObjectValidationUtil.getDefaultAttributeConstraints(typeInfo.getRmName(), Lists.newArrayList(), lookup, constraintImposer);
-                    validateCAttributes(result, path, objectWithPath, rmObject, null, defaultAttributes);
+                    validateCAttributes(run, result, path, objectWithPath, rmObject, null, defaultAttributes);
                 }
             }
         } else {
@@ -202,56 +379,63 @@ public class RMObjectValidator extends RMObjectValidatingProcessor {
             if (!classInConstraint.isAssignableFrom(objectWithPath.getObject().getClass())) {
                 //not a matching constraint. Cannot validate. add error message and stop validating.
                 //If another constraint is present, that one will succeed
-                result.add(new RMObjectValidationMessage(
+                String actualType = objectWithPath.getObject().getClass().getSimpleName();
+                addNewMessage(run, result, new RMObjectValidationMessage(
                         cobject,
                         objectWithPath.getPath(),
-                        RMObjectValidationMessageIds.rm_INCORRECT_TYPE.getMessage(cobject.getRmTypeName(), objectWithPath.getObject().getClass().getSimpleName()),
+                        locale -> RMObjectValidationMessageIds.rm_INCORRECT_TYPE.getMessage(locale, cobject.getRmTypeName(), actualType),
                         RMObjectValidationMessageType.WRONG_TYPE)
                 );
             } else {
                 Object rmObject = objectWithPath.getObject();
                 List<CAttribute> attributes = new ArrayList<>(cobject.getAttributes());
                 attributes.addAll(RMObjectValidationUtil.getDefaultAttributeConstraints(cobject, attributes, lookup, constraintImposer));
-                validateCAttributes(result, path, objectWithPath, rmObject, cobject, attributes);
+                validateCAttributes(run, result, path, objectWithPath, rmObject, cobject, attributes);
             }
         }
     }
 
-    private void validateCAttributes(List<RMObjectValidationMessage> result, String path, RMObjectWithPath objectWithPath, Object rmObject, CObject cObject, List<CAttribute> attributes) {
+    private void validateCAttributes(ValidationRun run, List<RMObjectValidationMessage> result, String path, RMObjectWithPath objectWithPath, Object rmObject, CObject cObject, List<CAttribute> attributes) {
         //the path contains an attribute, but is missing the [idx] part. So strip the attribute, and add the attribute plus the [idx] part.
         String pathSoFar = joinPaths(RMObjectValidationUtil.stripLastPathSegment(path), objectWithPath.getPath());
         for (CAttribute attribute : attributes) {
-            validateAttributes(result, attribute, cObject, rmObject, pathSoFar);
+            if(run.isBudgetExhausted()) {
+                return;
+            }
+            validateAttributes(run, result, attribute, cObject, rmObject, pathSoFar);
         }
     }
 
-    private void validateAttributes(List<RMObjectValidationMessage> result, CAttribute attribute, CObject cobject, Object rmObject, String pathSoFar) {
+    private void validateAttributes(ValidationRun run, List<RMObjectValidationMessage> result, CAttribute attribute, CObject cobject, Object rmObject, String pathSoFar) {
         String rmAttributeName = attribute.getRmAttributeName();
         RMPathQuery aPathQuery = queryCache.getApathQuery("/" + attribute.getRmAttributeName());
         Object attributeValue = aPathQuery.find(lookup, rmObject);
         List<RMObjectValidationMessage> emptyObservationErrors = isObservationEmpty(attribute, rmAttributeName, attributeValue, pathSoFar, cobject);
-        result.addAll(emptyObservationErrors);
+        addNewMessages(run, result, emptyObservationErrors);
 
         if (emptyObservationErrors.isEmpty()) {
 
-            result.addAll(RMMultiplicityValidation.validate(attribute, joinPaths(pathSoFar, "/", rmAttributeName), attributeValue));
+            addNewMessages(run, result, RMMultiplicityValidation.validate(attribute, joinPaths(pathSoFar, "/", rmAttributeName), attributeValue));
 
             if(attribute.getChildren() == null || attribute.getChildren().isEmpty()) {
                 //no child CObjects. Cardinality/existence has already been validated. Run default RM validations
                 String query = "/" + rmAttributeName;
                 aPathQuery = queryCache.getApathQuery(query);
                 List<RMObjectWithPath> childRmObjects = aPathQuery.findList(lookup, rmObject);
-                result.addAll(runArchetypeValidations(childRmObjects, joinPaths(pathSoFar, query), null));
+                result.addAll(runArchetypeValidations(run, childRmObjects, joinPaths(pathSoFar, query), null));
             }
             else if (attribute.isSingle()) {
-                validateSingleAttribute(result, attribute, rmObject, pathSoFar);
+                validateSingleAttribute(run, result, attribute, rmObject, pathSoFar);
             } else {
 
                 for (CObject childCObject : attribute.getChildren()) {
+                    if(run.isBudgetExhausted()) {
+                        return;
+                    }
                     String query = "/" + rmAttributeName + "[" + childCObject.getNodeId() + "]";
                     aPathQuery = queryCache.getApathQuery(query);
                     List<RMObjectWithPath> childRmObjects = aPathQuery.findList(lookup, rmObject);
-                    result.addAll(runArchetypeValidations(childRmObjects, joinPaths(pathSoFar, query), childCObject));
+                    result.addAll(runArchetypeValidations(run, childRmObjects, joinPaths(pathSoFar, query), childCObject));
                     //TODO: find all other child RM Objects that don't match with a given node id (eg unconstraint in archetype) and
                     //run default validations against them!
                 }
@@ -259,35 +443,47 @@ public class RMObjectValidator extends RMObjectValidatingProcessor {
         }
     }
 
-    private void validateSingleAttribute(List<RMObjectValidationMessage> result, CAttribute attribute, Object rmObject, String pathSoFar) {
+    private void validateSingleAttribute(ValidationRun run, List<RMObjectValidationMessage> result, CAttribute attribute, Object rmObject, String pathSoFar) {
         List<List<RMObjectValidationMessage>> subResults = new ArrayList<>();
+        //every alternative can use the full remaining budget, since only the messages of the alternatives are counted
+        //that end up in the result
+        int remainingBefore = run.remainingMessages;
 
+        //a single attribute with multiple CObjects means you can choose which CObject you use
+        //for example, a data value can be a string or an integer.
+        //in this case, only one of the CObjects will validate to a correct value
+        //so as soon as one is correct, so is the data!
         for (CObject childCObject : attribute.getChildren()) {
+            run.remainingMessages = remainingBefore;
             String query = "/" + attribute.getRmAttributeName() + "[" + childCObject.getNodeId() + "]";
             RMPathQuery aPathQuery = queryCache.getApathQuery(query);
             List<RMObjectWithPath> childNodes = aPathQuery.findList(lookup, rmObject);
-            List<RMObjectValidationMessage> subResult = runArchetypeValidations(childNodes, joinPaths(pathSoFar, query), childCObject);
+            List<RMObjectValidationMessage> subResult = runArchetypeValidations(run, childNodes, joinPaths(pathSoFar, query), childCObject);
+            if(subResult.isEmpty()) {
+                //no need to check the other CObjects
+                run.remainingMessages = remainingBefore;
+                return;
+            }
             subResults.add(subResult);
         }
-        //a single attribute with multiple CObjects means you can choose which CObject you use
-        //for example, a data value can be a string or an integer.
-        //in this case, only one of the CObjects will validate to a correct value
-        //so as soon as one is correct, so is the data!
-        boolean cObjectWithoutErrorsFound = subResults.stream().anyMatch(List::isEmpty);
+        run.remainingMessages = remainingBefore;
         boolean atLeastOneWithoutWrongTypeFound = subResults.stream().anyMatch(RMObjectValidationUtil::hasNoneWithWrongType);
 
-        if (!cObjectWithoutErrorsFound) {
-            if (atLeastOneWithoutWrongTypeFound) {
-                for (List<RMObjectValidationMessage> subResult : subResults) {
-                    //at least one has the correct type, we can filter out all others
-                    result.addAll(subResult.stream().filter((message) -> message.getType() != RMObjectValidationMessageType.WRONG_TYPE).collect(Collectors.toList()));
-                }
-            } else {
-                for (List<RMObjectValidationMessage> subResult : subResults) {
-                    result.addAll(subResult);
-                }
+        List<RMObjectValidationMessage> messages = new ArrayList<>();
+        if (atLeastOneWithoutWrongTypeFound) {
+            for (List<RMObjectValidationMessage> subResult : subResults) {
+                //at least one has the correct type, we can filter out all others
+                messages.addAll(subResult.stream().filter((message) -> message.getType() != RMObjectValidationMessageType.WRONG_TYPE).collect(Collectors.toList()));
             }
+        } else {
+            for (List<RMObjectValidationMessage> subResult : subResults) {
+                messages.addAll(subResult);
+            }
+        }
+        if(messages.size() > run.remainingMessages) {
+            messages = messages.subList(0, Math.max(run.remainingMessages, 0));
         }
+        addNewMessages(run, result, messages);
     }
 
     /**
@@ -308,8 +504,9 @@ public class RMObjectValidator extends RMObjectValidatingProcessor {
         boolean attributeShouldNotBeEmpty = attribute.getExistence() != null && !attribute.getExistence().has(0);
 
         if (parentIsEvent && attributeIsData && attributeIsEmpty && attributeShouldNotBeEmpty) {
-            String message = "Observation " + RMObjectValidationUtil.getParentObservationTerm(attribute) + " contains no results";
-            result.add(new RMObjectValidationMessage(cobject == null ? null : cobject.getParent().getParent(), pathSoFar, message, RMObjectValidationMessageType.EMPTY_OBSERVATION));
+            result.add(new RMObjectValidationMessage(cobject == null ? null : cobject.getParent().getParent(), pathSoFar,
+                    locale -> "Observation " + RMObjectValidationUtil.getParentObservationTerm(attribute) + " contains no results",
+                    RMObjectValidationMessageType.EMPTY_OBSERVATION));
         }
         return result;
     }
@@ -340,5 +537,58 @@ public class RMObjectValidator extends RMObjectValidatingProcessor {
         return result.toString();
     }
 
+    /**
+     * The state of a single validation. Every concurrent task gets its own, which is merged in order when it is done.
+     */
+    private static class ValidationRun {
+        /**
+         * The number of messages that can still be created before validation stops
+         */
+        private int remainingMessages;
+        /**
+         * Messages added regardless of the CObject alternative being validated. Always first in the result.
+         */
+        private final List<RMObjectValidationMessage> slotMessages = new ArrayList<>();
+        /**
+         * The locale to format messages in
+         */
+        private final Locale locale;
+
+        ValidationRun(int remainingMessages, Locale locale) {
+            this.remainingMessages = remainingMessages;
+            this.locale = locale;
+        }
+
+        boolean isBudgetExhausted() {
+            return remainingMessages <= 0;
+        }
+    }
+
+    private class SubtreeValidationTask extends RecursiveAction {
+        private final ValidationRun run;
+        private final CObject cobject;
+        private final String path;
+        private final RMObjectWithPath objectWithPath;
+        private final List<RMObjectValidationMessage> result = new ArrayList<>();
+
+        SubtreeValidationTask(ValidationRun run, CObject cobject, String path, RMObjectWithPath objectWithPath) {
+            this.run = run;
+            this.cobject = cobject;
+            this.path = path;
+            this.objectWithPath = objectWithPath;
+        }
+
+        @Override
+        protected void compute() {
+            //messages are created in the locale of the calling thread
+            Locale previousLocale = I18n.getCurrentLocale();
+            I18n.setCurrentLocale(run.locale);
+            try {
+                validateObjectWithPath(run, result, cobject, path, objectWithPath);
+            } finally {
+                I18n.setCurrentLocale(previousLocale);
+            }
+        }
+    }
 
 }
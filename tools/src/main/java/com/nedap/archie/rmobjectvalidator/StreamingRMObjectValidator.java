@@ -0,0 +1,492 @@
+package com.nedap.archie.rmobjectvalidator;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.nedap.archie.adlparser.modelconstraints.ReflectionConstraintImposer;
+import com.nedap.archie.aom.ArchetypeSlot;
+import com.nedap.archie.aom.CArchetypeRoot;
+import com.nedap.archie.aom.CAttribute;
+import com.nedap.archie.aom.CComplexObject;
+import com.nedap.archie.aom.CObject;
+import com.nedap.archie.aom.CPrimitiveObject;
+import com.nedap.archie.aom.OperationalTemplate;
+import com.nedap.archie.aom.utils.AOMUtils;
+import com.nedap.archie.flattener.OperationalTemplateProvider;
+import com.nedap.archie.query.RMObjectWithPath;
+import com.nedap.archie.rminfo.MetaModel;
+import com.nedap.archie.rminfo.ModelInfoLookup;
+import com.nedap.archie.rminfo.RMAttributeInfo;
+import com.nedap.archie.rminfo.RMTypeInfo;
+import com.nedap.archie.rmobjectvalidator.validations.RMMultiplicityValidation;
+import com.nedap.archie.rmobjectvalidator.validations.RMOccurrenceValidation;
+import com.nedap.archie.rmobjectvalidator.validations.RMPrimitiveObjectValidation;
+import org.openehr.utils.message.I18n;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Validates a reference model object in JSON form against an Operational Template while reading it from a JsonParser,
+ * without deserializing the entire object first. Checks the types, node ids, occurrences, existence and cardinality
+ * of everything constrained in the operational template.
+ *
+ * Objects of which all remaining constraints are primitive, usually data values, are the only objects that are
+ * deserialized. They are validated with the RMObjectValidator, including their primitive constraints and invariants.
+ * Parts of the JSON that are not constrained in the template are skipped, so the reference model checks the
+ * RMObjectValidator performs on those, and the invariants of the larger objects, are not done.
+ *
+ * The fields of a JSON object are buffered until both its type and its archetype node id have been read. Archie writes
+ * these first, so usually nothing is buffered.
+ *
+ * Not thread-safe: use one instance per thread.
+ */
+public class StreamingRMObjectValidator extends RMObjectValidatingProcessor {
+
+    private static final String ARCHETYPE_NODE_ID = "archetype_node_id";
+
+    private final ModelInfoLookup lookup;
+    private final MetaModel metaModel;
+    private final OperationalTemplateProvider operationalTemplateProvider;
+    private final ObjectMapper objectMapper;
+    private final ReflectionConstraintImposer constraintImposer;
+    private final RMObjectValidator leafValidator;
+    private String typePropertyName = "_type";
+
+    /**
+     * Creates a streaming validator.
+     * @param lookup the ModelInfoLookup of the reference model
+     * @param provider used to retrieve the archetypes in ArchetypeSlots
+     * @param objectMapper the ObjectMapper used to create the JsonParser and to deserialize the leaf objects, configured
+     *                     for the reference model. For the openEHR RM, use JacksonUtil.getObjectMapper()
+     */
+    public StreamingRMObjectValidator(ModelInfoLookup lookup, OperationalTemplateProvider provider, ObjectMapper objectMapper) {
+        this.lookup = lookup;
+        this.metaModel = new MetaModel(lookup, null);
+        this.operationalTemplateProvider = provider;
+        this.objectMapper = objectMapper;
+        this.constraintImposer = new ReflectionConstraintImposer(lookup);
+        this.leafValidator = new RMObjectValidator(lookup, provider);
+    }
+
+    public void setRunInvariantChecks(boolean validateInvariants) {
+        leafValidator.setRunInvariantChecks(validateInvariants);
+    }
+
+    /**
+     * Set the name of the JSON property containing the reference model type name. Default is _type
+     * @param typePropertyName the name of the type property
+     */
+    public void setTypePropertyName(String typePropertyName) {
+        this.typePropertyName = typePropertyName;
+    }
+
+    public String getTypePropertyName() {
+        return typePropertyName;
+    }
+
+    public List<RMObjectValidationMessage> validate(OperationalTemplate template, InputStream json) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(json)) {
+            return validate(template, parser);
+        }
+    }
+
+    /**
+     * Validate the JSON object the parser is at, or the next one if the parser has not been read from yet. After
+     * validation the parser is at the end of that object.
+     *
+     * @param template the operational template to validate against
+     * @param parser the parser to read the JSON from
+     * @return the validation messages
+     * @throws IOException if the JSON cannot be read
+     */
+    public List<RMObjectValidationMessage> validate(OperationalTemplate template, JsonParser parser) throws IOException {
+        clearMessages();
+        JsonToken token = parser.currentToken() == null ? parser.nextToken() : parser.currentToken();
+        if(token != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Expected the start of a JSON object, but got " + token);
+        }
+        validateObject(parser, "", null, Collections.singletonList(template.getDefinition()), false);
+        return getMessages();
+    }
+
+    /**
+     * Validate the JSON object the parser is at against the first matching candidate.
+     * @return the candidate to count the object against for occurrences, or null if no candidate has the node id
+     */
+    private CObject validateObject(JsonParser parser, String attributePath, Integer index, List<CObject> candidates, boolean checkNodeId) throws IOException {
+        if(isLeaf(candidates)) {
+            return validateLeaf(objectMapper.readTree(parser), attributePath, index, candidates, checkNodeId);
+        }
+        String type = null;
+        String nodeId = null;
+        TokenBuffer buffer = null;
+        boolean selected = false;
+        ObjectValidation object = null;
+        CObject counted = null;
+        while(parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            JsonToken valueToken = parser.nextToken();
+            if(fieldName.equals(typePropertyName)) {
+                type = valueToken.isScalarValue() ? parser.getValueAsString() : null;
+                parser.skipChildren();
+            } else if(fieldName.equals(ARCHETYPE_NODE_ID) && valueToken.isScalarValue()) {
+                nodeId = parser.getValueAsString();
+            }
+            if(!selected && type != null && (nodeId != null || !checkNodeId || !isLocatable(type))) {
+                //enough information to select the constraint, so stop buffering
+                selected = true;
+                counted = findNodeIdMatch(candidates, nodeId, checkNodeId);
+                object = select(attributePath, index, candidates, type, nodeId, checkNodeId);
+                replay(buffer, object);
+                buffer = null;
+            }
+            if(fieldName.equals(typePropertyName)) {
+                continue;
+            }
+            if(!selected) {
+                if(buffer == null) {
+                    buffer = new TokenBuffer(parser);
+                    buffer.writeStartObject();
+                }
+                buffer.writeFieldName(fieldName);
+                buffer.copyCurrentStructure(parser);
+            } else if(object == null) {
+                parser.skipChildren();
+            } else {
+                object.validateField(parser, fieldName);
+            }
+        }
+        if(!selected) {
+            counted = findNodeIdMatch(candidates, nodeId, checkNodeId);
+            object = select(attributePath, index, candidates, type, nodeId, checkNodeId);
+            replay(buffer, object);
+        }
+        if(object != null) {
+            object.finish();
+        }
+        return counted;
+    }
+
+    private void replay(TokenBuffer buffer, ObjectValidation object) throws IOException {
+        if(buffer == null || object == null) {
+            return;
+        }
+        try (JsonParser bufferedParser = buffer.asParser()) {
+            bufferedParser.nextToken();
+            while(bufferedParser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = bufferedParser.getCurrentName();
+                bufferedParser.nextToken();
+                object.validateField(bufferedParser, fieldName);
+            }
+        }
+    }
+
+    /**
+     * Select the constraint for a non-leaf object, adding a message if there is none
+     */
+    private ObjectValidation select(String attributePath, Integer index, List<CObject> candidates, String type, String nodeId, boolean checkNodeId) {
+        String path = objectPath(attributePath, index, nodeId);
+        List<CObject> matching = new ArrayList<>();
+        for(CObject candidate:candidates) {
+            if(!checkNodeId || nodeId == null || nodeIdMatches(candidate, nodeId)) {
+                matching.add(candidate);
+            }
+        }
+        if(matching.isEmpty()) {
+            addUnknownNodeIdMessage(candidates.get(0), path, nodeId);
+            return null;
+        }
+        CObject selected = type == null ? matching.get(0) : findTypeMatch(matching, type);
+        if(selected == null) {
+            addWrongTypeMessage(matching.get(0), path, type);
+            return null;
+        }
+        if(selected instanceof ArchetypeSlot) {
+            ArchetypeSlot slot = (ArchetypeSlot) selected;
+            if(nodeId == null) {
+                addMessage(new RMObjectValidationMessage(slot, path,
+                        locale -> RMObjectValidationMessageIds.rm_SLOT_WITHOUT_ARCHETYPE_ID.getMessage(locale),
+                        RMObjectValidationMessageType.ARCHETYPE_SLOT_ID_MISMATCH));
+                return null;
+            }
+            if(!AOMUtils.archetypeRefMatchesSlotExpression(nodeId, slot)) {
+                addMessage(new RMObjectValidationMessage(slot, path,
+                        locale -> RMObjectValidationMessageIds.rm_ARCHETYPE_ID_SLOT_MISMATCH.getMessage(locale, nodeId),
+                        RMObjectValidationMessageType.ARCHETYPE_SLOT_ID_MISMATCH));
+            }
+            OperationalTemplate operationalTemplate = operationalTemplateProvider.getOperationalTemplate(nodeId);
+            if(operationalTemplate == null) {
+                addMessage(new RMObjectValidationMessage(slot, path,
+                        locale -> RMObjectValidationMessageIds.rm_ARCHETYPE_NOT_FOUND.getMessage(locale, nodeId),
+                        RMObjectValidationMessageType.ARCHETYPE_NOT_FOUND));
+                return null;
+            }
+            selected = operationalTemplate.getDefinition();
+        }
+        return new ObjectValidation(selected, path, type == null ? selected.getRmTypeName() : type);
+    }
+
+    /**
+     * Deserialize and validate a leaf object. Like RMObjectValidator, every alternative is tried until one has no
+     * messages.
+     */
+    private CObject validateLeaf(JsonNode node, String attributePath, Integer index, List<CObject> candidates, boolean checkNodeId) {
+        String type = node.hasNonNull(typePropertyName) ? node.get(typePropertyName).asText() : null;
+        String nodeId = node.hasNonNull(ARCHETYPE_NODE_ID) ? node.get(ARCHETYPE_NODE_ID).asText() : null;
+        String path = objectPath(attributePath, index, nodeId);
+        CObject counted = findNodeIdMatch(candidates, nodeId, checkNodeId);
+        if(counted == null) {
+            addUnknownNodeIdMessage(candidates.get(0), path, nodeId);
+            return null;
+        }
+        List<List<RMObjectValidationMessage>> subResults = new ArrayList<>();
+        for(CObject candidate:candidates) {
+            if(checkNodeId && nodeId != null && !nodeIdMatches(candidate, nodeId)) {
+                continue;
+            }
+            List<RMObjectValidationMessage> subResult = validateLeafAlternative(node, path, candidate, type);
+            if(subResult.isEmpty()) {
+                return candidate;
+            }
+            subResults.add(subResult);
+        }
+        boolean atLeastOneWithoutWrongTypeFound = subResults.stream().anyMatch(RMObjectValidationUtil::hasNoneWithWrongType);
+        for(List<RMObjectValidationMessage> subResult:subResults) {
+            if (atLeastOneWithoutWrongTypeFound) {
+                //at least one has the correct type, we can filter out all others
+                subResult.stream().filter(message -> message.getType() != RMObjectValidationMessageType.WRONG_TYPE).forEach(this::addMessage);
+            } else {
+                addAllMessages(subResult);
+            }
+        }
+        return counted;
+    }
+
+    private List<RMObjectValidationMessage> validateLeafAlternative(JsonNode node, String path, CObject candidate, String type) {
+        Class<?> rmClass = lookup.getClass(type == null ? candidate.getRmTypeName() : type);
+        if(rmClass == null) {
+            return Collections.singletonList(wrongTypeMessage(candidate, path, type));
+        }
+        try {
+            return leafValidator.validateObject(candidate, objectMapper.treeToValue(node, rmClass), path);
+        } catch (JsonProcessingException e) {
+            return Collections.singletonList(new RMObjectValidationMessage(candidate, path,
+                    locale -> I18n.t("Could not read {0}: {1}", locale, candidate.getRmTypeName(), e.getOriginalMessage()),
+                    RMObjectValidationMessageType.EXCEPTION));
+        }
+    }
+
+    /**
+     * A leaf is a complex object constraint of which all attributes only have primitive object constraints. All
+     * candidates must be leaves to be able to deserialize the object before knowing which one applies.
+     */
+    private boolean isLeaf(List<CObject> candidates) {
+        for(CObject candidate:candidates) {
+            if(!(candidate instanceof CComplexObject) || candidate instanceof CArchetypeRoot) {
+                return false;
+            }
+            for(CAttribute attribute:candidate.getAttributes()) {
+                for(CObject child:attribute.getChildren()) {
+                    if(!(child instanceof CPrimitiveObject)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean isLocatable(String type) {
+        RMTypeInfo typeInfo = lookup.getTypeInfo(type);
+        return typeInfo != null && typeInfo.getAttribute(ARCHETYPE_NODE_ID) != null;
+    }
+
+    private boolean nodeIdMatches(CObject cObject, String nodeId) {
+        if(cObject instanceof ArchetypeSlot) {
+            return nodeId.equals(cObject.getNodeId()) || AOMUtils.archetypeRefMatchesSlotExpression(nodeId, (ArchetypeSlot) cObject);
+        }
+        if(cObject instanceof CArchetypeRoot && nodeId.equals(((CArchetypeRoot) cObject).getArchetypeRef())) {
+            return true;
+        }
+        return nodeId.equals(cObject.getNodeId());
+    }
+
+    private CObject findNodeIdMatch(List<CObject> candidates, String nodeId, boolean checkNodeId) {
+        for(CObject candidate:candidates) {
+            if(!checkNodeId || nodeId == null || nodeIdMatches(candidate, nodeId)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private CObject findTypeMatch(List<CObject> candidates, String type) {
+        Class<?> actualClass = lookup.getClass(type);
+        if(actualClass == null) {
+            return null;
+        }
+        for(CObject candidate:candidates) {
+            Class<?> classInConstraint = lookup.getClass(candidate.getRmTypeName());
+            if(classInConstraint != null && classInConstraint.isAssignableFrom(actualClass)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private void addUnknownNodeIdMessage(CObject cObject, String path, String nodeId) {
+        addMessage(new RMObjectValidationMessage(cObject.getParent() == null ? cObject : cObject.getParent(), path,
+                locale -> I18n.t("No constraint found for node id {0}", locale, nodeId),
+                RMObjectValidationMessageType.DEFAULT));
+    }
+
+    private void addWrongTypeMessage(CObject cObject, String path, String type) {
+        addMessage(wrongTypeMessage(cObject, path, type));
+    }
+
+    private RMObjectValidationMessage wrongTypeMessage(CObject cObject, String path, String type) {
+        return new RMObjectValidationMessage(cObject, path,
+                locale -> RMObjectValidationMessageIds.rm_INCORRECT_TYPE.getMessage(locale, cObject.getRmTypeName(), type),
+                RMObjectValidationMessageType.WRONG_TYPE);
+    }
+
+    /**
+     * Build the path of an object, in the same form as the RMObjectValidator does
+     */
+    private static String objectPath(String attributePath, Integer index, String nodeId) {
+        if(attributePath.isEmpty()) {
+            return "";
+        }
+        if(nodeId == null) {
+            return index == null ? attributePath : attributePath + "[" + index + "]";
+        }
+        return index == null ? attributePath + "[" + nodeId + "]" : attributePath + "[" + nodeId + ", " + index + "]";
+    }
+
+    /**
+     * The validation of a single non-leaf JSON object against the selected constraint. Keeps track of the attributes
+     * and child objects seen, to validate existence, cardinality and occurrences once the object has been read.
+     */
+    private class ObjectValidation {
+        private final CObject cObject;
+        private final String path;
+        private final String rmTypeName;
+        private final Map<String, Integer> attributeValueCounts = new HashMap<>();
+        private final Map<CObject, Integer> childCounts = new IdentityHashMap<>();
+
+        ObjectValidation(CObject cObject, String path, String rmTypeName) {
+            this.cObject = cObject;
+            this.path = path;
+            this.rmTypeName = rmTypeName;
+        }
+
+        void validateField(JsonParser parser, String fieldName) throws IOException {
+            JsonToken token = parser.currentToken();
+            if(token == JsonToken.VALUE_NULL) {
+                //same as not present
+                return;
+            }
+            CAttribute attribute = cObject.getAttribute(fieldName);
+            String attributePath = path + "/" + fieldName;
+            if(token == JsonToken.START_ARRAY) {
+                int count = 0;
+                while(parser.nextToken() != JsonToken.END_ARRAY) {
+                    count++;
+                    validateValue(parser, attribute, fieldName, attributePath, count);
+                }
+                attributeValueCounts.put(fieldName, count);
+            } else {
+                validateValue(parser, attribute, fieldName, attributePath, null);
+                attributeValueCounts.put(fieldName, 1);
+            }
+        }
+
+        private void validateValue(JsonParser parser, CAttribute attribute, String fieldName, String attributePath, Integer index) throws IOException {
+            if(attribute == null || attribute.getChildren().isEmpty()) {
+                //not constrained in the template. Existence and cardinality are validated in finish()
+                parser.skipChildren();
+                return;
+            }
+            CObject firstChild = attribute.getChildren().get(0);
+            CObject counted;
+            if(firstChild instanceof CPrimitiveObject) {
+                validatePrimitive(parser, (CPrimitiveObject<?, ?>) firstChild, fieldName, attributePath);
+                counted = firstChild;
+            } else if(parser.currentToken() == JsonToken.START_OBJECT) {
+                counted = validateObject(parser, attributePath, index, attribute.getChildren(), true);
+            } else {
+                addWrongTypeMessage(firstChild, objectPath(attributePath, index, null), parser.currentToken().asString());
+                parser.skipChildren();
+                counted = null;
+            }
+            if(counted != null) {
+                childCounts.merge(counted, 1, Integer::sum);
+            }
+        }
+
+        private void validatePrimitive(JsonParser parser, CPrimitiveObject<?, ?> cPrimitiveObject, String fieldName, String attributePath) throws IOException {
+            RMAttributeInfo attributeInfo = lookup.getAttributeInfo(rmTypeName, fieldName);
+            JsonNode node = objectMapper.readTree(parser);
+            if(attributeInfo == null) {
+                return;
+            }
+            Object value;
+            try {
+                value = objectMapper.treeToValue(node, attributeInfo.getTypeInCollection());
+            } catch (JsonProcessingException e) {
+                addMessage(new RMObjectValidationMessage(cPrimitiveObject, attributePath,
+                        locale -> I18n.t("Could not read {0}: {1}", locale, fieldName, e.getOriginalMessage()),
+                        RMObjectValidationMessageType.EXCEPTION));
+                return;
+            }
+            addAllMessages(RMPrimitiveObjectValidation.validate(lookup,
+                    Collections.singletonList(new RMObjectWithPath(value, attributePath)), attributePath, cPrimitiveObject));
+        }
+
+        void finish() {
+            List<CAttribute> attributes = new ArrayList<>(cObject.getAttributes());
+            attributes.addAll(RMObjectValidationUtil.getDefaultAttributeConstraints(cObject, attributes, lookup, constraintImposer));
+            for(CAttribute attribute:attributes) {
+                String attributeName = attribute.getRmAttributeName();
+                String attributePath = path + "/" + attributeName;
+                Integer count = attributeValueCounts.get(attributeName);
+                Object attributeValue;
+                if(!attribute.isSingle()) {
+                    //empty collections are usually left out of the JSON
+                    attributeValue = Collections.nCopies(count == null ? 0 : count, Boolean.TRUE);
+                } else {
+                    attributeValue = count == null ? null : Boolean.TRUE;
+                }
+                addAllMessages(RMMultiplicityValidation.validate(attribute, attributePath, attributeValue));
+                if(!attribute.getChildren().isEmpty() && !(attribute.getChildren().get(0) instanceof CPrimitiveObject)) {
+                    validateOccurrences(attribute, attributePath);
+                }
+            }
+        }
+
+        private void validateOccurrences(CAttribute attribute, String attributePath) {
+            List<RMObjectValidationMessage> alternativeMessages = new ArrayList<>();
+            for(CObject child:attribute.getChildren()) {
+                List<RMObjectWithPath> occurrences = Collections.nCopies(childCounts.getOrDefault(child, 0), new RMObjectWithPath(Boolean.TRUE, attributePath));
+                List<RMObjectValidationMessage> messages = RMOccurrenceValidation.validate(metaModel, occurrences, attributePath + "[" + child.getNodeId() + "]", child);
+                if(attribute.isSingle() && messages.isEmpty()) {
+                    //only one of the alternatives of a single attribute has to be present
+                    return;
+                }
+                alternativeMessages.addAll(messages);
+            }
+            addAllMessages(alternativeMessages);
+        }
+    }
+}
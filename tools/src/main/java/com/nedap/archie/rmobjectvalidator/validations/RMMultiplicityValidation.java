@@ -20,18 +20,19 @@ public class RMMultiplicityValidation {
             Cardinality cardinality = attribute.getCardinality();
             if (cardinality != null) {
                 if (!cardinality.getInterval().has(collectionValue.size())) {
-                    String message = RMObjectValidationMessageIds.rm_CARDINALITY_MISMATCH.getMessage(cardinality.getInterval().toString());
-                    return Lists.newArrayList(new RMObjectValidationMessage(attribute, pathSoFar, message, RMObjectValidationMessageType.CARDINALITY_MISMATCH));
+                    return Lists.newArrayList(new RMObjectValidationMessage(attribute, pathSoFar,
+                            locale -> RMObjectValidationMessageIds.rm_CARDINALITY_MISMATCH.getMessage(locale, cardinality.getInterval().toString()),
+                            RMObjectValidationMessageType.CARDINALITY_MISMATCH));
                 }
             }
         } else {
             MultiplicityInterval existence = attribute.getExistence();
             if (existence != null) {
                 if (!existence.has(attributeValue == null ? 0 : 1)) {
-                    String message = RMObjectValidationMessageIds.rm_EXISTENCE_MISMATCH.getMessage(attribute.getRmAttributeName(),
-                            attribute.getParent() == null ? "Unknown type" : attribute.getParent().getRmTypeName(), existence.toString());
-
-                    return Lists.newArrayList((new RMObjectValidationMessage(attribute, pathSoFar, message, RMObjectValidationMessageType.REQUIRED)));
+                    return Lists.newArrayList((new RMObjectValidationMessage(attribute, pathSoFar,
+                            locale -> RMObjectValidationMessageIds.rm_EXISTENCE_MISMATCH.getMessage(locale, attribute.getRmAttributeName(),
+                                    attribute.getParent() == null ? "Unknown type" : attribute.getParent().getRmTypeName(), existence.toString()),
+                            RMObjectValidationMessageType.REQUIRED)));
                 }
             }
         }
@@ -17,9 +17,11 @@ public class RMOccurrenceValidation {
         if(cobject != null) {
             MultiplicityInterval occurrences = cobject.effectiveOccurrences(metaModel::referenceModelPropMultiplicity);
             if (occurrences != null && !occurrences.has(rmObjects.size())) {
-                String message = RMObjectValidationMessageIds.rm_OCCURRENCE_MISMATCH.getMessage(rmObjects.size(), occurrences.toString());
+                int size = rmObjects.size();
                 RMObjectValidationMessageType messageType = occurrences.isMandatory() ? RMObjectValidationMessageType.REQUIRED : RMObjectValidationMessageType.DEFAULT;
-                return Lists.newArrayList(new RMObjectValidationMessage(cobject, pathSoFar, message, messageType));
+                return Lists.newArrayList(new RMObjectValidationMessage(cobject, pathSoFar,
+                        locale -> RMObjectValidationMessageIds.rm_OCCURRENCE_MISMATCH.getMessage(locale, size, occurrences.toString()),
+                        messageType));
             }
 
         }
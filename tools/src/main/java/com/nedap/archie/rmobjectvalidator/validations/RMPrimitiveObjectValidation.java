@@ -6,6 +6,7 @@ import com.nedap.archie.rminfo.ModelInfoLookup;
 import com.nedap.archie.rmobjectvalidator.ConstraintToStringUtil;
 import com.nedap.archie.rmobjectvalidator.RMObjectValidationMessage;
 import com.nedap.archie.rmobjectvalidator.RMObjectValidationMessageIds;
+import com.nedap.archie.rmobjectvalidator.RMObjectValidationMessageType;
 import org.openehr.utils.message.I18n;
 
 import java.util.ArrayList;
@@ -40,25 +41,23 @@ public class RMPrimitiveObjectValidation {
     }
 
     private static RMObjectValidationMessage createValidationMessage(Object value, String pathSoFar, CPrimitiveObject<?, ?> cobject) {
-        List<?> constraint = cobject.getConstraint();
-        String message;
-
-        if(constraint.size() == 1) {
-            String constraintStr = ConstraintToStringUtil.constraintElementToString(constraint.get(0));
-            message = RMObjectValidationMessageIds.rm_INVALID_FOR_CONSTRAINT.getMessage(getValueString(value), constraintStr);
-        } else {
-            String constraintStr = ConstraintToStringUtil.constraintListToString(constraint);
-            message = RMObjectValidationMessageIds.rm_INVALID_FOR_CONSTRAINT_MULTIPLE.getMessage(getValueString(value)) + "\n" +
-                    constraintStr;
-        }
-        return new RMObjectValidationMessage(cobject, pathSoFar, message);
+        //the RM object can change after validation, so its string is created now
+        String valueString = value == null ? null : getValueString(value);
+        return new RMObjectValidationMessage(cobject, pathSoFar, locale -> {
+            String valueStr = valueString == null ? I18n.t("empty", locale) : valueString;
+            List<?> constraint = cobject.getConstraint();
+            if(constraint.size() == 1) {
+                String constraintStr = ConstraintToStringUtil.constraintElementToString(constraint.get(0));
+                return RMObjectValidationMessageIds.rm_INVALID_FOR_CONSTRAINT.getMessage(locale, valueStr, constraintStr);
+            } else {
+                String constraintStr = ConstraintToStringUtil.constraintListToString(constraint);
+                return RMObjectValidationMessageIds.rm_INVALID_FOR_CONSTRAINT_MULTIPLE.getMessage(locale, valueStr) + "\n" +
+                        constraintStr;
+            }
+        }, RMObjectValidationMessageType.DEFAULT);
     }
 
     private static String getValueString(Object value) {
-        if(value == null) {
-            return I18n.t("empty");
-        }
-
         return (value instanceof String) ? "\"" + value.toString() + "\"" : value.toString();
     }
 }
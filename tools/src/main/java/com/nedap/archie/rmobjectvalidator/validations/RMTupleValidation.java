@@ -6,6 +6,7 @@ import com.nedap.archie.query.RMObjectWithPath;
 import com.nedap.archie.rminfo.ModelInfoLookup;
 import com.nedap.archie.rmobjectvalidator.RMObjectValidationMessage;
 import com.nedap.archie.rmobjectvalidator.RMObjectValidationMessageIds;
+import com.nedap.archie.rmobjectvalidator.RMObjectValidationMessageType;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -14,8 +15,11 @@ public class RMTupleValidation {
     public static List<RMObjectValidationMessage> validate(ModelInfoLookup lookup, CObject cobject, String pathSoFar, List<RMObjectWithPath> rmObjects, CAttributeTuple tuple) {
         List<RMObjectValidationMessage> result = new ArrayList<>();
         if (rmObjects.size() != 1) {
-            String message = RMObjectValidationMessageIds.rm_TUPLE_CONSTRAINT.getMessage(cobject.toString(), rmObjects.toString());
-            result.add(new RMObjectValidationMessage(cobject, pathSoFar, message));
+            //the RM objects can change after validation, so their string is created now
+            String rmObjectsString = rmObjects.toString();
+            result.add(new RMObjectValidationMessage(cobject, pathSoFar,
+                    locale -> RMObjectValidationMessageIds.rm_TUPLE_CONSTRAINT.getMessage(locale, cobject.toString(), rmObjectsString),
+                    RMObjectValidationMessageType.DEFAULT));
             return result;
         }
         Object rmObject = rmObjects.get(0).getObject();
@@ -27,8 +31,9 @@ public class RMTupleValidation {
 
             if(result.isEmpty()) {
                 // Fall back to generic validation message
-                String message = RMObjectValidationMessageIds.rm_TUPLE_MISMATCH.getMessage(tuple.toString());
-                result.add(new RMObjectValidationMessage(cobject, pathSoFar, message));
+                result.add(new RMObjectValidationMessage(cobject, pathSoFar,
+                        locale -> RMObjectValidationMessageIds.rm_TUPLE_MISMATCH.getMessage(locale, tuple.toString()),
+                        RMObjectValidationMessageType.DEFAULT));
             }
         }
         return result;
@@ -21,7 +21,6 @@ public class AssertionsFixer {
 
     private final RMObjectCreator creator;
     private final RuleEvaluation<?> ruleEvaluation;
-    private final RMObjectCreator rmObjectCreator;
 
     private ModelInfoLookup modelInfoLookup;
 
@@ -29,7 +28,6 @@ public class AssertionsFixer {
         this.creator = creator;
         this.ruleEvaluation = evaluation;
         this.modelInfoLookup = ruleEvaluation.getModelInfoLookup();
-        rmObjectCreator = new RMObjectCreator(evaluation.getModelInfoLookup());
     }
 
     public Map<String, Object> fixAssertions(Archetype archetype, AssertionResult assertionResult) {
@@ -79,6 +77,19 @@ public class AssertionsFixer {
     }
 
 
+    /**
+     * Set the value at the given path to null, in every object found at the parent path. Unlike fixAssertions, this
+     * does not construct missing structure: if there is no parent, there is no value to clear.
+     */
+    public void clearValue(String path) {
+        String pathOfParent = stripLastPathSegment(path);
+        String lastPathSegment = getLastPathSegment(path);
+        for(Object parent:ruleEvaluation.findList(pathOfParent)) {
+            creator.set(parent, lastPathSegment, Lists.newArrayList((Object) null));
+        }
+        ruleEvaluation.refreshQueryContext();
+    }
+
     private void constructMissingStructure(Archetype archetype, String pathOfParent, String lastPathSegment, List<Object> parents) {
         //TODO: this is great but not enough. Fix it by hardcoding support for DV_CODED_TEXT and DV_ORDINAL, here or in the FixableAssertionsChecker.
         String newPathOfParent = pathOfParent;
@@ -111,7 +122,7 @@ public class AssertionsFixer {
 
                 Object newEmptyObject = null;
                 if (constraint instanceof CComplexObject) {
-                    newEmptyObject = rmObjectCreator.create(constraint);
+                    newEmptyObject = creator.create(constraint);
                 } else {
                     newEmptyObject = constructEmptySimpleObject(newLastPathSegment, object, newEmptyObject);
                 }
@@ -0,0 +1,187 @@
+package com.nedap.archie.rules.evaluation;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Evaluates the rules of one archetype for many RM objects, in parallel, sharing one RuleEvaluationEngine and its
+ * compiled rules. The results are returned in the order of the input. At most maxPendingEvaluations roots are
+ * evaluated ahead of the consumer of the results, so memory use is bounded for any number of inputs.
+ *
+ * The results are produced lazily: nothing is evaluated until the returned iterator or stream is consumed. Close a
+ * returned stream that is not consumed completely, to cancel the evaluations that are pending.
+ */
+public class BatchRuleEvaluator<T> {
+
+    private final RuleEvaluationEngine<T> engine;
+    private final Executor executor;
+    private int maxPendingEvaluations = Runtime.getRuntime().availableProcessors() * 4;
+    private boolean cloneRoots = true;
+
+    /**
+     * Create a batch evaluator that evaluates in the common fork join pool
+     */
+    public BatchRuleEvaluator(RuleEvaluationEngine<T> engine) {
+        this(engine, ForkJoinPool.commonPool());
+    }
+
+    public BatchRuleEvaluator(RuleEvaluationEngine<T> engine, Executor executor) {
+        this.engine = engine;
+        this.executor = executor;
+    }
+
+    public int getMaxPendingEvaluations() {
+        return maxPendingEvaluations;
+    }
+
+    /**
+     * Set the maximum number of roots that are evaluated, or whose results are kept, ahead of the consumer of the
+     * results. Default four times the number of available processors
+     */
+    public void setMaxPendingEvaluations(int maxPendingEvaluations) {
+        if(maxPendingEvaluations < 1) {
+            throw new IllegalArgumentException("at least one evaluation must be allowed, but was " + maxPendingEvaluations);
+        }
+        this.maxPendingEvaluations = maxPendingEvaluations;
+    }
+
+    public boolean isCloneRoots() {
+        return cloneRoots;
+    }
+
+    /**
+     * Set to false if the given roots may be changed by the rules. Skips the copy of every root before evaluation, and
+     * the values set by the rules are written to the given roots. See RuleEvaluation.setCloneRoot
+     *
+     * There is no read-only mode that skips the copy without changing the given roots, not even for
+     * evaluateSetPathValues: the values set by a rule are written to the root during evaluation, because the rules
+     * after it read them from there. Without a copy, the given roots are always changed.
+     */
+    public void setCloneRoots(boolean cloneRoots) {
+        this.cloneRoots = cloneRoots;
+    }
+
+    /**
+     * Evaluate the rules for every root
+     * @return the evaluation results, in the order of the roots
+     */
+    public Iterator<EvaluationResult> evaluate(Iterator<? extends T> roots) {
+        return new OrderedResultIterator<>(roots, this::evaluate);
+    }
+
+    /**
+     * Evaluate the rules for every root
+     * @return the evaluation results, in the order of the roots
+     */
+    public Stream<EvaluationResult> evaluate(Stream<? extends T> roots) {
+        return toStream(new OrderedResultIterator<>(roots.iterator(), this::evaluate), roots);
+    }
+
+    /**
+     * Evaluate the rules for every root, keeping only the values set by the rules. The values are also written to the
+     * roots if cloneRoots is false
+     * @return the paths set by the rules with their values, for every root in the order of the roots
+     */
+    public Iterator<Map<String, Value<?>>> evaluateSetPathValues(Iterator<? extends T> roots) {
+        return new OrderedResultIterator<>(roots, root -> evaluate(root).getSetPathValues());
+    }
+
+    /**
+     * Evaluate the rules for every root, keeping only the values set by the rules
+     * @return the paths set by the rules with their values, for every root in the order of the roots
+     */
+    public Stream<Map<String, Value<?>>> evaluateSetPathValues(Stream<? extends T> roots) {
+        return toStream(new OrderedResultIterator<>(roots.iterator(), root -> evaluate(root).getSetPathValues()), roots);
+    }
+
+    private EvaluationResult evaluate(T root) {
+        RuleEvaluation<T> evaluation = engine.newEvaluation();
+        evaluation.setCloneRoot(cloneRoots);
+        return evaluation.evaluate(root, engine.getCompiledRules());
+    }
+
+    /**
+     * @return a stream of the results of the given iterator. Closing it cancels the evaluations that have not started
+     * yet, and closes the stream of roots
+     */
+    private <R> Stream<R> toStream(OrderedResultIterator<R> iterator, Stream<?> roots) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(iterator::cancel)
+                .onClose(roots::close);
+    }
+
+    /**
+     * Keeps up to maxPendingEvaluations evaluations running ahead of the consumer, and returns their results in order
+     */
+    private class OrderedResultIterator<R> implements Iterator<R> {
+
+        private final Iterator<? extends T> roots;
+        private final Function<T, R> evaluation;
+        private final Deque<CompletableFuture<R>> pending = new ArrayDeque<>();
+        private boolean cancelled = false;
+
+        OrderedResultIterator(Iterator<? extends T> roots, Function<T, R> evaluation) {
+            this.roots = roots;
+            this.evaluation = evaluation;
+        }
+
+        /**
+         * Cancel the pending evaluations and stop evaluating. Evaluations that are already running finish, but their
+         * results are discarded
+         */
+        void cancel() {
+            cancelled = true;
+            for(CompletableFuture<R> future:pending) {
+                future.cancel(false);
+            }
+            pending.clear();
+        }
+
+        private void fill() {
+            while(!cancelled && pending.size() < maxPendingEvaluations && roots.hasNext()) {
+                T root = roots.next();
+                pending.add(CompletableFuture.supplyAsync(() -> evaluation.apply(root), executor));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            fill();
+            return !pending.isEmpty();
+        }
+
+        @Override
+        public R next() {
+            fill();
+            if(pending.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            CompletableFuture<R> next = pending.removeFirst();
+            //start the next evaluation before waiting for this one
+            fill();
+            try {
+                return next.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("interrupted while waiting for rule evaluation", e);
+            } catch (ExecutionException e) {
+                if(e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new RuntimeException(e.getCause());
+            }
+        }
+    }
+}
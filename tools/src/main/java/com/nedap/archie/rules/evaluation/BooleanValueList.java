@@ -0,0 +1,57 @@
+package com.nedap.archie.rules.evaluation;
+
+import com.nedap.archie.rules.PrimitiveType;
+
+/**
+ * A list of Boolean values, backed by a boolean array. See PrimitiveValueList
+ */
+public class BooleanValueList extends PrimitiveValueList {
+
+    private final boolean[] values;
+
+    /**
+     * @param values the values
+     * @param nulls which values are null, or null if none of them are
+     * @param pathSupplier calculates the paths of the value at an index
+     */
+    public BooleanValueList(boolean[] values, boolean[] nulls, PathSupplier pathSupplier) {
+        super(PrimitiveType.Boolean, values.length, nulls, pathSupplier);
+        this.values = values;
+    }
+
+    public boolean getBoolean(int i) {
+        if(isMaterialized()) {
+            return (Boolean) getObject(i);
+        }
+        return values[i];
+    }
+
+    @Override
+    public boolean getSingleBooleanResult() {
+        if(isMaterialized()) {
+            return super.getSingleBooleanResult();
+        }
+        boolean containsValue = false;
+        for(int i = 0; i < size; i++) {
+            if(!isNull(i)) {
+                if(!values[i]) {
+                    return false;
+                }
+                containsValue = true;
+            }
+        }
+        return containsValue;
+    }
+
+    @Override
+    protected Object getPrimitiveObject(int i) {
+        return isNull(i) ? null : values[i];
+    }
+
+    @Override
+    protected PrimitiveValueList copyPrimitive() {
+        BooleanValueList result = new BooleanValueList(values.clone(), getNulls() == null ? null : getNulls().clone(), getPathSupplier());
+        result.setType(getType());
+        return result;
+    }
+}
@@ -0,0 +1,74 @@
+package com.nedap.archie.rules.evaluation;
+
+import com.nedap.archie.rules.RuleElement;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A RuleElement compiled to a closure, with its evaluator, operator, function or path query bound in advance.
+ * Constant expressions have been evaluated at compile time and only return a copy of their value.
+ *
+ * Created by RulesCompiler, evaluated by RuleEvaluation.
+ */
+public class CompiledRuleElement {
+
+    @FunctionalInterface
+    interface Body {
+        ValueList evaluate(RuleEvaluation<?> evaluation);
+    }
+
+    private final RuleElement element;
+    private final Body body;
+    private final ValueList constantValue;
+    private final List<CompiledRuleElement> operands;
+
+    CompiledRuleElement(RuleElement element, Body body, List<CompiledRuleElement> operands) {
+        this.element = element;
+        this.body = body;
+        this.constantValue = null;
+        this.operands = operands;
+    }
+
+    CompiledRuleElement(RuleElement element, ValueList constantValue, List<CompiledRuleElement> operands) {
+        this.element = element;
+        this.body = null;
+        //calculate any lazily calculated paths now, so evaluations only read the constant, possibly from several threads
+        constantValue.getAllPaths();
+        this.constantValue = constantValue;
+        this.operands = operands;
+    }
+
+    CompiledRuleElement(RuleElement element, Body body) {
+        this(element, body, Collections.emptyList());
+    }
+
+    public RuleElement getElement() {
+        return element;
+    }
+
+    /**
+     * @return true if this element has been evaluated at compile time
+     */
+    public boolean isConstant() {
+        return constantValue != null;
+    }
+
+    /**
+     * @return a copy of the value of this constant element, or null if it is not constant
+     */
+    public ValueList getConstantValue() {
+        return constantValue == null ? null : constantValue.copy();
+    }
+
+    /**
+     * @return the compiled operands of this element, if it is an operator or function
+     */
+    public List<CompiledRuleElement> getOperands() {
+        return operands;
+    }
+
+    Body getBody() {
+        return body;
+    }
+}
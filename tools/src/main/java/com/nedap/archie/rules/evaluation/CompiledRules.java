@@ -0,0 +1,48 @@
+package com.nedap.archie.rules.evaluation;
+
+import com.nedap.archie.rules.RuleElement;
+import com.nedap.archie.rules.RuleStatement;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The rules of an archetype, compiled once by RuleEvaluation.compile, to be evaluated many times with
+ * RuleEvaluation.evaluate(root, compiledRules). Can only be evaluated by the RuleEvaluation that compiled it, or one
+ * created for the same archetype with the same registered functions.
+ */
+public class CompiledRules {
+
+    private final List<RuleStatement> rules;
+    private final List<CompiledRuleElement> statements;
+    private final Map<RuleElement, CompiledRuleElement> compiledElements;
+
+    CompiledRules(List<RuleStatement> rules, List<CompiledRuleElement> statements, Map<RuleElement, CompiledRuleElement> compiledElements) {
+        this.rules = rules;
+        this.statements = statements;
+        this.compiledElements = compiledElements;
+    }
+
+    /**
+     * @return the rules that have been compiled
+     */
+    public List<RuleStatement> getRules() {
+        return rules;
+    }
+
+    /**
+     * @return the compiled rule statements, in the same order as getRules()
+     */
+    public List<CompiledRuleElement> getStatements() {
+        return Collections.unmodifiableList(statements);
+    }
+
+    /**
+     * @param element a rule element from the compiled rules
+     * @return the compiled form of the element, or null if it was not compiled
+     */
+    public CompiledRuleElement getCompiledElement(RuleElement element) {
+        return compiledElements.get(element);
+    }
+}
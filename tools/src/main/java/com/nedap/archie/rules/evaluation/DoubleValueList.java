@@ -0,0 +1,40 @@
+package com.nedap.archie.rules.evaluation;
+
+import com.nedap.archie.rules.PrimitiveType;
+
+/**
+ * A list of Real values, backed by a double array. See PrimitiveValueList
+ */
+public class DoubleValueList extends PrimitiveValueList {
+
+    private final double[] values;
+
+    /**
+     * @param values the values
+     * @param nulls which values are null, or null if none of them are
+     * @param pathSupplier calculates the paths of the value at an index
+     */
+    public DoubleValueList(double[] values, boolean[] nulls, PathSupplier pathSupplier) {
+        super(PrimitiveType.Real, values.length, nulls, pathSupplier);
+        this.values = values;
+    }
+
+    public double getDouble(int i) {
+        if(isMaterialized()) {
+            return ((Number) getObject(i)).doubleValue();
+        }
+        return values[i];
+    }
+
+    @Override
+    protected Object getPrimitiveObject(int i) {
+        return isNull(i) ? null : values[i];
+    }
+
+    @Override
+    protected PrimitiveValueList copyPrimitive() {
+        DoubleValueList result = new DoubleValueList(values.clone(), getNulls() == null ? null : getNulls().clone(), getPathSupplier());
+        result.setType(getType());
+        return result;
+    }
+}
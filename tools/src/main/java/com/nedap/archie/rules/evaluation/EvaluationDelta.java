@@ -0,0 +1,78 @@
+package com.nedap.archie.rules.evaluation;
+
+import com.nedap.archie.rules.RuleStatement;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The changes caused by one call to RuleEvaluationSession.update: which rules have been evaluated again, which of their
+ * assertion results changed, which paths have been set to a new value and which paths are no longer set.
+ */
+public class EvaluationDelta {
+
+    private final List<RuleStatement> evaluatedRules = new ArrayList<>();
+    private final List<AssertionResult> changedAssertionResults = new ArrayList<>();
+    private final Map<String, Value<?>> changedSetPathValues = new LinkedHashMap<>();
+    private final Set<String> removedSetPaths = new LinkedHashSet<>();
+
+    void addEvaluatedRule(RuleStatement rule) {
+        evaluatedRules.add(rule);
+    }
+
+    void addChangedAssertionResult(AssertionResult assertionResult) {
+        changedAssertionResults.add(assertionResult);
+    }
+
+    void addChangedSetPathValue(String path, Value<?> value) {
+        changedSetPathValues.put(path, value);
+        removedSetPaths.remove(path);
+    }
+
+    void addRemovedSetPath(String path) {
+        if(!changedSetPathValues.containsKey(path)) {
+            removedSetPaths.add(path);
+        }
+    }
+
+    /**
+     * @return the rules that have been evaluated again, in the order of the archetype rules
+     */
+    public List<RuleStatement> getEvaluatedRules() {
+        return Collections.unmodifiableList(evaluatedRules);
+    }
+
+    /**
+     * @return the new assertion results that differ in result or set path values from those of the previous evaluation
+     */
+    public List<AssertionResult> getChangedAssertionResults() {
+        return Collections.unmodifiableList(changedAssertionResults);
+    }
+
+    /**
+     * @return the paths that have been set to a different value than in the previous evaluation, with their new value
+     */
+    public Map<String, Value<?>> getChangedSetPathValues() {
+        return Collections.unmodifiableMap(changedSetPathValues);
+    }
+
+    /**
+     * @return the paths that were set by the previous evaluation, but are no longer set by any evaluated rule. Their
+     * value in the RM object is not changed back
+     */
+    public Set<String> getRemovedSetPaths() {
+        return Collections.unmodifiableSet(removedSetPaths);
+    }
+
+    /**
+     * @return true if nothing changed
+     */
+    public boolean isEmpty() {
+        return changedAssertionResults.isEmpty() && changedSetPathValues.isEmpty() && removedSetPaths.isEmpty();
+    }
+}
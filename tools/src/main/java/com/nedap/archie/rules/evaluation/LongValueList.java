@@ -0,0 +1,40 @@
+package com.nedap.archie.rules.evaluation;
+
+import com.nedap.archie.rules.PrimitiveType;
+
+/**
+ * A list of Integer values, backed by a long array. See PrimitiveValueList
+ */
+public class LongValueList extends PrimitiveValueList {
+
+    private final long[] values;
+
+    /**
+     * @param values the values
+     * @param nulls which values are null, or null if none of them are
+     * @param pathSupplier calculates the paths of the value at an index
+     */
+    public LongValueList(long[] values, boolean[] nulls, PathSupplier pathSupplier) {
+        super(PrimitiveType.Integer, values.length, nulls, pathSupplier);
+        this.values = values;
+    }
+
+    public long getLong(int i) {
+        if(isMaterialized()) {
+            return ((Number) getObject(i)).longValue();
+        }
+        return values[i];
+    }
+
+    @Override
+    protected Object getPrimitiveObject(int i) {
+        return isNull(i) ? null : values[i];
+    }
+
+    @Override
+    protected PrimitiveValueList copyPrimitive() {
+        LongValueList result = new LongValueList(values.clone(), getNulls() == null ? null : getNulls().clone(), getPathSupplier());
+        result.setType(getType());
+        return result;
+    }
+}
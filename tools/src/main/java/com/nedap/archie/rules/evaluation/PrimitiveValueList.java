@@ -0,0 +1,315 @@
+package com.nedap.archie.rules.evaluation;
+
+import com.nedap.archie.rules.PrimitiveType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A ValueList backed by an array of primitive values instead of a list of boxed Values. The paths of each value are
+ * only calculated when they are requested, by a PathSupplier.
+ *
+ * As soon as getValues() is called, or the list is modified, the values are converted to a regular list of Values and
+ * this behaves exactly like a ValueList.
+ */
+public abstract class PrimitiveValueList extends ValueList {
+
+    /**
+     * Calculates the paths of the value at the given index. Must return a new list every time it is called
+     */
+    @FunctionalInterface
+    public interface PathSupplier {
+        List<String> getPaths(int index);
+    }
+
+    protected final int size;
+    private final boolean[] nulls;
+    private final PathSupplier pathSupplier;
+    private List<List<String>> resolvedPaths;
+    private boolean materialized = false;
+
+    /**
+     * @param nulls which values are null, or null if none of them are
+     */
+    protected PrimitiveValueList(PrimitiveType type, int size, boolean[] nulls, PathSupplier pathSupplier) {
+        this.size = size;
+        this.nulls = nulls;
+        this.pathSupplier = pathSupplier;
+        setType(type);
+    }
+
+    /**
+     * @return the value at the given index as a boxed object, for a list that has not been materialized
+     */
+    protected abstract Object getPrimitiveObject(int i);
+
+    /**
+     * @return a copy of this list that is not materialized, with the same type and with paths calculated again
+     */
+    protected abstract PrimitiveValueList copyPrimitive();
+
+    protected boolean isMaterialized() {
+        return materialized;
+    }
+
+    protected boolean[] getNulls() {
+        return nulls;
+    }
+
+    protected PathSupplier getPathSupplier() {
+        return pathSupplier;
+    }
+
+    public boolean isNull(int i) {
+        if(materialized) {
+            return super.get(i).isNull();
+        }
+        if(i >= size) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+        }
+        return nulls != null && nulls[i];
+    }
+
+    private void materialize() {
+        if(materialized) {
+            return;
+        }
+        List<Value<?>> values = new ArrayList<>(size);
+        for(int i = 0; i < size; i++) {
+            values.add(new Value<>(getPrimitiveObject(i), getPaths(i)));
+        }
+        materialized = true;
+        super.setValues(values);
+    }
+
+    @Override
+    public List<Value<?>> getValues() {
+        materialize();
+        return super.getValues();
+    }
+
+    @Override
+    public void setValues(List<Value<?>> values) {
+        materialized = true;
+        super.setValues(values);
+    }
+
+    @Override
+    public void addValue(Object value, List<String> paths) {
+        materialize();
+        super.addValue(value, paths);
+    }
+
+    @Override
+    public void addValue(Value<?> value) {
+        materialize();
+        super.addValue(value);
+    }
+
+    @Override
+    public void addValues(ValueList evaluated) {
+        materialize();
+        super.addValues(evaluated);
+    }
+
+    @Override
+    public void determineTypeFromValues() {
+        materialize();
+        super.determineTypeFromValues();
+    }
+
+    @Override
+    public Value<?> get(int i) {
+        //the returned value can be modified, so materialize
+        materialize();
+        return super.get(i);
+    }
+
+    @Override
+    public int size() {
+        return materialized ? super.size() : size;
+    }
+
+    @Override
+    public Object getObject(int i) {
+        if(materialized) {
+            return super.getObject(i);
+        }
+        return isNull(i) ? null : getPrimitiveObject(i);
+    }
+
+    @Override
+    public List<String> getPaths(int i) {
+        if(materialized) {
+            return super.getPaths(i);
+        }
+        if(resolvedPaths == null) {
+            resolvedPaths = new ArrayList<>(Collections.nCopies(size, null));
+        }
+        List<String> paths = resolvedPaths.get(i);
+        if(paths == null) {
+            paths = pathSupplier.getPaths(i);
+            resolvedPaths.set(i, paths);
+        }
+        return paths;
+    }
+
+    @Override
+    public List<Object> getValueObjects() {
+        if(materialized) {
+            return super.getValueObjects();
+        }
+        List<Object> result = new ArrayList<>(size);
+        for(int i = 0; i < size; i++) {
+            result.add(getObject(i));
+        }
+        return result;
+    }
+
+    @Override
+    public List<String> getAllPaths() {
+        if(materialized) {
+            return super.getAllPaths();
+        }
+        List<String> result = new ArrayList<>();
+        for(int i = 0; i < size; i++) {
+            result.addAll(getPaths(i));
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        if(materialized) {
+            return super.isEmpty();
+        }
+        for(int i = 0; i < size; i++) {
+            if(!isNull(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean getSingleBooleanResult() {
+        if(materialized) {
+            return super.getSingleBooleanResult();
+        }
+        if(isEmpty()) {
+            return false;
+        }
+        for(int i = 0; i < size; i++) {
+            Boolean singleBoolean = (Boolean) getObject(i);
+            if(singleBoolean != null && !singleBoolean) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean containsOnlyNullValues() {
+        return isEmpty();
+    }
+
+    @Override
+    public ValueList copy() {
+        if(materialized) {
+            return super.copy();
+        }
+        return copyPrimitive();
+    }
+
+    @Override
+    public String toString() {
+        if(materialized) {
+            return super.toString();
+        }
+        List<String> values = new ArrayList<>(size);
+        for(int i = 0; i < size; i++) {
+            Object value = getObject(i);
+            values.add((value == null ? "" : value.toString()) + " from " + getPaths(i));
+        }
+        return getType() + ": " + values;
+    }
+
+    /**
+     * @return a PathSupplier combining the paths of the given value lists, taking the value at index 0 of a list of
+     * size 1, and the value at the same index for other lists
+     */
+    public static PathSupplier broadcastPaths(List<ValueList> arguments) {
+        return i -> {
+            List<String> paths = new ArrayList<>();
+            for(ValueList argument:arguments) {
+                paths.addAll(argument.getPaths(argument.size() == 1 ? 0 : i));
+            }
+            return paths;
+        };
+    }
+
+    /**
+     * @return true if the value at index i in the given list is null
+     */
+    public static boolean isNull(ValueList list, int i) {
+        if(list instanceof PrimitiveValueList) {
+            return ((PrimitiveValueList) list).isNull(i);
+        }
+        return list.get(i).isNull();
+    }
+
+    /**
+     * @return true if the value at index i is a Long
+     */
+    public static boolean isLong(ValueList list, int i) {
+        if(list instanceof LongValueList && !((LongValueList) list).isMaterialized()) {
+            return !((LongValueList) list).isNull(i);
+        } else if (list instanceof DoubleValueList && !((DoubleValueList) list).isMaterialized()) {
+            return false;
+        }
+        return list.getObject(i) instanceof Long;
+    }
+
+    /**
+     * @return true if the value at index i is a Long or a Double
+     */
+    public static boolean isLongOrDouble(ValueList list, int i) {
+        if(list instanceof LongValueList && !((LongValueList) list).isMaterialized()) {
+            return !((LongValueList) list).isNull(i);
+        } else if (list instanceof DoubleValueList && !((DoubleValueList) list).isMaterialized()) {
+            return !((DoubleValueList) list).isNull(i);
+        }
+        Object value = list.getObject(i);
+        return value instanceof Long || value instanceof Double;
+    }
+
+    /**
+     * @return true if the value at index i is a Number
+     */
+    public static boolean isNumber(ValueList list, int i) {
+        return isLongOrDouble(list, i) || list.getObject(i) instanceof Number;
+    }
+
+    /**
+     * @return the value at index i, which must be a Long
+     */
+    public static long getLong(ValueList list, int i) {
+        if(list instanceof LongValueList) {
+            return ((LongValueList) list).getLong(i);
+        }
+        return (Long) list.getObject(i);
+    }
+
+    /**
+     * @return the value at index i as a double. The value must be a Number
+     */
+    public static double getDouble(ValueList list, int i) {
+        if(list instanceof DoubleValueList) {
+            return ((DoubleValueList) list).getDouble(i);
+        } else if (list instanceof LongValueList) {
+            return ((LongValueList) list).getLong(i);
+        }
+        return ((Number) list.getObject(i)).doubleValue();
+    }
+}
@@ -2,37 +2,44 @@ package com.nedap.archie.rules.evaluation;
 
 import com.google.common.collect.ArrayListMultimap;
 import com.nedap.archie.aom.Archetype;
-import com.nedap.archie.creation.RMObjectCreator;
 import com.nedap.archie.query.RMObjectWithPath;
+import com.nedap.archie.query.RMPathQuery;
 import com.nedap.archie.query.RMQueryContext;
 import com.nedap.archie.rminfo.ModelInfoLookup;
-import com.nedap.archie.rmobjectvalidator.APathQueryCache;
 import com.nedap.archie.rules.Expression;
 import com.nedap.archie.rules.RuleElement;
 import com.nedap.archie.rules.RuleStatement;
-import com.nedap.archie.rules.evaluation.evaluators.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.xpath.XPathExpressionException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
+ * The state of a single rule evaluation. Create one per evaluation from a shared, thread-safe RuleEvaluationEngine with
+ * engine.newEvaluation(), or standalone with the constructors of this class, which create an engine that only this
+ * RuleEvaluation uses. Not thread-safe.
+ *
  * Created by pieter.bos on 31/03/16.
  */
 public class RuleEvaluation<T> {
 
     private static Logger logger = LoggerFactory.getLogger(RuleEvaluation.class);;
 
-    private Archetype archetype;
-    private List<Evaluator<?>> evaluators = new ArrayList<>();
-    private HashMap<Class<?>, Evaluator<?>> classToEvaluator = new HashMap<>();
-    private FunctionEvaluator functionEvaluator;
+    private final RuleEvaluationEngine<T> engine;
+    /**
+     * true if the engine was created for this RuleEvaluation only, so it can still be changed
+     */
+    private final boolean ownsEngine;
+    private CompiledRules compiledRules;
+    private boolean cloneRoot = true;
 
     //evaluation state
     private T root;
@@ -43,16 +50,16 @@ public class RuleEvaluation<T> {
     private ArrayListMultimap<RuleElement, ValueList> ruleElementValues = ArrayListMultimap.create();
     private FixableAssertionsChecker fixableAssertionsChecker;
 
-    private ModelInfoLookup modelInfoLookup;
-
-    private RMObjectCreator creator;
-
-    private final JAXBContext jaxbContext;
     private RMQueryContext rmQueryContext;
-    private APathQueryCache queryCache = new APathQueryCache();
+    /**
+     * query results relative to the objects currently bound to for_all variables, by bound object and relative path
+     */
+    private final Map<RMObjectWithPath, Map<String, List<RMObjectWithPath>>> relativeQueryResults = new IdentityHashMap<>();
 
     private final AssertionsFixer assertionsFixer;
 
+    private RuleEvaluationTracer tracer = RuleEvaluationTracer.NO_OP;
+
     public RuleEvaluation(ModelInfoLookup modelInfoLookup, Archetype archetype) {
         this(modelInfoLookup, null, archetype);
     }
@@ -66,33 +73,82 @@ public class RuleEvaluation<T> {
      */
     @Deprecated
     public RuleEvaluation(ModelInfoLookup modelInfoLookup, JAXBContext jaxbContext, Archetype archetype) {
-        this.jaxbContext = jaxbContext;
-        this.modelInfoLookup = modelInfoLookup;
-        this.creator = new RMObjectCreator(modelInfoLookup);
-        assertionsFixer = new AssertionsFixer(this, creator);
-        this.archetype = archetype;
-        this.functionEvaluator = new FunctionEvaluator();
-        add(new VariableDeclarationEvaluator());
-        add(new ConstantEvaluator());
-        add(new AssertionEvaluator());
-        add(new BinaryOperatorEvaluator(modelInfoLookup, archetype));
-        add(new UnaryOperatorEvaluator());
-        add(new VariableReferenceEvaluator());
-        add(new ModelReferenceEvaluator());
-        add(new ForAllEvaluator());
-        add(functionEvaluator);
-    }
-
-    private void add(Evaluator<?> evaluator) {
-        evaluators.add(evaluator);
-        for(Class<?> clazz: evaluator.getSupportedClasses()) {
-            classToEvaluator.put(clazz, evaluator);
-        }
+        this(new RuleEvaluationEngine<>(modelInfoLookup, jaxbContext, archetype, Collections.emptyList()), true);
+    }
+
+    /**
+     * Create an evaluation context that shares the given engine. See RuleEvaluationEngine.newEvaluation()
+     */
+    public RuleEvaluation(RuleEvaluationEngine<T> engine) {
+        this(engine, false);
     }
 
+    private RuleEvaluation(RuleEvaluationEngine<T> engine, boolean ownsEngine) {
+        this.engine = engine;
+        this.ownsEngine = ownsEngine;
+        assertionsFixer = new AssertionsFixer(this, engine.getCreator());
+    }
+
+    public RuleEvaluationEngine<T> getEngine() {
+        return engine;
+    }
+
+    public boolean isCloneRoot() {
+        return cloneRoot;
+    }
+
+    /**
+     * By default the rules are evaluated on a copy of the given root, so the values set by the rules do not change
+     * the given object. Set to false to skip the copy and evaluate on the given root directly, for example when it
+     * is discarded after evaluation anyway. Values set by the rules are then written to the given root.
+     */
+    public void setCloneRoot(boolean cloneRoot) {
+        this.cloneRoot = cloneRoot;
+    }
+
+    /**
+     * Evaluate the given rules. The rules are compiled first, and the compiled rules are reused as long as the same
+     * list of rules is passed, such as archetype.getRules().getRules().
+     *
+     * The compiled rules are reused based on the identity of the list, not its contents: if the list, or any of the
+     * rules in it, is changed after evaluation, pass a new list, or compile the rules again with compile(rules) and
+     * evaluate with evaluate(root, compiledRules).
+     */
     public EvaluationResult evaluate(T root, List<RuleStatement> rules) {
+        if(compiledRules == null || compiledRules.getRules() != rules) {
+            compiledRules = engine.getCompiledRules(rules);
+        }
+        return evaluate(root, compiledRules);
+    }
 
-        this.root = (T) modelInfoLookup.clone(root);
+    /**
+     * Compile the given rules, so they can be evaluated many times with evaluate(root, compiledRules) without
+     * interpreting every rule element again. Register any extra functions before compiling.
+     *
+     * @param rules the rules to compile, usually archetype.getRules().getRules()
+     * @return the compiled rules
+     */
+    public CompiledRules compile(List<RuleStatement> rules) {
+        return engine.compile(rules);
+    }
+
+    public EvaluationResult evaluate(T root, CompiledRules rules) {
+
+        start(root, rules);
+
+        for(CompiledRuleElement rule:rules.getStatements()) {
+            evaluate(rule);
+        }
+        return evaluationResult;
+
+    }
+
+    /**
+     * Clone the root and reset the evaluation state, without evaluating anything yet
+     */
+    void start(T root, CompiledRules rules) {
+        this.root = cloneRoot ? (T) getModelInfoLookup().clone(root) : root;
+        this.compiledRules = rules;
 
         refreshQueryContext();
 
@@ -102,18 +158,39 @@ public class RuleEvaluation<T> {
         evaluationResult = new EvaluationResult();
 
         fixableAssertionsChecker = new FixableAssertionsChecker(ruleElementValues);
+    }
 
-        for(RuleStatement rule:rules) {
-            evaluate(rule);
-        }
-        return evaluationResult;
-
+    /**
+     * Evaluate a single statement of the rules passed to start, keeping the variables and the RM root of the
+     * statements evaluated before.
+     * @return the assertion results of this statement only. These are not added to getEvaluationResult()
+     */
+    List<AssertionResult> evaluateStatement(CompiledRuleElement statement) {
+        //fixing assertions only needs the values of the statement being evaluated
+        ruleElementValues.clear();
+        List<AssertionResult> allResults = evaluationResult.getAssertionResults();
+        int resultsBefore = allResults.size();
+        evaluate(statement);
+        List<AssertionResult> statementResults = allResults.subList(resultsBefore, allResults.size());
+        List<AssertionResult> result = new ArrayList<>(statementResults);
+        statementResults.clear();
+        return result;
     }
 
     public ValueList evaluate(RuleElement rule) {
-        Evaluator evaluator = classToEvaluator.get(rule.getClass());
+        CompiledRuleElement compiled = compiledRules == null ? null : compiledRules.getCompiledElement(rule);
+        if(compiled != null) {
+            return evaluate(compiled);
+        }
+        Evaluator evaluator = engine.getEvaluator(rule);
         if(evaluator != null) {
-            ValueList valueList = evaluator.evaluate(this, rule);
+            long start = elementStarted(rule);
+            ValueList valueList = null;
+            try {
+                valueList = evaluator.evaluate(this, rule);
+            } finally {
+                elementEvaluated(rule, valueList, start);
+            }
             ruleElementValueSet(rule, valueList);
             logger.debug("evaluated rule: {}", valueList);
             return valueList;
@@ -121,13 +198,87 @@ public class RuleEvaluation<T> {
         throw new UnsupportedOperationException("no evaluator present for rule type " + rule.getClass().getSimpleName());
     }
 
+    ValueList evaluate(CompiledRuleElement rule) {
+        long start = elementStarted(rule.getElement());
+        ValueList valueList = null;
+        try {
+            if (rule.isConstant()) {
+                //the operands have not been evaluated, but their values can still be needed to fix assertions
+                constantOperandsEvaluated(rule);
+                valueList = rule.getConstantValue();
+            } else {
+                valueList = rule.getBody().evaluate(this);
+            }
+        } finally {
+            elementEvaluated(rule.getElement(), valueList, start);
+        }
+        ruleElementValueSet(rule.getElement(), valueList);
+        logger.debug("evaluated rule: {}", valueList);
+        return valueList;
+    }
+
+    private void constantOperandsEvaluated(CompiledRuleElement rule) {
+        for(CompiledRuleElement operand:rule.getOperands()) {
+            constantOperandsEvaluated(operand);
+            ruleElementValueSet(operand.getElement(), operand.getConstantValue());
+        }
+    }
+
+    /**
+     * @return the start time if tracing, 0 otherwise
+     */
+    private long elementStarted(RuleElement element) {
+        if(tracer == RuleEvaluationTracer.NO_OP) {
+            return 0;
+        }
+        tracer.elementStarted(element);
+        return System.nanoTime();
+    }
+
+    private void elementEvaluated(RuleElement element, ValueList valueList, long start) {
+        if(tracer != RuleEvaluationTracer.NO_OP) {
+            tracer.elementEvaluated(element, valueList, System.nanoTime() - start);
+        }
+    }
+
+    private long startQuery() {
+        return tracer == RuleEvaluationTracer.NO_OP ? 0 : System.nanoTime();
+    }
+
+    private <R extends List<?>> R pathQueried(String path, R result, long start) {
+        if(tracer != RuleEvaluationTracer.NO_OP) {
+            tracer.pathQueried(path, result.size(), System.nanoTime() - start);
+        }
+        return result;
+    }
+
+    public RuleEvaluationTracer getTracer() {
+        return tracer;
+    }
+
+    /**
+     * Set a tracer to receive the evaluation time, path queries and values of every rule element, for profiling and
+     * debugging rules. Null to disable tracing, which is the default.
+     */
+    public void setTracer(RuleEvaluationTracer tracer) {
+        this.tracer = tracer == null ? RuleEvaluationTracer.NO_OP : tracer;
+    }
 
     public T getRMRoot() {
         return root;
     }
 
+    /**
+     * Register an extra function. Not possible for a RuleEvaluation created from a shared RuleEvaluationEngine, pass
+     * the functions to the constructor of the engine instead.
+     */
     public void registerFunction(FunctionImplementation function) {
-        functionEvaluator.registerFunction(function);
+        if(!ownsEngine) {
+            throw new IllegalStateException("cannot register functions on a shared RuleEvaluationEngine, pass them to its constructor instead");
+        }
+        engine.registerFunction(function);
+        //compiled rules are bound to the previously registered functions
+        compiledRules = null;
     }
 
     public VariableMap getVariableMap() {
@@ -156,10 +307,11 @@ public class RuleEvaluation<T> {
         //Fix any assertions that should be fixed before processing the next rule
         //this means we can calculate a score, then use that score in the next rule
         //otherwise this would mean several passes through the evaluator
-        Map<String, Object> valuesToUpdate = assertionsFixer.fixAssertions(archetype, assertionResult);
+        Map<String, Object> valuesToUpdate = assertionsFixer.fixAssertions(engine.getArchetype(), assertionResult);
         for (String path : valuesToUpdate.keySet()) {
             Object value = valuesToUpdate.get(path);
             assertionResult.setSetPathValue(path, new ValueList(value));
+            tracer.pathSet(path, value);
         }
 
         //before re-evaluation, reset any overridden existence from evaluation?
@@ -170,35 +322,89 @@ public class RuleEvaluation<T> {
         return evaluationResult;
     }
 
+    /**
+     * Set the value at a path that an assertion set before, but no longer sets, back to null in the RM root, as it is
+     * when the rules are evaluated from the start. Structure created to set the value is kept.
+     */
+    void clearSetPathValue(String path) {
+        assertionsFixer.clearValue(path);
+    }
+
     public ModelInfoLookup getModelInfoLookup() {
-        return modelInfoLookup;
+        return engine.getModelInfoLookup();
     }
 
 
     public List<RMObjectWithPath> findListWithPaths(String path) {
+        long start = startQuery();
         if(rmQueryContext == null) {
-            return queryCache.getApathQuery(path).findList(getModelInfoLookup(), getRMRoot());
+            return pathQueried(path, engine.getQueryCache().getApathQuery(path).findList(getModelInfoLookup(), getRMRoot()), start);
         } else {
             try {
-                return rmQueryContext.findListWithPaths(path);
+                return pathQueried(path, rmQueryContext.findListWithPaths(path), start);
             } catch (XPathExpressionException e) {
                 throw new RuntimeException(e);
             }
         }
     }
 
+    /**
+     * Find with a path query parsed in advance. Uses the path instead if a JAXB query context is used.
+     */
+    List<RMObjectWithPath> findListWithPaths(String path, RMPathQuery query) {
+        if(rmQueryContext == null) {
+            long start = startQuery();
+            return pathQueried(path, query.findList(getModelInfoLookup(), getRMRoot()), start);
+        }
+        return findListWithPaths(path);
+    }
+
+    /**
+     * Find the objects at the given path relative to an object bound to a for_all variable, without querying from the
+     * root again. Results are cached until releaseBoundObject is called for the object, or the RM object is changed.
+     *
+     * @param boundObject the object bound to the variable, with its path
+     * @param relativePath the path relative to the bound object
+     */
+    public List<RMObjectWithPath> findListWithPaths(RMObjectWithPath boundObject, String relativePath) {
+        if(rmQueryContext != null) {
+            return findListWithPaths(boundObject.getPath() + relativePath);
+        }
+        Map<String, List<RMObjectWithPath>> results = relativeQueryResults.computeIfAbsent(boundObject, o -> new HashMap<>());
+        List<RMObjectWithPath> result = results.get(relativePath);
+        if(result == null) {
+            long start = startQuery();
+            result = engine.getQueryCache().getApathQuery(relativePath).findListRelativeTo(getModelInfoLookup(), boundObject);
+            if(tracer != RuleEvaluationTracer.NO_OP) {
+                pathQueried(boundObject.getPath() + relativePath, result, start);
+            }
+            results.put(relativePath, result);
+        }
+        return result;
+    }
+
+    /**
+     * Callback: the given object is no longer bound to a for_all variable, so its cached query results can be removed
+     */
+    public void releaseBoundObject(RMObjectWithPath boundObject) {
+        relativeQueryResults.remove(boundObject);
+    }
+
     public void refreshQueryContext() {
-        if(jaxbContext != null) {
+        //the RM object may have been changed
+        relativeQueryResults.clear();
+        if(engine.getJaxbContext() != null) {
             //updating a single node does not seem to work with the default JAXB-implementation, so just reload the entire query
             //context
-            rmQueryContext = new RMQueryContext(modelInfoLookup, root, jaxbContext);
+            rmQueryContext = new RMQueryContext(getModelInfoLookup(), root, engine.getJaxbContext());
         }
     }
 
     public List<Object> findList(String path) {
         if(rmQueryContext != null) {
             try {
-                return rmQueryContext.findList(path);
+                long start = startQuery();
+                return pathQueried(path, rmQueryContext.findList(path), start);
             } catch (XPathExpressionException e) {
                 throw new RuntimeException(e);
             }
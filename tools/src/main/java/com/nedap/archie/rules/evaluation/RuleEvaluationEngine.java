@@ -0,0 +1,191 @@
+package com.nedap.archie.rules.evaluation;
+
+import com.nedap.archie.aom.Archetype;
+import com.nedap.archie.creation.RMObjectCreator;
+import com.nedap.archie.rminfo.ModelInfoLookup;
+import com.nedap.archie.rmobjectvalidator.APathQueryCache;
+import com.nedap.archie.rules.RuleElement;
+import com.nedap.archie.rules.RuleStatement;
+import com.nedap.archie.rules.evaluation.evaluators.*;
+
+import javax.xml.bind.JAXBContext;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The part of rule evaluation that does not change between evaluations: the evaluators, the registered functions,
+ * the path query cache and the compiled rules of one archetype.
+ *
+ * Thread-safe, so one engine per archetype can be shared between threads. Every evaluation gets its own cheap
+ * RuleEvaluation context with the evaluation state:
+ *
+ * <pre>
+ *     RuleEvaluationEngine&lt;Locatable&gt; engine = new RuleEvaluationEngine&lt;&gt;(ArchieRMInfoLookup.getInstance(), archetype);
+ *     //in any thread:
+ *     EvaluationResult result = engine.evaluate(root);
+ *     //or, to also access the variables and the updated root:
+ *     RuleEvaluation&lt;Locatable&gt; evaluation = engine.newEvaluation();
+ *     evaluation.evaluate(root, engine.getCompiledRules());
+ * </pre>
+ */
+public class RuleEvaluationEngine<T> {
+
+    private final Archetype archetype;
+    private final ModelInfoLookup modelInfoLookup;
+    private final JAXBContext jaxbContext;
+
+    private final Map<Class<?>, Evaluator<?>> classToEvaluator = new HashMap<>();
+    private final FunctionEvaluator functionEvaluator;
+    private final BinaryOperatorEvaluator binaryOperatorEvaluator;
+    private final UnaryOperatorEvaluator unaryOperatorEvaluator;
+
+    private final RMObjectCreator creator;
+    private final APathQueryCache queryCache = new APathQueryCache();
+
+    private volatile CompiledRules compiledRules;
+
+    public RuleEvaluationEngine(ModelInfoLookup modelInfoLookup, Archetype archetype) {
+        this(modelInfoLookup, null, archetype, Collections.emptyList());
+    }
+
+    /**
+     * @param modelInfoLookup the model info lookup to make this rule evaluator for
+     * @param archetype the archetype to evaluate rules for
+     * @param functions extra functions to register, in addition to the built-in functions
+     */
+    public RuleEvaluationEngine(ModelInfoLookup modelInfoLookup, Archetype archetype, List<FunctionImplementation> functions) {
+        this(modelInfoLookup, null, archetype, functions);
+    }
+
+    RuleEvaluationEngine(ModelInfoLookup modelInfoLookup, JAXBContext jaxbContext, Archetype archetype, List<FunctionImplementation> functions) {
+        this.modelInfoLookup = modelInfoLookup;
+        this.jaxbContext = jaxbContext;
+        this.archetype = archetype;
+        this.creator = new RMObjectCreator(modelInfoLookup);
+        this.functionEvaluator = new FunctionEvaluator();
+        for(FunctionImplementation function:functions) {
+            functionEvaluator.registerFunction(function);
+        }
+        add(new VariableDeclarationEvaluator());
+        add(new ConstantEvaluator());
+        add(new AssertionEvaluator());
+        this.binaryOperatorEvaluator = new BinaryOperatorEvaluator(modelInfoLookup, archetype);
+        this.unaryOperatorEvaluator = new UnaryOperatorEvaluator();
+        add(binaryOperatorEvaluator);
+        add(unaryOperatorEvaluator);
+        add(new VariableReferenceEvaluator());
+        add(new ModelReferenceEvaluator());
+        add(new ForAllEvaluator());
+        add(functionEvaluator);
+    }
+
+    private void add(Evaluator<?> evaluator) {
+        for(Class<?> clazz: evaluator.getSupportedClasses()) {
+            classToEvaluator.put(clazz, evaluator);
+        }
+    }
+
+    /**
+     * Evaluate the rules of the archetype on a copy of the given root.
+     */
+    public EvaluationResult evaluate(T root) {
+        return newEvaluation().evaluate(root, getCompiledRules());
+    }
+
+    /**
+     * @return a new evaluation context using this engine. Not thread-safe, use one per thread
+     */
+    public RuleEvaluation<T> newEvaluation() {
+        return new RuleEvaluation<>(this);
+    }
+
+    /**
+     * @return the compiled rules of the archetype, compiled once
+     */
+    public CompiledRules getCompiledRules() {
+        CompiledRules result = compiledRules;
+        if(result == null) {
+            synchronized (this) {
+                result = compiledRules;
+                if(result == null) {
+                    result = compile(getArchetypeRules());
+                    compiledRules = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the compiled form of the given rules. The rules of the archetype are only compiled once, other rules are
+     * compiled every time. Whether the given rules are the rules of the archetype is checked by identity, so changes
+     * to the rules of the archetype after they have been compiled are not seen: create a new engine instead.
+     */
+    public CompiledRules getCompiledRules(List<RuleStatement> rules) {
+        if(rules == getArchetypeRules()) {
+            return getCompiledRules();
+        }
+        return compile(rules);
+    }
+
+    /**
+     * Compile the given rules, so they can be evaluated many times with RuleEvaluation.evaluate(root, compiledRules)
+     */
+    public CompiledRules compile(List<RuleStatement> rules) {
+        return new RulesCompiler(this).compile(rules);
+    }
+
+    private List<RuleStatement> getArchetypeRules() {
+        if(archetype.getRules() == null || archetype.getRules().getRules() == null) {
+            return Collections.emptyList();
+        }
+        return archetype.getRules().getRules();
+    }
+
+    /**
+     * Register an extra function. Only for engines that are not yet shared, used by RuleEvaluation.registerFunction
+     */
+    synchronized void registerFunction(FunctionImplementation function) {
+        functionEvaluator.registerFunction(function);
+        //compiled rules are bound to the previously registered functions
+        compiledRules = null;
+    }
+
+    public Archetype getArchetype() {
+        return archetype;
+    }
+
+    public ModelInfoLookup getModelInfoLookup() {
+        return modelInfoLookup;
+    }
+
+    JAXBContext getJaxbContext() {
+        return jaxbContext;
+    }
+
+    RMObjectCreator getCreator() {
+        return creator;
+    }
+
+    Evaluator<RuleElement> getEvaluator(RuleElement rule) {
+        return (Evaluator<RuleElement>) classToEvaluator.get(rule.getClass());
+    }
+
+    BinaryOperatorEvaluator getBinaryOperatorEvaluator() {
+        return binaryOperatorEvaluator;
+    }
+
+    UnaryOperatorEvaluator getUnaryOperatorEvaluator() {
+        return unaryOperatorEvaluator;
+    }
+
+    FunctionEvaluator getFunctionEvaluator() {
+        return functionEvaluator;
+    }
+
+    APathQueryCache getQueryCache() {
+        return queryCache;
+    }
+}
@@ -0,0 +1,359 @@
+package com.nedap.archie.rules.evaluation;
+
+import com.nedap.archie.rules.Assertion;
+import com.nedap.archie.rules.Constant;
+import com.nedap.archie.rules.Constraint;
+import com.nedap.archie.rules.ExpressionVariable;
+import com.nedap.archie.rules.ForAllStatement;
+import com.nedap.archie.rules.Function;
+import com.nedap.archie.rules.ModelReference;
+import com.nedap.archie.rules.Operator;
+import com.nedap.archie.rules.RuleElement;
+import com.nedap.archie.rules.RuleStatement;
+import com.nedap.archie.rules.VariableReference;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Incremental evaluation of the rules of an archetype, for example for an interactive form. Evaluate all rules once
+ * with start(root), change the RM object returned by getRoot(), then call update(...) with the changed paths. Only the
+ * rules that depend on a changed path, on a variable that got a different value or on a path that was set to a
+ * different value or is no longer set by an evaluated rule are evaluated again, in the order of the archetype rules.
+ * A path that is no longer set by any rule is set to null in getRoot().
+ *
+ * The dependencies are determined from the model references and variable references in the rules. Rules of which the
+ * dependencies cannot be determined, such as those containing a model reference relative to a variable that is not
+ * bound by a for_all statement, are evaluated on every update.
+ *
+ * Not thread safe, and the RuleEvaluation should not be used for anything else while the session is in use.
+ */
+public class RuleEvaluationSession<T> {
+
+    private final RuleEvaluation<T> ruleEvaluation;
+    private final CompiledRules compiledRules;
+    private final List<RuleDependencies> dependencies = new ArrayList<>();
+
+    private final List<List<AssertionResult>> resultsPerRule = new ArrayList<>();
+
+    public RuleEvaluationSession(RuleEvaluation<T> ruleEvaluation, List<RuleStatement> rules) {
+        this.ruleEvaluation = ruleEvaluation;
+        this.compiledRules = ruleEvaluation.compile(rules);
+        for(RuleStatement rule:rules) {
+            dependencies.add(new RuleDependencies(rule));
+        }
+    }
+
+    /**
+     * Evaluate all rules on a copy of the given root. Changes to the data should be made to getRoot() after this.
+     */
+    public EvaluationResult start(T root) {
+        ruleEvaluation.start(root, compiledRules);
+        resultsPerRule.clear();
+        for(CompiledRuleElement statement:compiledRules.getStatements()) {
+            resultsPerRule.add(ruleEvaluation.evaluateStatement(statement));
+        }
+        return getEvaluationResult();
+    }
+
+    /**
+     * @return the RM object the rules are evaluated on. Change this object, then call update with the changed paths
+     */
+    public T getRoot() {
+        return ruleEvaluation.getRMRoot();
+    }
+
+    /**
+     * @return the current assertion results of all rules
+     */
+    public EvaluationResult getEvaluationResult() {
+        EvaluationResult result = new EvaluationResult();
+        for(List<AssertionResult> results:resultsPerRule) {
+            for(AssertionResult assertionResult:results) {
+                result.addAssertionResult(assertionResult);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Evaluate the rules affected by changes in getRoot() at the given paths again.
+     *
+     * @param changedPaths the paths that have been changed, with or without node ids and indices. A changed path
+     *                     also affects all paths below it.
+     * @return the changes in assertion results and set path values
+     */
+    public EvaluationDelta update(Collection<String> changedPaths) {
+        if(resultsPerRule.isEmpty() && !compiledRules.getStatements().isEmpty()) {
+            throw new IllegalStateException("start must be called before update");
+        }
+        List<List<PathSegmentName>> dirtyPaths = new ArrayList<>();
+        for(String path:changedPaths) {
+            dirtyPaths.add(parsePath(path));
+        }
+        Set<String> dirtyVariables = new HashSet<>();
+        EvaluationDelta delta = new EvaluationDelta();
+
+        List<CompiledRuleElement> statements = compiledRules.getStatements();
+        for(int i = 0; i < statements.size(); i++) {
+            RuleDependencies ruleDependencies = dependencies.get(i);
+            if(!ruleDependencies.isAffectedBy(dirtyPaths, dirtyVariables)) {
+                continue;
+            }
+            delta.addEvaluatedRule(ruleDependencies.rule);
+
+            Map<String, ValueList> previousVariableValues = new HashMap<>();
+            for(String variable:ruleDependencies.declaredVariables) {
+                previousVariableValues.put(variable, ruleEvaluation.getVariableMap().get(variable));
+            }
+            List<AssertionResult> previousResults = resultsPerRule.get(i);
+            List<AssertionResult> newResults = ruleEvaluation.evaluateStatement(statements.get(i));
+            resultsPerRule.set(i, newResults);
+
+            //only rules reading a variable that got a different value have to be evaluated again
+            for(String variable:ruleDependencies.declaredVariables) {
+                if(!sameValues(previousVariableValues.get(variable), ruleEvaluation.getVariableMap().get(variable))) {
+                    dirtyVariables.add(variable);
+                }
+            }
+
+            Map<String, Value<?>> previousSetPathValues = getSetPathValues(previousResults);
+            for(int j = 0; j < newResults.size(); j++) {
+                AssertionResult newResult = newResults.get(j);
+                AssertionResult previousResult = j < previousResults.size() ? previousResults.get(j) : null;
+                if(previousResult == null || previousResult.getResult() != newResult.getResult()
+                        || !sameSetPathValues(previousResult.getSetPathValues(), newResult.getSetPathValues())) {
+                    delta.addChangedAssertionResult(newResult);
+                }
+                for(Map.Entry<String, Value<?>> setPathValue:newResult.getSetPathValues().entrySet()) {
+                    Value<?> previousValue = previousSetPathValues.get(setPathValue.getKey());
+                    if(previousValue == null || !Objects.equals(previousValue.getValue(), setPathValue.getValue().getValue())) {
+                        delta.addChangedSetPathValue(setPathValue.getKey(), setPathValue.getValue());
+                        dirtyPaths.add(parsePath(setPathValue.getKey()));
+                    }
+                }
+            }
+            //paths that were set by the previous evaluation of this rule, but are no longer set by any rule, are
+            //cleared before the next rule, so it reads the same value as when evaluating from the start
+            for(String previousSetPath:previousSetPathValues.keySet()) {
+                if(!isSetByAnyRule(previousSetPath)) {
+                    ruleEvaluation.clearSetPathValue(previousSetPath);
+                    delta.addRemovedSetPath(previousSetPath);
+                    dirtyPaths.add(parsePath(previousSetPath));
+                }
+            }
+        }
+        return delta;
+    }
+
+    private boolean isSetByAnyRule(String path) {
+        for(List<AssertionResult> results:resultsPerRule) {
+            for(AssertionResult result:results) {
+                if(result.getSetPathValues().containsKey(path)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean sameValues(ValueList previous, ValueList current) {
+        if(previous == null || current == null) {
+            return previous == current;
+        }
+        return previous.getValueObjects().equals(current.getValueObjects());
+    }
+
+    private static Map<String, Value<?>> getSetPathValues(List<AssertionResult> results) {
+        Map<String, Value<?>> result = new LinkedHashMap<>();
+        for(AssertionResult assertionResult:results) {
+            result.putAll(assertionResult.getSetPathValues());
+        }
+        return result;
+    }
+
+    private static boolean sameSetPathValues(Map<String, Value<?>> previous, Map<String, Value<?>> current) {
+        if(!previous.keySet().equals(current.keySet())) {
+            return false;
+        }
+        for(Map.Entry<String, Value<?>> entry:current.entrySet()) {
+            if(!Objects.equals(previous.get(entry.getKey()).getValue(), entry.getValue().getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Splits a path in its attribute names and node ids, ignoring indices and other predicates
+     */
+    static List<PathSegmentName> parsePath(String path) {
+        List<PathSegmentName> result = new ArrayList<>();
+        int depth = 0;
+        StringBuilder segment = new StringBuilder();
+        for(char c:path.toCharArray()) {
+            if(c == '[') {
+                depth++;
+            } else if (c == ']') {
+                depth--;
+            } else if (c == '/' && depth == 0) {
+                if(segment.length() > 0) {
+                    result.add(new PathSegmentName(segment.toString()));
+                    segment.setLength(0);
+                }
+                continue;
+            }
+            segment.append(c);
+        }
+        if(segment.length() > 0) {
+            result.add(new PathSegmentName(segment.toString()));
+        }
+        return result;
+    }
+
+    /**
+     * Two paths overlap if one is a prefix of the other, matching node ids only when both paths specify one
+     */
+    static boolean overlaps(List<PathSegmentName> path, List<PathSegmentName> otherPath) {
+        int length = Math.min(path.size(), otherPath.size());
+        for(int i = 0; i < length; i++) {
+            if(!path.get(i).matches(otherPath.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static class PathSegmentName {
+        private final String nodeName;
+        private final String nodeId;
+
+        PathSegmentName(String segment) {
+            int bracket = segment.indexOf('[');
+            if(bracket < 0) {
+                nodeName = segment;
+                nodeId = null;
+            } else {
+                nodeName = segment.substring(0, bracket);
+                String predicate = segment.substring(bracket + 1, segment.lastIndexOf(']') < 0 ? segment.length() : segment.lastIndexOf(']'));
+                String firstPart = predicate.split(",")[0].trim();
+                if(firstPart.isEmpty() || firstPart.chars().allMatch(Character::isDigit)) {
+                    nodeId = null;
+                } else {
+                    nodeId = firstPart.replaceAll("^['\"]|['\"]$", "");
+                }
+            }
+        }
+
+        boolean matches(PathSegmentName other) {
+            return nodeName.equals(other.nodeName) && (nodeId == null || other.nodeId == null || nodeId.equals(other.nodeId));
+        }
+    }
+
+    /**
+     * The paths and variables a rule statement reads, and the variables it declares
+     */
+    private static class RuleDependencies {
+        private final RuleStatement rule;
+        private final List<List<PathSegmentName>> readPaths = new ArrayList<>();
+        private final Set<String> readVariables = new HashSet<>();
+        private final Set<String> declaredVariables = new HashSet<>();
+        private boolean alwaysEvaluate = false;
+
+        RuleDependencies(RuleStatement rule) {
+            this.rule = rule;
+            if(rule instanceof ExpressionVariable) {
+                declaredVariables.add(((ExpressionVariable) rule).getName());
+                addDependencies(((ExpressionVariable) rule).getExpression(), Collections.emptyMap());
+            } else if (rule instanceof Assertion) {
+                addDependencies(((Assertion) rule).getExpression(), Collections.emptyMap());
+            } else {
+                alwaysEvaluate = true;
+            }
+        }
+
+        /**
+         * @param forAllVariables the paths of the for_all variables in scope, or null if the paths of a variable are unknown
+         */
+        private void addDependencies(RuleElement element, Map<String, List<String>> forAllVariables) {
+            if(element == null || element instanceof Constant || element instanceof Constraint) {
+                return;
+            }
+            if(element instanceof ModelReference) {
+                List<String> paths = getPaths((ModelReference) element, forAllVariables);
+                if(paths == null) {
+                    alwaysEvaluate = true;
+                } else {
+                    for(String path:paths) {
+                        readPaths.add(parsePath(path));
+                    }
+                }
+            } else if (element instanceof VariableReference) {
+                readVariables.add(((VariableReference) element).getDeclaration().getName());
+            } else if (element instanceof ForAllStatement) {
+                ForAllStatement forAll = (ForAllStatement) element;
+                addDependencies(forAll.getPathExpression(), forAllVariables);
+                Map<String, List<String>> innerVariables = new HashMap<>(forAllVariables);
+                if(forAll.getPathExpression() instanceof ModelReference) {
+                    innerVariables.put(forAll.getVariableName(), getPaths((ModelReference) forAll.getPathExpression(), forAllVariables));
+                } else {
+                    innerVariables.put(forAll.getVariableName(), null);
+                }
+                addDependencies(forAll.getAssertion(), innerVariables);
+            } else if (element instanceof Operator) {
+                for(RuleElement operand:((Operator) element).getOperands()) {
+                    addDependencies(operand, forAllVariables);
+                }
+            } else if (element instanceof Function) {
+                for(RuleElement argument:((Function) element).getArguments()) {
+                    addDependencies(argument, forAllVariables);
+                }
+            } else {
+                alwaysEvaluate = true;
+            }
+        }
+
+        private List<String> getPaths(ModelReference reference, Map<String, List<String>> forAllVariables) {
+            String prefix = reference.getVariableReferencePrefix();
+            if(prefix == null) {
+                return Collections.singletonList(reference.getPath());
+            }
+            List<String> prefixPaths = forAllVariables.get(prefix);
+            if(prefixPaths == null) {
+                return null;
+            }
+            List<String> result = new ArrayList<>();
+            for(String prefixPath:prefixPaths) {
+                result.add(prefixPath + reference.getPath());
+            }
+            return result;
+        }
+
+        boolean isAffectedBy(List<List<PathSegmentName>> dirtyPaths, Set<String> dirtyVariables) {
+            if(alwaysEvaluate) {
+                return true;
+            }
+            for(String variable:readVariables) {
+                if(dirtyVariables.contains(variable)) {
+                    return true;
+                }
+            }
+            for(List<PathSegmentName> readPath:readPaths) {
+                for(List<PathSegmentName> dirtyPath:dirtyPaths) {
+                    if(overlaps(readPath, dirtyPath)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+}
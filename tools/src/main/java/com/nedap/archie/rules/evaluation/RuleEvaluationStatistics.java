@@ -0,0 +1,134 @@
+package com.nedap.archie.rules.evaluation;
+
+import com.nedap.archie.rules.RuleElement;
+import com.nedap.archie.rules.RuleStatement;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A RuleEvaluationTracer that collects statistics per rule element, such as the evaluation time and the number of path
+ * queries. Times, queries and values set include those of the operands of an element. Can be used for several
+ * evaluations to collect the totals. Not thread-safe.
+ */
+public class RuleEvaluationStatistics implements RuleEvaluationTracer {
+
+    public static class ElementStatistics {
+        private final RuleElement element;
+        private int evaluations;
+        private long totalNanos;
+        private int pathQueries;
+        private long objectsMatched;
+        private int pathsSet;
+        private ValueList lastValues;
+
+        ElementStatistics(RuleElement element) {
+            this.element = element;
+        }
+
+        public RuleElement getElement() {
+            return element;
+        }
+
+        public int getEvaluations() {
+            return evaluations;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public int getPathQueries() {
+            return pathQueries;
+        }
+
+        public long getObjectsMatched() {
+            return objectsMatched;
+        }
+
+        /**
+         * @return the number of values written to the RM object by the assertions fixer
+         */
+        public int getPathsSet() {
+            return pathsSet;
+        }
+
+        /**
+         * @return the values of the last evaluation of this element
+         */
+        public ValueList getLastValues() {
+            return lastValues;
+        }
+
+        @Override
+        public String toString() {
+            return element + ": " + evaluations + " evaluations, " + totalNanos / 1000 + " µs, " + pathQueries + " path queries, "
+                    + objectsMatched + " objects matched, " + pathsSet + " paths set";
+        }
+    }
+
+    //rule elements do not implement equals and hashCode, so this is by identity
+    private final Map<RuleElement, ElementStatistics> statistics = new LinkedHashMap<>();
+    private final Deque<ElementStatistics> evaluating = new ArrayDeque<>();
+
+    @Override
+    public void elementStarted(RuleElement element) {
+        ElementStatistics elementStatistics = statistics.computeIfAbsent(element, ElementStatistics::new);
+        elementStatistics.evaluations++;
+        evaluating.push(elementStatistics);
+    }
+
+    @Override
+    public void elementEvaluated(RuleElement element, ValueList values, long nanos) {
+        ElementStatistics elementStatistics = evaluating.pop();
+        elementStatistics.totalNanos += nanos;
+        elementStatistics.lastValues = values;
+    }
+
+    @Override
+    public void pathQueried(String path, int objectsFound, long nanos) {
+        for(ElementStatistics elementStatistics:evaluating) {
+            elementStatistics.pathQueries++;
+            elementStatistics.objectsMatched += objectsFound;
+        }
+    }
+
+    @Override
+    public void pathSet(String path, Object value) {
+        for(ElementStatistics elementStatistics:evaluating) {
+            elementStatistics.pathsSet++;
+        }
+    }
+
+    /**
+     * @return the statistics of the given element, or null if it has not been evaluated
+     */
+    public ElementStatistics getStatistics(RuleElement element) {
+        return statistics.get(element);
+    }
+
+    /**
+     * @return the statistics of all evaluated elements, in order of first evaluation
+     */
+    public List<ElementStatistics> getAllStatistics() {
+        return new ArrayList<>(statistics.values());
+    }
+
+    /**
+     * @return the statistics of the evaluated rule statements, slowest first
+     */
+    public List<ElementStatistics> getStatementStatistics() {
+        List<ElementStatistics> result = new ArrayList<>();
+        for(ElementStatistics elementStatistics:statistics.values()) {
+            if(elementStatistics.getElement() instanceof RuleStatement) {
+                result.add(elementStatistics);
+            }
+        }
+        result.sort((s1, s2) -> Long.compare(s2.getTotalNanos(), s1.getTotalNanos()));
+        return result;
+    }
+}
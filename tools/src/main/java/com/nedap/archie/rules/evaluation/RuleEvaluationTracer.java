@@ -0,0 +1,40 @@
+package com.nedap.archie.rules.evaluation;
+
+import com.nedap.archie.rules.RuleElement;
+
+/**
+ * Receives structured information about a rule evaluation, for profiling and debugging rules. Set it with
+ * RuleEvaluation.setTracer. All methods do nothing by default. See RuleEvaluationStatistics for an implementation that
+ * collects statistics per rule element.
+ *
+ * Elements are evaluated depth first: between elementStarted and elementEvaluated of an element, its operands are
+ * evaluated, and any path queries and values set by the assertions fixer belong to it. Rule statements are rule
+ * elements as well.
+ */
+public interface RuleEvaluationTracer {
+
+    RuleEvaluationTracer NO_OP = new RuleEvaluationTracer() {};
+
+    /**
+     * The evaluation of the given element has started
+     */
+    default void elementStarted(RuleElement element) {}
+
+    /**
+     * The evaluation of the given element has finished
+     * @param values the evaluated values, or null if the evaluation failed
+     * @param nanos the time the evaluation took, including the evaluation of its operands
+     */
+    default void elementEvaluated(RuleElement element, ValueList values, long nanos) {}
+
+    /**
+     * A path has been queried on the RM object
+     * @param objectsFound the number of RM objects found
+     */
+    default void pathQueried(String path, int objectsFound, long nanos) {}
+
+    /**
+     * A value has been written to the RM object by the assertions fixer
+     */
+    default void pathSet(String path, Object value) {}
+}
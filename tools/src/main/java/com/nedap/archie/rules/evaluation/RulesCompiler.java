@@ -0,0 +1,185 @@
+package com.nedap.archie.rules.evaluation;
+
+import com.nedap.archie.query.RMPathQuery;
+import com.nedap.archie.rules.Assertion;
+import com.nedap.archie.rules.BinaryOperator;
+import com.nedap.archie.rules.Constant;
+import com.nedap.archie.rules.Expression;
+import com.nedap.archie.rules.ExpressionVariable;
+import com.nedap.archie.rules.ForAllStatement;
+import com.nedap.archie.rules.Function;
+import com.nedap.archie.rules.ModelReference;
+import com.nedap.archie.rules.RuleElement;
+import com.nedap.archie.rules.RuleStatement;
+import com.nedap.archie.rules.UnaryOperator;
+import com.nedap.archie.rules.VariableReference;
+import com.nedap.archie.rules.evaluation.evaluators.FunctionEvaluator;
+import com.nedap.archie.rules.evaluation.evaluators.ModelReferenceEvaluator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * Compiles rule statements to a tree of CompiledRuleElements, so they can be evaluated many times without looking up
+ * evaluators, operators, functions and path queries for every element on every evaluation.
+ *
+ * - Constants, and operators of which all operands are constant, are evaluated once, at compile time
+ * - Model references without a variable prefix get their path query parsed in advance
+ * - Binary and unary operators are bound to the operation for their operator
+ * - Functions are bound to their registered implementation
+ * - Everything else, such as for_all and matches, is bound to its evaluator and evaluated as before
+ */
+class RulesCompiler {
+
+    private final RuleEvaluationEngine<?> engine;
+    private final Map<RuleElement, CompiledRuleElement> compiledElements = new IdentityHashMap<>();
+
+    RulesCompiler(RuleEvaluationEngine<?> engine) {
+        this.engine = engine;
+    }
+
+    CompiledRules compile(List<RuleStatement> rules) {
+        List<CompiledRuleElement> statements = new ArrayList<>();
+        for(RuleStatement rule:rules) {
+            statements.add(compile(rule));
+        }
+        return new CompiledRules(rules, statements, compiledElements);
+    }
+
+    private CompiledRuleElement compile(RuleElement element) {
+        if(element == null) {
+            return null;
+        }
+        CompiledRuleElement result = compileElement(element);
+        compiledElements.put(element, result);
+        return result;
+    }
+
+    private CompiledRuleElement compileElement(RuleElement element) {
+        if(element instanceof Constant && engine.getEvaluator(element) != null) {
+            return new CompiledRuleElement(element, engine.getEvaluator(element).evaluate(engine.newEvaluation(), element), Collections.emptyList());
+        } else if(element instanceof ModelReference && ((ModelReference) element).getVariableReferencePrefix() == null) {
+            String path = ((ModelReference) element).getPath();
+            RMPathQuery query = engine.getQueryCache().getApathQuery(path);
+            return new CompiledRuleElement(element, evaluation -> ModelReferenceEvaluator.toValueList(evaluation.findListWithPaths(path, query)));
+        } else if(element instanceof VariableReference) {
+            String variableName = ((VariableReference) element).getDeclaration().getName();
+            return new CompiledRuleElement(element, evaluation -> evaluation.getVariableMap().get(variableName));
+        } else if(element instanceof BinaryOperator) {
+            CompiledRuleElement result = compileBinaryOperator((BinaryOperator) element);
+            if(result != null) {
+                return result;
+            }
+        } else if(element instanceof UnaryOperator) {
+            return compileUnaryOperator((UnaryOperator) element);
+        } else if(element instanceof Function) {
+            return compileFunction((Function) element);
+        }
+        return compileWithEvaluator(element);
+    }
+
+    private CompiledRuleElement compileBinaryOperator(BinaryOperator operator) {
+        BiFunction<ValueList, ValueList, ValueList> operation = engine.getBinaryOperatorEvaluator().getOperation(operator);
+        if(operation == null) {
+            return null;
+        }
+        CompiledRuleElement left = compile(operator.getLeftOperand());
+        CompiledRuleElement right = compile(operator.getRightOperand());
+        if(left == null || right == null) {
+            return null;
+        }
+        List<CompiledRuleElement> operands = Arrays.asList(left, right);
+        if(left.isConstant() && right.isConstant()) {
+            ValueList constantValue = evaluateConstant(() -> operation.apply(left.getConstantValue(), right.getConstantValue()));
+            if(constantValue != null) {
+                return new CompiledRuleElement(operator, constantValue, operands);
+            }
+        }
+        return new CompiledRuleElement(operator,
+                evaluation -> operation.apply(evaluation.evaluate(left), evaluation.evaluate(right)),
+                operands);
+    }
+
+    private CompiledRuleElement compileUnaryOperator(UnaryOperator operator) {
+        java.util.function.Function<ValueList, ValueList> operation;
+        try {
+            operation = engine.getUnaryOperatorEvaluator().getOperation(operator);
+        } catch (UnsupportedOperationException e) {
+            //fail when evaluated, not when compiled
+            return compileWithEvaluator(operator);
+        }
+        CompiledRuleElement operand = compile(operator.getOperand());
+        if(operand == null) {
+            return compileWithEvaluator(operator);
+        }
+        List<CompiledRuleElement> operands = Collections.singletonList(operand);
+        if(operand.isConstant()) {
+            ValueList constantValue = evaluateConstant(() -> operation.apply(operand.getConstantValue()));
+            if(constantValue != null) {
+                return new CompiledRuleElement(operator, constantValue, operands);
+            }
+        }
+        return new CompiledRuleElement(operator, evaluation -> operation.apply(evaluation.evaluate(operand)), operands);
+    }
+
+    private CompiledRuleElement compileFunction(Function function) {
+        FunctionEvaluator functionEvaluator = engine.getFunctionEvaluator();
+        FunctionImplementation implementation = functionEvaluator.getFunction(function.getFunctionName());
+        List<CompiledRuleElement> arguments = new ArrayList<>();
+        for(Expression argument:function.getArguments()) {
+            arguments.add(compile(argument));
+        }
+        //functions are never evaluated at compile time, registered functions do not have to be pure
+        return new CompiledRuleElement(function, evaluation -> {
+            List<ValueList> argumentResults = new ArrayList<>(arguments.size());
+            for(CompiledRuleElement argument:arguments) {
+                argumentResults.add(evaluation.evaluate(argument));
+            }
+            return functionEvaluator.evaluate(function, implementation, argumentResults);
+        }, arguments);
+    }
+
+    /**
+     * Bind the element to its evaluator. The evaluator evaluates the child elements through RuleEvaluation.evaluate,
+     * which uses their compiled form, so compile those as well.
+     */
+    private CompiledRuleElement compileWithEvaluator(RuleElement element) {
+        if(element instanceof Assertion && ((Assertion) element).getExpression() != null) {
+            compile(((Assertion) element).getExpression());
+        } else if(element instanceof ExpressionVariable && ((ExpressionVariable) element).getExpression() != null) {
+            compile(((ExpressionVariable) element).getExpression());
+        } else if(element instanceof ForAllStatement) {
+            compile(((ForAllStatement) element).getPathExpression());
+            compile(((ForAllStatement) element).getAssertion());
+        } else if(element instanceof BinaryOperator) {
+            //matches: the right operand is a constraint, not evaluated
+            compile(((BinaryOperator) element).getLeftOperand());
+        }
+        Evaluator<RuleElement> evaluator = engine.getEvaluator(element);
+        if(evaluator == null) {
+            return new CompiledRuleElement(element, evaluation -> {
+                throw new UnsupportedOperationException("no evaluator present for rule type " + element.getClass().getSimpleName());
+            });
+        }
+        return new CompiledRuleElement(element, evaluation -> evaluator.evaluate(evaluation, element));
+    }
+
+    /**
+     * Evaluate an operator with constant operands at compile time. If that fails because the operands are not valid
+     * for the operator, such as incompatible types or a division by zero, it is left to the evaluation to fail in the
+     * same way. Any other exception is a bug, and is thrown.
+     */
+    private ValueList evaluateConstant(Supplier<ValueList> computation) {
+        try {
+            return computation.get();
+        } catch (IllegalArgumentException | IllegalStateException | UnsupportedOperationException | ArithmeticException e) {
+            return null;
+        }
+    }
+}
@@ -89,10 +89,7 @@ public class ValueList {
     }
 
     public void setValues(List<Value<?>> values) {
-        this.values = new ArrayList<>(values.size());
-        for(Value<?> o:values) {
-            addValue(o);
-        }
+        this.values = new ArrayList<>(values);
     }
 
     public void addValue(Object value,  List<String> paths) {
@@ -166,6 +163,24 @@ public class ValueList {
         return true;
     }
 
+    /**
+     * Create a copy of this value list, with copies of the values and their path lists, so it can be modified without
+     * modifying this list.
+     * @return the copy
+     */
+    public ValueList copy() {
+        ValueList result = new ValueList();
+        result.setType(type);
+        for(Value<?> value:values) {
+            if(value == null) {
+                result.values.add(null);
+            } else {
+                result.addValue(value.getValue(), new ArrayList<>(value.getPaths()));
+            }
+        }
+        return result;
+    }
+
     public boolean containsOnlyNullValues() {
         for(Value<?> value:values) {
             if(!value.isNull()) {
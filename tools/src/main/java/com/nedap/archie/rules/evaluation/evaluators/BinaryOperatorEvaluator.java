@@ -1,28 +1,27 @@
 package com.nedap.archie.rules.evaluation.evaluators;
 
-import com.google.common.base.Joiner;
 import com.google.common.collect.Lists;
-import com.nedap.archie.rules.evaluation.DummyRulesPrimitiveObjectParent;
 import com.nedap.archie.aom.Archetype;
-import com.nedap.archie.aom.ArchetypeConstraint;
-import com.nedap.archie.aom.ArchetypeModelObject;
 import com.nedap.archie.aom.primitives.CTerminologyCode;
-import com.nedap.archie.paths.PathSegment;
-import com.nedap.archie.query.AOMPathQuery;
-import com.nedap.archie.query.APathQuery;
 import com.nedap.archie.rminfo.ModelInfoLookup;
 import com.nedap.archie.rules.BinaryOperator;
 import com.nedap.archie.rules.Constraint;
 import com.nedap.archie.rules.OperatorKind;
 import com.nedap.archie.rules.PrimitiveType;
+import com.nedap.archie.rules.evaluation.BooleanValueList;
+import com.nedap.archie.rules.evaluation.DoubleValueList;
 import com.nedap.archie.rules.evaluation.Evaluator;
+import com.nedap.archie.rules.evaluation.LongValueList;
+import com.nedap.archie.rules.evaluation.PrimitiveValueList;
 import com.nedap.archie.rules.evaluation.RuleEvaluation;
 import com.nedap.archie.rules.evaluation.Value;
 import com.nedap.archie.rules.evaluation.ValueList;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.function.BiFunction;
 
 import static com.nedap.archie.rules.evaluation.evaluators.FunctionUtil.checkAndHandleNull;
 
@@ -35,22 +34,41 @@ public class BinaryOperatorEvaluator implements Evaluator<BinaryOperator> {
     private static final EnumSet<PrimitiveType> SUPPORTED_TEMPORAL_TYPES = EnumSet.of(PrimitiveType.Date, PrimitiveType.Time, PrimitiveType.DateTime);
     private static final EnumSet<PrimitiveType> SUPPORTED_TEMPORAL_AMOUNT_TYPES = EnumSet.of(PrimitiveType.Duration);
 
-    private final Archetype archetype;
-
     private BinaryBooleanOperandEvaluator booleanOperandEvaluator = new BinaryBooleanOperandEvaluator(this);
     private BinaryStringOperandEvaluator stringOperandEvaluator = new BinaryStringOperandEvaluator(this);
     private BinaryTemporalOperandEvaluator temporalOperandEvaluator = new BinaryTemporalOperandEvaluator(this);
     private BinaryTemporalAmountOperandEvaluator temporalAmountOperandEvaluator = new BinaryTemporalAmountOperandEvaluator(this);
 
     private final ModelInfoLookup lookup; //for now only the archie rm model for rule evaluation
+    private final TerminologyConstraintMatcher terminologyConstraintMatcher;
 
     public BinaryOperatorEvaluator(ModelInfoLookup lookup, Archetype archetype) {
         this.lookup = lookup;
-        this.archetype = archetype;
+        this.terminologyConstraintMatcher = new TerminologyConstraintMatcher(lookup, archetype);
     }
 
     @Override
     public ValueList evaluate(RuleEvaluation<?> evaluation, BinaryOperator statement) {
+        if(statement.getOperator() == OperatorKind.matches) {
+            return evaluateBooleanConstraint(evaluation, statement);
+        }
+        BiFunction<ValueList, ValueList, ValueList> operation = getOperation(statement);
+        if(operation == null) {
+            throw new RuntimeException("operation " + statement.getOperator() + " not yet supported");
+        }
+        ValueList leftValues = evaluation.evaluate(statement.getLeftOperand());
+        ValueList rightValues = evaluation.evaluate(statement.getRightOperand());
+        return operation.apply(leftValues, rightValues);
+    }
+
+    /**
+     * Get the operation for the operator of the given statement, to apply to its already evaluated operands. Used when
+     * compiling rules, so the operator is only looked up once.
+     *
+     * @param statement the binary operator
+     * @return the operation, or null if the operator does not have an evaluated right operand, such as matches
+     */
+    public BiFunction<ValueList, ValueList, ValueList> getOperation(BinaryOperator statement) {
         switch(statement.getOperator()) {
             case plus:
             case minus:
@@ -58,31 +76,29 @@ public class BinaryOperatorEvaluator implements Evaluator<BinaryOperator> {
             case divide:
             case modulo:
             case exponent:
-                return evaluateArithmeticOperator(evaluation, statement);
+                return (leftValues, rightValues) -> evaluateArithmeticOperator(statement, leftValues, rightValues);
             case gt:
             case ge:
             case lt:
             case le:
             case eq:
             case ne:
-                return evaluateRelOpOperator(evaluation, statement);
+                return (leftValues, rightValues) -> evaluateRelOpOperator(statement, leftValues, rightValues);
             case and:
             case or:
             case xor:
-                return evaluateBooleanOperator(evaluation, statement);
-            case matches:
-                return evaluateBooleanConstraint(evaluation, statement);
+                return (leftValues, rightValues) -> evaluateBooleanOperator(statement, leftValues, rightValues);
             case implies:
-                return evaluateImplies(evaluation, statement);
+                return (leftValues, rightValues) -> evaluateImplies(leftValues, rightValues);
+            //matches has a constraint as right operand, not an expression
             //for all is not listed here; it has more information that just two operands, so it has its own evaluator
             //not and exists are unary operators and not handled here
+            default:
+                return null;
         }
-        throw new RuntimeException("operation " + statement.getOperator() + " not yet supported");
     }
 
-    private ValueList evaluateImplies(RuleEvaluation<?> evaluation, BinaryOperator statement) {
-        ValueList leftValue = evaluation.evaluate(statement.getLeftOperand());
-        ValueList rightValue = evaluation.evaluate(statement.getRightOperand());
+    private ValueList evaluateImplies(ValueList leftValue, ValueList rightValue) {
         if(leftValue.getSingleBooleanResult()) {
             return rightValue;
         } else {
@@ -99,52 +115,21 @@ public class BinaryOperatorEvaluator implements Evaluator<BinaryOperator> {
         Constraint<?> constraint = (Constraint<?>) statement.getRightOperand();
         ValueList result = new ValueList();
         result.setType(PrimitiveType.Boolean);
-        DummyRulesPrimitiveObjectParent dummyParent = null;
         if(constraint.getItem() instanceof CTerminologyCode) {
-            constraint = (Constraint) constraint.clone();
-            //hack to support CTerminologyConstraints properly
-            dummyParent = new DummyRulesPrimitiveObjectParent(archetype);
-            constraint.getItem().setParent(dummyParent);
+            CTerminologyCode terminologyConstraint = (CTerminologyCode) constraint.getItem();
+            for(Value<?> value:leftValues.getValues()) {
+                String path = value.getPaths().isEmpty() ? null : value.getPaths().get(0);
+                result.addValue(terminologyConstraintMatcher.isValidValue(terminologyConstraint, value.getValue(), path), value.getPaths());
+            }
+            return result;
         }
         for(Value<?> value:leftValues.getValues()) {
-            if(dummyParent != null && !value.getPaths().isEmpty()) {
-                //set the path where this thing came from, so the terminology code can be matched
-                //against the correct part of the archetype. This is a bit of a hack
-                //better would be to flatten rules in a separate structure for each included archetype, similar to componentTerminologies.
-                //and to evaluate those. That is a later improvement than this fix
-                dummyParent.setPathSegments(convertToArchetypePath((String) value.getPaths().get(0)));
-            }
             result.addValue(constraint.getItem().isValidValue(lookup, value.getValue()), value.getPaths());
         }
         return result;
-
     }
 
-    private List<PathSegment> convertToArchetypePath(String path) {
-        List<PathSegment> segments = new APathQuery(path).getPathSegments();
-        for(PathSegment segment:segments) {
-            if(segment.getIndex() != null) {
-                segment.setIndex(null);//no indices in archetype paths
-            }
-        }
-        String archetypePath = segments.isEmpty() ? "/" : Joiner.on("").join(segments);
-        List<ArchetypeModelObject> allMatchingPredicate = new AOMPathQuery(archetypePath).findAllMatchingPredicate(archetype.getDefinition(), o -> true);
-        if(allMatchingPredicate.isEmpty()) {
-            return segments;
-        } else {
-            ArchetypeModelObject archetypeModelObject = allMatchingPredicate.get(allMatchingPredicate.size() - 1);
-            if(archetypeModelObject instanceof ArchetypeConstraint) {
-                return ((ArchetypeConstraint) archetypeModelObject).getPathSegments();
-            }
-            return segments;
-        }
-    }
-
-    private ValueList evaluateBooleanOperator(RuleEvaluation<?> evaluation, BinaryOperator statement) {
-
-        ValueList leftValues = evaluation.evaluate(statement.getLeftOperand());
-        ValueList rightValues = evaluation.evaluate(statement.getRightOperand());
-
+    private ValueList evaluateBooleanOperator(BinaryOperator statement, ValueList leftValues, ValueList rightValues) {
         if(statement.getOperator() != OperatorKind.or) {
             ValueList possibleNullResult = checkAndHandleNull(leftValues, rightValues);
             if (possibleNullResult != null) {
@@ -155,16 +140,25 @@ public class BinaryOperatorEvaluator implements Evaluator<BinaryOperator> {
 
         checkisBoolean(leftValues, rightValues);
 
-        ValueList result = new ValueList();
-        result.setType(PrimitiveType.Boolean);
         if(leftValues.size() == rightValues.size()) {
+            boolean[] values = new boolean[leftValues.size()];
+            boolean[] nulls = null;
             for(int i = 0; i < leftValues.size();i++) {
-                Value<Boolean> leftValue = (Value<Boolean>) leftValues.get(i);
-                Value<Boolean> rightValue = (Value<Boolean>) rightValues.get(i);
-                List<String> paths = getPaths(leftValue, rightValue);
-                result.addValue(evaluateBoolean(statement, leftValue.getValue(), rightValue.getValue()), paths);
+                Boolean value = evaluateBoolean(statement, (Boolean) leftValues.getObject(i), (Boolean) rightValues.getObject(i));
+                if(value == null) {
+                    if(nulls == null) {
+                        nulls = new boolean[values.length];
+                    }
+                    nulls[i] = true;
+                } else {
+                    values[i] = value;
+                }
             }
-        } else if (leftValues.size() == 1) {
+            return new BooleanValueList(values, nulls, PrimitiveValueList.broadcastPaths(Arrays.asList(leftValues, rightValues)));
+        }
+        ValueList result = new ValueList();
+        result.setType(PrimitiveType.Boolean);
+        if (leftValues.size() == 1) {
             Value<Boolean> leftValue = (Value<Boolean>) leftValues.get(0);
             if (rightValues.isEmpty()) {
                 result.addValue(evaluateBoolean(statement, leftValue.getValue(), null), leftValue.getPaths());
@@ -222,63 +216,55 @@ public class BinaryOperatorEvaluator implements Evaluator<BinaryOperator> {
         }
     }
 
-    private ValueList evaluateArithmeticOperator(RuleEvaluation<?> evaluation, BinaryOperator statement) {
-        ValueList leftValues = evaluation.evaluate(statement.getLeftOperand());
-        ValueList rightValues = evaluation.evaluate(statement.getRightOperand());
-
-
+    private ValueList evaluateArithmeticOperator(BinaryOperator statement, ValueList leftValues, ValueList rightValues) {
         ValueList possibleNullResult = checkAndHandleNull(leftValues, rightValues);
         if(possibleNullResult != null) {
             possibleNullResult.setType(PrimitiveType.Real);
             return possibleNullResult;
-        } else {
-            ValueList result = new ValueList();
-            result.setType(PrimitiveType.Real);
-
-            checkIsNumber(leftValues, rightValues);
-            if (leftValues.size() == rightValues.size()) {
-                for (int i = 0; i < leftValues.size(); i++) {
-                    Value<?> leftValue = leftValues.get(i);
-                    Value<?> rightValue = rightValues.get(i);
-                    evaluateArithmetic(statement, result, rightValue.getValue(), leftValue.getValue(), getPaths(leftValue, rightValue));
-                }
-            } else if (leftValues.size() == 1) {
-                Value<?> leftValue = leftValues.get(0);
-                for (Value<?> rightValue : rightValues.getValues()) {
-                    evaluateArithmetic(statement, result, rightValue.getValue(), leftValue.getValue(), getPaths(leftValue, rightValue));
-                }
-            } else if (rightValues.size() == 1) {
-                Value<?> rightValue = rightValues.get(0);
-                for (Value<?> leftValue : leftValues.getValues()) {
-                    evaluateArithmetic(statement, result, rightValue.getValue(), leftValue.getValue(), getPaths(leftValue, rightValue));
-                }
+        }
+        checkIsNumber(leftValues, rightValues);
+        if (leftValues.size() != rightValues.size() && leftValues.size() != 1 && rightValues.size() != 1) {
+            //TODO: this also happens when one of the modelreferences has a value that does not exist in the model, but others have - while the rules are correct. Those are very valid cases
+            //how to fix?
+            throw new IllegalArgumentException("sizes of operator arguments not compatible");
+        }
+        int length = Math.max(leftValues.size(), rightValues.size());
+        OperatorKind operator = statement.getOperator();
+        long[] longResults = new long[length];
+        double[] doubleResults = new double[length];
+        boolean[] isLongResult = new boolean[length];
+        int longResultCount = 0;
+        for (int i = 0; i < length; i++) {
+            int leftIndex = leftValues.size() == 1 ? 0 : i;
+            int rightIndex = rightValues.size() == 1 ? 0 : i;
+            if(PrimitiveValueList.isLong(leftValues, leftIndex) && PrimitiveValueList.isLong(rightValues, rightIndex)) {
+                longResults[i] = evaluateIntegerArithmetic(operator,
+                        PrimitiveValueList.getLong(leftValues, leftIndex),
+                        PrimitiveValueList.getLong(rightValues, rightIndex));
+                isLongResult[i] = true;
+                longResultCount++;
             } else {
-                //TODO: this also happens when one of the modelreferences has a value that does not exist in the model, but others have - while the rules are correct. Those are very valid cases
-                //how to fix?
-                throw new IllegalArgumentException("sizes of operator arguments not compatible");
+                doubleResults[i] = evaluateRealArithmetic(operator,
+                        convertToDouble(leftValues, leftIndex),
+                        convertToDouble(rightValues, rightIndex));
             }
-            return result;
         }
-
-    }
-
-    private void evaluateArithmetic(BinaryOperator statement, ValueList result, Object rightValue, Object leftValue, List<String> paths) {
-        if(leftValue instanceof Long && rightValue instanceof Long) {
-            result.addValue(evaluateIntegerArithmetic(statement.getOperator()
-                    , (Long) leftValue
-                    , (Long) rightValue), paths);
-            result.setType(PrimitiveType.Integer);
-        } else {
-            result.addValue(evaluateRealArithmetic(statement.getOperator()
-                            , convertToDouble(leftValue)
-                            , convertToDouble(rightValue))
-                    , paths
-            );
-            result.setType(PrimitiveType.Real);
+        PrimitiveValueList.PathSupplier paths = PrimitiveValueList.broadcastPaths(Arrays.asList(leftValues, rightValues));
+        if(longResultCount == length) {
+            return new LongValueList(longResults, null, paths);
+        } else if (longResultCount == 0) {
+            return new DoubleValueList(doubleResults, null, paths);
+        }
+        //mixed integer and real results. The type is determined by the last value
+        ValueList result = new ValueList();
+        for (int i = 0; i < length; i++) {
+            result.addValue(isLongResult[i] ? (Object) longResults[i] : (Object) doubleResults[i], paths.getPaths(i));
         }
+        result.setType(isLongResult[length-1] ? PrimitiveType.Integer : PrimitiveType.Real);
+        return result;
     }
 
-    private Double evaluateRealArithmetic(OperatorKind operator, Double leftNumber, Double rightNumber) {
+    private double evaluateRealArithmetic(OperatorKind operator, double leftNumber, double rightNumber) {
         switch(operator) {
             case plus:
                 return leftNumber + rightNumber;
@@ -299,7 +285,7 @@ public class BinaryOperatorEvaluator implements Evaluator<BinaryOperator> {
 
 
 
-    private Long evaluateIntegerArithmetic(OperatorKind operator, Long leftNumber, Long rightNumber) {
+    private long evaluateIntegerArithmetic(OperatorKind operator, long leftNumber, long rightNumber) {
         switch(operator) {
             case plus:
                 return leftNumber + rightNumber;
@@ -318,10 +304,7 @@ public class BinaryOperatorEvaluator implements Evaluator<BinaryOperator> {
         }
     }
 
-    private ValueList evaluateRelOpOperator(RuleEvaluation<?> evaluation, BinaryOperator statement) {
-        ValueList leftValues = evaluation.evaluate(statement.getLeftOperand());
-        ValueList rightValues = evaluation.evaluate(statement.getRightOperand());
-
+    private ValueList evaluateRelOpOperator(BinaryOperator statement, ValueList leftValues, ValueList rightValues) {
         ValueList possibleNullResult = handlePossibleNullRelOpResult(statement, leftValues, rightValues);
         if(possibleNullResult != null) {
             possibleNullResult.setType(PrimitiveType.Boolean);
@@ -404,11 +387,13 @@ public class BinaryOperatorEvaluator implements Evaluator<BinaryOperator> {
 
     private Value<?> evaluateMultipleValuesRelOp(BinaryOperator statement, ValueList leftValues, ValueList rightValues) {
 
-        for(Value<?> leftValue:leftValues.getValues()) {
-            for (Value<?> rightValue:rightValues.getValues()) {
-                Value<?> evaluatedRelOp = evaluateRelOp(statement, leftValue.getValue(), rightValue.getValue(), getPaths(leftValue, rightValue));
-                if (((Boolean) evaluatedRelOp.getValue()).booleanValue()) {
-                    return evaluatedRelOp;
+        for(int leftIndex = 0; leftIndex < leftValues.size(); leftIndex++) {
+            for (int rightIndex = 0; rightIndex < rightValues.size(); rightIndex++) {
+                Boolean evaluatedRelOp = evaluateRelOp(statement, leftValues, leftIndex, rightValues, rightIndex);
+                if (evaluatedRelOp.booleanValue()) {
+                    List<String> paths = new ArrayList<>(leftValues.getPaths(leftIndex));
+                    paths.addAll(rightValues.getPaths(rightIndex));
+                    return new Value<>(true, paths);
                 }
             }
         }
@@ -422,20 +407,20 @@ public class BinaryOperatorEvaluator implements Evaluator<BinaryOperator> {
         return allPaths;
     }
 
-    private Value<?> evaluateRelOp(BinaryOperator statement, Object leftValue, Object rightValue, List<String> paths) {
-        if(leftValue == null || rightValue == null) {
-            return new Value<>(evaluateNullRelOp(statement.getOperator(), leftValue, rightValue), paths);
+    private Boolean evaluateRelOp(BinaryOperator statement, ValueList leftValues, int leftIndex, ValueList rightValues, int rightIndex) {
+        if(PrimitiveValueList.isNull(leftValues, leftIndex) || PrimitiveValueList.isNull(rightValues, rightIndex)) {
+            return evaluateNullRelOp(statement.getOperator(), leftValues.getObject(leftIndex), rightValues.getObject(rightIndex));
         }
-        else if(leftValue instanceof Long && rightValue instanceof Long) {
-            return new Value<>(evaluateIntegerRelOp(statement.getOperator(),
-                    (Long) leftValue,
-                    (Long) rightValue
-            ), paths);
+        else if(PrimitiveValueList.isLong(leftValues, leftIndex) && PrimitiveValueList.isLong(rightValues, rightIndex)) {
+            return evaluateIntegerRelOp(statement.getOperator(),
+                    PrimitiveValueList.getLong(leftValues, leftIndex),
+                    PrimitiveValueList.getLong(rightValues, rightIndex)
+            );
         } else {
-            return new Value<>(evaluateRealRelOp(statement.getOperator(),
-                    convertToDouble(leftValue),
-                    convertToDouble(rightValue)
-            ), paths);
+            return evaluateRealRelOp(statement.getOperator(),
+                    convertToDouble(leftValues, leftIndex),
+                    convertToDouble(rightValues, rightIndex)
+            );
         }
     }
 
@@ -481,7 +466,7 @@ public class BinaryOperatorEvaluator implements Evaluator<BinaryOperator> {
         }
     }
 
-    private Boolean evaluateRealRelOp(OperatorKind operator, Double leftNumber, Double rightNumber) {
+    private Boolean evaluateRealRelOp(OperatorKind operator, double leftNumber, double rightNumber) {
 
         switch(operator) {
             case eq:
@@ -504,10 +489,10 @@ public class BinaryOperatorEvaluator implements Evaluator<BinaryOperator> {
     public static void checkisBoolean(ValueList leftValueList, ValueList rightValueList) {
         EnumSet<PrimitiveType> booleanTypes = EnumSet.of(PrimitiveType.Boolean);
         if(!booleanTypes.contains(leftValueList.getType())) {
-            throw new RuntimeException("not a boolean with boolean operator: " + leftValueList.getType());//TODO: proper errors
+            throw new IllegalArgumentException("not a boolean with boolean operator: " + leftValueList.getType());
         }
         if(!booleanTypes.contains(rightValueList.getType())) {
-            throw new RuntimeException("not a boolean with boolean operator: " + rightValueList.getType());//TODO: proper errors
+            throw new IllegalArgumentException("not a boolean with boolean operator: " + rightValueList.getType());
         }
     }
 
@@ -517,26 +502,26 @@ public class BinaryOperatorEvaluator implements Evaluator<BinaryOperator> {
         }
         EnumSet<PrimitiveType> numberTypes = EnumSet.of(PrimitiveType.Integer, PrimitiveType.Real);
         if(!numberTypes.contains(leftValueList.getType())) {
-            throw new RuntimeException("Type supplied to operator should be a number, but it is not: " + leftValueList.getType());//TODO: proper errors
+            throw new IllegalArgumentException("Type supplied to operator should be a number, but it is not: " + leftValueList.getType());
         }
         if(!numberTypes.contains(rightValueList.getType())) {
-            throw new RuntimeException("Type supplied to operator should be a number, but it is not: " + rightValueList.getType());//TODO: proper errors
+            throw new IllegalArgumentException("Type supplied to operator should be a number, but it is not: " + rightValueList.getType());
         }
     }
 
     public static void checkIsNumber(ValueList leftValueList, ValueList rightValueList) {
         EnumSet<PrimitiveType> numberTypes = EnumSet.of(PrimitiveType.Integer, PrimitiveType.Real);
         if(!numberTypes.contains(leftValueList.getType())) {
-            throw new RuntimeException("Type supplied to operator should be a number, but it is not: " + leftValueList.getType());//TODO: proper errors
+            throw new IllegalArgumentException("Type supplied to operator should be a number, but it is not: " + leftValueList.getType());
         }
         if(!numberTypes.contains(rightValueList.getType())) {
-            throw new RuntimeException("Type supplied to operator should be a number, but it is not: " + rightValueList.getType());//TODO: proper errors
+            throw new IllegalArgumentException("Type supplied to operator should be a number, but it is not: " + rightValueList.getType());
         }
     }
 
-    private double convertToDouble(Object value) {
-        if(value instanceof Number) {
-            return ((Number) value).doubleValue();
+    private double convertToDouble(ValueList values, int index) {
+        if(PrimitiveValueList.isNumber(values, index)) {
+            return PrimitiveValueList.getDouble(values, index);
         } else {
             throw new IllegalArgumentException("Can only convert Numbers to double values");
         }
@@ -47,6 +47,7 @@ public class ForAllEvaluator implements Evaluator<ForAllStatement> {
 
             //evaluate
             ValueList evaluated = evaluation.evaluate(toEvaluate);
+            evaluation.releaseBoundObject(rmObjectWithPath);
             allPaths.addAll(evaluated.getAllPaths());
             if(evaluated.getType() == PrimitiveType.Boolean) {
                 for (Value<?> evaluatedValue : evaluated.getValues()) {
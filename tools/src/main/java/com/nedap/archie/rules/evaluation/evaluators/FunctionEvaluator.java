@@ -47,7 +47,26 @@ public class FunctionEvaluator  implements Evaluator<Function> {
             argumentResults.add(evaluation.evaluate(argument));
         }
 
-        FunctionImplementation functionImplementation = functions.get(function.getFunctionName());
+        return evaluate(function, getFunction(function.getFunctionName()), argumentResults);
+    }
+
+    /**
+     * Get the implementation of the function with the given name
+     * @param functionName the name of the function
+     * @return the registered implementation, or null if no such function has been registered
+     */
+    public FunctionImplementation getFunction(String functionName) {
+        return functions.get(functionName);
+    }
+
+    /**
+     * Evaluate a function with already evaluated arguments
+     * @param function the function call
+     * @param functionImplementation the implementation to call, as returned by getFunction
+     * @param argumentResults the evaluated arguments
+     * @return the result of the function
+     */
+    public ValueList evaluate(Function function, FunctionImplementation functionImplementation, List<ValueList> argumentResults) {
         if(functionImplementation != null) {
             try {
                 return functionImplementation.evaluate(argumentResults);
@@ -34,8 +34,9 @@ public class ModelReferenceEvaluator implements Evaluator<ModelReference> {
             } else if (value.size() == 1) {
 
                 if(value.getType() == PrimitiveType.ObjectReference) {
-                    RMObjectWithPath reference = (RMObjectWithPath) value.get(0).getValue();
-                    pathPrefix = reference.getPath();
+                    //resolve relative to the bound object instead of querying from the root again
+                    RMObjectWithPath reference = (RMObjectWithPath) value.getObject(0);
+                    return toValueList(evaluation.findListWithPaths(reference, statement.getPath()));
                 } else {
                     //TODO: this is not correct
                     if(value.get(0).getPaths().size() > 1) {
@@ -56,6 +57,15 @@ public class ModelReferenceEvaluator implements Evaluator<ModelReference> {
 
         rmObjectsWithPath = evaluation.findListWithPaths(path);
 
+        return toValueList(rmObjectsWithPath);
+    }
+
+    /**
+     * Convert the result of a path query to a value list, with the path of every object as its path
+     * @param rmObjectsWithPath the objects found
+     * @return the value list
+     */
+    public static ValueList toValueList(List<RMObjectWithPath> rmObjectsWithPath) {
         List<Value<?>> values = rmObjectsWithPath.stream().map(
             rmObjectWithPath ->
                 new Value<>(rmObjectWithPath.getObject(), Lists.newArrayList(rmObjectWithPath.getPath())))
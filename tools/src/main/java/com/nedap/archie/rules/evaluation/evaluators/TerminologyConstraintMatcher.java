@@ -0,0 +1,141 @@
+package com.nedap.archie.rules.evaluation.evaluators;
+
+import com.google.common.base.Joiner;
+import com.nedap.archie.aom.Archetype;
+import com.nedap.archie.aom.ArchetypeConstraint;
+import com.nedap.archie.aom.ArchetypeModelObject;
+import com.nedap.archie.aom.primitives.CTerminologyCode;
+import com.nedap.archie.aom.utils.AOMUtils;
+import com.nedap.archie.base.terminology.TerminologyCode;
+import com.nedap.archie.paths.PathSegment;
+import com.nedap.archie.query.AOMPathQuery;
+import com.nedap.archie.query.APathQuery;
+import com.nedap.archie.rminfo.ModelInfoLookup;
+import com.nedap.archie.rules.evaluation.DummyRulesPrimitiveObjectParent;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Evaluates 'matches' with a terminology code constraint. A terminology code constraint in a rule has no place in the
+ * archetype, but which terminology its codes refer to depends on the archetype the matched value comes from, in case
+ * of an operational template. For every constraint and every archetype path of a matched value, this prepares once a
+ * copy of the constraint placed at that path, with its local value set expanded.
+ *
+ * Thread-safe, so it can be shared by all evaluations of an archetype.
+ */
+class TerminologyConstraintMatcher {
+
+    private final ModelInfoLookup lookup;
+    private final Archetype archetype;
+
+    private final Map<CTerminologyCode, Map<String, PreparedConstraint>> preparedConstraints =
+            Collections.synchronizedMap(new IdentityHashMap<>());
+
+    TerminologyConstraintMatcher(ModelInfoLookup lookup, Archetype archetype) {
+        this.lookup = lookup;
+        this.archetype = archetype;
+    }
+
+    /**
+     * @param constraint the constraint of the rule
+     * @param value the value to check
+     * @param path the path the value comes from, or null if unknown
+     * @return true if the value matches the constraint
+     */
+    boolean isValidValue(CTerminologyCode constraint, Object value, String path) {
+        Map<String, PreparedConstraint> preparedPerPath = preparedConstraints.computeIfAbsent(constraint, c -> new ConcurrentHashMap<>());
+        String archetypePath = path == null ? "" : removeIndices(path);
+        PreparedConstraint prepared = preparedPerPath.computeIfAbsent(archetypePath, p -> new PreparedConstraint(constraint, p));
+        return prepared.isValidValue(lookup.convertToConstraintObject(value, prepared.constraint));
+    }
+
+    /**
+     * Remove the indices from a path, keeping the node ids. Does not parse the path
+     */
+    static String removeIndices(String path) {
+        StringBuilder result = new StringBuilder(path.length());
+        int i = 0;
+        while(i < path.length()) {
+            char c = path.charAt(i);
+            if(c != '[') {
+                result.append(c);
+                i++;
+                continue;
+            }
+            int end = path.indexOf(']', i);
+            if(end < 0) {
+                result.append(path, i, path.length());
+                break;
+            }
+            String predicate = path.substring(i + 1, end).trim();
+            int comma = predicate.lastIndexOf(',');
+            if(comma >= 0 && isIndex(predicate.substring(comma + 1).trim())) {
+                predicate = predicate.substring(0, comma).trim();
+            }
+            if(!predicate.isEmpty() && !isIndex(predicate)) {
+                result.append('[').append(predicate).append(']');
+            }
+            i = end + 1;
+        }
+        return result.toString();
+    }
+
+    private static boolean isIndex(String predicate) {
+        return !predicate.isEmpty() && predicate.chars().allMatch(Character::isDigit);
+    }
+
+    private List<PathSegment> convertToArchetypePath(String path) {
+        List<PathSegment> segments = new APathQuery(path).getPathSegments();
+        String archetypePath = segments.isEmpty() ? "/" : Joiner.on("").join(segments);
+        List<ArchetypeModelObject> allMatchingPredicate = new AOMPathQuery(archetypePath).findAllMatchingPredicate(archetype.getDefinition(), o -> true);
+        if(!allMatchingPredicate.isEmpty()) {
+            ArchetypeModelObject archetypeModelObject = allMatchingPredicate.get(allMatchingPredicate.size() - 1);
+            if(archetypeModelObject instanceof ArchetypeConstraint) {
+                return ((ArchetypeConstraint) archetypeModelObject).getPathSegments();
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * A copy of a constraint, placed in the archetype at the path of the values it is matched against
+     */
+    private class PreparedConstraint {
+        private final CTerminologyCode constraint;
+        private final Set<String> localValueSet;
+
+        PreparedConstraint(CTerminologyCode original, String archetypePath) {
+            constraint = (CTerminologyCode) original.clone();
+            //hack to support CTerminologyConstraints properly: the terminology of a constraint is determined by its path
+            DummyRulesPrimitiveObjectParent dummyParent = new DummyRulesPrimitiveObjectParent(archetype);
+            if(!archetypePath.isEmpty()) {
+                //better would be to flatten rules in a separate structure for each included archetype, similar to
+                //componentTerminologies, and to evaluate those.
+                dummyParent.setPathSegments(convertToArchetypePath(archetypePath));
+            }
+            constraint.setParent(dummyParent);
+            localValueSet = new HashSet<>(constraint.getValueSetExpanded());
+        }
+
+        /**
+         * Same as constraint.isValidValue, but checks local codes against the precomputed value set
+         */
+        boolean isValidValue(Object value) {
+            TerminologyCode code = (TerminologyCode) value;
+            if(code == null || constraint.getConstraint().isEmpty() || !constraint.isConstraintRequired()) {
+                return constraint.isValidValue(code);
+            }
+            String terminologyId = code.getTerminologyId();
+            if(terminologyId == null || terminologyId.equalsIgnoreCase("local") || AOMUtils.isValueSetCode(terminologyId)) {
+                return code.getCodeString() != null && localValueSet.contains(code.getCodeString());
+            }
+            return constraint.isValidValue(code);
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package com.nedap.archie.rules.evaluation.evaluators;
 
 import com.google.common.collect.Lists;
-import com.nedap.archie.rules.Expression;
 import com.nedap.archie.rules.OperatorKind;
 import com.nedap.archie.rules.PrimitiveType;
 import com.nedap.archie.rules.UnaryOperator;
@@ -11,6 +10,7 @@ import com.nedap.archie.rules.evaluation.Value;
 import com.nedap.archie.rules.evaluation.ValueList;
 
 import java.util.List;
+import java.util.function.Function;
 
 /**
  * Created by pieter.bos on 04/04/16.
@@ -18,22 +18,32 @@ import java.util.List;
 public class UnaryOperatorEvaluator implements Evaluator<UnaryOperator> {
     @Override
     public ValueList evaluate(RuleEvaluation<?> evaluation, UnaryOperator statement) {
+        Function<ValueList, ValueList> operation = getOperation(statement);
+        return operation.apply(evaluation.evaluate(statement.getOperand()));
+    }
+
+    /**
+     * Get the operation for the operator of the given statement, to apply to its already evaluated operand. Used when
+     * compiling rules, so the operator is only looked up once.
+     *
+     * @param statement the unary operator
+     * @return the operation
+     */
+    public Function<ValueList, ValueList> getOperation(UnaryOperator statement) {
         OperatorKind operator = statement.getOperator();
-        Expression operand = statement.getOperand();
         switch(operator) {
             case not:
-                return handleNot(evaluation, statement);
+                return this::handleNot;
             case exists:
-                return handleExists(evaluation, statement);
+                return this::handleExists;
             case minus:
-                return handleMinus(evaluation, statement);
+                return this::handleMinus;
             default:
                 throw new UnsupportedOperationException("not yet supported " + operator);
         }
     }
 
-    private ValueList handleMinus(RuleEvaluation<?> evaluation, UnaryOperator statement) {
-        ValueList valueList = evaluation.evaluate(statement.getOperand());
+    private ValueList handleMinus(ValueList valueList) {
         if(valueList.getType() == PrimitiveType.Integer || valueList.getType() == PrimitiveType.Real) {
             ValueList result = new ValueList();
             for(Value<?> value:valueList.getValues()) {
@@ -58,8 +68,7 @@ public class UnaryOperatorEvaluator implements Evaluator<UnaryOperator> {
         }
     }
 
-    private ValueList handleExists(RuleEvaluation<?> evaluation, UnaryOperator statement) {
-        ValueList value = evaluation.evaluate(statement.getOperand());
+    private ValueList handleExists(ValueList value) {
         if(value.isEmpty() || value.containsOnlyNullValues()) {
             return new ValueList(false, value.getAllPaths());
         } else {
@@ -68,8 +77,10 @@ public class UnaryOperatorEvaluator implements Evaluator<UnaryOperator> {
     }
 
     public ValueList handleNot(RuleEvaluation<?> evaluation, UnaryOperator statement) {
-        Expression operand = statement.getOperand();
-        ValueList input = evaluation.evaluate(operand);
+        return handleNot(evaluation.evaluate(statement.getOperand()));
+    }
+
+    private ValueList handleNot(ValueList input) {
         List<Value<?>> values = input.getValues();
         ValueList result = new ValueList();
         result.setType(PrimitiveType.Boolean);
@@ -1,15 +1,15 @@
 package com.nedap.archie.rules.evaluation.evaluators.functions;
 
 import com.nedap.archie.rules.PrimitiveType;
+import com.nedap.archie.rules.evaluation.DoubleValueList;
 import com.nedap.archie.rules.evaluation.FunctionCallException;
 import com.nedap.archie.rules.evaluation.FunctionImplementation;
-import com.nedap.archie.rules.evaluation.Value;
+import com.nedap.archie.rules.evaluation.PrimitiveValueList;
 import com.nedap.archie.rules.evaluation.ValueList;
 
 import java.util.ArrayList;
 import java.util.List;
 
-import static com.nedap.archie.rules.evaluation.evaluators.FunctionUtil.castToDouble;
 import static com.nedap.archie.rules.evaluation.evaluators.FunctionUtil.checkAndHandleNull;
 
 /**
@@ -31,20 +31,22 @@ public class FlatSum implements FunctionImplementation {
         }
 
         double sum = 0.0;
-        ValueList result = new ValueList();
-        List<String> paths = new ArrayList<>();
-
         for (ValueList argument: arguments) {
-            List<Value<?>> values = argument.getValues();
-            for (Value<?> val: values) {
-                if (!val.isNull()) {
-                    sum += castToDouble(val);
+            for (int i = 0; i < argument.size(); i++) {
+                if (!PrimitiveValueList.isNull(argument, i)) {
+                    if(!PrimitiveValueList.isLongOrDouble(argument, i)) {
+                        throw new FunctionCallException("cannot cast " + argument.getObject(i).getClass() + " to a number");
+                    }
+                    sum += PrimitiveValueList.getDouble(argument, i);
                 }
-                paths.addAll(val.getPaths());
             }
         }
-        result.addValue(sum, paths);
-        result.setType(PrimitiveType.Real);
-        return result;
+        return new DoubleValueList(new double[] {sum}, null, i -> {
+            List<String> paths = new ArrayList<>();
+            for (ValueList argument: arguments) {
+                paths.addAll(argument.getAllPaths());
+            }
+            return paths;
+        });
     }
 }
\ No newline at end of file
@@ -1,15 +1,16 @@
 package com.nedap.archie.rules.evaluation.evaluators.functions;
 
 import com.nedap.archie.rules.PrimitiveType;
+import com.nedap.archie.rules.evaluation.DoubleValueList;
 import com.nedap.archie.rules.evaluation.FunctionCallException;
 import com.nedap.archie.rules.evaluation.FunctionImplementation;
-import com.nedap.archie.rules.evaluation.Value;
+import com.nedap.archie.rules.evaluation.PrimitiveValueList;
 import com.nedap.archie.rules.evaluation.ValueList;
 
-import java.util.ArrayList;
 import java.util.List;
 
-import static com.nedap.archie.rules.evaluation.evaluators.FunctionUtil.*;
+import static com.nedap.archie.rules.evaluation.evaluators.FunctionUtil.checkAndHandleNull;
+import static com.nedap.archie.rules.evaluation.evaluators.FunctionUtil.checkEqualLengthOrOne;
 
 /**
  * Created by pieter.bos on 07/04/2017.
@@ -33,22 +34,31 @@ public class Max implements FunctionImplementation {
         if(length == -1) {
             throw new FunctionCallException("value lists of max operator not the same length");
         }
-        ValueList result = new ValueList();
-        result.setType(PrimitiveType.Real);
+        double[] results = new double[length];
+        boolean[] nulls = null;
         for(int i = 0; i < length; i++) {
-            Double max = null;
-            List<String> paths = new ArrayList<>();
+            boolean found = false;
             for(ValueList list: arguments) {
-                Value<?> value = list.get(i);
-                if(!value.isNull() && ((max == null) || castToDouble(value) > max)) {
-                    max = castToDouble(value);
+                if(PrimitiveValueList.isNull(list, i)) {
+                    continue;
+                }
+                if(!PrimitiveValueList.isLongOrDouble(list, i)) {
+                    throw new FunctionCallException("cannot cast " + list.getObject(i).getClass() + " to a number");
+                }
+                double value = PrimitiveValueList.getDouble(list, i);
+                if(!found || value > results[i]) {
+                    results[i] = value;
+                    found = true;
                 }
-                paths.addAll(value.getPaths());
             }
-            result.addValue(max, paths);
+            if(!found) {
+                if(nulls == null) {
+                    nulls = new boolean[length];
+                }
+                nulls[i] = true;
+            }
         }
-
-        return result;
+        return new DoubleValueList(results, nulls, PrimitiveValueList.broadcastPaths(arguments));
     }
 
 
@@ -1,11 +1,11 @@
 package com.nedap.archie.rules.evaluation.evaluators.functions;
 
-import com.nedap.archie.rules.PrimitiveType;
+import com.nedap.archie.rules.evaluation.DoubleValueList;
 import com.nedap.archie.rules.evaluation.FunctionCallException;
 import com.nedap.archie.rules.evaluation.FunctionImplementation;
-import com.nedap.archie.rules.evaluation.Value;
 import com.nedap.archie.rules.evaluation.ValueList;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -21,15 +21,23 @@ public class Mean implements FunctionImplementation {
     public ValueList evaluate(List<ValueList> arguments) throws FunctionCallException {
         Sum sum = new Sum();
         ValueList values = sum.evaluate(arguments);
-        ValueList result = new ValueList();
-        for(Value<?> value:values.getValues()) {
-            if(value.isNull()) {
-                result.addValue(null, value.getPaths());
-            } else if(value.getValue() instanceof Number) {
-                result.addValue(((Number) value.getValue()).doubleValue()/arguments.size(), value.getPaths());
+        if(!(values instanceof DoubleValueList)) {
+            //null result
+            return values;
+        }
+        DoubleValueList sums = (DoubleValueList) values;
+        double[] means = new double[sums.size()];
+        boolean[] nulls = null;
+        for(int i = 0; i < means.length; i++) {
+            if(sums.isNull(i)) {
+                if(nulls == null) {
+                    nulls = new boolean[means.length];
+                }
+                nulls[i] = true;
+            } else {
+                means[i] = sums.getDouble(i) / arguments.size();
             }
         }
-        result.setType(PrimitiveType.Real);
-        return result;
+        return new DoubleValueList(means, nulls, i -> new ArrayList<>(sums.getPaths(i)));
     }
 }
\ No newline at end of file
@@ -1,15 +1,15 @@
 package com.nedap.archie.rules.evaluation.evaluators.functions;
 
 import com.nedap.archie.rules.PrimitiveType;
+import com.nedap.archie.rules.evaluation.DoubleValueList;
 import com.nedap.archie.rules.evaluation.FunctionCallException;
 import com.nedap.archie.rules.evaluation.FunctionImplementation;
-import com.nedap.archie.rules.evaluation.Value;
+import com.nedap.archie.rules.evaluation.PrimitiveValueList;
 import com.nedap.archie.rules.evaluation.ValueList;
 
 import java.util.ArrayList;
 import java.util.List;
 
-import static com.nedap.archie.rules.evaluation.evaluators.FunctionUtil.castToDouble;
 import static com.nedap.archie.rules.evaluation.evaluators.FunctionUtil.checkAndHandleNull;
 import static com.nedap.archie.rules.evaluation.evaluators.FunctionUtil.checkEqualLengthOrOne;
 
@@ -34,42 +34,37 @@ public class Sum implements FunctionImplementation {
         //check that all valueList are equal length or 1 length
         int length = checkEqualLengthOrOne(arguments);
 
-        ValueList result = new ValueList();
-
+        length = Math.max(length, 0);
+        double[] sums = new double[length];
+        boolean[] nulls = null;
         for(int i = 0; i < length;i++) {
-            Double sum = 0.0;
-            List<String> paths = new ArrayList<>();
             for (ValueList argument: arguments) {
-                if (argument.getValues().size() == 1) {
-                    if(argument.getValues().get(0).isNull()) {
-                        sum = null;
-                        break;
-                    }
-                    paths.addAll(argument.getValues().get(0).getPaths());
-                    Object value = argument.getValues().get(0).getValue();
-                    if(value instanceof Number) {
-                        sum += ((Number) value).doubleValue();
-                    } else {
-                        throw new FunctionCallException("argument of sum is not a number");
+                int index = argument.size() == 1 ? 0 : i;
+                if(PrimitiveValueList.isNull(argument, index)) {
+                    if(nulls == null) {
+                        nulls = new boolean[length];
                     }
+                    nulls[i] = true;
+                    break;
+                }
+                if(PrimitiveValueList.isNumber(argument, index)) {
+                    sums[i] += PrimitiveValueList.getDouble(argument, index);
                 } else {
-                    if(argument.getValues().get(i).isNull()) {
-                        sum = null;
-                        break;
-                    }
-                    paths.addAll(argument.getValues().get(i).getPaths());
-                    Object value = argument.getValues().get(i).getValue();
-                    if(value instanceof Number) {
-                        sum += ((Number) value).doubleValue();
-                    } else {
-                        throw new FunctionCallException("argument of sum is not a number");
-                    }
+                    throw new FunctionCallException("argument of sum is not a number");
                 }
             }
-            result.addValue(sum, paths);
         }
-
-        result.setType(PrimitiveType.Real);
-        return result;
+        return new DoubleValueList(sums, nulls, i -> {
+            //the paths of the arguments up to the first null value
+            List<String> paths = new ArrayList<>();
+            for (ValueList argument: arguments) {
+                int index = argument.size() == 1 ? 0 : i;
+                if(PrimitiveValueList.isNull(argument, index)) {
+                    break;
+                }
+                paths.addAll(argument.getPaths(index));
+            }
+            return paths;
+        });
     }
 }
\ No newline at end of file
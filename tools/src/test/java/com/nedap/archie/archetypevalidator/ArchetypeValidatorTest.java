@@ -3,16 +3,21 @@ package com.nedap.archie.archetypevalidator;
 import com.nedap.archie.adlparser.ADLParseException;
 import com.nedap.archie.adlparser.ADLParser;
 import com.nedap.archie.aom.Archetype;
+import com.nedap.archie.aom.CObject;
+import com.nedap.archie.base.MultiplicityInterval;
 import com.nedap.archie.flattener.InMemoryFullArchetypeRepository;
 import com.nedap.archie.openehrtestrm.TestRMInfoLookup;
 import com.nedap.archie.rminfo.ArchieRMInfoLookup;
 import com.nedap.archie.rminfo.ReferenceModels;
+import com.nedap.archie.serializer.adl.ADLArchetypeSerializer;
 import org.junit.Before;
 import org.junit.Test;
 import org.openehr.referencemodels.BuiltinReferenceModels;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.junit.Assert.*;
 
@@ -321,6 +326,117 @@ public class ArchetypeValidatorTest {
         }
     }
 
+    @Test
+    public void concurrentValidations() throws Exception {
+        String[] files = {
+                "/adl2-tests/validity/rm_checking/openEHR-EHR-EVALUATION.VCARM_rm_non_existent_attribute.v1.0.0.adls",
+                "/adl2-tests/validity/consistency/openEHR-TEST_PKG-ENTRY.VACDF_ac_code_in_definition_not_in_terminology.v1.0.0.adls",
+                "openEHR-EHR-CLUSTER.invalid_tuple_1.v1.0.0.adls",
+                "/basic.adl"
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for(String file:files) {
+                archetype = parse(file);
+                ValidationResult sequentialResult = new ArchetypeValidator(models).validate(archetype);
+                ArchetypeValidator concurrentValidator = new ArchetypeValidator(models);
+                concurrentValidator.setExecutor(executor);
+                ValidationResult concurrentResult = concurrentValidator.validate(archetype);
+                assertEquals(sequentialResult.getErrors().toString(), concurrentResult.getErrors().toString());
+                assertEquals(sequentialResult.passes(), concurrentResult.passes());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void statistics() throws Exception {
+        archetype = parse("/adl2-tests/validity/consistency/openEHR-TEST_PKG-ENTRY.VACDF_ac_code_in_definition_not_in_terminology.v1.0.0.adls");
+        ArchetypeValidationStatistics statistics = new ArchetypeValidationStatistics();
+        ArchetypeValidator validator = new ArchetypeValidator(models);
+        validator.setListener(statistics);
+        ValidationResult result = validator.validate(archetype);
+
+        assertEquals(1, statistics.getArchetypeTimings().size());
+        assertEquals(1, statistics.getArchetypeTimings().get(result.getArchetypeId()).getCount());
+        assertEquals(1, statistics.getValidationTimings().get("CodeValidation").getCount());
+        assertEquals(1, statistics.getPhaseTimings().get(0).getCount());
+        //the error is found in phase 1, so phase 3 and flattening are skipped
+        assertEquals(1, statistics.getPhaseTimings().get(1).getMessageCount());
+        assertNull(statistics.getPhaseTimings().get(3));
+        assertEquals(0, statistics.getFlattenTiming().getCount());
+
+        archetype = parse("/basic.adl");
+        validator.validate(archetype);
+        assertEquals(2, statistics.getArchetypeTimings().size());
+        assertEquals(1, statistics.getPhaseTimings().get(3).getCount());
+        assertEquals(1, statistics.getFlattenTiming().getCount());
+        assertEquals(1, statistics.getOperationalTemplateTiming().getCount());
+        assertTrue(statistics.getReport().contains("CodeValidation"));
+    }
+
+    @Test
+    public void incrementalValidation() throws Exception {
+        archetype = parse("/basic.adl");
+        ArchetypeValidationStatistics statistics = new ArchetypeValidationStatistics();
+        ArchetypeValidator validator = new ArchetypeValidator(models);
+        validator.setListener(statistics);
+        ValidationResult result = validator.validate(archetype);
+        assertTrue(result.passes());
+
+        //only a term text changed
+        archetype.getTerminology().getTermDefinitions().get("en").get("id4").setText("Order identifier");
+        result = validator.validateIncrementally(result, archetype, new ArchetypeChangeSet().addChangedTerminologyCode("id4"));
+        assertTrue(result.getErrors().toString(), result.passes());
+        assertEquals("Order identifier", result.getFlattened().getTerminology().getTermDefinitions().get("en").get("id4").getText());
+        assertEquals(1, statistics.getValidationTimings().get("NodeIdValidation").getCount());
+        assertEquals(2, statistics.getValidationTimings().get("BasicTerminologyValidation").getCount());
+
+        //a single node changed, making the archetype invalid
+        String path = "/context[id11]/other_context[id2]/items[id3]/items[id4]";
+        CObject changedNode = archetype.itemAtPath(path);
+        changedNode.setOccurrences(new MultiplicityInterval(3, 1));
+        ValidationResult incrementalResult = validator.validateIncrementally(result, archetype, new ArchetypeChangeSet().addChangedPath(path));
+        ValidationResult fullResult = new ArchetypeValidator(models).validate(archetype);
+        assertFalse(incrementalResult.passes());
+        assertEquals(fullResult.getErrors().toString(), incrementalResult.getErrors().toString());
+        assertEquals(2, statistics.getValidationTimings().get("BasicDefinitionObjectValidation").getCount());
+
+        //and fixed again
+        changedNode.setOccurrences(new MultiplicityInterval(0, 1));
+        result = validator.validateIncrementally(incrementalResult, archetype, new ArchetypeChangeSet().addChangedPath(path));
+        assertTrue(result.getErrors().toString(), result.passes());
+        assertNotNull(result.getFlattened());
+    }
+
+    @Test
+    public void incrementalValidationOfSpecializedArchetype() throws Exception {
+        Archetype parent = parse("/adl2-tests/features/specialisation/openEHR-EHR-OBSERVATION.spec_test_parent.v1.0.0.adls");
+        Archetype child = parse("/adl2-tests/features/specialisation/openEHR-EHR-OBSERVATION.redefine_1_value.v1.0.0.adls");
+        InMemoryFullArchetypeRepository repository = new InMemoryFullArchetypeRepository();
+        repository.addArchetype(parent);
+        repository.addArchetype(child);
+        ArchetypeValidator validator = new ArchetypeValidator(models);
+        ValidationResult result = validator.validate(child, repository);
+        assertTrue(result.getErrors().toString(), result.passes());
+        assertNotNull(result.getFlatParent());
+
+        //nothing changed, so the flattened archetype is reused
+        ValidationResult unchangedResult = validator.validateIncrementally(result, child, new ArchetypeChangeSet(), repository);
+        assertTrue(unchangedResult.getErrors().toString(), unchangedResult.passes());
+        assertSame(result.getFlattened(), unchangedResult.getFlattened());
+
+        //flattened with the flattened parent of the previous result, the same as flattening from the repository
+        child.getTerminology().getTermDefinitions().get("en").get("id4.1").setText("Changed text field");
+        ValidationResult incrementalResult = validator.validateIncrementally(unchangedResult, child, new ArchetypeChangeSet().addChangedTerminologyCode("id4.1"), repository);
+        ValidationResult fullResult = new ArchetypeValidator(models).validate(child, repository);
+        assertTrue(incrementalResult.getErrors().toString(), incrementalResult.passes());
+        assertSame(result.getFlatParent(), incrementalResult.getFlatParent());
+        assertEquals(ADLArchetypeSerializer.serialize(fullResult.getFlattened()), ADLArchetypeSerializer.serialize(incrementalResult.getFlattened()));
+        assertEquals("Changed text field", incrementalResult.getFlattened().getTerminology().getTermDefinitions().get("en").get("id4.1").getText());
+    }
+
     private Archetype parse(String filename) throws IOException, ADLParseException {
         archetype = parser.parse(ArchetypeValidatorTest.class.getResourceAsStream(filename));
         assertTrue(parser.getErrors().toString(), parser.getErrors().hasNoErrors());
@@ -0,0 +1,131 @@
+package com.nedap.archie.binary;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nedap.archie.adlparser.ADLParser;
+import com.nedap.archie.aom.Archetype;
+import com.nedap.archie.aom.CAttribute;
+import com.nedap.archie.aom.CAttributeTuple;
+import com.nedap.archie.aom.CComplexObject;
+import com.nedap.archie.aom.CObject;
+import com.nedap.archie.aom.OperationalTemplate;
+import com.nedap.archie.aom.RulesSection;
+import com.nedap.archie.aom.terminology.ArchetypeTerminology;
+import com.nedap.archie.flattener.Flattener;
+import com.nedap.archie.flattener.InMemoryFullArchetypeRepository;
+import com.nedap.archie.json.ArchieJacksonConfiguration;
+import com.nedap.archie.json.JacksonUtil;
+import org.junit.Before;
+import org.junit.Test;
+import org.openehr.referencemodels.BuiltinReferenceModels;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryArchetypeTest {
+
+    private ObjectMapper objectMapper;
+
+    @Before
+    public void setup() {
+        objectMapper = JacksonUtil.getObjectMapper(ArchieJacksonConfiguration.createStandardsCompliant());
+    }
+
+    @Test
+    public void operationalTemplate() throws Exception {
+        Archetype archetype = parse("/ckm-mirror/local/archetypes/entry/observation/openEHR-EHR-OBSERVATION.blood_pressure.v1.1.0.adls");
+        InMemoryFullArchetypeRepository repository = new InMemoryFullArchetypeRepository();
+        repository.addArchetype(archetype);
+        OperationalTemplate template = (OperationalTemplate) new Flattener(repository, BuiltinReferenceModels.getMetaModels()).createOperationalTemplate(true).flatten(archetype);
+
+        byte[] binary = write(template);
+        assertTrue(binary.length < objectMapper.writeValueAsBytes(template).length / 2);
+
+        BinaryArchetype binaryArchetype = BinaryArchetype.open(binary);
+        assertEquals(template.getArchetypeId().getFullId(), binaryArchetype.getArchetypeId());
+
+        Archetype read = binaryArchetype.readArchetype();
+        assertTrue(read instanceof OperationalTemplate);
+        assertEquals(objectMapper.writeValueAsString(template), objectMapper.writeValueAsString(read));
+        CObject event = read.itemAtPath("/data[id2]/events[id7]");
+        assertEquals("/data[id2]/events[id7]", event.getPath());
+
+        CComplexObject definition = binaryArchetype.readDefinition();
+        assertEquals(objectMapper.writeValueAsString(template.getDefinition()), objectMapper.writeValueAsString(definition));
+        ArchetypeTerminology terminology = binaryArchetype.readTerminology();
+        assertEquals(template.getTerminology().getTermDefinitions().keySet(), terminology.getTermDefinitions().keySet());
+        assertEquals(objectMapper.writeValueAsString(template.getTerminology()), objectMapper.writeValueAsString(terminology));
+    }
+
+    @Test
+    public void sectionsReadSeparately() throws Exception {
+        Archetype archetype = parse("/ckm-mirror/local/archetypes/entry/observation/openEHR-EHR-OBSERVATION.blood_pressure.v1.1.0.adls");
+        BinaryArchetype binaryArchetype = BinaryArchetype.open(write(archetype));
+
+        CComplexObject definition = binaryArchetype.readDefinition();
+        CObject event = definition.itemAtPath("/data[id2]/events[id7]");
+        assertEquals("/data[id2]/events[id7]", event.getPath());
+        assertSame(definition, event.getParent().getParent().getParent().getParent());
+
+        //the members of a tuple are the attributes of the object
+        String magnitudePath = "/data[id2]/events[id7]/state[id8]/items[id1006]/value[id1068]/magnitude";
+        CAttribute magnitude = definition.itemAtPath(magnitudePath);
+        assertEquals(magnitudePath, magnitude.getPath());
+        assertNotNull(magnitude.getSocParent());
+        assertSame(magnitude, ((CAttributeTuple) magnitude.getSocParent()).getMember("magnitude"));
+
+        ArchetypeTerminology terminology = binaryArchetype.readTerminology();
+        assertEquals("id1", terminology.getConceptCode());
+        assertEquals(archetype.getTerminology().getConceptCode(), terminology.getConceptCode());
+        assertEquals(archetype.getTerminology().getOriginalLanguage(), terminology.getOriginalLanguage());
+        assertEquals("id5", terminology.getTermDefinitions().get(terminology.getOriginalLanguage()).get("id5").getCode());
+    }
+
+    @Test
+    public void rulesFromMemoryMappedFile() throws Exception {
+        Archetype archetype = parse("/com/nedap/archie/rules/evaluation/openEHR-EHR-OBSERVATION.motricity_index.v1.0.0.adls");
+        Path file = Files.createTempFile("motricity_index", ".aom");
+        try {
+            BinaryArchetypeWriter.write(archetype, file);
+            BinaryArchetype binaryArchetype = BinaryArchetype.open(file);
+
+            RulesSection rules = binaryArchetype.readRules();
+            assertNotNull(rules);
+            assertEquals(archetype.getRules().getRules().size(), rules.getRules().size());
+            assertEquals(objectMapper.writeValueAsString(archetype), objectMapper.writeValueAsString(binaryArchetype.readArchetype()));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void noRules() throws Exception {
+        Archetype archetype = parse("/ckm-mirror/local/archetypes/entry/observation/openEHR-EHR-OBSERVATION.blood_pressure.v1.1.0.adls");
+        assertNull(BinaryArchetype.open(write(archetype)).readRules());
+    }
+
+    @Test(expected = IOException.class)
+    public void notBinaryArchetype() throws Exception {
+        BinaryArchetype.open(objectMapper.writeValueAsBytes(parse("/ckm-mirror/local/archetypes/entry/observation/openEHR-EHR-OBSERVATION.blood_pressure.v1.1.0.adls")));
+    }
+
+    private Archetype parse(String resource) throws Exception {
+        try(InputStream stream = getClass().getResourceAsStream(resource)) {
+            return new ADLParser(BuiltinReferenceModels.getMetaModels()).parse(stream);
+        }
+    }
+
+    private byte[] write(Archetype archetype) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryArchetypeWriter.write(archetype, out);
+        return out.toByteArray();
+    }
+}
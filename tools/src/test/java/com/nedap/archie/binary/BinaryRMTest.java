@@ -0,0 +1,234 @@
+package com.nedap.archie.binary;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.ByteStreams;
+import com.nedap.archie.json.ArchieJacksonConfiguration;
+import com.nedap.archie.json.JacksonUtil;
+import com.nedap.archie.rm.composition.Composition;
+import com.nedap.archie.rm.datastructures.Cluster;
+import com.nedap.archie.rm.datastructures.Element;
+import com.nedap.archie.rm.datastructures.Item;
+import com.nedap.archie.rm.datavalues.DataValue;
+import com.nedap.archie.rm.datavalues.DvText;
+import com.nedap.archie.rm.datavalues.DvURI;
+import com.nedap.archie.rm.datavalues.encapsulated.DvMultimedia;
+import com.nedap.archie.rm.datavalues.quantity.DvCount;
+import com.nedap.archie.rm.datavalues.quantity.DvQuantity;
+import com.nedap.archie.rm.datavalues.quantity.datetime.DvDate;
+import com.nedap.archie.rm.datavalues.quantity.datetime.DvDateTime;
+import com.nedap.archie.rm.datavalues.quantity.datetime.DvDuration;
+import com.nedap.archie.rm.datavalues.quantity.datetime.DvTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.threeten.extra.PeriodDuration;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.OffsetTime;
+import java.time.Period;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryRMTest {
+
+    private ObjectMapper objectMapper;
+    private byte[] json;
+
+    @Before
+    public void setup() throws Exception {
+        objectMapper = JacksonUtil.getObjectMapper(ArchieJacksonConfiguration.createStandardsCompliant());
+        try(InputStream stream = getClass().getResourceAsStream("/com/nedap/archie/json/pablos_example.json")) {
+            json = ByteStreams.toByteArray(stream);
+        }
+    }
+
+    @Test
+    public void compositionRoundTrip() throws Exception {
+        Composition composition = objectMapper.readValue(json, Composition.class);
+        byte[] binary = write(composition);
+        Composition read = new BinaryRMReader(new ByteArrayInputStream(binary)).read(Composition.class);
+
+        assertEquals(composition, read);
+        assertEquals(objectMapper.writeValueAsString(composition), objectMapper.writeValueAsString(read));
+        assertTrue(binary.length < objectMapper.writeValueAsBytes(composition).length / 2);
+    }
+
+    @Test
+    public void dataValues() throws Exception {
+        Cluster cluster = new Cluster();
+        cluster.setArchetypeNodeId("id1");
+        cluster.setName(new DvText("data values"));
+        List<Item> items = new ArrayList<>();
+        items.add(element(new DvDateTime(OffsetDateTime.of(2021, 3, 4, 10, 15, 30, 123_000_000, ZoneOffset.ofHours(2)))));
+        items.add(element(new DvDateTime(LocalDateTime.of(2021, 3, 4, 10, 15))));
+        items.add(element(new DvDateTime(YearMonth.of(2021, 3))));
+        items.add(element(new DvDate(LocalDate.of(1969, 12, 31))));
+        items.add(element(new DvTime(LocalTime.of(23, 59, 59))));
+        items.add(element(new DvTime(OffsetTime.of(8, 0, 0, 0, ZoneOffset.ofHours(-5)))));
+        items.add(element(new DvDuration(Duration.ofSeconds(-3600))));
+        items.add(element(new DvDuration(Period.of(1, 2, 3))));
+        items.add(element(new DvDuration(PeriodDuration.of(Period.ofDays(2), Duration.ofHours(3)))));
+        items.add(element(new DvCount(-42L)));
+        items.add(element(new DvQuantity("mm[Hg]", 120.5, 1L)));
+        items.add(element(new DvURI("https://example.com/some/resource?query=1")));
+        DvMultimedia multimedia = new DvMultimedia();
+        multimedia.setData(new byte[] {0, 1, 2, (byte) 255});
+        multimedia.setSize(4);
+        items.add(element(multimedia));
+        cluster.setItems(items);
+
+        Cluster read = (Cluster) new BinaryRMReader(new ByteArrayInputStream(write(cluster))).read();
+        assertEquals(objectMapper.writeValueAsString(cluster), objectMapper.writeValueAsString(read));
+        assertEquals(OffsetDateTime.of(2021, 3, 4, 10, 15, 30, 123_000_000, ZoneOffset.ofHours(2)),
+                ((DvDateTime) ((Element) read.getItems().get(0)).getValue()).getValue());
+        assertArrayEquals(new byte[] {0, 1, 2, (byte) 255}, ((DvMultimedia) ((Element) read.getItems().get(12)).getValue()).getData());
+    }
+
+    @Test
+    public void multipleObjectsInOneStream() throws Exception {
+        Composition composition = objectMapper.readValue(json, Composition.class);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryRMWriter writer = new BinaryRMWriter(out);
+        writer.write(composition);
+        int firstLength = out.size();
+        writer.write(composition);
+        //the second composition reuses the strings of the first
+        assertTrue(out.size() - firstLength < firstLength);
+
+        BinaryRMReader reader = new BinaryRMReader(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(composition, reader.read());
+        assertEquals(composition, reader.read());
+        assertNull(reader.read());
+    }
+
+    @Test
+    public void stringTableOnlyHoldsModelStrings() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryRMWriter writer = new BinaryRMWriter(out);
+        for(int i = 0; i < 1000; i++) {
+            Element element = element(new DvText(UUID.randomUUID().toString()));
+            element.setName(new DvText("element " + i));
+            writer.write(element);
+        }
+        //only type names, attribute names and the node id, not the 2000 unique values
+        assertTrue(writer.getStringTableSize() < 20);
+
+        BinaryRMReader reader = new BinaryRMReader(new ByteArrayInputStream(out.toByteArray()));
+        for(int i = 0; i < 1000; i++) {
+            assertEquals("element " + i, reader.read(Element.class).getName().getValue());
+        }
+        assertNull(reader.read());
+    }
+
+    @Test
+    public void stringTableSizeIsLimited() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryRMWriter writer = new BinaryRMWriter(out);
+        int count = BinaryRMFormat.MAX_STRING_TABLE_SIZE + 100;
+        for(int i = 0; i < count; i++) {
+            Element element = element(new DvText("value"));
+            element.setArchetypeNodeId("id" + i);
+            writer.write(element);
+        }
+        assertEquals(BinaryRMFormat.MAX_STRING_TABLE_SIZE, writer.getStringTableSize());
+
+        BinaryRMReader reader = new BinaryRMReader(new ByteArrayInputStream(out.toByteArray()));
+        for(int i = 0; i < count; i++) {
+            assertEquals("id" + i, reader.read(Element.class).getArchetypeNodeId());
+        }
+        assertNull(reader.read());
+    }
+
+    @Test
+    public void unknownAttributesAreSkipped() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(BinaryRMFormat.MAGIC);
+        out.writeByte(BinaryRMFormat.VERSION);
+        out.writeByte(BinaryRMFormat.OBJECT);
+        writeNewString(out, "DV_TEXT");
+        out.writeByte(3);
+        writeNewString(out, "value");
+        out.writeByte(BinaryRMFormat.STRING);
+        writeNewString(out, "text");
+        //an attribute from a later version, with a type and an enum that are not known
+        writeNewString(out, "later_attribute");
+        out.writeByte(BinaryRMFormat.OBJECT);
+        writeNewString(out, "LATER_TYPE");
+        out.writeByte(4);
+        writeNewString(out, "kind");
+        out.writeByte(BinaryRMFormat.ENUM);
+        writeNewString(out, "LATER_KIND");
+        writeNewString(out, "moments");
+        out.writeByte(BinaryRMFormat.LIST);
+        out.writeByte(2);
+        out.writeByte(BinaryRMFormat.TEMPORAL);
+        out.writeByte(BinaryRMFormat.PERIOD_DURATION);
+        out.write(new byte[] {2, 4, 6, 8, 0});
+        out.writeByte(BinaryRMFormat.DOUBLE);
+        out.writeDouble(1.5);
+        writeNewString(out, "data");
+        out.writeByte(BinaryRMFormat.BYTES);
+        out.writeByte(3);
+        out.write(new byte[] {1, 2, 3});
+        writeNewString(out, "markup");
+        out.writeByte(BinaryRMFormat.STRING);
+        writeNewString(out, "plain");
+        //refers to the string added to the table in the skipped attribute
+        writeNewString(out, "formatting");
+        out.writeByte(BinaryRMFormat.STRING);
+        out.writeByte(BinaryRMFormat.STRING_TABLE_OFFSET + 10);
+        out.flush();
+
+        BinaryRMReader reader = new BinaryRMReader(new ByteArrayInputStream(bytes.toByteArray()));
+        DvText read = reader.read(DvText.class);
+        assertEquals("text", read.getValue());
+        assertEquals("plain", read.getFormatting());
+        assertNull(reader.read());
+    }
+
+    @Test(expected = IOException.class)
+    public void notBinaryRM() throws Exception {
+        new BinaryRMReader(new ByteArrayInputStream(json)).read();
+    }
+
+    private Element element(DataValue value) {
+        Element element = new Element();
+        element.setArchetypeNodeId("id2");
+        element.setName(new DvText("element"));
+        element.setValue(value);
+        return element;
+    }
+
+    private void writeNewString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeByte(BinaryRMFormat.STRING_NEW);
+        out.writeByte(bytes.length);
+        out.write(bytes);
+    }
+
+    private byte[] write(Object rmObject) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try(BinaryRMWriter writer = new BinaryRMWriter(out)) {
+            writer.write(rmObject);
+        }
+        return out.toByteArray();
+    }
+}
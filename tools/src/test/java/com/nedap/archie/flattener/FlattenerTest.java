@@ -18,8 +18,12 @@ import org.junit.Before;
 import org.junit.Test;
 import org.openehr.referencemodels.BuiltinReferenceModels;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Stack;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.*;
 
@@ -268,6 +272,86 @@ data matches {
         assertTrue(bloodPressureObservation.getTerminology().getTermDefinitions().containsKey("en"));
     }
 
+    @Test
+    public void lazyArchetypeRoots() throws Exception {
+        OperationalTemplate eager = (OperationalTemplate) flattener.flatten(bloodPressureComposition);
+
+        FlattenerConfiguration config = FlattenerConfiguration.forOperationalTemplate();
+        config.setLazyArchetypeRoots(true);
+        OperationalTemplate lazy = (OperationalTemplate) new Flattener(repository, BuiltinReferenceModels.getMetaModels(), config).flatten(bloodPressureComposition);
+
+        String archetypeRef = "openEHR-EHR-OBSERVATION.ovl-blood_pressure-blood_pressure-001.v1.0.0";
+        CArchetypeRoot root = null;
+        for(CObject child:lazy.getDefinition().getAttribute("content").getChildren()) {
+            if(child instanceof CArchetypeRoot && archetypeRef.equals(((CArchetypeRoot) child).getArchetypeRef())) {
+                root = (CArchetypeRoot) child;
+            }
+        }
+        assertNotNull(root);
+        assertTrue(root.isExpansionPending());
+        assertFalse(lazy.getComponentTerminologies().containsKey(archetypeRef));
+
+        //a path query expands the root
+        CObject object = lazy.itemAtPath("/content[" + archetypeRef + "]/protocol[id12]/items[id1011]");
+        assertFalse(root.isExpansionPending());
+        assertEquals("Diastolic endpoint", lazy.getTerm(object, "en").getText());
+
+        lazy.expandLazyArchetypeRoots();
+        assertEquals(eager.getComponentTerminologies().keySet(), lazy.getComponentTerminologies().keySet());
+        assertEquals(getAllPaths(eager), getAllPaths(lazy));
+    }
+
+    @Test
+    public void lazyArchetypeRootsExpandConcurrently() throws Exception {
+        OperationalTemplate eager = (OperationalTemplate) flattener.flatten(bloodPressureComposition);
+
+        FlattenerConfiguration config = FlattenerConfiguration.forOperationalTemplate();
+        config.setLazyArchetypeRoots(true);
+        OperationalTemplate lazy = (OperationalTemplate) new Flattener(repository, BuiltinReferenceModels.getMetaModels(), config).flatten(bloodPressureComposition);
+        List<OperationalTemplate> templates = new ArrayList<>();
+        for(int i = 0; i < 4; i++) {
+            //copies share the flattener and its MetaModels, but expand independently
+            templates.add((OperationalTemplate) lazy.clone());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for(OperationalTemplate template:templates) {
+                //two threads per template, so roots of the same template are expanded concurrently as well
+                futures.add(executor.submit(() -> getAllPaths(template)));
+                futures.add(executor.submit(() -> getAllPaths(template)));
+            }
+            for(Future<?> future:futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        for(OperationalTemplate template:templates) {
+            assertEquals(getAllPaths(eager), getAllPaths(template));
+            assertEquals(eager.getComponentTerminologies().keySet(), template.getComponentTerminologies().keySet());
+            assertEquals(eager.getRules() == null, template.getRules() == null);
+            if(eager.getRules() != null) {
+                assertEquals(eager.getRules().getRules().size(), template.getRules().getRules().size());
+            }
+        }
+    }
+
+    private static List<String> getAllPaths(Archetype archetype) {
+        List<String> result = new ArrayList<>();
+        Stack<CObject> worklist = new Stack<>();
+        worklist.add(archetype.getDefinition());
+        while (!worklist.isEmpty()) {
+            CObject object = worklist.pop();
+            result.add(object.getPath());
+            for (CAttribute attr : object.getAttributes()) {
+                worklist.addAll(attr.getChildren());
+            }
+        }
+        return result;
+    }
+
     @Test
     public void validate() {
         ReferenceModels models = new ReferenceModels();
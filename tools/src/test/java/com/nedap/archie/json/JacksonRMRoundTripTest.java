@@ -30,6 +30,9 @@ import java.net.URI;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
@@ -116,6 +119,30 @@ public class JacksonRMRoundTripTest {
 
     }
 
+    @Test
+    public void generatedAccessorsSameOutput() throws Exception {
+        Composition composition;
+        try(InputStream stream = getClass().getResourceAsStream("pablos_example.json")) {
+            composition = JacksonUtil.getObjectMapper().readValue(stream, Composition.class);
+        }
+        List<Supplier<ArchieJacksonConfiguration>> configurations = Arrays.asList(
+                ArchieJacksonConfiguration::createStandardsCompliant,
+                ArchieJacksonConfiguration::createConfigForJavascriptUsage,
+                ArchieJacksonConfiguration::createLegacyConfiguration
+        );
+        for(Supplier<ArchieJacksonConfiguration> configurationSupplier:configurations) {
+            String json = JacksonUtil.getObjectMapper(configurationSupplier.get()).writeValueAsString(composition);
+
+            //a new configuration, the one above is used as a cache key
+            ArchieJacksonConfiguration configuration = configurationSupplier.get();
+            configuration.setUseGeneratedAccessors(true);
+            ObjectMapper generatedAccessorsMapper = JacksonUtil.getObjectMapper(configuration);
+            assertEquals(json, generatedAccessorsMapper.writeValueAsString(composition));
+            Composition parsed = generatedAccessorsMapper.readValue(json, Composition.class);
+            assertEquals(json, generatedAccessorsMapper.writeValueAsString(parsed));
+        }
+    }
+
     /**
      * Parse a 0.5.5 archie generated json and make sure it parses
      */
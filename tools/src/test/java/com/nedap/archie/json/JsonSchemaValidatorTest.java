@@ -0,0 +1,69 @@
+package com.nedap.archie.json;
+
+import org.junit.Test;
+import org.leadpony.justify.api.Problem;
+import org.openehr.bmm.core.BmmModel;
+import org.openehr.referencemodels.BuiltinReferenceModels;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class JsonSchemaValidatorTest {
+
+    private static final String VALID_JSON = "{\"_type\": \"ELEMENT\", \"archetype_node_id\": \"id2\", \"name\": {\"_type\": \"DV_TEXT\", \"value\": \"text\"}}";
+    //missing archetype_node_id
+    private static final String INVALID_JSON = "{\"_type\": \"ELEMENT\", \"name\": {\"_type\": \"DV_TEXT\", \"value\": \"text\"}}";
+
+    @Test
+    public void sharedInstance() {
+        BmmModel model = BuiltinReferenceModels.getBmmRepository().getModel("openehr_rm_1.0.4").getModel();
+        assertSame(JsonSchemaValidator.getInstance(model, true), JsonSchemaValidator.getInstance(model, true));
+        assertNotSame(JsonSchemaValidator.getInstance(model, true), JsonSchemaValidator.getInstance(model, false));
+    }
+
+    @Test
+    public void streamAndReader() throws Exception {
+        BmmModel model = BuiltinReferenceModels.getBmmRepository().getModel("openehr_rm_1.0.4").getModel();
+        JsonSchemaValidator validator = JsonSchemaValidator.getInstance(model, true);
+
+        assertEquals(new ArrayList<>(), validator.validate(new ByteArrayInputStream(VALID_JSON.getBytes(StandardCharsets.UTF_8))));
+        assertEquals(new ArrayList<>(), validator.validate(new StringReader(VALID_JSON)));
+
+        int problemCount = validator.validate(INVALID_JSON).size();
+        assertTrue(problemCount > 0);
+        assertEquals(problemCount, validator.validate(new ByteArrayInputStream(INVALID_JSON.getBytes(StandardCharsets.UTF_8))).size());
+        assertEquals(problemCount, validator.validate(new StringReader(INVALID_JSON)).size());
+    }
+
+    @Test
+    public void concurrentValidation() throws Exception {
+        BmmModel model = BuiltinReferenceModels.getBmmRepository().getModel("openehr_rm_1.0.4").getModel();
+        JsonSchemaValidator validator = JsonSchemaValidator.getInstance(model, false);
+        int expectedProblems = validator.validate(INVALID_JSON).size();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<Problem>>> results = new ArrayList<>();
+            for(int i = 0; i < 40; i++) {
+                String json = i % 2 == 0 ? VALID_JSON : INVALID_JSON;
+                results.add(executor.submit(() -> validator.validate(new StringReader(json))));
+            }
+            for(int i = 0; i < results.size(); i++) {
+                assertEquals(i % 2 == 0 ? 0 : expectedProblems, results.get(i).get().size());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.nedap.archie.json;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.ByteStreams;
+import com.nedap.archie.query.RMObjectWithPath;
+import com.nedap.archie.query.RMPathQuery;
+import com.nedap.archie.rm.archetyped.Locatable;
+import com.nedap.archie.rm.composition.Composition;
+import com.nedap.archie.rm.composition.Observation;
+import com.nedap.archie.rm.datastructures.Element;
+import com.nedap.archie.rm.datavalues.DvText;
+import com.nedap.archie.rminfo.ArchieRMInfoLookup;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LazyRMObjectTest {
+
+    private byte[] json;
+    private Composition composition;
+    private ObjectMapper objectMapper;
+
+    @Before
+    public void setup() throws Exception {
+        try(InputStream stream = getClass().getResourceAsStream("pablos_example.json")) {
+            json = ByteStreams.toByteArray(stream);
+        }
+        objectMapper = JacksonUtil.getObjectMapper(ArchieJacksonConfiguration.createStandardsCompliant());
+        composition = objectMapper.readValue(json, Composition.class);
+    }
+
+    @Test
+    public void root() throws Exception {
+        LazyRMObject lazy = LazyRMObject.load(json);
+        assertEquals(Composition.class, lazy.getRootClass());
+        assertEquals("openEHR-EHR-COMPOSITION.report-mnd.v1", lazy.getArchetypeNodeId());
+        assertEquals(objectMapper.writeValueAsString(composition), objectMapper.writeValueAsString(lazy.get()));
+        assertSame(lazy.get(), lazy.get());
+    }
+
+    @Test
+    public void sameResultAsFullParse() throws Exception {
+        LazyRMObject lazy = LazyRMObject.load(json);
+        String[] paths = {
+                "/content",
+                "/content[openEHR-EHR-OBSERVATION.lab_test-result.v1]",
+                "/content[1]/data[at0001]/events[at0002]",
+                "/content[openEHR-EHR-OBSERVATION.lab_test-result.v1]/data/events/data/items",
+                "/content/data/events[1]/time",
+                "/context/start_time/value",
+                "/uid/value",
+                "/category/defining_code",
+                "/name/value"
+        };
+        for(String path:paths) {
+            assertEquals(path, serialize(fullParseQuery(path)), serialize(lazy.itemsAtPath(path)));
+        }
+    }
+
+    @Test
+    public void itemAtPath() throws Exception {
+        LazyRMObject lazy = LazyRMObject.load(json);
+        Observation observation = lazy.itemAtPath("/content[openEHR-EHR-OBSERVATION.lab_test-result.v1]");
+        assertEquals("openEHR-EHR-OBSERVATION.lab_test-result.v1", observation.getArchetypeNodeId());
+        assertSame(observation, lazy.itemAtPath("/content[1]"));
+        assertEquals("__THIS_SHOULD_BE_MODIFIED_BY_THE_TEST_::piri.ehrscape.com::1", lazy.itemAtPath("/uid/value"));
+
+        assertNull(lazy.itemAtPath("/content[openEHR-EHR-OBSERVATION.unknown.v1]"));
+        assertNull(lazy.itemAtPath("/content[5]"));
+        assertNull(lazy.itemAtPath("/does_not_exist"));
+        assertTrue(lazy.itemsAtPath("/content[id999]/data").isEmpty());
+    }
+
+    @Test
+    public void oneObjectGraph() throws Exception {
+        LazyRMObject lazy = LazyRMObject.load(json);
+        Composition root = (Composition) lazy.get();
+        Observation observation = lazy.itemAtPath("/content[openEHR-EHR-OBSERVATION.lab_test-result.v1]");
+        assertSame(root.getContent().get(0), observation);
+        assertSame(root, observation.getParent());
+
+        String elementPath = "/content[1]/data/events[1]/data/items[at0005]";
+        Element element = lazy.itemAtPath(elementPath);
+        assertSame(element, root.itemAtPath(elementPath));
+        assertSame(observation, element.getParent().getParent().getParent().getParent());
+        assertEquals(((Element) composition.itemAtPath(elementPath)).getPath(), element.getPath());
+
+        //changes are visible in the lazy RM Object, as there is only one
+        element.setName(new DvText("changed"));
+        assertEquals("changed", lazy.itemAtPath(elementPath + "/name/value"));
+        assertEquals("changed", ((Element) root.itemAtPath(elementPath)).getName().getValue());
+    }
+
+    @Test
+    public void regularRMObject() throws Exception {
+        Composition lazyComposition = (Composition) LazyRMObject.load(json).get();
+        assertEquals(composition, lazyComposition);
+        assertEquals(composition, lazyComposition.clone());
+        //the parents are set, so the paths are the same as in a fully parsed composition
+        RMPathQuery query = new RMPathQuery("/content/data/events/data/items");
+        List<RMObjectWithPath> expected = query.findList(ArchieRMInfoLookup.getInstance(), composition);
+        List<RMObjectWithPath> items = query.findList(ArchieRMInfoLookup.getInstance(), lazyComposition);
+        assertEquals(expected.size(), items.size());
+        for(int i = 0; i < items.size(); i++) {
+            assertEquals(((Locatable) expected.get(i).getObject()).getPath(), ((Locatable) items.get(i).getObject()).getPath());
+        }
+    }
+
+    private List<Object> fullParseQuery(String path) {
+        List<Object> result = new ArrayList<>();
+        for(RMObjectWithPath found:new RMPathQuery(path).findList(ArchieRMInfoLookup.getInstance(), composition)) {
+            result.add(found.getObject());
+        }
+        return result;
+    }
+
+    private String serialize(List<Object> objects) throws Exception {
+        return objectMapper.writeValueAsString(objects);
+    }
+}
@@ -0,0 +1,115 @@
+package com.nedap.archie.json;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nedap.archie.adlparser.ADLParser;
+import com.nedap.archie.aom.Archetype;
+import com.nedap.archie.aom.ArchetypeHRID;
+import com.nedap.archie.aom.CAttribute;
+import com.nedap.archie.aom.CComplexObject;
+import com.nedap.archie.aom.OperationalTemplate;
+import com.nedap.archie.base.MultiplicityInterval;
+import com.nedap.archie.creation.ExampleJsonInstanceGenerator;
+import com.nedap.archie.flattener.Flattener;
+import com.nedap.archie.flattener.InMemoryFullArchetypeRepository;
+import com.nedap.archie.rm.datastructures.ItemTree;
+import com.nedap.archie.rm.datavalues.DvText;
+import org.junit.Before;
+import org.junit.Test;
+import org.leadpony.justify.api.Problem;
+import org.openehr.bmm.core.BmmModel;
+import org.openehr.referencemodels.BuiltinReferenceModels;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class OperationalTemplateJsonSchemaCacheTest {
+
+    private OperationalTemplate bloodPressureOpt;
+    private OperationalTemplateJsonSchemaCache cache;
+
+    @Before
+    public void setup() throws Exception {
+        ADLParser parser = new ADLParser();
+        Archetype archetype;
+        try(InputStream stream = getClass().getResourceAsStream("/ckm-mirror/local/archetypes/entry/observation/openEHR-EHR-OBSERVATION.blood_pressure.v1.1.0.adls")) {
+            archetype = parser.parse(stream);
+        }
+        InMemoryFullArchetypeRepository repository = new InMemoryFullArchetypeRepository();
+        repository.addArchetype(archetype);
+        bloodPressureOpt = (OperationalTemplate) new Flattener(repository, BuiltinReferenceModels.getMetaModels()).createOperationalTemplate(true).flatten(archetype);
+
+        BmmModel model = BuiltinReferenceModels.getBmmRepository().getModel("openehr_rm_1.0.4").getModel();
+        String templateId = bloodPressureOpt.getArchetypeId().getFullId();
+        cache = new OperationalTemplateJsonSchemaCache(model, true, id -> id.equals(templateId) ? bloodPressureOpt : null);
+    }
+
+    @Test
+    public void exampleValidates() throws Exception {
+        Map<String, Object> example = createExample();
+        assertEquals(new ArrayList<>(), validate(example));
+        //validation by template id must use the same compiled schema
+        assertSame(cache.getSchema(bloodPressureOpt), cache.getSchema(bloodPressureOpt.getArchetypeId().getFullId()));
+        assertNull(cache.getSchema("openEHR-EHR-OBSERVATION.unknown.v1.0.0"));
+    }
+
+    @Test
+    public void wrongNodeId() throws Exception {
+        Map<String, Object> example = createExample();
+        Map<String, Object> data = (Map<String, Object>) example.get("data");
+        data.put("archetype_node_id", "id999");
+        assertFalse(validate(example).isEmpty());
+    }
+
+    @Test
+    public void missingMandatoryAttribute() throws Exception {
+        Map<String, Object> example = createExample();
+        Map<String, Object> data = (Map<String, Object>) example.get("data");
+        List<Object> events = (List<Object>) data.get("events");
+        events.clear();
+        assertFalse(validate(example).isEmpty());
+    }
+
+    @Test
+    public void mandatoryEmptyContainerMayBeOmitted() throws Exception {
+        OperationalTemplate template = new OperationalTemplate();
+        template.setArchetypeId(new ArchetypeHRID("openEHR-EHR-ITEM_TREE.empty_container.v1.0.0"));
+        CComplexObject definition = new CComplexObject();
+        definition.setRmTypeName("ITEM_TREE");
+        definition.setNodeId("id1");
+        CAttribute items = new CAttribute("items");
+        items.setMultiple(true);
+        items.setExistence(MultiplicityInterval.createMandatory());
+        definition.addAttribute(items);
+        template.setDefinition(definition);
+
+        BmmModel model = BuiltinReferenceModels.getBmmRepository().getModel("openehr_rm_1.0.4").getModel();
+        String templateId = template.getArchetypeId().getFullId();
+        OperationalTemplateJsonSchemaCache templateCache = new OperationalTemplateJsonSchemaCache(model, true, id -> id.equals(templateId) ? template : null);
+
+        //the empty items list is left out of the json
+        ArchieJacksonConfiguration configuration = ArchieJacksonConfiguration.createStandardsCompliant();
+        configuration.setSerializeEmptyCollections(false);
+        byte[] json = JacksonUtil.getObjectMapper(configuration).writeValueAsBytes(new ItemTree("id1", new DvText("tree"), new ArrayList<>()));
+        assertEquals(new ArrayList<>(), templateCache.validate(new ByteArrayInputStream(json), templateId));
+    }
+
+    private Map<String, Object> createExample() {
+        ExampleJsonInstanceGenerator generator = new ExampleJsonInstanceGenerator(BuiltinReferenceModels.getMetaModels(), "en");
+        generator.setTypePropertyName("_type");
+        return generator.generate(bloodPressureOpt);
+    }
+
+    private List<Problem> validate(Map<String, Object> example) throws Exception {
+        byte[] json = new ObjectMapper().writeValueAsString(example).getBytes(StandardCharsets.UTF_8);
+        return cache.validate(new ByteArrayInputStream(json), bloodPressureOpt.getArchetypeId().getFullId());
+    }
+}
@@ -1,8 +1,16 @@
 package com.nedap.archie.json;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.nedap.archie.rm.composition.Composition;
+import com.nedap.archie.rm.datastructures.Cluster;
+import com.nedap.archie.rm.datastructures.Element;
+import com.nedap.archie.rm.datastructures.Item;
+import com.nedap.archie.rm.datavalues.DvBoolean;
+import com.nedap.archie.rm.datavalues.DvCodedText;
 import com.nedap.archie.rm.datavalues.DvText;
 import com.nedap.archie.rm.datavalues.quantity.datetime.DvDateTime;
 import com.nedap.archie.rm.datavalues.quantity.datetime.DvDuration;
@@ -17,6 +25,7 @@ import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class RMJacksonTest {
 
@@ -38,6 +47,82 @@ public class RMJacksonTest {
         }
     }
 
+    @Test
+    public void typePropertyLast() throws Exception {
+        ObjectMapper objectMapper = JacksonUtil.getObjectMapper(ArchieJacksonConfiguration.createStandardsCompliant());
+        Composition expected;
+        try(InputStream stream = getClass().getResourceAsStream("pablos_example.json")) {
+            expected = objectMapper.readValue(stream, Composition.class);
+        }
+        JsonNode tree;
+        try(InputStream stream = getClass().getResourceAsStream("pablos_example.json")) {
+            tree = new ObjectMapper().readTree(stream);
+        }
+        moveTypePropertyLast(tree);
+        String typeLastJson = new ObjectMapper().writeValueAsString(tree);
+        assertTrue(typeLastJson.endsWith("\"_type\":\"COMPOSITION\"}"));
+
+        Composition parsed = objectMapper.readValue(typeLastJson, Composition.class);
+        assertEquals(objectMapper.writeValueAsString(expected), objectMapper.writeValueAsString(parsed));
+    }
+
+    private void moveTypePropertyLast(JsonNode node) {
+        if(node.isObject() && node.has("_type")) {
+            ObjectNode object = (ObjectNode) node;
+            object.set("_type", object.remove("_type"));
+        }
+        for(JsonNode child:node) {
+            moveTypePropertyLast(child);
+        }
+    }
+
+    @Test
+    public void typePropertyLastInLargeObject() throws Exception {
+        //larger than the lookahead of ArchieTypeDeserializer at the root, but not for the elements
+        StringBuilder json = new StringBuilder("{\"archetype_node_id\":\"id1\",\"name\":{\"value\":\"cluster\",\"_type\":\"DV_TEXT\"},\"items\":[");
+        int elementCount = ArchieTypeDeserializer.MAX_LOOKAHEAD_TOKENS / 10;
+        for(int i = 0; i < elementCount; i++) {
+            if(i > 0) {
+                json.append(',');
+            }
+            json.append("{\"archetype_node_id\":\"id2\",\"name\":{\"value\":\"element ").append(i).append("\",\"_type\":\"DV_TEXT\"},")
+                    .append("\"value\":{\"value\":").append(i % 2 == 0).append(",\"_type\":\"DV_BOOLEAN\"},\"_type\":\"ELEMENT\"}");
+        }
+        json.append("],\"_type\":\"CLUSTER\"}");
+
+        ObjectMapper objectMapper = JacksonUtil.getObjectMapper(ArchieJacksonConfiguration.createStandardsCompliant());
+        Cluster cluster = (Cluster) objectMapper.readValue(json.toString(), Item.class);
+        assertEquals("cluster", cluster.getName().getValue());
+        assertEquals(elementCount, cluster.getItems().size());
+        Element last = (Element) cluster.getItems().get(elementCount - 1);
+        assertEquals("element " + (elementCount - 1), last.getName().getValue());
+        assertEquals(new DvBoolean(false), last.getValue());
+    }
+
+    @Test
+    public void contradictingTypeProperty() throws Exception {
+        ObjectMapper objectMapper = JacksonUtil.getObjectMapper(ArchieJacksonConfiguration.createStandardsCompliant());
+        assertEquals(new DvBoolean(true), objectMapper.readValue("{\"value\":true,\"_type\":\"DV_BOOLEAN\"}", DvBoolean.class));
+        try {
+            objectMapper.readValue("{\"value\":true,\"_type\":\"DV_CODED_TEXT\"}", DvBoolean.class);
+            fail("a type property that does not match the declared type should fail");
+        } catch (JsonMappingException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("DV_CODED_TEXT"));
+        }
+        try {
+            objectMapper.readValue("{\"value\":\"text\",\"defining_code\":{\"_type\":\"DV_BOOLEAN\",\"code_string\":\"at1\"},\"_type\":\"DV_CODED_TEXT\"}", DvCodedText.class);
+            fail("a type property that does not match the declared type should fail");
+        } catch (JsonMappingException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("DV_BOOLEAN"));
+        }
+
+        //configurations that do not always write the type property ignore it where it is not needed, as before
+        ArchieJacksonConfiguration withoutTypeProperty = ArchieJacksonConfiguration.createStandardsCompliant();
+        withoutTypeProperty.setAlwaysIncludeTypeProperty(false);
+        ObjectMapper lenientMapper = JacksonUtil.getObjectMapper(withoutTypeProperty);
+        assertEquals(new DvBoolean(true), lenientMapper.readValue("{\"value\":true,\"_type\":\"DV_CODED_TEXT\"}", DvBoolean.class));
+    }
+
     @Test
     public void parseDuration() throws Exception {
         String json = "{\n" +
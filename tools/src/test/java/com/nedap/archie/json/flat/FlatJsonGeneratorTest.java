@@ -1,5 +1,6 @@
 package com.nedap.archie.json.flat;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.nedap.archie.adlparser.ADLParseException;
 import com.nedap.archie.adlparser.ADLParser;
@@ -22,12 +23,15 @@ import org.openehr.referencemodels.BuiltinReferenceModels;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
 import static junit.framework.TestCase.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
 
 public class FlatJsonGeneratorTest {
 
@@ -258,6 +262,62 @@ public class FlatJsonGeneratorTest {
     }
 
 
+    @Test
+    public void streamingSameAsMap() throws Exception {
+        OperationalTemplate bloodPressureOpt = parseBloodPressure();
+        FlatJsonFormatConfiguration config = FlatJsonFormatConfiguration.standardFormatInDevelopment();
+        Observation bloodPressure = createExampleObservation(bloodPressureOpt);
+
+        FlatJsonGenerator flatJsonGenerator = new FlatJsonGenerator(ArchieRMInfoLookup.getInstance(), config);
+        Map<String, Object> expected = flatJsonGenerator.buildPathsAndValues(bloodPressure, bloodPressureOpt, "en");
+
+        Map<String, Object> written = new LinkedHashMap<>();
+        flatJsonGenerator.writePathsAndValues(bloodPressure, bloodPressureOpt, "en", written::put);
+        assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(written.keySet()));
+        assertEquals(expected, written);
+
+        StringWriter json = new StringWriter();
+        try(JsonGenerator generator = JacksonUtil.getObjectMapper().getFactory().createGenerator(json)) {
+            flatJsonGenerator.writePathsAndValues(bloodPressure, bloodPressureOpt, "en", generator);
+        }
+        assertEquals(JacksonUtil.getObjectMapper().readTree(JacksonUtil.getObjectMapper().writeValueAsString(expected)),
+                JacksonUtil.getObjectMapper().readTree(json.toString()));
+    }
+
+    @Test
+    public void compiledExportPlan() throws Exception {
+        OperationalTemplate bloodPressureOpt = parseBloodPressure();
+        FlatJsonFormatConfiguration config = FlatJsonFormatConfiguration.nedapInternalFormat();
+        Observation bloodPressure = createExampleObservation(bloodPressureOpt);
+        bloodPressure.setNameAsString("different from archetype");
+
+        FlatJsonGenerator flatJsonGenerator = new FlatJsonGenerator(ArchieRMInfoLookup.getInstance(), config);
+        Map<String, Object> expected = flatJsonGenerator.buildPathsAndValues(bloodPressure, bloodPressureOpt, "en");
+
+        FlatJsonExportPlan plan = flatJsonGenerator.compile(bloodPressureOpt, "en");
+        //the second time, everything comes from the plan
+        assertEquals(expected, flatJsonGenerator.buildPathsAndValues(bloodPressure, plan));
+        assertEquals(expected, flatJsonGenerator.buildPathsAndValues(bloodPressure, plan));
+        assertEquals("different from archetype", expected.get("/name/value"));
+        assertNull(expected.get("/data[id2]/events[id7,1]/data[id4]/items[id5,1]/name/value"));
+
+        try {
+            new FlatJsonGenerator(ArchieRMInfoLookup.getInstance(), config).buildPathsAndValues(bloodPressure, plan);
+            fail("a plan of a different generator should not be accepted");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    private Observation createExampleObservation(OperationalTemplate template) throws IOException {
+        MetaModels metaModels = BuiltinReferenceModels.getMetaModels();
+        metaModels.selectModel(template);
+        ExampleJsonInstanceGenerator exampleJsonInstanceGenerator = new ExampleJsonInstanceGenerator(metaModels, "en");
+        exampleJsonInstanceGenerator.setTypePropertyName("_type");
+        ObjectMapper objectMapper = metaModels.getSelectedModel().getJsonObjectMapper();
+        return objectMapper.readValue(objectMapper.writeValueAsString(exampleJsonInstanceGenerator.generate(template)), Observation.class);
+    }
+
     private OperationalTemplate parseBloodPressure() throws IOException, ADLParseException {
         try (InputStream stream = getClass().getResourceAsStream(BLOOD_PRESSURE_PATH)) {
             Archetype bloodPressure = new ADLParser(BuiltinReferenceModels.getMetaModels()).parse(stream);
@@ -0,0 +1,136 @@
+package com.nedap.archie.json.flat;
+
+import com.nedap.archie.adlparser.ADLParseException;
+import com.nedap.archie.adlparser.ADLParser;
+import com.nedap.archie.aom.Archetype;
+import com.nedap.archie.aom.OperationalTemplate;
+import com.nedap.archie.base.OpenEHRBase;
+import com.nedap.archie.flattener.Flattener;
+import com.nedap.archie.flattener.FlattenerConfiguration;
+import com.nedap.archie.flattener.SimpleArchetypeRepository;
+import com.nedap.archie.json.JacksonUtil;
+import com.nedap.archie.rm.composition.Observation;
+import com.nedap.archie.rm.datastructures.Cluster;
+import com.nedap.archie.rm.datastructures.Element;
+import com.nedap.archie.rm.datavalues.DvBoolean;
+import com.nedap.archie.rm.datavalues.DvText;
+import com.nedap.archie.rm.datavalues.quantity.DvCount;
+import com.nedap.archie.rminfo.ArchieRMInfoLookup;
+import org.junit.Test;
+import org.openehr.referencemodels.BuiltinReferenceModels;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FlatJsonParserTest {
+
+    private static final String BLOOD_PRESSURE_PATH = "/ckm-mirror/local/archetypes/entry/observation/openEHR-EHR-OBSERVATION.blood_pressure.v1.1.0.adls";
+
+    @Test
+    public void parseWithoutTemplate() throws Exception {
+        Map<String, Object> flatJson = new LinkedHashMap<>();
+        flatJson.put("/@type", "CLUSTER");
+        flatJson.put("/items[id2,1]/@type", "ELEMENT");
+        flatJson.put("/items[id2,1]/value/@type", "DV_TEXT");
+        flatJson.put("/items[id2,1]/value/value", "First");
+        flatJson.put("/items[id3,2]/@type", "ELEMENT");
+        flatJson.put("/items[id3,2]/value/@type", "DV_COUNT");
+        flatJson.put("/items[id3,2]/value/magnitude", 2L);
+        flatJson.put("/items[id2,3]/@type", "ELEMENT");
+        flatJson.put("/items[id2,3]/value/@type", "DV_TEXT");
+        flatJson.put("/items[id2,3]/value/value", "Third");
+
+        FlatJsonParser parser = new FlatJsonParser(ArchieRMInfoLookup.getInstance(), FlatJsonFormatConfiguration.nedapInternalFormat());
+        Cluster cluster = (Cluster) parser.parse(flatJson);
+
+        assertEquals(3, cluster.getItems().size());
+        Element first = (Element) cluster.getItems().get(0);
+        assertEquals("id2", first.getArchetypeNodeId());
+        assertEquals("First", ((DvText) first.getValue()).getValue());
+        Element second = (Element) cluster.getItems().get(1);
+        assertEquals("id3", second.getArchetypeNodeId());
+        assertEquals(2L, ((DvCount) second.getValue()).getMagnitude().longValue());
+        assertEquals("Third", ((DvText) ((Element) cluster.getItems().get(2)).getValue()).getValue());
+    }
+
+    @Test
+    public void separatorsInPredicates() throws Exception {
+        Map<String, Object> flatJson = new LinkedHashMap<>();
+        flatJson.put("/@type", "CLUSTER");
+        flatJson.put("/items[id2/a|b,1]/@type", "ELEMENT");
+        flatJson.put("/items[id2/a|b,1]/value/@type", "DV_TEXT");
+        flatJson.put("/items[id2/a|b,1]/value/value", "First");
+
+        FlatJsonParser parser = new FlatJsonParser(ArchieRMInfoLookup.getInstance(), FlatJsonFormatConfiguration.nedapInternalFormat());
+        Cluster cluster = (Cluster) parser.parse(flatJson);
+
+        assertEquals(1, cluster.getItems().size());
+        Element element = (Element) cluster.getItems().get(0);
+        assertEquals("id2/a|b", element.getArchetypeNodeId());
+        assertEquals("First", ((DvText) element.getValue()).getValue());
+    }
+
+    @Test
+    public void booleanValues() throws Exception {
+        Map<String, Object> flatJson = new LinkedHashMap<>();
+        flatJson.put("/@type", "ELEMENT");
+        flatJson.put("/value/@type", "DV_BOOLEAN");
+        flatJson.put("/value/value", "true");
+
+        FlatJsonParser parser = new FlatJsonParser(ArchieRMInfoLookup.getInstance(), FlatJsonFormatConfiguration.nedapInternalFormat());
+        Element element = (Element) parser.parse(flatJson);
+        assertTrue(((DvBoolean) element.getValue()).getValue());
+
+        flatJson.put("/value/value", "yes");
+        try {
+            parser.parse(flatJson);
+            fail("a value that is not true or false should not be parsed as a boolean");
+        } catch (FlatJsonParseException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("/value/value"));
+        }
+    }
+
+    @Test
+    public void roundTripStandardFormat() throws Exception {
+        FlatJsonFormatConfiguration config = FlatJsonFormatConfiguration.standardFormatInDevelopment();
+        roundTrip(config);
+    }
+
+    @Test
+    public void roundTripNedapInternalFormat() throws Exception {
+        FlatJsonFormatConfiguration config = FlatJsonFormatConfiguration.nedapInternalFormat();
+        config.setFilterNames(false);
+        config.setFilterTypes(false);
+        roundTrip(config);
+    }
+
+    private void roundTrip(FlatJsonFormatConfiguration config) throws Exception {
+        OperationalTemplate bloodPressureOpt = parseBloodPressure();
+        Map<String, Object> flatJson = new FlatJsonExampleInstanceGenerator().generateExample(bloodPressureOpt, BuiltinReferenceModels.getMetaModels(), "en", config);
+
+        String json = JacksonUtil.getObjectMapper().writeValueAsString(flatJson);
+        FlatJsonParser parser = new FlatJsonParser(ArchieRMInfoLookup.getInstance(), config);
+        OpenEHRBase parsed = parser.parse(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), bloodPressureOpt, "en");
+        assertTrue(parsed instanceof Observation);
+
+        Map<String, Object> regenerated = new FlatJsonGenerator(ArchieRMInfoLookup.getInstance(), config).buildPathsAndValues(parsed, bloodPressureOpt, "en");
+        String regeneratedJson = JacksonUtil.getObjectMapper().writeValueAsString(regenerated);
+        assertEquals(JacksonUtil.getObjectMapper().readTree(json), JacksonUtil.getObjectMapper().readTree(regeneratedJson));
+    }
+
+    private OperationalTemplate parseBloodPressure() throws IOException, ADLParseException {
+        try (InputStream stream = getClass().getResourceAsStream(BLOOD_PRESSURE_PATH)) {
+            Archetype bloodPressure = new ADLParser(BuiltinReferenceModels.getMetaModels()).parse(stream);
+            Flattener flattener = new Flattener(new SimpleArchetypeRepository(), BuiltinReferenceModels.getMetaModels(), FlattenerConfiguration.forOperationalTemplate());
+            return (OperationalTemplate) flattener.flatten(bloodPressure);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.nedap.archie.rmobjectvalidator;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.nedap.archie.adlparser.ADLParseException;
@@ -9,6 +10,7 @@ import com.nedap.archie.aom.OperationalTemplate;
 import com.nedap.archie.flattener.Flattener;
 import com.nedap.archie.flattener.FlattenerConfiguration;
 import com.nedap.archie.flattener.InMemoryFullArchetypeRepository;
+import com.nedap.archie.json.JacksonUtil;
 import com.nedap.archie.rm.RMObject;
 import com.nedap.archie.rm.datastructures.Cluster;
 import com.nedap.archie.rm.datastructures.Element;
@@ -22,9 +24,12 @@ import org.junit.Before;
 import org.junit.Test;
 import org.openehr.referencemodels.BuiltinReferenceModels;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.Assert.*;
 
@@ -162,6 +167,99 @@ public class RmObjectValidatorTest {
         assertFalse(validate.isEmpty());
     }
 
+    @Test
+    public void isValidAndMaxMessages() {
+        Cluster cluster = new Cluster();
+        cluster.setName(new DvText("test cluster"));
+        cluster.setArchetypeNodeId("id12");
+        Element element = new Element();
+        element.setValue(new DvText("hi!"));
+        cluster.setItems(Lists.newArrayList(element));
+
+        List<RMObjectValidationMessage> allMessages = Lists.newArrayList(validator.validate(cluster));
+        assertEquals(allMessages.toString(), 2, allMessages.size());
+        assertFalse(validator.isValid(cluster));
+
+        validator.setMaxMessages(1);
+        List<RMObjectValidationMessage> messages = validator.validate(cluster);
+        assertEquals(1, messages.size());
+        assertTrue(allMessages.contains(messages.get(0)));
+
+        element.setName(new DvText("test element"));
+        element.setArchetypeNodeId("id15");
+        assertTrue(validator.isValid(cluster));
+    }
+
+    @Test
+    public void forkJoinValidation() {
+        Cluster cluster = new Cluster();
+        cluster.setName(new DvText("test cluster"));
+        cluster.setArchetypeNodeId("id12");
+        List<Item> items = new ArrayList<>();
+        for(int i = 0; i < 100; i++) {
+            Element element = new Element();
+            if(i % 3 != 0) {
+                element.setName(new DvText("element " + i));
+            }
+            element.setValue(new DvText("value " + i));
+            element.setArchetypeNodeId("id15");
+            items.add(element);
+        }
+        cluster.setItems(items);
+
+        List<RMObjectValidationMessage> sequentialMessages = new ArrayList<>(validator.validate(cluster));
+        assertEquals(34, sequentialMessages.size());
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            validator.setForkJoinPool(pool);
+            validator.setForkThreshold(2);
+            assertEquals(sequentialMessages, validator.validate(cluster));
+            assertFalse(validator.isValid(cluster));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+
+    @Test
+    public void streamingValidation() throws Exception {
+        ObjectMapper objectMapper = JacksonUtil.getObjectMapper();
+        StreamingRMObjectValidator streamingValidator = new StreamingRMObjectValidator(ArchieRMInfoLookup.getInstance(), emptyRepo, objectMapper);
+        streamingValidator.setRunInvariantChecks(false);
+        validator.setRunInvariantChecks(false);
+
+        Archetype archetype = parse("/adl2-tests/rmobjectvalidity/openEHR-EHR-ELEMENT.element_with_required_attributes.v1.0.0.adls");
+        OperationalTemplate opt = createOpt(archetype);
+        Element element = (Element) testUtil.constructEmptyRMObject(archetype.getDefinition());
+        DvProportion dvProportion = (DvProportion) element.getValue();
+        dvProportion.setDenominator(4D);
+        dvProportion.setType(3L);
+
+        List<RMObjectValidationMessage> messages = streamingValidator.validate(opt, new ByteArrayInputStream(objectMapper.writeValueAsBytes(element)));
+        assertEquals(messages.toString(), 1, messages.size());
+        assertEquals("/value/numerator", messages.get(0).getPath());
+        assertEquals(validator.validate(opt, element), messages);
+
+        dvProportion.setNumerator(2D);
+        assertTrue(streamingValidator.validate(opt, new ByteArrayInputStream(objectMapper.writeValueAsBytes(element))).isEmpty());
+
+        archetype = parse("/adl2-tests/rmobjectvalidity/openEHR-EHR-ITEM_TREE.cardinality_testing.v1.0.0.adls");
+        opt = createOpt(archetype);
+        ItemTree itemTree = (ItemTree) testUtil.constructEmptyRMObject(archetype.getDefinition());
+        itemTree.getItems().clear();
+
+        messages = streamingValidator.validate(opt, new ByteArrayInputStream(objectMapper.writeValueAsBytes(itemTree)));
+        assertEquals(messages.toString(), 1, messages.size());
+        assertEquals(RMObjectValidationMessageType.CARDINALITY_MISMATCH, messages.get(0).getType());
+        assertEquals(validator.validate(opt, itemTree), messages);
+
+        Element unknownElement = new Element("id99", new DvText("unknown"), new DvText("value"));
+        itemTree.addItem(unknownElement);
+        messages = streamingValidator.validate(opt, new ByteArrayInputStream(objectMapper.writeValueAsBytes(itemTree)));
+        assertEquals(messages.toString(), 1, messages.size());
+        assertEquals("/items[id99, 1]", messages.get(0).getPath());
+    }
 
     private Archetype parse(String filename) throws IOException, ADLParseException {
         return TestUtil.parseFailOnErrors(filename);
@@ -113,6 +113,29 @@ public class FunctionsTest {
         assertEquals("sum should work", 65+21+3.3, (Double) sum.getValues().get(0).getValue(), 0.001);
     }
 
+    @Test
+    public void sumIsPrimitiveWithPaths() throws Exception {
+        archetype = parser.parse(ParsedRulesEvaluationTest.class.getResourceAsStream("functions.adls"));
+        assertTrue(parser.getErrors().hasNoErrors());
+        RuleEvaluation<Locatable> ruleEvaluation = getRuleEvaluation();
+
+        Locatable rmObject = (Locatable) new TestUtil().constructEmptyRMObject(archetype.getDefinition());
+        ((DvQuantity) rmObject.itemAtPath("/data[id2]/events[id3]/data[id4]/items[id5]/value")).setMagnitude(65d);
+        ((DvQuantity) rmObject.itemAtPath("/data[id2]/events[id3]/data[id4]/items[id6]/value")).setMagnitude(21d);
+
+        ruleEvaluation.evaluate(rmObject, archetype.getRules().getRules());
+        ValueList sum = ruleEvaluation.getVariableMap().get("sum");
+        assertTrue(sum instanceof DoubleValueList);
+        assertEquals(65+21+3.3, ((DoubleValueList) sum).getDouble(0), 0.001);
+        assertEquals(2, sum.getPaths(0).size());
+        assertEquals("/data[id2]/events[id3, 1]/data[id4]/items[id5, 1]/value/magnitude", sum.getPaths(0).get(0));
+
+        //a copy behaves the same, also when the original is converted to a list of Values
+        ValueList copy = sum.copy();
+        assertEquals(sum.getValues().get(0).getPaths(), copy.getPaths(0));
+        assertEquals(sum.getObject(0), copy.getObject(0));
+    }
+
     @Test
     public void mean() throws Exception {
         archetype = parser.parse(ParsedRulesEvaluationTest.class.getResourceAsStream("functions.adls"));
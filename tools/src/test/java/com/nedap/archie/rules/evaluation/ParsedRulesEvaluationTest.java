@@ -22,16 +22,24 @@ import com.nedap.archie.rules.BinaryOperator;
 import com.nedap.archie.rules.ExpressionVariable;
 import com.nedap.archie.rules.RuleStatement;
 import com.nedap.archie.rules.VariableDeclaration;
+import com.nedap.archie.rules.evaluation.evaluators.functions.Sum;
 import com.nedap.archie.testutil.TestUtil;
 import org.junit.Before;
 import org.junit.Test;
 import org.openehr.referencemodels.BuiltinReferenceModels;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.*;
 
@@ -229,6 +237,11 @@ public abstract class ParsedRulesEvaluationTest {
 
         assertEquals("the assertion should have succeeded", false, result.getResult());
         assertEquals("the assertion tag should be correct", "blood_pressure_valid", result.getTag());
+
+        //references relative to the for_all variable have the full path of the object they were found at
+        List<String> paths = result.getRawResult().getAllPaths();
+        assertTrue(paths.contains("/data[id2]/events[id3, 1]/data[id4]/items[id5, 1]/value/magnitude"));
+        assertTrue(paths.contains("/data[id2]/events[id3, 2]/data[id4]/items[id6, 2]/value/magnitude"));
     }
 
     public Pathable constructTwoBloodPressureObservations() {
@@ -330,6 +343,35 @@ public abstract class ParsedRulesEvaluationTest {
     }
 
 
+    @Test
+    public void tracedEvaluation() throws Exception {
+        parse("calculated_path_values.adls");
+        RuleEvaluation<Pathable> ruleEvaluation = getRuleEvaluation();
+        RuleEvaluationStatistics statistics = new RuleEvaluationStatistics();
+        ruleEvaluation.setTracer(statistics);
+
+        Pathable root = (Pathable) testUtil.constructEmptyRMObject(archetype.getDefinition());
+        ((DvQuantity) root.itemAtPath("/data[id2]/events[id3]/data[id4]/items[id5]/value[id13]")).setMagnitude(100d);
+        ((DvQuantity) root.itemAtPath("/data[id2]/events[id3]/data[id4]/items[id6]/value[id14]")).setMagnitude(80d);
+
+        ruleEvaluation.evaluate(root, archetype.getRules().getRules());
+
+        List<RuleStatement> rules = archetype.getRules().getRules();
+        assertEquals(3, statistics.getStatementStatistics().size());
+        for(RuleStatement variable:rules.subList(0, 2)) {
+            RuleEvaluationStatistics.ElementStatistics variableStatistics = statistics.getStatistics(variable);
+            assertEquals(1, variableStatistics.getEvaluations());
+            assertEquals(1, variableStatistics.getPathQueries());
+            assertEquals(1, variableStatistics.getObjectsMatched());
+            assertEquals(0, variableStatistics.getPathsSet());
+        }
+        RuleEvaluationStatistics.ElementStatistics assertionStatistics = statistics.getStatistics(rules.get(2));
+        assertEquals(1, assertionStatistics.getEvaluations());
+        assertTrue(assertionStatistics.getPathQueries() >= 1);
+        assertEquals(1, assertionStatistics.getPathsSet());
+        assertNotNull(assertionStatistics.getLastValues());
+    }
+
     @Test
     public void calculatedPathValues() throws Exception {
         parse("calculated_path_values.adls");
@@ -348,6 +390,188 @@ public abstract class ParsedRulesEvaluationTest {
         assertEquals(20.0d, (Double) evaluationResult.getSetPathValues().values().iterator().next().getValue(), 0.0001d);
     }
 
+    @Test
+    public void compiledRulesAreReused() throws Exception {
+        parse("simplearithmetic.adls");
+        RuleEvaluation<Pathable> ruleEvaluation = getRuleEvaluation();
+        CompiledRules compiledRules = ruleEvaluation.compile(archetype.getRules().getRules());
+        ExpressionVariable arithmeticTest = (ExpressionVariable) getVariableDeclarationByName(archetype, "arithmetic_test");
+        assertTrue(compiledRules.getCompiledElement(arithmeticTest.getExpression()).isConstant());
+        for(int i = 0; i < 2; i++) {
+            ruleEvaluation.evaluate(new Observation(), compiledRules);
+            assertEquals(8l, ruleEvaluation.getVariableMap().get("arithmetic_test").getObject(0));
+            assertEquals(25l, ruleEvaluation.getVariableMap().get("arithmetic_parentheses").getObject(0));
+        }
+
+        parse("calculated_path_values.adls");
+        ruleEvaluation = getRuleEvaluation();
+        compiledRules = ruleEvaluation.compile(archetype.getRules().getRules());
+        for(double systolicMagnitude:new double[] {100d, 120d}) {
+            Pathable root = (Pathable) testUtil.constructEmptyRMObject(archetype.getDefinition());
+            DvQuantity systolic = (DvQuantity) root.itemAtPath("/data[id2]/events[id3]/data[id4]/items[id5]/value[id13]");
+            systolic.setMagnitude(systolicMagnitude);
+            DvQuantity diastolic = (DvQuantity) root.itemAtPath("/data[id2]/events[id3]/data[id4]/items[id6]/value[id14]");
+            diastolic.setMagnitude(80d);
+
+            EvaluationResult evaluationResult = ruleEvaluation.evaluate(root, compiledRules);
+            assertEquals(1, evaluationResult.getSetPathValues().size());
+            assertEquals(systolicMagnitude - 80d, (Double) evaluationResult.getSetPathValues().values().iterator().next().getValue(), 0.0001d);
+        }
+    }
+
+    @Test
+    public void sharedEngineEvaluatesConcurrently() throws Exception {
+        parse("calculated_path_values.adls");
+        RuleEvaluationEngine<Pathable> engine = new RuleEvaluationEngine<>(ArchieRMInfoLookup.getInstance(), archetype);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<EvaluationResult>> results = new ArrayList<>();
+            for(int i = 0; i < 20; i++) {
+                Pathable root = (Pathable) testUtil.constructEmptyRMObject(archetype.getDefinition());
+                ((DvQuantity) root.itemAtPath("/data[id2]/events[id3]/data[id4]/items[id5]/value[id13]")).setMagnitude(100d + i);
+                ((DvQuantity) root.itemAtPath("/data[id2]/events[id3]/data[id4]/items[id6]/value[id14]")).setMagnitude(80d);
+                results.add(executor.submit(() -> engine.evaluate(root)));
+            }
+            for(int i = 0; i < 20; i++) {
+                EvaluationResult evaluationResult = results.get(i).get();
+                assertEquals(20d + i, (Double) evaluationResult.getSetPathValues().values().iterator().next().getValue(), 0.0001d);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        try {
+            engine.newEvaluation().registerFunction(new Sum());
+            fail("functions of a shared engine should not be changed");
+        } catch (IllegalStateException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void batchEvaluation() throws Exception {
+        parse("calculated_path_values.adls");
+        BatchRuleEvaluator<Pathable> batchEvaluator = new BatchRuleEvaluator<>(new RuleEvaluationEngine<>(ArchieRMInfoLookup.getInstance(), archetype));
+        batchEvaluator.setMaxPendingEvaluations(3);
+
+        List<Pathable> roots = new ArrayList<>();
+        for(int i = 0; i < 10; i++) {
+            Pathable root = (Pathable) testUtil.constructEmptyRMObject(archetype.getDefinition());
+            ((DvQuantity) root.itemAtPath("/data[id2]/events[id3]/data[id4]/items[id5]/value[id13]")).setMagnitude(100d + i);
+            ((DvQuantity) root.itemAtPath("/data[id2]/events[id3]/data[id4]/items[id6]/value[id14]")).setMagnitude(80d);
+            roots.add(root);
+        }
+
+        List<Map<String, Value<?>>> setPathValues = batchEvaluator.evaluateSetPathValues(roots.stream()).collect(Collectors.toList());
+        assertEquals(10, setPathValues.size());
+        for(int i = 0; i < 10; i++) {
+            assertEquals(20d + i, (Double) setPathValues.get(i).values().iterator().next().getValue(), 0.0001d);
+            //evaluated on a copy
+            assertNull(roots.get(i).itemAtPath("/data[id2]/events[id3]/data[id4]/items[id7]/value/magnitude"));
+        }
+
+        batchEvaluator.setCloneRoots(false);
+        Iterator<EvaluationResult> results = batchEvaluator.evaluate(roots.iterator());
+        int count = 0;
+        while(results.hasNext()) {
+            assertEquals(1, results.next().getSetPathValues().size());
+            assertEquals(20d + count, (Double) roots.get(count).itemAtPath("/data[id2]/events[id3]/data[id4]/items[id7]/value/magnitude"), 0.0001d);
+            count++;
+        }
+        assertEquals(10, count);
+    }
+
+    @Test
+    public void batchEvaluationCancelledOnClose() throws Exception {
+        parse("calculated_path_values.adls");
+        //only the first evaluation runs right away, the others stay pending until run below
+        List<Runnable> tasks = new ArrayList<>();
+        BatchRuleEvaluator<Pathable> batchEvaluator = new BatchRuleEvaluator<>(new RuleEvaluationEngine<>(ArchieRMInfoLookup.getInstance(), archetype), task -> {
+            tasks.add(task);
+            if(tasks.size() == 1) {
+                task.run();
+            }
+        });
+        batchEvaluator.setMaxPendingEvaluations(3);
+        batchEvaluator.setCloneRoots(false);
+
+        List<Pathable> roots = new ArrayList<>();
+        for(int i = 0; i < 10; i++) {
+            Pathable root = (Pathable) testUtil.constructEmptyRMObject(archetype.getDefinition());
+            ((DvQuantity) root.itemAtPath("/data[id2]/events[id3]/data[id4]/items[id5]/value[id13]")).setMagnitude(100d + i);
+            ((DvQuantity) root.itemAtPath("/data[id2]/events[id3]/data[id4]/items[id6]/value[id14]")).setMagnitude(80d);
+            roots.add(root);
+        }
+
+        boolean[] rootsClosed = {false};
+        try(Stream<EvaluationResult> results = batchEvaluator.evaluate(roots.stream().onClose(() -> rootsClosed[0] = true))) {
+            assertTrue(results.findFirst().isPresent());
+        }
+        assertTrue(rootsClosed[0]);
+        for(Runnable task:new ArrayList<>(tasks)) {
+            task.run();
+        }
+        assertEquals(20d, (Double) roots.get(0).itemAtPath("/data[id2]/events[id3]/data[id4]/items[id7]/value/magnitude"), 0.0001d);
+        for(int i = 1; i < 10; i++) {
+            assertNull(roots.get(i).itemAtPath("/data[id2]/events[id3]/data[id4]/items[id7]/value/magnitude"));
+        }
+    }
+
+    @Test
+    public void incrementalEvaluationSession() throws Exception {
+        parse("calculated_path_values_2.adls");
+        RuleEvaluationSession<Pathable> session = new RuleEvaluationSession<>(getRuleEvaluation(), archetype.getRules().getRules());
+
+        Pathable root = (Pathable) testUtil.constructEmptyRMObject(archetype.getDefinition());
+        ((DvQuantity) root.itemAtPath("/data[id2]/events[id3]/data[id4]/items[id5]/value[id13]")).setMagnitude(100d);
+        ((DvQuantity) root.itemAtPath("/data[id2]/events[id3]/data[id4]/items[id6]/value[id14]")).setMagnitude(80d);
+
+        EvaluationResult evaluationResult = session.start(root);
+        assertEquals(2, evaluationResult.getSetPathValues().size());
+
+        ((DvQuantity) session.getRoot().itemAtPath("/data[id2]/events[id3]/data[id4]/items[id6]/value[id14]")).setMagnitude(70d);
+        EvaluationDelta delta = session.update(Collections.singletonList("/data[id2]/events[id3, 1]/data[id4]/items[id6, 1]/value/magnitude"));
+
+        //$systolic does not depend on the diastolic pressure, the other three rules do
+        List<RuleStatement> rules = archetype.getRules().getRules();
+        assertEquals(rules.subList(1, 4), delta.getEvaluatedRules());
+        assertEquals(2, delta.getChangedSetPathValues().size());
+        Iterator<Value<?>> iterator = delta.getChangedSetPathValues().values().iterator();
+        assertEquals(30.0d, (Double) iterator.next().getValue(), 0.0001d);
+        assertEquals(33.0d, (Double) iterator.next().getValue(), 0.0001d);
+        assertEquals(33.0d, (Double) session.getRoot().itemAtPath("/data[id2]/events[id3]/data[id4]/items[id8]/value/magnitude"), 0.0001d);
+
+        //an unchanged variable value does not cause the rules depending on it to be evaluated again
+        delta = session.update(Collections.singletonList("/data[id2]/events[id3]/data[id4]/items[id6]"));
+        assertEquals(rules.subList(1, 2), delta.getEvaluatedRules());
+        assertTrue(delta.getChangedSetPathValues().isEmpty());
+        assertTrue(delta.getRemovedSetPaths().isEmpty());
+        assertTrue(delta.isEmpty());
+    }
+
+    @Test
+    public void incrementalEvaluationSessionRemovedSetPath() throws Exception {
+        parse("implies.adls");
+        RuleEvaluationSession<Pathable> session = new RuleEvaluationSession<>(getRuleEvaluation(), archetype.getRules().getRules());
+        String systolicPath = "/data[id2]/events[id3]/data[id4]/items[id5]/value/magnitude";
+        String diastolicPath = "/data[id2]/events[id3]/data[id4]/items[id6]/value/magnitude";
+
+        Pathable root = (Pathable) testUtil.constructEmptyRMObject(archetype.getDefinition());
+        ((DvQuantity) root.itemAtPath("/data[id2]/events[id3]/data[id4]/items[id5]/value")).setMagnitude(5d);
+        EvaluationResult evaluationResult = session.start(root);
+        assertEquals(1, evaluationResult.getSetPathValues().size());
+        assertEquals(6d, (Double) session.getRoot().itemAtPath(diastolicPath), 0.0001d);
+
+        //the systolic pressure no longer implies the diastolic pressure, so the value set before is removed
+        ((DvQuantity) session.getRoot().itemAtPath("/data[id2]/events[id3]/data[id4]/items[id5]/value")).setMagnitude(1d);
+        EvaluationDelta delta = session.update(Collections.singletonList(systolicPath));
+        assertEquals(1, delta.getRemovedSetPaths().size());
+        assertTrue(delta.getChangedSetPathValues().isEmpty());
+        assertNull(session.getRoot().itemAtPath(diastolicPath));
+        assertTrue(session.getEvaluationResult().getSetPathValues().isEmpty());
+    }
+
     @Test
     public void calculatedPathValuesWithNulls1() throws Exception {
         parse("calculated_path_values.adls");
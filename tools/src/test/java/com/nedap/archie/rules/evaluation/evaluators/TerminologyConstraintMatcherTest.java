@@ -0,0 +1,94 @@
+package com.nedap.archie.rules.evaluation.evaluators;
+
+import com.nedap.archie.adlparser.ADLParseException;
+import com.nedap.archie.adlparser.ADLParser;
+import com.nedap.archie.aom.Archetype;
+import com.nedap.archie.aom.primitives.CTerminologyCode;
+import com.nedap.archie.rm.datatypes.CodePhrase;
+import com.nedap.archie.rm.support.identification.TerminologyId;
+import com.nedap.archie.rminfo.ArchieRMInfoLookup;
+import com.nedap.archie.rules.Assertion;
+import com.nedap.archie.rules.BinaryOperator;
+import com.nedap.archie.rules.Constraint;
+import com.nedap.archie.rules.evaluation.ParsedRulesEvaluationTest;
+import org.junit.Before;
+import org.junit.Test;
+import org.openehr.referencemodels.BuiltinReferenceModels;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class TerminologyConstraintMatcherTest {
+
+    private ADLParser parser;
+    private Archetype archetype;
+    private TerminologyConstraintMatcher matcher;
+
+    @Before
+    public void setup() throws IOException, ADLParseException {
+        parser = new ADLParser(BuiltinReferenceModels.getMetaModels());
+        archetype = parser.parse(ParsedRulesEvaluationTest.class.getResourceAsStream("matches_valueset.adls"));
+        assertTrue(parser.getErrors().toString(), parser.getErrors().hasNoErrors());
+        matcher = new TerminologyConstraintMatcher(ArchieRMInfoLookup.getInstance(), archetype);
+    }
+
+    @Test
+    public void valueSetCodes() {
+        CTerminologyCode constraint = getRuleConstraint();
+        assertTrue(matcher.isValidValue(constraint, localCode("at4"), "/items[id2, 1]/value/defining_code"));
+        assertTrue(matcher.isValidValue(constraint, localCode("at5"), "/items[id2, 1]/value/defining_code"));
+        //the constraint of the rule itself is not changed
+        assertEquals(Collections.singletonList("ac3"), constraint.getConstraint());
+    }
+
+    @Test
+    public void valueOutsideValueSet() {
+        CTerminologyCode constraint = getRuleConstraint();
+        assertFalse(matcher.isValidValue(constraint, localCode("at26"), "/items[id2, 1]/value/defining_code"));
+        assertFalse(matcher.isValidValue(constraint, localCode("ac3"), "/items[id2, 1]/value/defining_code"));
+        assertFalse(matcher.isValidValue(constraint, null, "/items[id2, 1]/value/defining_code"));
+    }
+
+    @Test
+    public void localCodes() {
+        CTerminologyCode constraint = new CTerminologyCode();
+        constraint.addConstraint("at4");
+        assertTrue(matcher.isValidValue(constraint, localCode("at4"), "/items[id2, 1]/value/defining_code"));
+        assertFalse(matcher.isValidValue(constraint, localCode("at5"), "/items[id2, 1]/value/defining_code"));
+        //without a path, the constraint is placed at the root of the archetype
+        assertTrue(matcher.isValidValue(constraint, localCode("at4"), null));
+        assertFalse(matcher.isValidValue(constraint, localCode("at5"), null));
+    }
+
+    @Test
+    public void indexedPaths() {
+        CTerminologyCode constraint = getRuleConstraint();
+        //the values of all indices share the prepared constraint of the archetype path
+        for(int i = 1; i <= 3; i++) {
+            assertTrue(matcher.isValidValue(constraint, localCode("at4"), "/items[id2, " + i + "]/value/defining_code"));
+            assertFalse(matcher.isValidValue(constraint, localCode("at26"), "/items[id2, " + i + "]/value/defining_code"));
+        }
+        assertTrue(matcher.isValidValue(constraint, localCode("at5"), "/items[2]/value/defining_code"));
+    }
+
+    @Test
+    public void removeIndices() {
+        assertEquals("/items[id2]/value/defining_code", TerminologyConstraintMatcher.removeIndices("/items[id2, 1]/value/defining_code"));
+        assertEquals("/items[id2]/value/defining_code", TerminologyConstraintMatcher.removeIndices("/items[id2,12]/value/defining_code"));
+        assertEquals("/items/items[id3]/value", TerminologyConstraintMatcher.removeIndices("/items[1]/items[id3, 2]/value"));
+        assertEquals("/items[id2]/value", TerminologyConstraintMatcher.removeIndices("/items[id2]/value"));
+        assertEquals("/items[openEHR-EHR-CLUSTER.matches_valueset.v1]", TerminologyConstraintMatcher.removeIndices("/items[openEHR-EHR-CLUSTER.matches_valueset.v1, 1]"));
+        assertEquals("", TerminologyConstraintMatcher.removeIndices(""));
+    }
+
+    private CTerminologyCode getRuleConstraint() {
+        BinaryOperator matches = (BinaryOperator) ((Assertion) archetype.getRules().getRules().get(0)).getExpression();
+        return (CTerminologyCode) ((Constraint<?>) matches.getRightOperand()).getItem();
+    }
+
+    private static CodePhrase localCode(String code) {
+        return new CodePhrase(new TerminologyId("local"), code);
+    }
+}